@@ -0,0 +1,55 @@
+package no.ssb.dlp.pseudo.service.pseudo;
+
+import io.reactivex.Flowable;
+import io.reactivex.Scheduler;
+import io.reactivex.functions.Consumer;
+import io.reactivex.functions.Function;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Maps the items of a {@link Flowable} in batches on a scheduler, while keeping the order of the items.
+ *
+ * <p>Items are buffered into batches of <code>batchSize</code> items, and at most <code>workers</code> batches are
+ * mapped at the same time. A batch is only read once a worker is available, so the number of items in flight is
+ * bounded by <code>workers * batchSize</code>.</p>
+ */
+final class Batches {
+
+    private Batches() {}
+
+    /**
+     * @param items     the items to map
+     * @param batchSize number of items in each batch
+     * @param mapper    maps a single item. Called on the scheduler
+     * @param scheduler the scheduler to map batches on
+     * @param workers   max number of batches in flight
+     * @return the mapped items, in the order of the input
+     */
+    static <T, R> Flowable<R> map(Flowable<T> items, int batchSize, Function<? super T, ? extends R> mapper,
+                                  Scheduler scheduler, int workers) {
+        return map(items, batchSize, batch -> {}, mapper, scheduler, workers);
+    }
+
+    /**
+     * Like {@link #map(Flowable, int, Function, Scheduler, int)}, but calls <code>onBatch</code> with each batch as
+     * soon as it has been read, in sequence, and before it is mapped.
+     */
+    static <T, R> Flowable<R> map(Flowable<T> items, int batchSize, Consumer<List<T>> onBatch,
+                                  Function<? super T, ? extends R> mapper, Scheduler scheduler, int workers) {
+        return items.buffer(batchSize)
+                .doOnNext(onBatch)
+                .concatMapEager(batch -> Flowable.fromCallable(() -> mapBatch(batch, mapper)).subscribeOn(scheduler),
+                        workers, 1)
+                .concatMapIterable(batch -> batch);
+    }
+
+    private static <T, R> List<R> mapBatch(List<T> batch, Function<? super T, ? extends R> mapper) throws Exception {
+        final List<R> mapped = new ArrayList<>(batch.size());
+        for (T item : batch) {
+            mapped.add(mapper.apply(item));
+        }
+        return mapped;
+    }
+}
@@ -0,0 +1,63 @@
+package no.ssb.dlp.pseudo.service.pseudo;
+
+import io.reactivex.Flowable;
+import io.reactivex.disposables.Disposable;
+
+import java.io.InputStream;
+import java.util.Iterator;
+
+/**
+ * A (blocking) InputStream over a stream of chunks, e.g. a streamed request body or the result of a pseudo operation,
+ * for readers and writers that only accept an InputStream.
+ *
+ * <p>Chunks are requested as they are read. Closing the stream disposes the iterator, and with it the upstream
+ * subscription.</p>
+ */
+public class ChunkInputStream extends InputStream {
+    private final Iterator<byte[]> chunks;
+    private byte[] chunk = new byte[0];
+    private int position = 0;
+
+    private ChunkInputStream(Iterator<byte[]> chunks) {
+        this.chunks = chunks;
+    }
+
+    /**
+     * @param chunks the chunks of the stream
+     * @return an InputStream that reads the chunks as they arrive
+     */
+    public static InputStream of(Flowable<byte[]> chunks) {
+        return new ChunkInputStream(chunks.blockingIterable().iterator());
+    }
+
+    @Override
+    public int read() {
+        byte[] b = new byte[1];
+        return read(b, 0, 1) < 0 ? -1 : b[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) {
+        if (len == 0) {
+            return 0;
+        }
+        while (position == chunk.length) {
+            if (!chunks.hasNext()) {
+                return -1;
+            }
+            chunk = chunks.next();
+            position = 0;
+        }
+        int count = Math.min(len, chunk.length - position);
+        System.arraycopy(chunk, position, b, off, count);
+        position += count;
+        return count;
+    }
+
+    @Override
+    public void close() {
+        if (chunks instanceof Disposable disposable) {
+            disposable.dispose();
+        }
+    }
+}
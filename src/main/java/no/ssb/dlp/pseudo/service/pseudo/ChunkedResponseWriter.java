@@ -0,0 +1,161 @@
+package no.ssb.dlp.pseudo.service.pseudo;
+
+import io.reactivex.Flowable;
+import io.reactivex.Scheduler;
+import io.reactivex.schedulers.Schedulers;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encodes a stream of (typically small) JSON fragments as UTF-8 into size-bounded chunks of bytes.
+ *
+ * <p>The serialized responses consist of many tiny fragments (values, separators and brackets). Writing each fragment
+ * as a separate chunk means one byte array and one Netty write per fragment. Instead, fragments are encoded straight
+ * into a chunk buffer, and a chunk is only emitted once the buffer is full (or the stream completes).</p>
+ *
+ * <p>Slow streams (e.g. values that arrive one by one in a streamed request) would otherwise be held back until the
+ * buffer is full. A partially filled buffer is therefore also emitted once a flush interval has passed.</p>
+ *
+ * <p>Chunks are emitted as plain byte arrays rather than pooled Netty buffers. Micronaut wraps byte arrays without
+ * copying, and plain arrays cannot leak if the response is cancelled while chunks are still queued.</p>
+ */
+public class ChunkedResponseWriter {
+
+    public static final int DEFAULT_CHUNK_SIZE = 64 * 1024;
+    public static final long DEFAULT_FLUSH_INTERVAL_MILLIS = 100;
+
+    private static final Object FLUSH = new Object();
+    private static final Object END = new Object();
+
+    private final byte[] buffer;
+    private int position = 0;
+
+    private ChunkedResponseWriter(int chunkSize) {
+        this.buffer = new byte[chunkSize];
+    }
+
+    /**
+     * Encode fragments into chunks of {@link #DEFAULT_CHUNK_SIZE} bytes, flushing a partially filled chunk every
+     * {@link #DEFAULT_FLUSH_INTERVAL_MILLIS} milliseconds.
+     *
+     * @param fragments a flowable of String elements
+     * @return a flowable of UTF-8 encoded chunks
+     */
+    public static Flowable<byte[]> write(Flowable<String> fragments) {
+        return write(fragments, DEFAULT_CHUNK_SIZE, DEFAULT_FLUSH_INTERVAL_MILLIS, TimeUnit.MILLISECONDS,
+                Schedulers.computation());
+    }
+
+    /**
+     * Encode fragments into chunks of a given size.
+     *
+     * @param fragments a flowable of String elements
+     * @param chunkSize the size of each chunk in bytes
+     * @return a flowable of UTF-8 encoded chunks. Only the last chunk may be smaller than the chunk size
+     */
+    public static Flowable<byte[]> write(Flowable<String> fragments, int chunkSize) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("Chunk size must be positive");
+        }
+        return Flowable.defer(() -> {
+            final ChunkedResponseWriter writer = new ChunkedResponseWriter(chunkSize);
+            return fragments.concatMapIterable(writer::append)
+                    .concatWith(Flowable.defer(() -> Flowable.fromIterable(writer.flushPartial())));
+        });
+    }
+
+    /**
+     * Encode fragments into chunks of a given size, and emit a partially filled chunk whenever the flush interval
+     * passes, so that slow streams are not held back until a chunk is full.
+     *
+     * @param fragments     a flowable of String elements
+     * @param chunkSize     the max size of each chunk in bytes
+     * @param flushInterval how long bytes may wait in a partially filled chunk
+     * @param unit          the time unit of the flush interval
+     * @param scheduler     the scheduler to time the flushes on
+     * @return a flowable of UTF-8 encoded chunks
+     */
+    public static Flowable<byte[]> write(Flowable<String> fragments, int chunkSize, long flushInterval,
+                                         TimeUnit unit, Scheduler scheduler) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("Chunk size must be positive");
+        }
+        if (flushInterval <= 0) {
+            throw new IllegalArgumentException("Flush interval must be positive");
+        }
+        return Flowable.defer(() -> {
+            final ChunkedResponseWriter writer = new ChunkedResponseWriter(chunkSize);
+            // Flush ticks are dropped rather than queued while downstream is busy, and merge serializes the
+            // fragments and ticks so the buffer is only touched by one thread at a time
+            final Flowable<Object> ticks = Flowable.interval(flushInterval, flushInterval, unit, scheduler)
+                    .onBackpressureDrop()
+                    .map(tick -> FLUSH);
+            return Flowable.merge(fragments.<Object>map(fragment -> fragment).concatWith(Flowable.just(END)), ticks)
+                    .takeWhile(item -> item != END)
+                    .concatMapIterable(item -> item == FLUSH
+                            ? writer.flushPartial()
+                            : writer.append((String) item))
+                    .concatWith(Flowable.defer(() -> Flowable.fromIterable(writer.flushPartial())));
+        });
+    }
+
+    /**
+     * Append a fragment to the buffer.
+     *
+     * @return the chunks that were filled up by the fragment, usually none
+     */
+    private List<byte[]> append(String fragment) {
+        List<byte[]> chunks = Collections.emptyList();
+        final int length = fragment.length();
+        for (int i = 0; i < length; i++) {
+            char c = fragment.charAt(i);
+            if (c >= 0x80) {
+                // Not plain ASCII, let the JDK encode the rest of the fragment
+                return appendBytes(fragment.substring(i).getBytes(StandardCharsets.UTF_8), chunks);
+            }
+            if (position == buffer.length) {
+                chunks = flush(chunks);
+            }
+            buffer[position++] = (byte) c;
+        }
+        return chunks;
+    }
+
+    private List<byte[]> appendBytes(byte[] bytes, List<byte[]> chunks) {
+        int offset = 0;
+        while (offset < bytes.length) {
+            if (position == buffer.length) {
+                chunks = flush(chunks);
+            }
+            int count = Math.min(bytes.length - offset, buffer.length - position);
+            System.arraycopy(bytes, offset, buffer, position, count);
+            position += count;
+            offset += count;
+        }
+        return chunks;
+    }
+
+    /**
+     * @return the partially filled chunk, if any
+     */
+    private List<byte[]> flushPartial() {
+        if (position == 0) {
+            return Collections.emptyList();
+        }
+        final byte[] chunk = Arrays.copyOf(buffer, position);
+        position = 0;
+        return Collections.singletonList(chunk);
+    }
+
+    private List<byte[]> flush(List<byte[]> chunks) {
+        List<byte[]> result = chunks.isEmpty() ? new ArrayList<>(1) : chunks;
+        result.add(buffer.clone());
+        position = 0;
+        return result;
+    }
+}
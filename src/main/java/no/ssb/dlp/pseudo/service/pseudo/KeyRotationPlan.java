@@ -0,0 +1,96 @@
+package no.ssb.dlp.pseudo.service.pseudo;
+
+import lombok.Getter;
+import no.ssb.dlp.pseudo.core.field.FieldDescriptor;
+import no.ssb.dlp.pseudo.service.pseudo.PseudoRulePlan.FieldRule;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Fuses the rules of a source and a target {@link PseudoRulePlan}, for key rotation of pseudonymized values (e.g.
+ * <code>daead</code> to <code>daead</code> or <code>ff31</code> to <code>ff31</code> with another key).
+ *
+ * <p>Repseudonymization usually depseudonymizes and pseudonymizes a value as two separate steps, which each look up
+ * the rule of the field. With key rotation, each distinct field path is resolved only once to a {@link KeyRotation}
+ * that holds both the source and the target rule, so that a value is transformed with a single lookup.</p>
+ *
+ * <p>Since a pseudonymized value must never be left depseudonymized, fields that are matched by only one of the plans
+ * are rejected.</p>
+ */
+public class KeyRotationPlan {
+
+    /**
+     * Upper bound on the number of memoized field paths, as for {@link PseudoRulePlan}.
+     */
+    private static final int MAX_CACHED_PATHS = 10_000;
+
+    private final PseudoRulePlan source;
+    private final PseudoRulePlan target;
+    private final Map<String, Optional<KeyRotation>> keyRotations = new ConcurrentHashMap<>();
+
+    public KeyRotationPlan(PseudoRulePlan source, PseudoRulePlan target) {
+        if (source.isPreprocessingRequired() || target.isPreprocessingRequired()) {
+            throw new IllegalArgumentException("Key rotation does not support SID mapping functions");
+        }
+        this.source = source;
+        this.target = target;
+    }
+
+    /**
+     * Find the key rotation that applies to a field.
+     *
+     * @param field the field to look up
+     * @return the source and target rule of the field, or empty if no rules match the field
+     * @throws IllegalArgumentException if the field is matched by only one of the source and target rules
+     */
+    public Optional<KeyRotation> find(FieldDescriptor field) {
+        Optional<KeyRotation> keyRotation = keyRotations.get(field.getPath());
+        if (keyRotation == null) {
+            keyRotation = compile(field);
+            if (keyRotations.size() < MAX_CACHED_PATHS) {
+                keyRotations.putIfAbsent(field.getPath(), keyRotation);
+            }
+        }
+        return keyRotation;
+    }
+
+    /**
+     * @return true if any source or target rule matches the field
+     */
+    public boolean matches(FieldDescriptor field) {
+        return source.find(field).isPresent() || target.find(field).isPresent();
+    }
+
+    private Optional<KeyRotation> compile(FieldDescriptor field) {
+        final Optional<FieldRule> sourceRule = source.find(field);
+        final Optional<FieldRule> targetRule = target.find(field);
+        if (sourceRule.isEmpty() && targetRule.isEmpty()) {
+            return Optional.empty();
+        }
+        if (sourceRule.isEmpty() || targetRule.isEmpty()) {
+            throw new IllegalArgumentException(String.format("Field '%s' must be matched by both a source and a "
+                    + "target rule in order to rotate keys", field.getPath()));
+        }
+        return Optional.of(new KeyRotation(sourceRule.get(), targetRule.get()));
+    }
+
+    @Getter
+    public static class KeyRotation {
+        private final FieldRule source;
+        private final FieldRule target;
+
+        // True if values must be at least 4 characters long in order to be transformed by either rule
+        private final boolean minLengthRequired;
+        // True if both rules are deterministic, i.e. if the result of a value can be memoized
+        private final boolean deterministic;
+
+        KeyRotation(FieldRule source, FieldRule target) {
+            this.source = source;
+            this.target = target;
+            this.minLengthRequired = source.isMinLengthRequired() || target.isMinLengthRequired();
+            this.deterministic = source.isDeterministic() && target.isDeterministic();
+        }
+    }
+}
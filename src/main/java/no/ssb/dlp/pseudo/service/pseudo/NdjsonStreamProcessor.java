@@ -0,0 +1,106 @@
+package no.ssb.dlp.pseudo.service.pseudo;
+
+import io.reactivex.Completable;
+import io.reactivex.Flowable;
+import io.reactivex.Scheduler;
+import no.ssb.dlp.pseudo.core.StreamProcessor;
+import no.ssb.dlp.pseudo.core.map.RecordMapProcessor;
+import no.ssb.dlp.pseudo.core.map.RecordMapSerializer;
+import no.ssb.dlp.pseudo.core.util.Json;
+
+import java.io.BufferedReader;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A {@link StreamProcessor} for newline delimited JSON (NDJSON), i.e. one JSON object (record) per line.
+ *
+ * <p>Unlike a JSON array, each line can be parsed on its own. If a scheduler is given, the input is only split into
+ * lines while reading, and batches of lines are then both parsed and processed on the scheduler, with at most
+ * <code>workers</code> batches in flight. Records are serialized in their original order.</p>
+ */
+public class NdjsonStreamProcessor implements StreamProcessor {
+
+    private final RecordMapProcessor<?> recordMapProcessor;
+    private final Scheduler scheduler;
+    private final int workers;
+    private final int batchSize;
+
+    /**
+     * Create a stream processor that parses and processes one line at a time.
+     */
+    public NdjsonStreamProcessor(RecordMapProcessor<?> recordMapProcessor) {
+        this(recordMapProcessor, null, 1, 1);
+    }
+
+    /**
+     * Create a stream processor that parses and processes batches of lines in parallel.
+     *
+     * @param recordMapProcessor the record processor to apply
+     * @param scheduler          the scheduler to parse and process batches on
+     * @param workers            max number of batches in flight
+     * @param batchSize          number of lines in each batch
+     */
+    public NdjsonStreamProcessor(RecordMapProcessor<?> recordMapProcessor, Scheduler scheduler, int workers,
+                                 int batchSize) {
+        this.recordMapProcessor = recordMapProcessor;
+        this.scheduler = scheduler;
+        this.workers = workers;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Serializes records as single line JSON objects, as expected in an NDJSON response.
+     */
+    public static RecordMapSerializer<String> serializer() {
+        return (record, position) -> Json.from(record);
+    }
+
+    @Override
+    public Completable init(InputStream is) {
+        if (!recordMapProcessor.hasPreprocessors()) {
+            return Completable.complete();
+        }
+        return Completable.fromPublisher(lines(is).doOnNext(line -> recordMapProcessor.init(parse(line))));
+    }
+
+    @Override
+    public <T> Flowable<T> process(InputStream is, RecordMapSerializer<T> serializer) {
+        return Flowable.defer(() -> {
+            final AtomicInteger position = new AtomicInteger();
+            final Flowable<Map<String, Object>> records = scheduler == null
+                    ? lines(is).map(line -> recordMapProcessor.process(parse(line)))
+                    : Batches.map(lines(is), batchSize, line -> recordMapProcessor.process(parse(line)),
+                            scheduler, workers);
+            // Serializers are not thread safe, so always serialize in sequence
+            return records.map(record -> serializer.serialize(record, position.getAndIncrement()));
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> parse(String line) {
+        return Json.toObject(Map.class, line);
+    }
+
+    /**
+     * @return the non-blank lines of the input
+     */
+    private static Flowable<String> lines(InputStream is) {
+        return Flowable.generate(() -> new BufferedReader(new InputStreamReader(is, StandardCharsets.UTF_8)),
+                (reader, emitter) -> {
+                    String line = reader.readLine();
+                    while (line != null && line.isBlank()) {
+                        line = reader.readLine();
+                    }
+                    if (line == null) {
+                        emitter.onComplete();
+                    } else {
+                        emitter.onNext(line);
+                    }
+                },
+                BufferedReader::close);
+    }
+}
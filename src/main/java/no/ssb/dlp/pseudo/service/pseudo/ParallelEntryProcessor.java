@@ -0,0 +1,91 @@
+package no.ssb.dlp.pseudo.service.pseudo;
+
+import com.google.common.base.Stopwatch;
+import io.reactivex.Flowable;
+import io.reactivex.Scheduler;
+import lombok.extern.slf4j.Slf4j;
+import no.ssb.dlp.pseudo.core.StreamProcessor;
+import no.ssb.dlp.pseudo.core.map.RecordMapSerializer;
+import no.ssb.dlp.pseudo.service.pseudo.metadata.PseudoMetadataProcessor;
+
+import java.io.InputStream;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Processes the files of an archive (e.g. the partitions of a dataset) as independent units of work, with at most
+ * <code>workers</code> files in flight on the scheduler.
+ *
+ * <p>Each file is processed by a stream processor of its own. While the records of a file are serialized, the files
+ * that follow it are processed ahead, but at most <code>prefetch</code> records of each file are held in memory until
+ * the preceding files have been serialized. Records are serialized in sequence, in the order of the files, so the
+ * result is the same as when the files are processed as one stream. The number of records and the processing time of
+ * each file is added to the metrics.</p>
+ */
+@Slf4j
+public class ParallelEntryProcessor {
+
+    /**
+     * A file of an archive.
+     *
+     * @param name        the name of the file, as reported in the metrics
+     * @param inputStream opens the contents of the file. Only called once the file is about to be processed, and the
+     *                    stream is closed when the file is done, failed or cancelled
+     */
+    public record Entry(String name, Callable<InputStream> inputStream) {
+    }
+
+    private final Supplier<StreamProcessor> streamProcessors;
+    private final PseudoMetadataProcessor metadataProcessor;
+    private final Scheduler scheduler;
+    private final int workers;
+    private final int prefetch;
+
+    /**
+     * @param streamProcessors  supplies a new stream processor for each file
+     * @param metadataProcessor collects the metrics of each file
+     * @param scheduler         the scheduler to process files on
+     * @param workers           max number of files in flight
+     * @param prefetch          max number of processed records of each file that are held in memory
+     */
+    public ParallelEntryProcessor(Supplier<StreamProcessor> streamProcessors,
+                                  PseudoMetadataProcessor metadataProcessor, Scheduler scheduler, int workers,
+                                  int prefetch) {
+        this.streamProcessors = streamProcessors;
+        this.metadataProcessor = metadataProcessor;
+        this.scheduler = scheduler;
+        this.workers = workers;
+        this.prefetch = prefetch;
+    }
+
+    public <T> Flowable<T> process(List<Entry> entries, RecordMapSerializer<T> serializer) {
+        return Flowable.defer(() -> {
+            final AtomicInteger position = new AtomicInteger();
+            return Flowable.range(0, entries.size())
+                    .concatMapEager(i -> processEntry(i, entries.get(i)), workers, prefetch)
+                    // Serializers are not thread safe, so always serialize in sequence
+                    .map(record -> serializer.serialize(record, position.getAndIncrement()));
+        });
+    }
+
+    private Flowable<Map<String, Object>> processEntry(int index, Entry entry) {
+        return Flowable.defer(() -> {
+            final Stopwatch stopwatch = Stopwatch.createStarted();
+            final AtomicLong records = new AtomicLong();
+            return Flowable.using(entry.inputStream(),
+                            inputStream -> streamProcessors.get().process(inputStream,
+                                    (RecordMapSerializer<Map<String, Object>>) (record, position) -> record),
+                            InputStream::close)
+                    .doOnNext(record -> records.incrementAndGet())
+                    .doOnComplete(() -> {
+                        log.debug("Processed {} records of {} in {}", records.get(), entry.name(),
+                                stopwatch.elapsed());
+                        metadataProcessor.addEntryMetric(index, entry.name(), records.get(), stopwatch.elapsed());
+                    });
+        }).subscribeOn(scheduler);
+    }
+}
@@ -0,0 +1,66 @@
+package no.ssb.dlp.pseudo.service.pseudo;
+
+import io.reactivex.Completable;
+import io.reactivex.Flowable;
+import io.reactivex.Scheduler;
+import lombok.RequiredArgsConstructor;
+import no.ssb.dlp.pseudo.core.StreamProcessor;
+import no.ssb.dlp.pseudo.core.map.RecordMapProcessor;
+import no.ssb.dlp.pseudo.core.map.RecordMapSerializer;
+
+import java.io.InputStream;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A {@link StreamProcessor} that reads records sequentially, but pseudonymizes them in batches on multiple workers.
+ *
+ * <p>Records are read by a stream processor that does not transform any values. Batches of records are then
+ * processed by the {@link RecordMapProcessor} on the given scheduler, with at most <code>workers</code> batches in
+ * flight. The processed records are serialized in their original order.</p>
+ *
+ * <p>If <code>preprocessBatches</code> is set, the preprocessors of the {@link RecordMapProcessor} are applied to each
+ * batch as soon as it has been read, instead of in a separate pass over the whole input. Batches are read ahead while
+ * the preceding batches are being processed, so this allows e.g. SID mapping to look up the identifiers of one batch
+ * (window) at a time, while the previous batch is being processed.</p>
+ */
+@RequiredArgsConstructor
+public class ParallelStreamProcessor implements StreamProcessor {
+
+    /**
+     * Stream processor that applies the record map processor. Used for the (sequential) preprocessing pass.
+     */
+    private final StreamProcessor streamProcessor;
+
+    /**
+     * Stream processor that only reads records, without transforming them.
+     */
+    private final StreamProcessor recordReader;
+
+    private final RecordMapProcessor<?> recordMapProcessor;
+    private final Scheduler scheduler;
+    private final int workers;
+    private final int batchSize;
+    private final boolean preprocessBatches;
+
+    @Override
+    public Completable init(InputStream is) {
+        // Batches are preprocessed while processing, so no separate pass is needed
+        return preprocessBatches ? Completable.complete() : streamProcessor.init(is);
+    }
+
+    @Override
+    public <T> Flowable<T> process(InputStream is, RecordMapSerializer<T> serializer) {
+        final Flowable<PositionedRecord> records = recordReader.process(is, PositionedRecord::new);
+        return Batches.map(records, batchSize, preprocessBatches ? this::preprocessBatch : batch -> {},
+                        r -> new PositionedRecord(recordMapProcessor.process(r.record()), r.position()),
+                        scheduler, workers)
+                .map(r -> serializer.serialize(r.record(), r.position()));
+    }
+
+    private void preprocessBatch(List<PositionedRecord> batch) {
+        batch.forEach(r -> recordMapProcessor.init(r.record()));
+    }
+
+    private record PositionedRecord(Map<String, Object> record, int position) {}
+}
@@ -0,0 +1,364 @@
+package no.ssb.dlp.pseudo.service.pseudo;
+
+import io.reactivex.Flowable;
+import io.reactivex.Scheduler;
+import jakarta.inject.Inject;
+import jakarta.inject.Singleton;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Writes a stream of data as a zip archive with a single entry, optionally encrypted with AES-256.
+ *
+ * <p>The archive is streamed: entry data is written as it is produced, and the sizes and checksum of the entry are
+ * written after the data (in a data descriptor and the central directory). The data is split into blocks that are
+ * deflated independently on the {@link PseudoWorkerPool}, like pigz does. Each block is deflated with the last 32 KiB
+ * of the preceding data as dictionary, and ends on a byte boundary (sync flush), so the compressed blocks can simply be
+ * concatenated. Checksums, encryption and the assembly of the archive are done in sequence.</p>
+ *
+ * <p>The size of the entry is not known when the local header is written, so the local header always has a zip64
+ * extra field, and the data descriptor always holds 8-byte sizes (like Info-ZIP does for streamed input). Zip64
+ * extensions are added to the central directory when needed, so the size of the entry is not limited to 4 GiB.
+ * Older versions of <code>java.util.zip.ZipInputStream</code> ignore the zip64 extra field when reading the data
+ * descriptor, while {@link java.util.zip.ZipFile} reads the central directory and is not affected.</p>
+ */
+@Singleton
+public class ParallelZipWriter {
+
+    static final int BLOCK_SIZE = 128 * 1024;
+    private static final int DICTIONARY_SIZE = 32 * 1024;
+
+    private final Scheduler scheduler;
+    private final int workers;
+
+    @Inject
+    public ParallelZipWriter(PseudoWorkerPool workerPool) {
+        this(workerPool.getScheduler(), workerPool.getWorkers());
+    }
+
+    ParallelZipWriter(Scheduler scheduler, int workers) {
+        this.scheduler = scheduler;
+        this.workers = workers;
+    }
+
+    /**
+     * Zip a stream of data.
+     *
+     * @param entryName the name of the zip entry
+     * @param data      the uncompressed data
+     * @param password  the password to encrypt the entry with, or null if the entry should not be encrypted
+     * @return a flowable of chunks of the zip archive
+     */
+    public Flowable<byte[]> write(String entryName, Flowable<byte[]> data, char[] password) {
+        if (password != null && password.length == 0) {
+            throw new IllegalArgumentException("The password of an encrypted zip entry must not be empty");
+        }
+        return Flowable.defer(() -> {
+            final ZipEntryWriter entry = new ZipEntryWriter(entryName, password);
+            final Flowable<byte[]> compressed = data
+                    .concatMapIterable(entry::append)
+                    .concatWith(Flowable.fromCallable(entry::lastBlock))
+                    .concatMapEager(block -> Flowable.fromCallable(block::deflate).subscribeOn(scheduler), workers, 1)
+                    .map(entry::write);
+            return Flowable.fromCallable(entry::localHeader)
+                    .concatWith(compressed)
+                    .concatWith(Flowable.fromCallable(entry::finish))
+                    .filter(chunk -> chunk.length > 0);
+        });
+    }
+
+    /**
+     * A block of uncompressed data, with the data preceding it as dictionary.
+     */
+    record Block(byte[] data, byte[] dictionary, boolean last) {
+
+        byte[] deflate() {
+            final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+            try {
+                if (dictionary.length > 0) {
+                    deflater.setDictionary(dictionary);
+                }
+                deflater.setInput(data);
+                if (last) {
+                    deflater.finish();
+                }
+                final ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 2 + 64);
+                final byte[] buffer = new byte[64 * 1024];
+                while (true) {
+                    int length = deflater.deflate(buffer, 0, buffer.length,
+                            last ? Deflater.NO_FLUSH : Deflater.SYNC_FLUSH);
+                    out.write(buffer, 0, length);
+                    if (last ? deflater.finished() : length < buffer.length) {
+                        return out.toByteArray();
+                    }
+                }
+            } finally {
+                deflater.end();
+            }
+        }
+    }
+
+    /**
+     * Keeps track of the state of the zip entry, and writes the zip headers. Not thread safe, all methods must be
+     * called in sequence.
+     */
+    static class ZipEntryWriter {
+        private static final long ZIP64_LIMIT = 0xFFFFFFFFL;
+        private static final int FLAG_ENCRYPTED = 1;
+        private static final int FLAG_DATA_DESCRIPTOR = 1 << 3;
+        private static final int FLAG_UTF8 = 1 << 11;
+        private static final int METHOD_DEFLATED = 8;
+        private static final int METHOD_AES = 99;
+
+        private final byte[] name;
+        private final WinZipAesEncryptor encryptor;
+        private final int dosTime;
+        private final int dosDate;
+        private final CRC32 crc = new CRC32();
+        private final ByteArrayOutputStream pending = new ByteArrayOutputStream();
+        private byte[] dictionary = new byte[0];
+        private long size = 0;
+        private long compressedSize = 0;
+        private long offset = 0;
+
+        ZipEntryWriter(String entryName, char[] password) {
+            this.name = entryName.getBytes(StandardCharsets.UTF_8);
+            this.encryptor = password == null ? null : new WinZipAesEncryptor(password);
+            final LocalDateTime now = LocalDateTime.now();
+            this.dosTime = (now.getHour() << 11) | (now.getMinute() << 5) | (now.getSecond() / 2);
+            this.dosDate = ((now.getYear() - 1980) << 9) | (now.getMonthValue() << 5) | now.getDayOfMonth();
+        }
+
+        /**
+         * Add data to the entry.
+         *
+         * @return the next block, if enough data has been added
+         */
+        List<Block> append(byte[] chunk) {
+            pending.writeBytes(chunk);
+            return pending.size() < BLOCK_SIZE ? List.of() : List.of(nextBlock(false));
+        }
+
+        /**
+         * @return the remaining data, which may be empty
+         */
+        Block lastBlock() {
+            return nextBlock(true);
+        }
+
+        private Block nextBlock(boolean last) {
+            final byte[] data = pending.toByteArray();
+            pending.reset();
+            crc.update(data);
+            size += data.length;
+            final Block block = new Block(data, dictionary, last);
+            dictionary = tail(dictionary, data);
+            return block;
+        }
+
+        byte[] localHeader() {
+            // The sizes are not known yet, so they are zero in the zip64 extra field as well
+            final byte[] zip64Extra = buffer(20).putShort((short) 0x0001).putShort((short) 16).putLong(0).putLong(0)
+                    .array();
+            final byte[] extra = concat(zip64Extra, encryptor == null ? new byte[0] : aesExtraField());
+            final ByteBuffer header = buffer(30 + name.length + extra.length)
+                    .putInt(0x04034b50)
+                    .putShort((short) versionNeeded(true))
+                    .putShort((short) flags())
+                    .putShort((short) method())
+                    .putShort((short) dosTime)
+                    .putShort((short) dosDate)
+                    // The checksum and sizes follow the data, in the data descriptor
+                    .putInt(0)
+                    .putInt(0)
+                    .putInt(0)
+                    .putShort((short) name.length)
+                    .putShort((short) extra.length)
+                    .put(name)
+                    .put(extra);
+            if (encryptor == null) {
+                return written(header);
+            }
+            // The encrypted entry data starts with the salt and password verifier
+            final byte[] encryptionHeader = encryptor.header();
+            compressedSize += encryptionHeader.length;
+            offset += encryptionHeader.length;
+            return concat(written(header), encryptionHeader);
+        }
+
+        /**
+         * @param compressed the next deflated block
+         * @return the block as it is written to the archive, i.e. encrypted if a password is used
+         */
+        byte[] write(byte[] compressed) {
+            final byte[] res = encryptor != null ? encryptor.encrypt(compressed) : compressed;
+            compressedSize += res.length;
+            offset += res.length;
+            return res;
+        }
+
+        /**
+         * @return the end of the entry data, the data descriptor and the central directory
+         */
+        byte[] finish() {
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            if (encryptor != null) {
+                byte[] authenticationCode = encryptor.authenticationCode();
+                compressedSize += authenticationCode.length;
+                offset += authenticationCode.length;
+                out.writeBytes(authenticationCode);
+            }
+            out.writeBytes(written(dataDescriptor()));
+            final long centralDirectoryOffset = offset;
+            final byte[] centralDirectory = written(centralDirectoryHeader());
+            out.writeBytes(centralDirectory);
+            if (centralDirectoryOffset >= ZIP64_LIMIT) {
+                final long zip64EndOffset = offset;
+                out.writeBytes(written(zip64End(centralDirectory.length, centralDirectoryOffset)));
+                out.writeBytes(written(buffer(20)
+                        .putInt(0x07064b50)
+                        .putInt(0)
+                        .putLong(zip64EndOffset)
+                        .putInt(1)));
+            }
+            out.writeBytes(written(buffer(22)
+                    .putInt(0x06054b50)
+                    .putShort((short) 0)
+                    .putShort((short) 0)
+                    .putShort((short) 1)
+                    .putShort((short) 1)
+                    .putInt(centralDirectory.length)
+                    .putInt((int) Math.min(centralDirectoryOffset, ZIP64_LIMIT))
+                    .putShort((short) 0)));
+            return out.toByteArray();
+        }
+
+        /**
+         * The local header has a zip64 extra field, so the sizes are always 8 bytes.
+         */
+        private ByteBuffer dataDescriptor() {
+            return buffer(24).putInt(0x08074b50).putInt(crc()).putLong(compressedSize).putLong(size);
+        }
+
+        private ByteBuffer centralDirectoryHeader() {
+            final boolean zip64 = isZip64();
+            final byte[] zip64Extra = zip64
+                    ? buffer(20).putShort((short) 0x0001).putShort((short) 16).putLong(size).putLong(compressedSize)
+                    .array()
+                    : new byte[0];
+            final byte[] extra = concat(zip64Extra, encryptor == null ? new byte[0] : aesExtraField());
+            return buffer(46 + name.length + extra.length)
+                    .putInt(0x02014b50)
+                    .putShort((short) versionNeeded(zip64))
+                    .putShort((short) versionNeeded(zip64))
+                    .putShort((short) flags())
+                    .putShort((short) method())
+                    .putShort((short) dosTime)
+                    .putShort((short) dosDate)
+                    .putInt(crc())
+                    .putInt((int) (zip64 ? ZIP64_LIMIT : compressedSize))
+                    .putInt((int) (zip64 ? ZIP64_LIMIT : size))
+                    .putShort((short) name.length)
+                    .putShort((short) extra.length)
+                    // Comment length, disk number, internal and external attributes
+                    .putShort((short) 0)
+                    .putShort((short) 0)
+                    .putShort((short) 0)
+                    .putInt(0)
+                    // The offset of the local header
+                    .putInt(0)
+                    .put(name)
+                    .put(extra);
+        }
+
+        private static ByteBuffer zip64End(long centralDirectoryLength, long centralDirectoryOffset) {
+            return buffer(56)
+                    .putInt(0x06064b50)
+                    .putLong(44)
+                    .putShort((short) 45)
+                    .putShort((short) 45)
+                    .putInt(0)
+                    .putInt(0)
+                    .putLong(1)
+                    .putLong(1)
+                    .putLong(centralDirectoryLength)
+                    .putLong(centralDirectoryOffset);
+        }
+
+        /**
+         * The AES extra field (AE-2), with the actual compression method.
+         */
+        private static byte[] aesExtraField() {
+            return buffer(11)
+                    .putShort((short) 0x9901)
+                    .putShort((short) 7)
+                    .putShort((short) 2)
+                    .put((byte) 'A')
+                    .put((byte) 'E')
+                    .put((byte) 3)
+                    .putShort((short) METHOD_DEFLATED)
+                    .array();
+        }
+
+        /**
+         * Sizes are stored in both fields of the zip64 extra field if any of them is too large, like the JDK does.
+         */
+        private boolean isZip64() {
+            return size >= ZIP64_LIMIT || compressedSize >= ZIP64_LIMIT;
+        }
+
+        private int versionNeeded(boolean zip64) {
+            return encryptor != null ? 51 : zip64 ? 45 : 20;
+        }
+
+        private int flags() {
+            return FLAG_DATA_DESCRIPTOR | FLAG_UTF8 | (encryptor != null ? FLAG_ENCRYPTED : 0);
+        }
+
+        private int method() {
+            return encryptor != null ? METHOD_AES : METHOD_DEFLATED;
+        }
+
+        /**
+         * The checksum is left out for AES encrypted entries (AE-2), since the authentication code is used instead.
+         */
+        private int crc() {
+            return encryptor != null ? 0 : (int) crc.getValue();
+        }
+
+        private byte[] written(ByteBuffer buffer) {
+            offset += buffer.position();
+            return Arrays.copyOf(buffer.array(), buffer.position());
+        }
+
+        private static ByteBuffer buffer(int capacity) {
+            return ByteBuffer.allocate(capacity).order(ByteOrder.LITTLE_ENDIAN);
+        }
+
+        private static byte[] concat(byte[] a, byte[] b) {
+            final byte[] res = Arrays.copyOf(a, a.length + b.length);
+            System.arraycopy(b, 0, res, a.length, b.length);
+            return res;
+        }
+
+        /**
+         * @return the last 32 KiB of the preceding data and the given data
+         */
+        private static byte[] tail(byte[] preceding, byte[] data) {
+            if (data.length >= DICTIONARY_SIZE) {
+                return Arrays.copyOfRange(data, data.length - DICTIONARY_SIZE, data.length);
+            }
+            final byte[] res = concat(preceding, data);
+            return res.length > DICTIONARY_SIZE ? Arrays.copyOfRange(res, res.length - DICTIONARY_SIZE, res.length)
+                    : res;
+        }
+    }
+}
@@ -0,0 +1,472 @@
+package no.ssb.dlp.pseudo.service.pseudo;
+
+import io.reactivex.Completable;
+import io.reactivex.Flowable;
+import lombok.extern.slf4j.Slf4j;
+import no.ssb.dlp.pseudo.core.StreamProcessor;
+import no.ssb.dlp.pseudo.core.field.FieldDescriptor;
+import no.ssb.dlp.pseudo.core.map.RecordMapProcessor;
+import no.ssb.dlp.pseudo.core.map.RecordMapSerializer;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.parquet.column.ColumnDescriptor;
+import org.apache.parquet.column.ColumnReadStore;
+import org.apache.parquet.column.ColumnReader;
+import org.apache.parquet.column.ColumnWriteStore;
+import org.apache.parquet.column.ColumnWriter;
+import org.apache.parquet.column.ParquetProperties;
+import org.apache.parquet.column.impl.ColumnReadStoreImpl;
+import org.apache.parquet.column.page.PageReadStore;
+import org.apache.parquet.compression.CompressionCodecFactory.BytesInputCompressor;
+import org.apache.parquet.example.data.Group;
+import org.apache.parquet.example.data.simple.convert.GroupRecordConverter;
+import org.apache.parquet.hadoop.CodecFactory;
+import org.apache.parquet.hadoop.ColumnChunkPageWriteStore;
+import org.apache.parquet.hadoop.ParquetFileReader;
+import org.apache.parquet.hadoop.ParquetFileWriter;
+import org.apache.parquet.hadoop.ParquetWriter;
+import org.apache.parquet.hadoop.metadata.BlockMetaData;
+import org.apache.parquet.hadoop.metadata.ColumnChunkMetaData;
+import org.apache.parquet.hadoop.metadata.ColumnPath;
+import org.apache.parquet.hadoop.metadata.FileMetaData;
+import org.apache.parquet.io.ColumnIOFactory;
+import org.apache.parquet.io.InputFile;
+import org.apache.parquet.io.LocalInputFile;
+import org.apache.parquet.io.MessageColumnIO;
+import org.apache.parquet.io.OutputFile;
+import org.apache.parquet.io.RecordReader;
+import org.apache.parquet.io.SeekableInputStream;
+import org.apache.parquet.io.api.Binary;
+import org.apache.parquet.schema.GroupType;
+import org.apache.parquet.schema.LogicalTypeAnnotation;
+import org.apache.parquet.schema.MessageType;
+import org.apache.parquet.schema.PrimitiveType;
+import org.apache.parquet.schema.Type;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * A {@link StreamProcessor} for Parquet files.
+ *
+ * <p>The schema and row group offsets of a Parquet file are stored in a footer at the end of the file, so a Parquet
+ * file can not be read as a stream. Input streams are therefore stored in a temporary file before they are read. Use
+ * the methods that take an {@link InputFile} to read a file that is already on disk.</p>
+ *
+ * <p>Files are read one row group at a time. {@link #process(InputFile, RecordMapSerializer)} converts each row to a
+ * record, so that it can be serialized as e.g. JSON or CSV. {@link #rewrite(InputFile, OutputFile, Supplier)} writes
+ * Parquet back. It only decodes the columns that are matched by a rule, and copies the column chunks of all other
+ * columns as is.</p>
+ *
+ * <p>Fields are addressed by their path in the schema, e.g. <code>/person/fnr</code>. The intermediate levels of
+ * lists (<code>list</code> and <code>element</code>) are not part of the path.</p>
+ */
+@Slf4j
+public class ParquetStreamProcessor implements StreamProcessor {
+
+    /**
+     * Key of the Parquet footer metadata entry that holds the pseudo metadata of a rewritten file.
+     */
+    public static final String METADATA_KEY = "no.ssb.dlp.pseudo.metadata";
+
+    private static final ParquetProperties PROPERTIES = ParquetProperties.builder().build();
+
+    private final RecordMapProcessor<?> recordMapProcessor;
+
+    public ParquetStreamProcessor(RecordMapProcessor<?> recordMapProcessor) {
+        this.recordMapProcessor = recordMapProcessor;
+    }
+
+    @Override
+    public Completable init(InputStream is) {
+        return Completable.using(() -> stage(is),
+                file -> init(new LocalInputFile(file)),
+                Files::deleteIfExists);
+    }
+
+    @Override
+    public <T> Flowable<T> process(InputStream is, RecordMapSerializer<T> serializer) {
+        return Flowable.using(() -> stage(is),
+                file -> process(new LocalInputFile(file), serializer),
+                Files::deleteIfExists);
+    }
+
+    /**
+     * Apply the preprocessors of the record processor to every row of a Parquet file.
+     */
+    public Completable init(InputFile inputFile) {
+        if (!recordMapProcessor.hasPreprocessors()) {
+            return Completable.complete();
+        }
+        return Completable.fromPublisher(rows(inputFile)
+                .doOnNext(row -> recordMapProcessor.init(recordOf(row))));
+    }
+
+    /**
+     * Process every row of a Parquet file.
+     *
+     * @param inputFile  the Parquet file
+     * @param serializer serializes the processed rows
+     * @return a Flowable of the serialized rows
+     */
+    public <T> Flowable<T> process(InputFile inputFile, RecordMapSerializer<T> serializer) {
+        return Flowable.defer(() -> {
+            final AtomicInteger position = new AtomicInteger();
+            return rows(inputFile).map(row -> serializer.serialize(
+                    recordMapProcessor.process(recordOf(row)), position.getAndIncrement()));
+        });
+    }
+
+    /**
+     * Process a Parquet file into a new Parquet file.
+     *
+     * <p>Only the values of columns that are matched by a pseudo rule are decoded and processed. The column chunks of
+     * all other columns are copied to the output file as is, without being decompressed. The schema of the file is
+     * kept, so matched columns must be string columns.</p>
+     *
+     * @param inputFile      the Parquet file to process
+     * @param outputFile     the Parquet file to write
+     * @param footerMetadata supplies the pseudo metadata to store in the footer of the output file. Called once all
+     *                       rows have been processed
+     * @throws IllegalArgumentException if a pseudo rule matches a column that is not a string column
+     */
+    public void rewrite(InputFile inputFile, OutputFile outputFile, Supplier<String> footerMetadata)
+            throws IOException {
+        rewrite(inputFile, outputFile, footerMetadata, new LongAdder());
+    }
+
+    /**
+     * Like {@link #rewrite(InputFile, OutputFile, Supplier)}, but counts the rows as they are written.
+     *
+     * @param processedRows incremented by the row count of each row group written to the output file
+     */
+    public void rewrite(InputFile inputFile, OutputFile outputFile, Supplier<String> footerMetadata,
+                        LongAdder processedRows) throws IOException {
+        if (!(recordMapProcessor instanceof PseudoRecordMapProcessor processor)) {
+            throw new IllegalStateException("Rewriting Parquet files requires a " + PseudoRecordMapProcessor.class);
+        }
+        try (ParquetFileReader reader = ParquetFileReader.open(inputFile);
+             SeekableInputStream chunks = inputFile.newStream()) {
+            final FileMetaData fileMetaData = reader.getFooter().getFileMetaData();
+            final MessageType schema = fileMetaData.getSchema();
+            final Map<ColumnPath, FieldDescriptor> matchedColumns = matchedColumns(schema, processor);
+            log.info("Parquet columns matched by pseudo rules: {}", matchedColumns.values());
+
+            if (processor.hasPreprocessors() && !matchedColumns.isEmpty()) {
+                preprocessColumns(inputFile, schema, fileMetaData.getCreatedBy(), matchedColumns, processor);
+            }
+
+            final MessageType projection = projectionOf(schema, matchedColumns.keySet());
+            final ParquetFileWriter writer = new ParquetFileWriter(outputFile, schema, ParquetFileWriter.Mode.OVERWRITE,
+                    ParquetWriter.DEFAULT_BLOCK_SIZE, ParquetWriter.MAX_PADDING_SIZE_DEFAULT,
+                    PROPERTIES.getColumnIndexTruncateLength(), PROPERTIES.getStatisticsTruncateLength(),
+                    PROPERTIES.getPageWriteChecksumEnabled());
+            final CodecFactory codecs = new CodecFactory(new Configuration(), PROPERTIES.getPageSizeThreshold());
+            try (ParquetFileReader values = matchedColumns.isEmpty() ? null : openColumns(inputFile, projection)) {
+                writer.start();
+                for (BlockMetaData block : reader.getRowGroups()) {
+                    if (block.getRowCount() == 0) {
+                        // Empty row groups are skipped when reading as well
+                        continue;
+                    }
+                    final ColumnReadStore columns = values == null ? null
+                            : columnsOf(values.readNextRowGroup(), projection, fileMetaData.getCreatedBy());
+                    writer.startBlock(block.getRowCount());
+                    for (ColumnChunkMetaData chunk : block.getColumns()) {
+                        final ColumnDescriptor column = schema.getColumnDescription(chunk.getPath().toArray());
+                        final FieldDescriptor field = matchedColumns.get(chunk.getPath());
+                        if (field == null) {
+                            writer.appendColumnChunk(column, chunks, chunk, reader.readBloomFilter(chunk),
+                                    reader.readColumnIndex(chunk), reader.readOffsetIndex(chunk));
+                        } else {
+                            rewriteColumn(schema, columns.getColumnReader(column), column, field, processor,
+                                    codecs.getCompressor(chunk.getCodec()), writer);
+                        }
+                    }
+                    writer.endBlock();
+                    processedRows.add(block.getRowCount());
+                }
+                final Map<String, String> keyValueMetadata = new HashMap<>(fileMetaData.getKeyValueMetaData());
+                keyValueMetadata.put(METADATA_KEY, footerMetadata.get());
+                writer.end(keyValueMetadata);
+            } finally {
+                codecs.release();
+            }
+        }
+    }
+
+    /**
+     * Process the values of a matched column chunk, and write them as a new column chunk of the current row group.
+     */
+    private static void rewriteColumn(MessageType schema, ColumnReader values, ColumnDescriptor column,
+                                      FieldDescriptor field, PseudoRecordMapProcessor processor,
+                                      BytesInputCompressor compressor, ParquetFileWriter writer) throws IOException {
+        final MessageType columnSchema = projectionOf(schema, Set.of(ColumnPath.get(column.getPath())));
+        final ColumnChunkPageWriteStore pages = new ColumnChunkPageWriteStore(compressor, columnSchema,
+                PROPERTIES.getAllocator(), PROPERTIES.getColumnIndexTruncateLength());
+        final ColumnWriteStore columns = PROPERTIES.newColumnWriteStore(columnSchema, pages);
+        final ColumnWriter columnWriter = columns.getColumnWriter(column);
+        final int maxDefinitionLevel = column.getMaxDefinitionLevel();
+        final long valueCount = values.getTotalValueCount();
+        for (long i = 0; i < valueCount; i++) {
+            final int repetitionLevel = values.getCurrentRepetitionLevel();
+            final int definitionLevel = values.getCurrentDefinitionLevel();
+            if (definitionLevel < maxDefinitionLevel) {
+                columnWriter.writeNull(repetitionLevel, definitionLevel);
+            } else {
+                final String value = processor.processValue(field, values.getBinary().toStringUsingUTF8());
+                if (value != null) {
+                    columnWriter.write(Binary.fromString(value), repetitionLevel, definitionLevel);
+                } else if (column.getPrimitiveType().isRepetition(Type.Repetition.OPTIONAL)) {
+                    columnWriter.writeNull(repetitionLevel, definitionLevel - 1);
+                } else {
+                    throw new IllegalArgumentException("Parquet column " + field.getPath()
+                            + " is not optional, and can not hold the null value of the pseudo function");
+                }
+            }
+            values.consume();
+            if (i + 1 == valueCount || values.getCurrentRepetitionLevel() == 0) {
+                columns.endRecord();
+            }
+        }
+        columns.flush();
+        pages.flushToFileWriter(writer);
+        columns.close();
+    }
+
+    /**
+     * Apply the preprocessors to the matched columns only. The other column chunks are not read at all.
+     */
+    private static void preprocessColumns(InputFile inputFile, MessageType schema, String createdBy,
+                                          Map<ColumnPath, FieldDescriptor> matchedColumns,
+                                          PseudoRecordMapProcessor processor) throws IOException {
+        final MessageType projection = projectionOf(schema, matchedColumns.keySet());
+        try (ParquetFileReader reader = openColumns(inputFile, projection)) {
+            for (PageReadStore pages = reader.readNextRowGroup(); pages != null; pages = reader.readNextRowGroup()) {
+                final ColumnReadStore columns = columnsOf(pages, projection, createdBy);
+                for (ColumnDescriptor column : projection.getColumns()) {
+                    final FieldDescriptor field = matchedColumns.get(ColumnPath.get(column.getPath()));
+                    final ColumnReader values = columns.getColumnReader(column);
+                    for (long i = 0; i < values.getTotalValueCount(); i++) {
+                        if (values.getCurrentDefinitionLevel() == column.getMaxDefinitionLevel()) {
+                            processor.initValue(field, values.getBinary().toStringUsingUTF8());
+                        }
+                        values.consume();
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the columns that are matched by a pseudo rule, in schema order
+     * @throws IllegalArgumentException if a matched column is not a string column
+     */
+    private static Map<ColumnPath, FieldDescriptor> matchedColumns(MessageType schema,
+                                                                   PseudoRecordMapProcessor processor) {
+        final Map<ColumnPath, FieldDescriptor> matchedColumns = new LinkedHashMap<>();
+        for (ColumnDescriptor column : schema.getColumns()) {
+            final FieldDescriptor field = new FieldDescriptor(fieldPathOf(schema, column.getPath()));
+            if (!processor.matches(field)) {
+                continue;
+            }
+            final PrimitiveType type = column.getPrimitiveType();
+            if (type.getPrimitiveTypeName() != PrimitiveType.PrimitiveTypeName.BINARY
+                    || !(type.getLogicalTypeAnnotation() instanceof LogicalTypeAnnotation.StringLogicalTypeAnnotation)) {
+                throw new IllegalArgumentException("Parquet column " + field.getPath() + " of type " + type
+                        + " is matched by a pseudo rule, but only string columns can be pseudonymized");
+            }
+            matchedColumns.put(ColumnPath.get(column.getPath()), field);
+        }
+        return matchedColumns;
+    }
+
+    /**
+     * @return the field path of a column, without the intermediate levels of lists
+     */
+    private static String fieldPathOf(MessageType schema, String[] columnPath) {
+        GroupType type = schema;
+        boolean inList = false;
+        String path = "";
+        for (String name : columnPath) {
+            final Type field = type.getType(name);
+            path = pathOf(path, type, inList, field);
+            if (!field.isPrimitive()) {
+                inList = isList(type);
+                type = field.asGroupType();
+            }
+        }
+        return path;
+    }
+
+    /**
+     * @return the schema with only the fields that lead to the given columns
+     */
+    private static MessageType projectionOf(MessageType schema, Set<ColumnPath> columns) {
+        return new MessageType(schema.getName(), projectedFields(schema, List.of(), columns));
+    }
+
+    private static List<Type> projectedFields(GroupType type, List<String> path, Set<ColumnPath> columns) {
+        final List<Type> fields = new ArrayList<>();
+        for (Type field : type.getFields()) {
+            final List<String> fieldPath = new ArrayList<>(path);
+            fieldPath.add(field.getName());
+            if (field.isPrimitive()) {
+                if (columns.contains(ColumnPath.get(fieldPath.toArray(String[]::new)))) {
+                    fields.add(field);
+                }
+            } else {
+                List<Type> children = projectedFields(field.asGroupType(), fieldPath, columns);
+                if (!children.isEmpty()) {
+                    fields.add(field.asGroupType().withNewFields(children));
+                }
+            }
+        }
+        return fields;
+    }
+
+    private static ParquetFileReader openColumns(InputFile inputFile, MessageType projection) throws IOException {
+        final ParquetFileReader reader = ParquetFileReader.open(inputFile);
+        reader.setRequestedSchema(projection);
+        return reader;
+    }
+
+    private static ColumnReadStore columnsOf(PageReadStore pages, MessageType projection, String createdBy) {
+        return new ColumnReadStoreImpl(pages, new GroupRecordConverter(projection).getRootConverter(), projection,
+                createdBy);
+    }
+
+    /**
+     * Convert a row (or a group within a row) to a record map. Repeated fields and lists become lists.
+     */
+    private static Object toRecord(Group group, GroupType type, boolean inList) {
+        if (!inList && isList(type) && type.getFieldCount() == 1 && !type.getType(0).isPrimitive()) {
+            // Standard list structure: <name> (LIST) { repeated group list { element } }
+            final GroupType repeatedType = type.getType(0).asGroupType();
+            final List<Object> elements = new ArrayList<>();
+            for (int j = 0; j < group.getFieldRepetitionCount(0); j++) {
+                Map<?, ?> wrapper = (Map<?, ?>) toRecord(group.getGroup(0, j), repeatedType, true);
+                elements.add(wrapper.size() == 1 ? wrapper.values().iterator().next() : wrapper);
+            }
+            return elements;
+        }
+        final Map<String, Object> record = new LinkedHashMap<>();
+        for (int i = 0; i < type.getFieldCount(); i++) {
+            final Type field = type.getType(i);
+            final int count = group.getFieldRepetitionCount(i);
+            if (field.isRepetition(Type.Repetition.REPEATED)) {
+                final List<Object> values = new ArrayList<>(count);
+                for (int j = 0; j < count; j++) {
+                    values.add(valueOf(group, i, j, field));
+                }
+                record.put(field.getName(), values);
+            } else {
+                record.put(field.getName(), count == 0 ? null : valueOf(group, i, 0, field));
+            }
+        }
+        return record;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> recordOf(Group row) {
+        return (Map<String, Object>) toRecord(row, row.getType(), false);
+    }
+
+    private static Object valueOf(Group group, int field, int index, Type type) {
+        if (!type.isPrimitive()) {
+            return toRecord(group.getGroup(field, index), type.asGroupType(), false);
+        }
+        return switch (type.asPrimitiveType().getPrimitiveTypeName()) {
+            case INT32 -> group.getInteger(field, index);
+            case INT64 -> group.getLong(field, index);
+            case BOOLEAN -> group.getBoolean(field, index);
+            case FLOAT -> group.getFloat(field, index);
+            case DOUBLE -> group.getDouble(field, index);
+            case BINARY, FIXED_LEN_BYTE_ARRAY, INT96 -> group.getValueToString(field, index);
+        };
+    }
+
+    private static String pathOf(String parentPath, GroupType parent, boolean parentInList, Type field) {
+        // Skip the intermediate levels of lists, so that list elements have the path of the list
+        if (isList(parent) || parentInList) {
+            return parentPath;
+        }
+        return parentPath + "/" + field.getName();
+    }
+
+    private static boolean isList(GroupType type) {
+        return type.getLogicalTypeAnnotation() instanceof LogicalTypeAnnotation.ListLogicalTypeAnnotation;
+    }
+
+    private static Flowable<Group> rows(InputFile inputFile) {
+        return Flowable.generate(() -> {
+                    ParquetFileReader reader = ParquetFileReader.open(inputFile);
+                    return new RowCursor(reader, reader.getFooter().getFileMetaData().getSchema());
+                },
+                (rows, emitter) -> {
+                    Group row = rows.next();
+                    if (row == null) {
+                        emitter.onComplete();
+                    } else {
+                        emitter.onNext(row);
+                    }
+                },
+                RowCursor::close);
+    }
+
+    private static Path stage(InputStream is) throws IOException {
+        Path file = Files.createTempFile("pseudo-", ".parquet");
+        try (is) {
+            Files.copy(is, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+        return file;
+    }
+
+    /**
+     * Reads the rows of a Parquet file, one row group at a time.
+     */
+    private static final class RowCursor {
+        private final ParquetFileReader reader;
+        private final MessageType schema;
+        private final MessageColumnIO columnIO;
+        private RecordReader<Group> rowGroup;
+        private long remainingRows = 0;
+
+        private RowCursor(ParquetFileReader reader, MessageType schema) {
+            this.reader = reader;
+            this.schema = schema;
+            this.columnIO = new ColumnIOFactory().getColumnIO(schema);
+        }
+
+        /**
+         * @return the next row, or null if there are no more rows
+         */
+        private Group next() throws IOException {
+            while (remainingRows == 0) {
+                PageReadStore pages = reader.readNextRowGroup();
+                if (pages == null) {
+                    return null;
+                }
+                remainingRows = pages.getRowCount();
+                rowGroup = columnIO.getRecordReader(pages, new GroupRecordConverter(schema));
+            }
+            remainingRows--;
+            return rowGroup.read();
+        }
+
+        private void close() throws IOException {
+            reader.close();
+        }
+    }
+}
@@ -0,0 +1,298 @@
+package no.ssb.dlp.pseudo.service.pseudo;
+
+import com.google.common.base.Stopwatch;
+import io.reactivex.Flowable;
+import lombok.extern.slf4j.Slf4j;
+import no.ssb.dlp.pseudo.core.PseudoOperation;
+import no.ssb.dlp.pseudo.core.field.FieldDescriptor;
+import no.ssb.dlp.pseudo.service.pseudo.metadata.PseudoMetadataProcessor;
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.memory.RootAllocator;
+import org.apache.arrow.vector.FieldVector;
+import org.apache.arrow.vector.LargeVarCharVector;
+import org.apache.arrow.vector.VarCharVector;
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.apache.arrow.vector.ipc.ArrowStreamReader;
+import org.apache.arrow.vector.ipc.ArrowStreamWriter;
+import org.apache.arrow.vector.types.pojo.ArrowType;
+import org.apache.arrow.vector.types.pojo.Field;
+import org.apache.arrow.vector.types.pojo.FieldType;
+import org.apache.arrow.vector.types.pojo.Schema;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Processes columns of data that are streamed in the Apache Arrow IPC streaming format.
+ *
+ * <p>The pseudo config of the columns is given as a JSON string in the custom metadata of the Arrow schema, with the
+ * key {@link #REQUEST_METADATA_KEY}. The JSON is the same as for the corresponding JSON fields request, but without
+ * values. Each field of the request refers to a string (<code>utf8</code> or <code>large_utf8</code>) column by name.
+ * Columns that are not part of the request are passed through as they are.</p>
+ *
+ * <p>The response is an Arrow IPC stream with the same schema as the request. It is followed by a second Arrow IPC
+ * stream with a single <code>metadata</code> column and a single row, holding a JSON object with the
+ * <code>datadoc_metadata</code>, <code>metrics</code> and <code>logs</code>. E.g. with pyarrow, the second stream is
+ * read by opening a new stream reader on the response once the first one is exhausted.</p>
+ *
+ * <p>Record batches are read, processed and written one at a time, without converting values to or from JSON.</p>
+ */
+@Slf4j
+public class PseudoArrowStream {
+
+    /**
+     * Key of the Arrow schema metadata entry that holds the request.
+     */
+    public static final String REQUEST_METADATA_KEY = "no.ssb.dlp.pseudo.request";
+    static final String METADATA_COLUMN = "metadata";
+
+    private static final BufferAllocator ROOT_ALLOCATOR = new RootAllocator();
+
+    private PseudoArrowStream() {}
+
+    /**
+     * The pseudo config of a column.
+     *
+     * @param field       the field (name and pseudo config) of the column
+     * @param targetField the field with the target pseudo config if repseudonymizing, otherwise null
+     */
+    public record Column(PseudoField field, PseudoField targetField) {}
+
+    /**
+     * Creates a Flowable that processes the columns of an Arrow IPC stream.
+     *
+     * @param in                     The Arrow IPC stream. Read on the thread that subscribes.
+     * @param requestParser          Parses the request in the schema metadata into columns.
+     * @param pseudoConfigSplitter   The PseudoConfigSplitter instance to use for splitting pseudo configurations.
+     * @param recordProcessorFactory The RecordMapProcessorFactory instance to use for creating record processors.
+     * @param pseudoOperation        The operation to apply to the columns.
+     * @param correlationId          The correlation id of the request.
+     * @return A Flowable of the Arrow IPC response, one chunk per record batch.
+     */
+    public static Flowable<byte[]> process(InputStream in,
+                                           Function<String, List<Column>> requestParser,
+                                           PseudoConfigSplitter pseudoConfigSplitter,
+                                           RecordMapProcessorFactory recordProcessorFactory,
+                                           PseudoOperation pseudoOperation,
+                                           String correlationId) {
+        return Flowable.generate(
+                () -> new BatchProcessor(in, requestParser, pseudoConfigSplitter, recordProcessorFactory,
+                        pseudoOperation, correlationId),
+                (processor, emitter) -> {
+                    byte[] chunk = processor.next();
+                    if (chunk == null) {
+                        emitter.onComplete();
+                    } else {
+                        emitter.onNext(chunk);
+                    }
+                },
+                BatchProcessor::close);
+    }
+
+    /**
+     * Reads, processes and writes one record batch at a time.
+     */
+    private static class BatchProcessor {
+        private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        private final BufferAllocator allocator;
+        private final ArrowStreamReader reader;
+        private final PseudoOperation pseudoOperation;
+        private final PseudoMetadataProcessor metadataProcessor;
+        private final Stopwatch stopwatch = Stopwatch.createStarted();
+        private final Map<Integer, ProcessedColumn> processedColumns = new HashMap<>();
+        private VectorSchemaRoot target;
+        private ArrowStreamWriter writer;
+        private long rowCount = 0;
+        private boolean done = false;
+
+        BatchProcessor(InputStream in, Function<String, List<Column>> requestParser,
+                       PseudoConfigSplitter pseudoConfigSplitter, RecordMapProcessorFactory recordProcessorFactory,
+                       PseudoOperation pseudoOperation, String correlationId) throws IOException {
+            this.allocator = ROOT_ALLOCATOR.newChildAllocator("pseudo-" + correlationId, 0, Long.MAX_VALUE);
+            this.reader = new ArrowStreamReader(in, allocator);
+            this.pseudoOperation = pseudoOperation;
+            this.metadataProcessor = new PseudoMetadataProcessor(correlationId);
+            try {
+                init(requestParser, pseudoConfigSplitter, recordProcessorFactory);
+            } catch (RuntimeException | IOException e) {
+                close();
+                throw e;
+            }
+        }
+
+        private void init(Function<String, List<Column>> requestParser, PseudoConfigSplitter pseudoConfigSplitter,
+                          RecordMapProcessorFactory recordProcessorFactory) throws IOException {
+            final Schema schema = reader.getVectorSchemaRoot().getSchema();
+            final String request = schema.getCustomMetadata().get(REQUEST_METADATA_KEY);
+            if (request == null) {
+                throw new IllegalArgumentException(String.format("Missing schema metadata '%s'",
+                        REQUEST_METADATA_KEY));
+            }
+            for (Column column : requestParser.apply(request)) {
+                final String name = column.field().getName();
+                final int index = indexOf(schema, name);
+                if (!isString(schema.getFields().get(index).getType())) {
+                    throw new IllegalArgumentException(String.format("Column '%s' is not a string column", name));
+                }
+                if (processedColumns.put(index, new ProcessedColumn(column.field(),
+                        column.field().fieldDescriptor(),
+                        PseudoFields.newRecordMapProcessor(column.field(), column.targetField(),
+                                pseudoConfigSplitter, recordProcessorFactory, pseudoOperation,
+                                metadataProcessor))) != null) {
+                    throw new IllegalArgumentException(String.format("Duplicate field name '%s'", name));
+                }
+            }
+            // The request (with keysets) is not echoed back
+            target = VectorSchemaRoot.create(new Schema(schema.getFields()), allocator);
+            writer = new ArrowStreamWriter(target, null, out);
+            writer.start();
+        }
+
+        /**
+         * @return the next chunk of the response, or null when the response is complete
+         */
+        byte[] next() throws IOException {
+            if (done) {
+                return null;
+            }
+            try {
+                if (reader.loadNextBatch()) {
+                    processBatch(reader.getVectorSchemaRoot());
+                    writer.writeBatch();
+                } else {
+                    writer.end();
+                    log.info("{} of {} streamed rows took {}", pseudoOperation, rowCount, stopwatch.stop().elapsed());
+                    // Signal the metadataProcessor to stop collecting metadata
+                    metadataProcessor.onCompleteAll();
+                    writeMetadata();
+                    done = true;
+                }
+            } catch (RuntimeException | IOException e) {
+                log.error("Response failed", e);
+                metadataProcessor.onErrorAll(e);
+                throw e;
+            }
+            return drain();
+        }
+
+        private void processBatch(VectorSchemaRoot source) {
+            final int batchRows = source.getRowCount();
+            rowCount += batchRows;
+            target.clear();
+            for (int i = 0; i < source.getFieldVectors().size(); i++) {
+                final FieldVector sourceVector = source.getVector(i);
+                final FieldVector targetVector = target.getVector(i);
+                final ProcessedColumn column = processedColumns.get(i);
+                if (column == null) {
+                    // Not processed, so hand over the buffers without copying
+                    sourceVector.makeTransferPair(targetVector).transfer();
+                    continue;
+                }
+                final List<String> values = new ArrayList<>(batchRows);
+                for (int row = 0; row < batchRows; row++) {
+                    values.add(getString(sourceVector, row));
+                }
+                // Preprocessing (such as SID lookups) is done per record batch
+                column.field().getPreprocessor(values, column.recordMapProcessor()).blockingAwait();
+                targetVector.setInitialCapacity(batchRows);
+                targetVector.allocateNew();
+                for (int row = 0; row < batchRows; row++) {
+                    setString(targetVector, row, PseudoField.transformValue(column.fieldDescriptor(),
+                            values.get(row), column.recordMapProcessor()));
+                }
+                targetVector.setValueCount(batchRows);
+            }
+            target.setRowCount(batchRows);
+        }
+
+        private void writeMetadata() throws IOException {
+            final String metadata = String.join("", PseudoResponseSerializer.serializeMetadataObject(
+                    Flowable.fromPublisher(metadataProcessor.getMetadata()),
+                    Flowable.fromPublisher(metadataProcessor.getLogs()),
+                    Flowable.fromPublisher(metadataProcessor.getMetrics())).toList().blockingGet());
+            final Schema schema = new Schema(List.of(new Field(METADATA_COLUMN,
+                    FieldType.notNullable(ArrowType.Utf8.INSTANCE), null)));
+            try (VectorSchemaRoot root = VectorSchemaRoot.create(schema, allocator);
+                 ArrowStreamWriter metadataWriter = new ArrowStreamWriter(root, null, out)) {
+                VarCharVector vector = (VarCharVector) root.getVector(METADATA_COLUMN);
+                vector.allocateNew();
+                vector.setSafe(0, metadata.getBytes(StandardCharsets.UTF_8));
+                vector.setValueCount(1);
+                root.setRowCount(1);
+                metadataWriter.start();
+                metadataWriter.writeBatch();
+                metadataWriter.end();
+            }
+        }
+
+        private byte[] drain() {
+            byte[] chunk = out.toByteArray();
+            out.reset();
+            return chunk;
+        }
+
+        void close() {
+            try {
+                if (target != null) {
+                    target.close();
+                }
+                reader.close();
+            } catch (IOException e) {
+                log.warn("Error closing Arrow stream", e);
+            } finally {
+                allocator.close();
+            }
+        }
+    }
+
+    private record ProcessedColumn(PseudoField field, FieldDescriptor fieldDescriptor,
+                                   PseudoRecordMapProcessor recordMapProcessor) {}
+
+    private static int indexOf(Schema schema, String name) {
+        final List<Field> fields = schema.getFields();
+        for (int i = 0; i < fields.size(); i++) {
+            if (fields.get(i).getName().equals(name)) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException(String.format("No column named '%s'", name));
+    }
+
+    private static boolean isString(ArrowType type) {
+        return type instanceof ArrowType.Utf8 || type instanceof ArrowType.LargeUtf8;
+    }
+
+    private static String getString(FieldVector vector, int index) {
+        if (vector.isNull(index)) {
+            return null;
+        }
+        byte[] bytes = vector instanceof LargeVarCharVector large
+                ? large.get(index)
+                : ((VarCharVector) vector).get(index);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void setString(FieldVector vector, int index, String value) {
+        if (vector instanceof LargeVarCharVector large) {
+            if (value == null) {
+                large.setNull(index);
+            } else {
+                large.setSafe(index, value.getBytes(StandardCharsets.UTF_8));
+            }
+        } else {
+            VarCharVector varChar = (VarCharVector) vector;
+            if (value == null) {
+                varChar.setNull(index);
+            } else {
+                varChar.setSafe(index, value.getBytes(StandardCharsets.UTF_8));
+            }
+        }
+    }
+}
@@ -6,6 +6,7 @@ import io.micronaut.core.async.annotation.SingleResult;
 import io.micronaut.http.*;
 import io.micronaut.http.annotation.Error;
 import io.micronaut.http.annotation.*;
+import io.micronaut.http.context.ServerRequestContext;
 import io.micronaut.http.hateoas.JsonError;
 import io.micronaut.http.hateoas.Link;
 import io.micronaut.http.multipart.StreamingFileUpload;
@@ -14,7 +15,7 @@ import io.micronaut.scheduling.annotation.ExecuteOn;
 import io.micronaut.security.annotation.Secured;
 import io.reactivex.Completable;
 import io.reactivex.Flowable;
-import io.reactivex.Single;
+import io.reactivex.schedulers.Schedulers;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.media.Schema;
 import io.swagger.v3.oas.annotations.tags.Tag;
@@ -28,6 +29,7 @@ import no.ssb.dlp.pseudo.core.exception.NoSuchPseudoKeyException;
 import no.ssb.dlp.pseudo.core.file.MoreMediaTypes;
 import no.ssb.dlp.pseudo.core.file.PseudoFileSource;
 import no.ssb.dlp.pseudo.core.map.RecordMapProcessor;
+import no.ssb.dlp.pseudo.core.map.RecordMapSerializer;
 import no.ssb.dlp.pseudo.core.map.RecordMapSerializerFactory;
 import no.ssb.dlp.pseudo.core.tink.model.EncryptedKeysetWrapper;
 import no.ssb.dlp.pseudo.core.util.HumanReadableBytes;
@@ -37,19 +39,31 @@ import no.ssb.dlp.pseudo.service.security.PseudoServiceRole;
 import no.ssb.dlp.pseudo.service.sid.InvalidSidSnapshotDateException;
 import no.ssb.dlp.pseudo.service.sid.SidIndexUnavailableException;
 
-import jakarta.validation.constraints.Min;
 import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Size;
+import org.apache.parquet.io.LocalInputFile;
+import org.apache.parquet.io.LocalOutputFile;
+import org.reactivestreams.Publisher;
 import org.slf4j.MDC;
 
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.lang.reflect.InvocationTargetException;
+import java.net.URI;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.security.Principal;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
 
 @RequiredArgsConstructor
 @Controller
@@ -62,6 +76,10 @@ public class PseudoController {
     private final StreamProcessorFactory streamProcessorFactory;
     private final RecordMapProcessorFactory recordProcessorFactory;
     private final PseudoConfigSplitter pseudoConfigSplitter;
+    private final PseudoWorkerPool workerPool;
+    private final ResponseCompression responseCompression;
+    private final PseudoJobService jobService;
+    private final ParallelZipWriter zipWriter;
 
     /**
      * Pseudonymizes a field.
@@ -83,10 +101,8 @@ public class PseudoController {
 
             final String correlationId = MDC.get("CorrelationID");
 
-            return HttpResponse.ok(pseudoField.process(pseudoConfigSplitter,
-                    recordProcessorFactory, req.values, PseudoOperation.PSEUDONYMIZE, correlationId)
-                            .map(o -> o.getBytes(StandardCharsets.UTF_8)))
-                    .characterEncoding(StandardCharsets.UTF_8);
+            return streamedResponse(pseudoField.process(pseudoConfigSplitter,
+                    recordProcessorFactory, req.values, PseudoOperation.PSEUDONYMIZE, correlationId));
         } catch (Exception e) {
             return HttpResponse.serverError(Flowable.error(e));
         }
@@ -113,10 +129,8 @@ public class PseudoController {
 
             final String correlationId = MDC.get("CorrelationID");
 
-            return HttpResponse.ok(pseudoField.process(
-                    pseudoConfigSplitter, recordProcessorFactory,req.values, PseudoOperation.DEPSEUDONYMIZE, correlationId)
-                            .map(o -> o.getBytes(StandardCharsets.UTF_8)))
-                    .characterEncoding(StandardCharsets.UTF_8);
+            return streamedResponse(pseudoField.process(
+                    pseudoConfigSplitter, recordProcessorFactory,req.values, PseudoOperation.DEPSEUDONYMIZE, correlationId));
         } catch (Exception e) {
             return HttpResponse.serverError(Flowable.error(e));
         }
@@ -143,23 +157,348 @@ public class PseudoController {
         try {
 
             final String correlationId = MDC.get("CorrelationID");
-            return HttpResponse.ok(
-                    sourcePseudoField.process(recordProcessorFactory, req.values, targetPseudoField, correlationId)
-                            .map(o -> o.getBytes(StandardCharsets.UTF_8)))
-                    .characterEncoding(StandardCharsets.UTF_8);
+            return streamedResponse(
+                    sourcePseudoField.process(recordProcessorFactory, req.values, targetPseudoField, correlationId));
         } catch (Exception e) {
             return HttpResponse.serverError(Flowable.error(e));
         }
     }
 
 
+    /**
+     * Pseudonymizes a field, with the values streamed as newline delimited JSON.
+     *
+     * @param body NDJSON stream with a {@link PseudoFieldRequest} header line (without values), followed by one value
+     *             per line.
+     * @return HTTP response containing a {@link HttpResponse<Flowable>} object.
+     */
+    @Operation(summary = "Pseudonymize field (NDJSON)", description = """
+            Pseudonymize a field, with the values streamed as newline delimited JSON.
+            
+            The first line is the field request without values, and each following line holds a single value. The
+            result is streamed back with one pseudonymized value per line, followed by a line with the metadata.
+            """)
+    @Produces(PseudoMediaTypes.APPLICATION_NDJSON)
+    @Post(value = "/pseudonymize/field", consumes = PseudoMediaTypes.APPLICATION_NDJSON)
+    @ExecuteOn(TaskExecutors.BLOCKING)
+    public HttpResponse<Flowable<byte[]>> pseudonymizeFieldStream(@Body Publisher<byte[]> body) {
+        log.info(Strings.padEnd("*** Pseudonymize streamed field ", 80, '*'));
+        return processFieldStream(body, PseudoOperation.PSEUDONYMIZE, header -> {
+            PseudoFieldRequest req = Json.toObject(PseudoFieldRequest.class, header);
+            requireNoValues(req.getValues());
+            return new PseudoFieldStream.Header(
+                    new PseudoField(req.getName(), req.getPattern(), req.getPseudoFunc(), req.getKeyset()), null);
+        });
+    }
+
+    /**
+     * Depseudonymizes a field, with the values streamed as newline delimited JSON.
+     *
+     * @param body NDJSON stream with a {@link DepseudoFieldRequest} header line (without values), followed by one value
+     *             per line.
+     * @return HTTP response containing a {@link HttpResponse<Flowable>} object.
+     */
+    @Operation(summary = "Depseudonymize field (NDJSON)", description = """
+            Depseudonymize a field, with the values streamed as newline delimited JSON.
+            
+            The first line is the field request without values, and each following line holds a single value. The
+            result is streamed back with one depseudonymized value per line, followed by a line with the metadata.
+            """)
+    @Produces(PseudoMediaTypes.APPLICATION_NDJSON)
+    @Secured({PseudoServiceRole.ADMIN})
+    @Post(value = "/depseudonymize/field", consumes = PseudoMediaTypes.APPLICATION_NDJSON)
+    @ExecuteOn(TaskExecutors.BLOCKING)
+    public HttpResponse<Flowable<byte[]>> depseudonymizeFieldStream(@Body Publisher<byte[]> body) {
+        log.info(Strings.padEnd("*** Depseudonymize streamed field ", 80, '*'));
+        return processFieldStream(body, PseudoOperation.DEPSEUDONYMIZE, header -> {
+            DepseudoFieldRequest req = Json.toObject(DepseudoFieldRequest.class, header);
+            requireNoValues(req.getValues());
+            return new PseudoFieldStream.Header(
+                    new PseudoField(req.getName(), req.getPattern(), req.getPseudoFunc(), req.getKeyset()), null);
+        });
+    }
+
+    /**
+     * Repseudonymizes a field, with the values streamed as newline delimited JSON.
+     *
+     * @param body NDJSON stream with a {@link RepseudoFieldRequest} header line (without values), followed by one value
+     *             per line.
+     * @return HTTP response containing a {@link HttpResponse<Flowable>} object.
+     */
+    @Operation(summary = "Repseudonymize field (NDJSON)", description = """
+            Repseudonymize a field, with the values streamed as newline delimited JSON.
+            
+            The first line is the field request without values, and each following line holds a single value. The
+            result is streamed back with one repseudonymized value per line, followed by a line with the metadata.
+            """)
+    @Produces(PseudoMediaTypes.APPLICATION_NDJSON)
+    @Secured({PseudoServiceRole.ADMIN})
+    @Post(value = "/repseudonymize/field", consumes = PseudoMediaTypes.APPLICATION_NDJSON)
+    @ExecuteOn(TaskExecutors.BLOCKING)
+    public HttpResponse<Flowable<byte[]>> repseudonymizeFieldStream(@Body Publisher<byte[]> body) {
+        log.info(Strings.padEnd("*** Repseudonymize streamed field ", 80, '*'));
+        return processFieldStream(body, PseudoOperation.REPSEUDONYMIZE, header -> {
+            RepseudoFieldRequest req = Json.toObject(RepseudoFieldRequest.class, header);
+            requireNoValues(req.getValues());
+            return new PseudoFieldStream.Header(
+                    new PseudoField(req.getName(), req.getPattern(), req.getSourcePseudoFunc(), req.getSourceKeyset()),
+                    new PseudoField(req.getName(), req.getPattern(), req.getTargetPseudoFunc(), req.getTargetKeyset()));
+        });
+    }
+
+    private HttpResponse<Flowable<byte[]>> processFieldStream(Publisher<byte[]> body, PseudoOperation operation,
+                                                              Function<String, PseudoFieldStream.Header> headerParser) {
+        final String correlationId = MDC.get("CorrelationID");
+        // Body chunks arrive on the event loop, so process values (which may involve blocking SID lookups) elsewhere
+        Flowable<String> lines = PseudoFieldStream.lines(Flowable.fromPublisher(body)).observeOn(Schedulers.io());
+        return streamedResponse(PseudoFieldStream.process(lines, headerParser, pseudoConfigSplitter,
+                recordProcessorFactory, operation, correlationId));
+    }
+
+    /**
+     * Pseudonymizes multiple fields (columns), with the columns streamed in the Apache Arrow IPC streaming format.
+     *
+     * @param body Arrow IPC stream, with a {@link PseudoFieldsRequest} (without values) in the schema metadata.
+     * @return HTTP response containing a {@link HttpResponse<Flowable>} object.
+     */
+    @Operation(summary = "Pseudonymize fields (Arrow)", description = """
+            Pseudonymize multiple fields (columns), with the columns streamed in the Apache Arrow IPC streaming format.
+            
+            The fields request (without values) is given as JSON in the schema metadata, with the key
+            `no.ssb.dlp.pseudo.request`. Each field refers to a string column by name. The result is streamed back as
+            an Arrow IPC stream with the same schema, followed by an Arrow IPC stream with a single `metadata` value.
+            """)
+    @Produces(PseudoMediaTypes.APPLICATION_ARROW_STREAM)
+    @Post(value = "/pseudonymize/fields", consumes = PseudoMediaTypes.APPLICATION_ARROW_STREAM)
+    @ExecuteOn(TaskExecutors.BLOCKING)
+    public HttpResponse<Flowable<byte[]>> pseudonymizeFieldsArrow(@Body Publisher<byte[]> body) {
+        log.info(Strings.padEnd("*** Pseudonymize Arrow stream ", 80, '*'));
+        return processArrowStream(body, PseudoOperation.PSEUDONYMIZE, request ->
+                Json.toObject(PseudoFieldsRequest.class, request).getFields().stream()
+                        .map(field -> {
+                            requireNoValues(field.getValues());
+                            return new PseudoArrowStream.Column(new PseudoField(field.getName(), field.getPattern(),
+                                    field.getPseudoFunc(), field.getKeyset()), null);
+                        }).toList());
+    }
+
+    /**
+     * Depseudonymizes multiple fields (columns), with the columns streamed in the Apache Arrow IPC streaming format.
+     *
+     * @param body Arrow IPC stream, with a {@link DepseudoFieldsRequest} (without values) in the schema metadata.
+     * @return HTTP response containing a {@link HttpResponse<Flowable>} object.
+     */
+    @Operation(summary = "Depseudonymize fields (Arrow)", description = """
+            Depseudonymize multiple fields (columns), with the columns streamed in the Apache Arrow IPC streaming format.
+            
+            The fields request (without values) is given as JSON in the schema metadata, with the key
+            `no.ssb.dlp.pseudo.request`. Each field refers to a string column by name. The result is streamed back as
+            an Arrow IPC stream with the same schema, followed by an Arrow IPC stream with a single `metadata` value.
+            """)
+    @Produces(PseudoMediaTypes.APPLICATION_ARROW_STREAM)
+    @Secured({PseudoServiceRole.ADMIN})
+    @Post(value = "/depseudonymize/fields", consumes = PseudoMediaTypes.APPLICATION_ARROW_STREAM)
+    @ExecuteOn(TaskExecutors.BLOCKING)
+    public HttpResponse<Flowable<byte[]>> depseudonymizeFieldsArrow(@Body Publisher<byte[]> body) {
+        log.info(Strings.padEnd("*** Depseudonymize Arrow stream ", 80, '*'));
+        return processArrowStream(body, PseudoOperation.DEPSEUDONYMIZE, request ->
+                Json.toObject(DepseudoFieldsRequest.class, request).getFields().stream()
+                        .map(field -> {
+                            requireNoValues(field.getValues());
+                            return new PseudoArrowStream.Column(new PseudoField(field.getName(), field.getPattern(),
+                                    field.getPseudoFunc(), field.getKeyset()), null);
+                        }).toList());
+    }
+
+    /**
+     * Repseudonymizes multiple fields (columns), with the columns streamed in the Apache Arrow IPC streaming format.
+     *
+     * @param body Arrow IPC stream, with a {@link RepseudoFieldsRequest} (without values) in the schema metadata.
+     * @return HTTP response containing a {@link HttpResponse<Flowable>} object.
+     */
+    @Operation(summary = "Repseudonymize fields (Arrow)", description = """
+            Repseudonymize multiple fields (columns), with the columns streamed in the Apache Arrow IPC streaming format.
+            
+            The fields request (without values) is given as JSON in the schema metadata, with the key
+            `no.ssb.dlp.pseudo.request`. Each field refers to a string column by name. The result is streamed back as
+            an Arrow IPC stream with the same schema, followed by an Arrow IPC stream with a single `metadata` value.
+            """)
+    @Produces(PseudoMediaTypes.APPLICATION_ARROW_STREAM)
+    @Secured({PseudoServiceRole.ADMIN})
+    @Post(value = "/repseudonymize/fields", consumes = PseudoMediaTypes.APPLICATION_ARROW_STREAM)
+    @ExecuteOn(TaskExecutors.BLOCKING)
+    public HttpResponse<Flowable<byte[]>> repseudonymizeFieldsArrow(@Body Publisher<byte[]> body) {
+        log.info(Strings.padEnd("*** Repseudonymize Arrow stream ", 80, '*'));
+        return processArrowStream(body, PseudoOperation.REPSEUDONYMIZE, request ->
+                Json.toObject(RepseudoFieldsRequest.class, request).getFields().stream()
+                        .map(field -> {
+                            requireNoValues(field.getValues());
+                            return new PseudoArrowStream.Column(
+                                    new PseudoField(field.getName(), field.getPattern(), field.getSourcePseudoFunc(),
+                                            field.getSourceKeyset()),
+                                    new PseudoField(field.getName(), field.getPattern(), field.getTargetPseudoFunc(),
+                                            field.getTargetKeyset()));
+                        }).toList());
+    }
+
+    private HttpResponse<Flowable<byte[]>> processArrowStream(
+            Publisher<byte[]> body, PseudoOperation operation,
+            Function<String, List<PseudoArrowStream.Column>> requestParser) {
+        final String correlationId = MDC.get("CorrelationID");
+        // The Arrow reader blocks until body chunks arrive, so never read on the event loop
+        Flowable<byte[]> result = Flowable.defer(() -> PseudoArrowStream.process(
+                        ChunkInputStream.of(Flowable.fromPublisher(body)), requestParser,
+                        pseudoConfigSplitter, recordProcessorFactory, operation, correlationId))
+                .subscribeOn(Schedulers.io());
+        return compressedResponse(result).contentType(PseudoMediaTypes.APPLICATION_ARROW_STREAM_TYPE);
+    }
+
+    /**
+     * Create a response that streams the result in chunks, compressed if the client accepts it.
+     */
+    private MutableHttpResponse<Flowable<byte[]>> streamedResponse(Flowable<String> result) {
+        return compressedResponse(ChunkedResponseWriter.write(result))
+                .characterEncoding(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Create a response that streams chunks, compressed if the client accepts it.
+     */
+    private MutableHttpResponse<Flowable<byte[]>> compressedResponse(Flowable<byte[]> chunks) {
+        final Optional<ResponseCompression.Encoding> encoding = ServerRequestContext.currentRequest()
+                .flatMap(request -> responseCompression.negotiate(
+                        request.getHeaders().get(HttpHeaders.ACCEPT_ENCODING)));
+        final MutableHttpResponse<Flowable<byte[]>> response = HttpResponse.ok(encoding
+                .map(e -> responseCompression.compress(chunks, e))
+                .orElse(chunks));
+        // Netty leaves responses that already have a content encoding alone
+        encoding.ifPresent(e -> response.header(HttpHeaders.CONTENT_ENCODING, e.getContentCoding()));
+        return response.header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+    }
+
+    /**
+     * Create the response of a file request. Parquet results are sent as they are, since Parquet is already
+     * compressed.
+     */
+    private MutableHttpResponse<Flowable<byte[]>> fileResponse(ProcessFileResult res) {
+        if (res.getBinaryResponse() != null) {
+            return HttpResponse.ok(res.getBinaryResponse()).contentType(res.getTargetContentType());
+        }
+        else if (PseudoMediaTypes.isNdjson(res.getTargetContentType())) {
+            return streamedResponse(res.getResponse()).contentType(res.getTargetContentType());
+        }
+        return streamedResponse(res.getResponse());
+    }
+
+    private static void requireNoValues(List<String> values) {
+        if (values != null && !values.isEmpty()) {
+            throw new IllegalArgumentException("The request must not contain values, since the values are "
+                    + "streamed separately.");
+        }
+    }
+
+    /**
+     * Pseudonymizes multiple fields (columns).
+     *
+     * @param request JSON string representing a {@link PseudoFieldsRequest} object.
+     * @return HTTP response containing a {@link HttpResponse<Flowable>} object.
+     */
+    @Operation(summary = "Pseudonymize fields", description = """
+            Pseudonymize multiple fields (columns) in one request. Each field has its own pseudo function and keyset.
+            
+            The result is columnar, with the pseudonymized values of each field, and a single metadata section.
+            """)
+    @Produces(MediaType.APPLICATION_JSON)
+    @Post(value = "/pseudonymize/fields", consumes = MediaType.APPLICATION_JSON)
+    @ExecuteOn(TaskExecutors.BLOCKING)
+    public HttpResponse<Flowable<byte[]>> pseudonymizeFields(
+            @Schema(implementation = PseudoFieldsRequest.class) String request
+    ) {
+        PseudoFieldsRequest req = Json.toObject(PseudoFieldsRequest.class, request);
+        log.info(Strings.padEnd(String.format("*** Pseudonymize %d fields ", req.getFields().size()), 80, '*'));
+        PseudoFields pseudoFields = new PseudoFields();
+        req.getFields().forEach(field -> pseudoFields.add(
+                new PseudoField(field.getName(), field.getPattern(), field.getPseudoFunc(), field.getKeyset()),
+                field.getValues()));
+        return processFields(pseudoFields, PseudoOperation.PSEUDONYMIZE);
+    }
+
+    /**
+     * Depseudonymizes multiple fields (columns).
+     *
+     * @param request JSON string representing a {@link DepseudoFieldsRequest} object.
+     * @return HTTP response containing a {@link HttpResponse<Flowable>} object.
+     */
+    @Operation(summary = "Depseudonymize fields", description = """
+            Depseudonymize multiple fields (columns) in one request. Each field has its own pseudo function and keyset.
+            
+            The result is columnar, with the depseudonymized values of each field, and a single metadata section.
+            """)
+    @Produces(MediaType.APPLICATION_JSON)
+    @Secured({PseudoServiceRole.ADMIN})
+    @Post(value = "/depseudonymize/fields", consumes = MediaType.APPLICATION_JSON)
+    @ExecuteOn(TaskExecutors.BLOCKING)
+    public HttpResponse<Flowable<byte[]>> depseudonymizeFields(
+            @Schema(implementation = DepseudoFieldsRequest.class) String request
+    ) {
+        DepseudoFieldsRequest req = Json.toObject(DepseudoFieldsRequest.class, request);
+        log.info(Strings.padEnd(String.format("*** Depseudonymize %d fields ", req.getFields().size()), 80, '*'));
+        PseudoFields pseudoFields = new PseudoFields();
+        req.getFields().forEach(field -> pseudoFields.add(
+                new PseudoField(field.getName(), field.getPattern(), field.getPseudoFunc(), field.getKeyset()),
+                field.getValues()));
+        return processFields(pseudoFields, PseudoOperation.DEPSEUDONYMIZE);
+    }
+
+    /**
+     * Repseudonymizes multiple fields (columns).
+     *
+     * @param request JSON string representing a {@link RepseudoFieldsRequest} object.
+     * @return HTTP response containing a {@link HttpResponse<Flowable>} object.
+     */
+    @Operation(summary = "Repseudonymize fields", description = """
+            Repseudonymize multiple fields (columns) in one request. Each field has its own source and target pseudo
+            functions and keysets.
+            
+            The result is columnar, with the repseudonymized values of each field, and a single metadata section.
+            """)
+    @Produces(MediaType.APPLICATION_JSON)
+    @Secured({PseudoServiceRole.ADMIN})
+    @Post(value = "/repseudonymize/fields", consumes = MediaType.APPLICATION_JSON)
+    @ExecuteOn(TaskExecutors.BLOCKING)
+    public HttpResponse<Flowable<byte[]>> repseudonymizeFields(
+            @Schema(implementation = RepseudoFieldsRequest.class) String request
+    ) {
+        RepseudoFieldsRequest req = Json.toObject(RepseudoFieldsRequest.class, request);
+        log.info(Strings.padEnd(String.format("*** Repseudonymize %d fields ", req.getFields().size()), 80, '*'));
+        PseudoFields pseudoFields = new PseudoFields();
+        req.getFields().forEach(field -> pseudoFields.add(
+                new PseudoField(field.getName(), field.getPattern(), field.getSourcePseudoFunc(), field.getSourceKeyset()),
+                new PseudoField(field.getName(), field.getPattern(), field.getTargetPseudoFunc(), field.getTargetKeyset()),
+                field.getValues()));
+        return processFields(pseudoFields, PseudoOperation.REPSEUDONYMIZE);
+    }
+
+    private HttpResponse<Flowable<byte[]>> processFields(PseudoFields pseudoFields, PseudoOperation operation) {
+        try {
+            final String correlationId = MDC.get("CorrelationID");
+            return streamedResponse(pseudoFields.process(pseudoConfigSplitter, recordProcessorFactory, operation,
+                    correlationId, workerPool.getScheduler(), workerPool.getWorkers()));
+        } catch (Exception e) {
+            return HttpResponse.serverError(Flowable.error(e));
+        }
+    }
+
     @Operation(summary = "Pseudonymize file", description = """
-            Pseudonymize a file (JSON or CSV - or a zip with potentially multiple such files) by uploading the file.
+            Pseudonymize a file (JSON, NDJSON, CSV or Parquet - or a zip with potentially multiple JSON or CSV files) by uploading the file.
                         
             The pseudonymized result will be streamed back.
                         
             Notice that you can specify the `targetContentType` if you want to convert to either of the supported file
-            formats. E.g. your source could be a CSV file and the result could be a JSON file.
+            formats. E.g. your source could be a CSV file and the result could be a JSON file. A Parquet file can be
+            converted to JSON, NDJSON or CSV, or written back as Parquet (`application/vnd.apache.parquet`), in which case
+            the metadata is stored in the footer of the resulting file. With an NDJSON (`application/x-ndjson`) target, the
+            result is streamed back with one record per line, followed by a line with the metadata.
 
             Reduce transmission times by applying compression both to the source and target files.
             Specify `compression` if you want the result to be a zipped (and optionally) encrypted archive.
@@ -190,10 +529,8 @@ public class PseudoController {
 
             final String correlationId = MDC.get("CorrelationID");
             RecordMapProcessor<PseudoMetadataProcessor> recordProcessor = recordProcessorFactory.newPseudonymizeRecordProcessor(pseudoConfigs, correlationId);
-            ProcessFileResult res = processFile(data, PseudoOperation.PSEUDONYMIZE, recordProcessor, req.getTargetContentType(), req.getCompression());
-            return HttpResponse.ok(res.getResponse()
-                            .map(o -> o.getBytes(StandardCharsets.UTF_8)))
-                    .characterEncoding(StandardCharsets.UTF_8);
+            ProcessFileResult res = processFile(PseudoFileInput.of(data), PseudoOperation.PSEUDONYMIZE, recordProcessor, req.getTargetContentType(), req.getCompression(), new LongAdder());
+            return fileResponse(res);
         } catch (RuntimeException e) {
             log.error(String.format("Failed to pseudonymize:%nrequest:%n%s", request), e);
             throw e;
@@ -203,14 +540,17 @@ public class PseudoController {
     @Operation(
             summary = "Depseudonymize file",
             description = """
-                    Depseudonymize a file (JSON or CSV - or a zip with potentially multiple such files) by uploading the file.
+                    Depseudonymize a file (JSON, NDJSON, CSV or Parquet - or a zip with potentially multiple JSON or CSV files) by uploading the file.
                                 
                     Notice that only certain whitelisted users can depseudonymize data.
                                 
                     The pseudonymized result will be streamed back.
 
                     Notice that you can specify the `targetContentType` if you want to convert to either of the supported file
-                    formats. E.g. your source could be a CSV file and the result could be a JSON file.
+                    formats. E.g. your source could be a CSV file and the result could be a JSON file. A Parquet file can be
+                    converted to JSON, NDJSON or CSV, or written back as Parquet (`application/vnd.apache.parquet`), in which case
+                    the metadata is stored in the footer of the resulting file. With an NDJSON (`application/x-ndjson`) target, the
+                    result is streamed back with one record per line, followed by a line with the metadata.
 
                     Reduce transmission times by applying compression both to the source and target files.
                     Specify `compression` if you want the result to be a zipped (and optionally) encrypted archive.
@@ -242,9 +582,11 @@ public class PseudoController {
 
             final String correlationId = MDC.get("CorrelationID");
             RecordMapProcessor<PseudoMetadataProcessor> recordProcessor = recordProcessorFactory.newDepseudonymizeRecordProcessor(pseudoConfigs, correlationId);
-            ProcessFileResult res = processFile(data, PseudoOperation.DEPSEUDONYMIZE, recordProcessor, req.getTargetContentType(), req.getCompression());
-            return HttpResponse.ok(res.getResponse().map(o -> o.getBytes(StandardCharsets.UTF_8)))
-                    .characterEncoding(StandardCharsets.UTF_8);
+            ProcessFileResult res = processFile(PseudoFileInput.of(data), PseudoOperation.DEPSEUDONYMIZE, recordProcessor, req.getTargetContentType(), req.getCompression(), new LongAdder());
+            return fileResponse(res);
+        } catch (IllegalArgumentException e) {
+            // Invalid requests are answered with 400 Bad Request
+            throw e;
         } catch (Exception e) {
             log.error(String.format("Failed to depseudonymize:%nrequest:%n%s", request), e);
             return HttpResponse.serverError(Flowable.error(e));
@@ -255,13 +597,16 @@ public class PseudoController {
     @Operation(
             summary = "Repseudonymize file",
             description = """
-                    Repseudonymize a file (JSON or CSV - or a zip with potentially multiple such files) by uploading the file.
+                    Repseudonymize a file (JSON, NDJSON, CSV or Parquet - or a zip with potentially multiple JSON or CSV files) by uploading the file.
                     Repseudonymization is done by first applying depseudonuymization and then pseudonymization to fields of the file.
                                 
                     The pseudonymized result will be streamed back.
                                 
                     Notice that you can specify the `targetContentType` if you want to convert to either of the supported file
-                    formats. E.g. your source could be a CSV file and the result could be a JSON file.
+                    formats. E.g. your source could be a CSV file and the result could be a JSON file. A Parquet file can be
+                    converted to JSON, NDJSON or CSV, or written back as Parquet (`application/vnd.apache.parquet`), in which case
+                    the metadata is stored in the footer of the resulting file. With an NDJSON (`application/x-ndjson`) target, the
+                    result is streamed back with one record per line, followed by a line with the metadata.
 
                     Reduce transmission times by applying compression both to the source and target files.
                     Specify `compression` if you want the result to be a zipped (and optionally) encrypted archive.
@@ -291,54 +636,311 @@ public class PseudoController {
             RepseudoRequest req = Json.toObject(RepseudoRequest.class, request);
             final String correlationId = MDC.get("CorrelationID");
             RecordMapProcessor<PseudoMetadataProcessor> recordProcessor = recordProcessorFactory.newRepseudonymizeRecordProcessor(req.getSourcePseudoConfig(), req.getTargetPseudoConfig(), correlationId);
-            ProcessFileResult res = processFile(data, PseudoOperation.REPSEUDONYMIZE, recordProcessor, req.getTargetContentType(), req.getCompression());
-            return HttpResponse.ok(res.getResponse()
-                            .map(o -> o.getBytes(StandardCharsets.UTF_8)))
-                    .characterEncoding(StandardCharsets.UTF_8);
+            ProcessFileResult res = processFile(PseudoFileInput.of(data), PseudoOperation.REPSEUDONYMIZE, recordProcessor, req.getTargetContentType(), req.getCompression(), new LongAdder());
+            return fileResponse(res);
+        } catch (IllegalArgumentException e) {
+            // Invalid requests are answered with 400 Bad Request
+            throw e;
         } catch (Exception e) {
             log.error(String.format("Failed to repseudonymize:%nrequest:%n%s", request), e);
             return HttpResponse.serverError(Flowable.error(e));
         }
     }
 
-    private ProcessFileResult processFile(StreamingFileUpload data, PseudoOperation operation, RecordMapProcessor<PseudoMetadataProcessor> recordMapProcessor, MediaType targetContentType, TargetCompression targetCompression) {
+    @Operation(
+            summary = "Rotate keys of file",
+            description = """
+                    Repseudonymize a file with new keys, e.g. `daead` to `daead` or `ff31` to `ff31`. Takes the same
+                    parameters as `/repseudonymize/file`, and the result is the same.
+
+                    Unlike `/repseudonymize/file`, each value is restored and pseudonymized in a single step, using the
+                    source and target rule of the field. This is faster for large files or archives, but SID mapping
+                    functions are not supported. Every field that is matched by a source rule must also be matched by a
+                    target rule, and the other way around, so that values are never left depseudonymized.
+                    """
+    )
+    @Post("/rotate-keys/file")
+    @Consumes(MediaType.MULTIPART_FORM_DATA)
+    @Produces(MediaType.APPLICATION_JSON)
+    @Secured({PseudoServiceRole.ADMIN})
+    @ExecuteOn(TaskExecutors.BLOCKING)
+    public HttpResponse<Flowable<byte[]>> rotateKeysFile(
+            @Schema(implementation = RepseudoRequest.class) String request, StreamingFileUpload data, Principal principal) {
+        log.info(Strings.padEnd(String.format("*** Rotate keys of file: %s", data.getFilename()), 80, '*'));
+        log.debug("User: {}\n{}", principal.getName(), request);
+
+        try {
+            RepseudoRequest req = Json.toObject(RepseudoRequest.class, request);
+            final String correlationId = MDC.get("CorrelationID");
+            RecordMapProcessor<PseudoMetadataProcessor> recordProcessor = recordProcessorFactory.newKeyRotationRecordProcessor(req.getSourcePseudoConfig(), req.getTargetPseudoConfig(), correlationId);
+            ProcessFileResult res = processFile(PseudoFileInput.of(data), PseudoOperation.REPSEUDONYMIZE, recordProcessor, req.getTargetContentType(), req.getCompression(), new LongAdder());
+            return fileResponse(res);
+        } catch (IllegalArgumentException e) {
+            // Invalid requests are answered with 400 Bad Request
+            throw e;
+        } catch (Exception e) {
+            log.error(String.format("Failed to rotate keys:%nrequest:%n%s", request), e);
+            return HttpResponse.serverError(Flowable.error(e));
+        }
+    }
+
+    @Operation(summary = "Submit pseudonymize file job", description = """
+            Pseudonymize a file asynchronously. Takes the same parameters as `/pseudonymize/file`.
+            
+            The file is stored and queued as a pseudo job, and the job status is returned right away. Poll the job
+            status (at the `Location` of the response) to follow the progress, and download the result from
+            `/jobs/{jobId}/result` when the job is completed.
+            """)
+    @Post("/jobs/pseudonymize/file")
+    @Consumes(MediaType.MULTIPART_FORM_DATA)
+    @Produces(MediaType.APPLICATION_JSON)
+    @ExecuteOn(TaskExecutors.BLOCKING)
+    public HttpResponse<PseudoJob.JobStatus> submitPseudonymizeFileJob(
+            @Schema(implementation = PseudoRequest.class) String request, StreamingFileUpload data, Principal principal
+    ) {
+        log.info(Strings.padEnd(String.format("*** Submit pseudonymize file job: %s", data.getFilename()), 80, '*'));
+        PseudoRequest req = Json.toObject(PseudoRequest.class, request);
+        List<PseudoConfig> pseudoConfigs = pseudoConfigSplitter.splitIfNecessary(req.getPseudoConfig());
+        final String correlationId = MDC.get("CorrelationID");
+        RecordMapProcessor<PseudoMetadataProcessor> recordProcessor = recordProcessorFactory.newPseudonymizeRecordProcessor(pseudoConfigs, correlationId);
+        return submitJob(data, principal, PseudoOperation.PSEUDONYMIZE, recordProcessor, req.getTargetContentType(), req.getCompression());
+    }
+
+    @Operation(summary = "Submit depseudonymize file job", description = """
+            Depseudonymize a file asynchronously. Takes the same parameters as `/depseudonymize/file`.
+            
+            The file is stored and queued as a pseudo job, and the job status is returned right away. Poll the job
+            status (at the `Location` of the response) to follow the progress, and download the result from
+            `/jobs/{jobId}/result` when the job is completed.
+            """)
+    @Post("/jobs/depseudonymize/file")
+    @Consumes(MediaType.MULTIPART_FORM_DATA)
+    @Produces(MediaType.APPLICATION_JSON)
+    @Secured({PseudoServiceRole.ADMIN})
+    @ExecuteOn(TaskExecutors.BLOCKING)
+    public HttpResponse<PseudoJob.JobStatus> submitDepseudonymizeFileJob(
+            @Schema(implementation = PseudoRequest.class) String request, StreamingFileUpload data, Principal principal
+    ) {
+        log.info(Strings.padEnd(String.format("*** Submit depseudonymize file job: %s", data.getFilename()), 80, '*'));
+        log.debug("User: {}\n{}", principal.getName(), request);
+        PseudoRequest req = Json.toObject(PseudoRequest.class, request);
+        List<PseudoConfig> pseudoConfigs = pseudoConfigSplitter.splitIfNecessary(req.getPseudoConfig());
+        final String correlationId = MDC.get("CorrelationID");
+        RecordMapProcessor<PseudoMetadataProcessor> recordProcessor = recordProcessorFactory.newDepseudonymizeRecordProcessor(pseudoConfigs, correlationId);
+        return submitJob(data, principal, PseudoOperation.DEPSEUDONYMIZE, recordProcessor, req.getTargetContentType(), req.getCompression());
+    }
+
+    @Operation(summary = "Submit repseudonymize file job", description = """
+            Repseudonymize a file asynchronously. Takes the same parameters as `/repseudonymize/file`.
+            
+            The file is stored and queued as a pseudo job, and the job status is returned right away. Poll the job
+            status (at the `Location` of the response) to follow the progress, and download the result from
+            `/jobs/{jobId}/result` when the job is completed.
+            """)
+    @Post("/jobs/repseudonymize/file")
+    @Consumes(MediaType.MULTIPART_FORM_DATA)
+    @Produces(MediaType.APPLICATION_JSON)
+    @Secured({PseudoServiceRole.ADMIN})
+    @ExecuteOn(TaskExecutors.BLOCKING)
+    public HttpResponse<PseudoJob.JobStatus> submitRepseudonymizeFileJob(
+            @Schema(implementation = RepseudoRequest.class) String request, StreamingFileUpload data, Principal principal
+    ) {
+        log.info(Strings.padEnd(String.format("*** Submit repseudonymize file job: %s", data.getFilename()), 80, '*'));
+        log.debug("User: {}\n{}", principal.getName(), request);
+        RepseudoRequest req = Json.toObject(RepseudoRequest.class, request);
+        final String correlationId = MDC.get("CorrelationID");
+        RecordMapProcessor<PseudoMetadataProcessor> recordProcessor = recordProcessorFactory.newRepseudonymizeRecordProcessor(req.getSourcePseudoConfig(), req.getTargetPseudoConfig(), correlationId);
+        return submitJob(data, principal, PseudoOperation.REPSEUDONYMIZE, recordProcessor, req.getTargetContentType(), req.getCompression());
+    }
+
+    @Operation(summary = "Submit pseudonymize object job", description = """
+            Pseudonymize an object in the object storage of the service asynchronously, and write the result to another
+            object. The data is streamed from the source object and to the target object by the service, so the client
+            does not have to download and upload the data.
+            
+            Takes the same parameters as `/pseudonymize/file`, but as JSON, and with the object paths (`sourcePath` and
+            `targetPath`) instead of an uploaded file. Poll the job status (at the `Location` of the response) to follow
+            the progress.
+            
+            Object paths are relative to the directory of the user (`users/<name>/`) in the object storage.
+            """)
+    @Post(value = "/jobs/pseudonymize/object", consumes = MediaType.APPLICATION_JSON)
+    @Produces(MediaType.APPLICATION_JSON)
+    @ExecuteOn(TaskExecutors.BLOCKING)
+    public HttpResponse<PseudoJob.JobStatus> submitPseudonymizeObjectJob(
+            @Schema(implementation = PseudoObjectRequest.class) String request, Principal principal
+    ) {
+        PseudoObjectRequest req = Json.toObject(PseudoObjectRequest.class, request);
+        log.info(Strings.padEnd(String.format("*** Submit pseudonymize object job: %s", req.getSourcePath()), 80, '*'));
+        List<PseudoConfig> pseudoConfigs = pseudoConfigSplitter.splitIfNecessary(req.getPseudoConfig());
+        final String correlationId = MDC.get("CorrelationID");
+        RecordMapProcessor<PseudoMetadataProcessor> recordProcessor = recordProcessorFactory.newPseudonymizeRecordProcessor(pseudoConfigs, correlationId);
+        return submitJob(req.getSourcePath(), req.getTargetPath(), principal, PseudoOperation.PSEUDONYMIZE, recordProcessor, req.getTargetContentType());
+    }
+
+    @Operation(summary = "Submit depseudonymize object job", description = """
+            Depseudonymize an object in the object storage of the service asynchronously, and write the result to
+            another object. The data is streamed from the source object and to the target object by the service, so the
+            client does not have to download and upload the data.
+            
+            Takes the same parameters as `/depseudonymize/file`, but as JSON, and with the object paths (`sourcePath`
+            and `targetPath`) instead of an uploaded file. Poll the job status (at the `Location` of the response) to
+            follow the progress.
+            
+            Object paths are relative to the directory of the user (`users/<name>/`) in the object storage.
+            """)
+    @Post(value = "/jobs/depseudonymize/object", consumes = MediaType.APPLICATION_JSON)
+    @Produces(MediaType.APPLICATION_JSON)
+    @Secured({PseudoServiceRole.ADMIN})
+    @ExecuteOn(TaskExecutors.BLOCKING)
+    public HttpResponse<PseudoJob.JobStatus> submitDepseudonymizeObjectJob(
+            @Schema(implementation = PseudoObjectRequest.class) String request, Principal principal
+    ) {
+        PseudoObjectRequest req = Json.toObject(PseudoObjectRequest.class, request);
+        log.info(Strings.padEnd(String.format("*** Submit depseudonymize object job: %s", req.getSourcePath()), 80, '*'));
+        log.debug("User: {}\n{}", principal.getName(), request);
+        List<PseudoConfig> pseudoConfigs = pseudoConfigSplitter.splitIfNecessary(req.getPseudoConfig());
+        final String correlationId = MDC.get("CorrelationID");
+        RecordMapProcessor<PseudoMetadataProcessor> recordProcessor = recordProcessorFactory.newDepseudonymizeRecordProcessor(pseudoConfigs, correlationId);
+        return submitJob(req.getSourcePath(), req.getTargetPath(), principal, PseudoOperation.DEPSEUDONYMIZE, recordProcessor, req.getTargetContentType());
+    }
+
+    @Operation(summary = "Submit repseudonymize object job", description = """
+            Repseudonymize an object in the object storage of the service asynchronously, and write the result to
+            another object. The data is streamed from the source object and to the target object by the service, so the
+            client does not have to download and upload the data.
+            
+            Takes the same parameters as `/repseudonymize/file`, but as JSON, and with the object paths (`sourcePath`
+            and `targetPath`) instead of an uploaded file. Poll the job status (at the `Location` of the response) to
+            follow the progress.
+            
+            Object paths are relative to the directory of the user (`users/<name>/`) in the object storage.
+            """)
+    @Post(value = "/jobs/repseudonymize/object", consumes = MediaType.APPLICATION_JSON)
+    @Produces(MediaType.APPLICATION_JSON)
+    @Secured({PseudoServiceRole.ADMIN})
+    @ExecuteOn(TaskExecutors.BLOCKING)
+    public HttpResponse<PseudoJob.JobStatus> submitRepseudonymizeObjectJob(
+            @Schema(implementation = RepseudoObjectRequest.class) String request, Principal principal
+    ) {
+        RepseudoObjectRequest req = Json.toObject(RepseudoObjectRequest.class, request);
+        log.info(Strings.padEnd(String.format("*** Submit repseudonymize object job: %s", req.getSourcePath()), 80, '*'));
+        log.debug("User: {}\n{}", principal.getName(), request);
+        final String correlationId = MDC.get("CorrelationID");
+        RecordMapProcessor<PseudoMetadataProcessor> recordProcessor = recordProcessorFactory.newRepseudonymizeRecordProcessor(req.getSourcePseudoConfig(), req.getTargetPseudoConfig(), correlationId);
+        return submitJob(req.getSourcePath(), req.getTargetPath(), principal, PseudoOperation.REPSEUDONYMIZE, recordProcessor, req.getTargetContentType());
+    }
+
+    /**
+     * The record processor is created before the job is submitted, so that invalid requests (e.g. unknown keys) are
+     * rejected right away.
+     */
+    private HttpResponse<PseudoJob.JobStatus> submitJob(StreamingFileUpload data, Principal principal, PseudoOperation operation, RecordMapProcessor<PseudoMetadataProcessor> recordProcessor, MediaType targetContentType, TargetCompression targetCompression) {
+        TargetCompression.validated(targetCompression);
+        PseudoJob job = jobService.submit(operation, principal.getName(), PseudoFileInput.of(data),
+                (input, processedRecords) -> processFile(input, operation, recordProcessor, targetContentType,
+                        targetCompression, processedRecords));
+        log.info("Submitted job {}", job.getId());
+        return HttpResponse.accepted(URI.create("/jobs/" + job.getId())).body(job.toStatus());
+    }
+
+    private HttpResponse<PseudoJob.JobStatus> submitJob(String sourcePath, String targetPath, Principal principal, PseudoOperation operation, RecordMapProcessor<PseudoMetadataProcessor> recordProcessor, MediaType targetContentType) {
+        PseudoJob job = jobService.submit(operation, principal.getName(), sourcePath, targetPath,
+                (input, processedRecords) -> processFile(input, operation, recordProcessor, targetContentType,
+                        null, processedRecords));
+        log.info("Submitted job {}", job.getId());
+        return HttpResponse.accepted(URI.create("/jobs/" + job.getId())).body(job.toStatus());
+    }
+
+    /**
+     * @param processedRecords incremented for each processed record, e.g. to report the progress of a pseudo job
+     */
+    private ProcessFileResult processFile(PseudoFileInput data, PseudoOperation operation, RecordMapProcessor<PseudoMetadataProcessor> recordMapProcessor, MediaType targetContentType, TargetCompression targetCompression, LongAdder processedRecords) {
+        if (TargetCompression.validated(targetCompression) != null) {
+            // The result is zipped as it is produced
+            final ProcessFileResult res = processFile(data, operation, recordMapProcessor, targetContentType, null,
+                    processedRecords);
+            final ProcessFileResult zipped = new ProcessFileResult(PseudoMediaTypes.APPLICATION_ZIP_TYPE, null);
+            zipped.setBinaryResponse(zipWriter.write(zipEntryNameOf(data, res.getTargetContentType()), res.chunks(),
+                    targetCompression.getPassword()));
+            return zipped;
+        }
         Stopwatch stopwatch = Stopwatch.createStarted();
-        targetContentType = MoreMediaTypes.validContentType(targetContentType);
+        if (isParquet(data)) {
+            return processParquetFile(data, operation, recordMapProcessor, targetContentType, stopwatch, processedRecords);
+        }
+        else if (PseudoMediaTypes.isParquet(targetContentType)) {
+            throw new IllegalArgumentException("Only Parquet files can be converted to Parquet");
+        }
+        targetContentType = validTargetContentType(targetContentType);
+        final PseudoMetadataProcessor metadataProcessor = recordMapProcessor.getMetadataProcessor();
+        // Metadata will be processes in parallel with the data, but must be collected separately
+        final Flowable<String> metadata = Flowable.fromPublisher(metadataProcessor.getMetadata());
+        final Flowable<String> logs = Flowable.fromPublisher(metadataProcessor.getLogs());
+        final Flowable<String> metrics = Flowable.fromPublisher(metadataProcessor.getMetrics());
+
+        final MediaType streamingMediaType = streamProcessorFactory.isSinglePass(recordMapProcessor)
+                ? streamingMediaTypeOf(data) : null;
+        if (streamingMediaType != null) {
+            // A single pass is sufficient, so process the upload directly, without storing it on disk first
+            log.info("{} streamed file with content type {}", operation, streamingMediaType);
+            log.info("Target content type: {}", targetContentType);
+            final StreamProcessor streamProcessor = streamProcessorFactory.newStreamProcessor(streamingMediaType, recordMapProcessor);
+            final MediaType resultContentType = targetContentType;
+            Flowable<String> res = Flowable.defer(() -> processStream(data.asInputStream(), streamProcessor, resultContentType))
+                    // Reading the upload blocks until data arrives
+                    .subscribeOn(Schedulers.io());
+            return new ProcessFileResult(targetContentType, serializeResult(targetContentType,
+                    withCompletionSignals(res, operation, metadataProcessor, stopwatch, processedRecords), metadata, logs,
+                    metrics));
+        }
+
         File tempFile = null;
         PseudoFileSource fileSource = null;
 
         try {
-            // TODO: Rewrite to non-blocking
-            tempFile = receiveFile(data).blockingGet();
-            fileSource = new PseudoFileSource(tempFile);
-            log.info("Received file ({}, {})", fileSource.getProvidedMediaType(), HumanReadableBytes.fromBin(tempFile.length()));
-            log.info("{} {} files with content type {}", operation, fileSource.getFiles().size(), fileSource.getMediaType());
+            tempFile = data.toFile();
+            final MediaType sourceMediaType;
+            final InputStream preprocessInput;
+            final InputStream processInput;
+            List<ParallelEntryProcessor.Entry> entries = List.of();
+            if (isNdjson(data)) {
+                // A plain NDJSON file is read as it is
+                sourceMediaType = PseudoMediaTypes.APPLICATION_NDJSON_TYPE;
+                preprocessInput = Files.newInputStream(tempFile.toPath());
+                processInput = Files.newInputStream(tempFile.toPath());
+                log.info("Received file ({}, {})", sourceMediaType, HumanReadableBytes.fromBin(tempFile.length()));
+            } else {
+                fileSource = new PseudoFileSource(tempFile);
+                sourceMediaType = fileSource.getMediaType();
+                preprocessInput = fileSource.getInputStream();
+                if (fileSource.getFiles().size() > 1 && streamProcessorFactory.isParallelEntries()) {
+                    // Each file is processed on its own, in parallel
+                    entries = entriesOf(fileSource.getFiles());
+                    processInput = null;
+                } else {
+                    processInput = fileSource.getInputStream();
+                }
+                log.info("Received file ({}, {})", fileSource.getProvidedMediaType(), HumanReadableBytes.fromBin(tempFile.length()));
+                log.info("{} {} files with content type {}", operation, fileSource.getFiles().size(), fileSource.getMediaType());
+            }
             log.info("Target content type: {}", targetContentType);
 
-            final StreamProcessor streamProcessor = streamProcessorFactory.newStreamProcessor(fileSource.getMediaType(), recordMapProcessor);
-            final PseudoMetadataProcessor metadataProcessor = recordMapProcessor.getMetadataProcessor();
-            // Metadata will be processes in parallel with the data, but must be collected separately
-            final Flowable<String> metadata = Flowable.fromPublisher(metadataProcessor.getMetadata());
-            final Flowable<String> logs = Flowable.fromPublisher(metadataProcessor.getLogs());
-            final Flowable<String> metrics = Flowable.fromPublisher(metadataProcessor.getMetrics());
+            final StreamProcessor streamProcessor = streamProcessorFactory.newStreamProcessor(sourceMediaType, recordMapProcessor);
+            final Flowable<String> processed = entries.isEmpty()
+                    ? processStream(processInput, streamProcessor, targetContentType)
+                    : streamProcessorFactory.newParallelEntryProcessor(sourceMediaType, recordMapProcessor)
+                            .process(entries, serializerOf(targetContentType));
             // Preprocess the file contents - if necessary
-            Flowable<String> res = preprocessStream(fileSource.getInputStream(), streamProcessor)
+            Flowable<String> res = preprocessStream(preprocessInput, streamProcessor)
                     .doOnError(throwable -> log.error("Preprocessing failed", throwable))
                     .doOnComplete(() -> log.info("Preprocessing took {}", stopwatch.elapsed()))
                     // And then do the actual proccessing/transformations
-                    .andThen(processStream(fileSource.getInputStream(), streamProcessor, targetContentType)
-                            .doOnSubscribe((subscription) -> log.info("Start processing..."))
-                            .doOnError(throwable -> {
-                                log.error("Response failed", throwable);
-                                metadataProcessor.onErrorAll(throwable);
-                            })
-                            .doOnComplete(() -> {
-                                log.info("{} took {}", operation, stopwatch.stop().elapsed());
-                                // Signal the metadataProcessor to stop collecting metadata
-                                metadataProcessor.onCompleteAll();
-                            })
-                    );
-            return new ProcessFileResult(targetContentType, PseudoResponseSerializer.serialize(res, metadata, logs, metrics));
+                    .andThen(withCompletionSignals(processed, operation, metadataProcessor, stopwatch,
+                            processedRecords));
+            return new ProcessFileResult(targetContentType, serializeResult(targetContentType, res, metadata, logs, metrics));
+        } catch (IOException e) {
+            throw new RuntimeException("Error reading file " + tempFile, e);
         } finally {
             try {
                 if (fileSource != null) {
@@ -353,33 +955,208 @@ public class PseudoController {
         }
     }
 
-    private Completable preprocessStream(InputStream is, StreamProcessor streamProcessor) {
-        return streamProcessor.init(is);
+    /**
+     * @return the name of the result within a zipped result, i.e. the name of the uploaded file with the extension of
+     * the target content type
+     */
+    private static String zipEntryNameOf(PseudoFileInput data, MediaType targetContentType) {
+        String name = Strings.isNullOrEmpty(data.getFilename()) ? "result"
+                : Path.of(data.getFilename()).getFileName().toString();
+        if (name.lastIndexOf('.') > 0) {
+            name = name.substring(0, name.lastIndexOf('.'));
+        }
+        if (PseudoMediaTypes.isParquet(targetContentType)) {
+            return name + ".parquet";
+        } else if (PseudoMediaTypes.isNdjson(targetContentType)) {
+            return name + ".ndjson";
+        } else if (MoreMediaTypes.TEXT_CSV.equals(targetContentType.getName())) {
+            return name + ".csv";
+        }
+        return name + ".json";
     }
-    private Flowable<String> processStream(InputStream is, StreamProcessor streamProcessor, MediaType targetContentType) {
-        return streamProcessor.process(is, RecordMapSerializerFactory.newFromMediaType(targetContentType));
+
+    /**
+     * The files of an archive are opened right away, since the unpacked files are cleaned up before they are read.
+     *
+     * @return the files, in a deterministic order
+     */
+    /**
+     * The files are only opened as they are processed, so at most one stream per file in flight is open at a time.
+     */
+    private static List<ParallelEntryProcessor.Entry> entriesOf(Collection<File> files) {
+        return files.stream()
+                .sorted(Comparator.comparing(File::getPath))
+                .map(file -> new ParallelEntryProcessor.Entry(file.getName(), () -> Files.newInputStream(file.toPath())))
+                .toList();
     }
 
-    private Single<File> receiveFile(StreamingFileUpload data) {
+    /**
+     * Parquet files can not be streamed, since the schema is stored at the end of the file. The upload is therefore
+     * stored temporarily, and then either converted to JSON or CSV, or rewritten as Parquet. When rewritten as Parquet,
+     * the metadata is stored in the footer of the resulting file instead of in the response.
+     */
+    private ProcessFileResult processParquetFile(PseudoFileInput data, PseudoOperation operation,
+                                                 RecordMapProcessor<PseudoMetadataProcessor> recordMapProcessor,
+                                                 MediaType targetContentType, Stopwatch stopwatch,
+                                                 LongAdder processedRecords) {
+        final PseudoMetadataProcessor metadataProcessor = recordMapProcessor.getMetadataProcessor();
+        final Flowable<String> metadata = Flowable.fromPublisher(metadataProcessor.getMetadata());
+        final Flowable<String> logs = Flowable.fromPublisher(metadataProcessor.getLogs());
+        final Flowable<String> metrics = Flowable.fromPublisher(metadataProcessor.getMetrics());
+        final ParquetStreamProcessor streamProcessor = streamProcessorFactory.newParquetStreamProcessor(recordMapProcessor);
 
-        Path tempDir = null;
-        try {
-            tempDir = Files.createTempDirectory("temp");
-        } catch (IOException e) {
-            throw new RuntimeException(e);
+        // The file is only staged once the result is subscribed to, and is deleted however the result terminates
+        if (!PseudoMediaTypes.isParquet(targetContentType)) {
+            final MediaType resultContentType = validTargetContentType(targetContentType);
+            log.info("{} Parquet file, target content type: {}", operation, resultContentType);
+            Flowable<String> res = Flowable.using(() -> stagedParquetFile(data),
+                            sourceFile -> {
+                                final LocalInputFile inputFile = new LocalInputFile(sourceFile);
+                                return streamProcessor.init(inputFile)
+                                        .doOnComplete(() -> log.info("Preprocessing took {}", stopwatch.elapsed()))
+                                        .andThen(withCompletionSignals(streamProcessor.process(inputFile,
+                                                        serializerOf(resultContentType)),
+                                                operation, metadataProcessor, stopwatch, processedRecords));
+                            },
+                            PseudoController::deleteTempFile)
+                    .subscribeOn(Schedulers.io());
+            return new ProcessFileResult(resultContentType, serializeResult(resultContentType, res, metadata, logs,
+                    metrics));
         }
-        File tempFile = tempDir.resolve(data.getFilename()).toFile();
-        log.debug("Receive file - stored temporarily at " + tempFile.getAbsolutePath());
-        return Single.fromPublisher(data.transferTo(tempFile))
-                .map(success -> {
-                    if (Boolean.TRUE.equals(success)) {
-                        return tempFile;
+
+        log.info("{} Parquet file, target content type: {}", operation, PseudoMediaTypes.APPLICATION_PARQUET);
+        Flowable<byte[]> res = Flowable.using(() -> stagedParquetFile(data),
+                        sourceFile -> Flowable.using(() -> Files.createTempFile("pseudo-", ".parquet"),
+                                targetFile -> Completable.fromAction(() -> streamProcessor.rewrite(
+                                                new LocalInputFile(sourceFile), new LocalOutputFile(targetFile), () -> {
+                                                    metadataProcessor.onCompleteAll();
+                                                    return String.join("", PseudoResponseSerializer
+                                                            .serializeMetadataObject(metadata, logs, metrics)
+                                                            .toList().blockingGet());
+                                                }, processedRecords))
+                                        .doOnComplete(() -> log.info("{} took {}", operation,
+                                                stopwatch.stop().elapsed()))
+                                        .doOnError(throwable -> {
+                                            log.error("Response failed", throwable);
+                                            metadataProcessor.onErrorAll(throwable);
+                                        })
+                                        .andThen(chunksOf(targetFile)),
+                                PseudoController::deleteTempFile),
+                        PseudoController::deleteTempFile)
+                .subscribeOn(Schedulers.io());
+        ProcessFileResult result = new ProcessFileResult(PseudoMediaTypes.APPLICATION_PARQUET_TYPE, Flowable.empty());
+        result.setBinaryResponse(res);
+        return result;
+    }
+
+    private static Path stagedParquetFile(PseudoFileInput data) {
+        final Path file = data.toFile().toPath();
+        log.info("Received Parquet file ({})", HumanReadableBytes.fromBin(file.toFile().length()));
+        return file;
+    }
+
+    private static Flowable<byte[]> chunksOf(Path file) {
+        return Flowable.generate(() -> Files.newInputStream(file),
+                (is, emitter) -> {
+                    byte[] chunk = is.readNBytes(ChunkedResponseWriter.DEFAULT_CHUNK_SIZE);
+                    if (chunk.length == 0) {
+                        emitter.onComplete();
                     } else {
-                        throw new RuntimeException("Error receiving file " + tempFile);
+                        emitter.onNext(chunk);
                     }
+                },
+                InputStream::close);
+    }
+
+    private static void deleteTempFile(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            log.warn("Error cleaning up", e);
+        }
+    }
+
+    private Flowable<String> withCompletionSignals(Flowable<String> res, PseudoOperation operation,
+                                                   PseudoMetadataProcessor metadataProcessor, Stopwatch stopwatch,
+                                                   LongAdder processedRecords) {
+        return res.doOnSubscribe((subscription) -> log.info("Start processing..."))
+                .doOnNext(record -> processedRecords.increment())
+                .doOnError(throwable -> {
+                    log.error("Response failed", throwable);
+                    metadataProcessor.onErrorAll(throwable);
+                })
+                .doOnComplete(() -> {
+                    log.info("{} took {}", operation, stopwatch.stop().elapsed());
+                    // Signal the metadataProcessor to stop collecting metadata
+                    metadataProcessor.onCompleteAll();
                 });
     }
 
+    private static boolean isParquet(PseudoFileInput data) {
+        return data.getContentType().filter(PseudoMediaTypes::isParquet).isPresent()
+                || data.getFilename().toLowerCase(Locale.ROOT).endsWith(".parquet");
+    }
+
+    private static boolean isNdjson(PseudoFileInput data) {
+        final String filename = data.getFilename().toLowerCase(Locale.ROOT);
+        return data.getContentType().filter(PseudoMediaTypes::isNdjson).isPresent()
+                || filename.endsWith(".ndjson") || filename.endsWith(".jsonl");
+    }
+
+    /**
+     * Uploads can be processed directly from the request body if the upload is a plain (not zipped) JSON, NDJSON or
+     * CSV file, and the record processor does not need a separate preprocessing pass (e.g. for SID mapping).
+     * Otherwise, the upload must be stored temporarily so that it can be read more than once.
+     *
+     * @return the content type of the upload if it is a plain JSON, NDJSON or CSV file, or null otherwise
+     */
+    private static MediaType streamingMediaTypeOf(PseudoFileInput data) {
+        if (isNdjson(data)) {
+            return PseudoMediaTypes.APPLICATION_NDJSON_TYPE;
+        }
+        MediaType mediaType = data.getContentType()
+                .filter(PseudoController::isStreamable)
+                .orElseGet(() -> MediaType.forFilename(data.getFilename()));
+        return isStreamable(mediaType) ? mediaType : null;
+    }
+
+    private static boolean isStreamable(MediaType mediaType) {
+        return MediaType.APPLICATION_JSON.equals(mediaType.getName())
+                || MoreMediaTypes.TEXT_CSV.equals(mediaType.getName())
+                || PseudoMediaTypes.isNdjson(mediaType);
+    }
+
+    private Completable preprocessStream(InputStream is, StreamProcessor streamProcessor) {
+        return streamProcessor.init(is);
+    }
+    private Flowable<String> processStream(InputStream is, StreamProcessor streamProcessor, MediaType targetContentType) {
+        return streamProcessor.process(is, serializerOf(targetContentType));
+    }
+
+    private static MediaType validTargetContentType(MediaType targetContentType) {
+        return PseudoMediaTypes.isNdjson(targetContentType)
+                ? targetContentType
+                : MoreMediaTypes.validContentType(targetContentType);
+    }
+
+    private static RecordMapSerializer<String> serializerOf(MediaType targetContentType) {
+        return PseudoMediaTypes.isNdjson(targetContentType)
+                ? NdjsonStreamProcessor.serializer()
+                : RecordMapSerializerFactory.newFromMediaType(targetContentType);
+    }
+
+    /**
+     * NDJSON results are streamed with one record per line, followed by a line with the metadata. Other results are
+     * wrapped in a JSON object.
+     */
+    private static Flowable<String> serializeResult(MediaType targetContentType, Flowable<String> data,
+                                                    Flowable<String> metadata, Flowable<String> logs,
+                                                    Flowable<String> metrics) {
+        return PseudoMediaTypes.isNdjson(targetContentType)
+                ? PseudoResponseSerializer.serializeLines(data, metadata, logs, metrics)
+                : PseudoResponseSerializer.serialize(data, metadata, logs, metrics);
+    }
+
     @Data
     public static class PseudoRequest {
 
@@ -392,7 +1169,8 @@ public class PseudoController {
          * The content type of the resulting file.
          */
         @Schema(implementation = String.class, allowableValues = {
-                MediaType.APPLICATION_JSON, MoreMediaTypes.TEXT_CSV})
+                MediaType.APPLICATION_JSON, MoreMediaTypes.TEXT_CSV, PseudoMediaTypes.APPLICATION_NDJSON,
+                PseudoMediaTypes.APPLICATION_PARQUET})
         private MediaType targetContentType;
 
         /**
@@ -418,7 +1196,8 @@ public class PseudoController {
          * The content type of the resulting file.
          */
         @Schema(implementation = String.class, allowableValues = {
-                MediaType.APPLICATION_JSON, MoreMediaTypes.TEXT_CSV})
+                MediaType.APPLICATION_JSON, MoreMediaTypes.TEXT_CSV, PseudoMediaTypes.APPLICATION_NDJSON,
+                PseudoMediaTypes.APPLICATION_PARQUET})
         private MediaType targetContentType;
 
         /**
@@ -427,6 +1206,73 @@ public class PseudoController {
         private TargetCompression compression;
     }
 
+    @Data
+    public static class PseudoObjectRequest {
+
+        /**
+         * The pseudonymization config to apply
+         */
+        private PseudoConfig pseudoConfig;
+
+        /**
+         * The content type of the resulting object.
+         */
+        @Schema(implementation = String.class, allowableValues = {
+                MediaType.APPLICATION_JSON, MoreMediaTypes.TEXT_CSV, PseudoMediaTypes.APPLICATION_NDJSON,
+                PseudoMediaTypes.APPLICATION_PARQUET})
+        private MediaType targetContentType;
+
+        /**
+         * The path of the object to process, relative to the directory of the user
+         * (<code>users/&lt;name&gt;/</code>) in the object storage of the service
+         */
+        @NotBlank
+        private String sourcePath;
+
+        /**
+         * The path of the object to write the result to, relative to the directory of the user
+         * (<code>users/&lt;name&gt;/</code>) in the object storage of the service
+         */
+        @NotBlank
+        private String targetPath;
+    }
+
+    @Data
+    public static class RepseudoObjectRequest {
+
+        /**
+         * The source pseudonymization config
+         */
+        private PseudoConfig sourcePseudoConfig;
+
+        /**
+         * The target pseudonymization config
+         */
+        private PseudoConfig targetPseudoConfig;
+
+        /**
+         * The content type of the resulting object.
+         */
+        @Schema(implementation = String.class, allowableValues = {
+                MediaType.APPLICATION_JSON, MoreMediaTypes.TEXT_CSV, PseudoMediaTypes.APPLICATION_NDJSON,
+                PseudoMediaTypes.APPLICATION_PARQUET})
+        private MediaType targetContentType;
+
+        /**
+         * The path of the object to process, relative to the directory of the user
+         * (<code>users/&lt;name&gt;/</code>) in the object storage of the service
+         */
+        @NotBlank
+        private String sourcePath;
+
+        /**
+         * The path of the object to write the result to, relative to the directory of the user
+         * (<code>users/&lt;name&gt;/</code>) in the object storage of the service
+         */
+        @NotBlank
+        private String targetPath;
+    }
+
     @Data
     public static class PseudoFieldRequest {
 
@@ -468,24 +1314,78 @@ public class PseudoController {
         private List<String> values;
     }
 
+    @Data
+    public static class PseudoFieldsRequest {
+
+        /**
+         * The fields (columns) to pseudonymize
+         */
+        private List<PseudoFieldRequest> fields = new ArrayList<>();
+    }
+
+    @Data
+    public static class DepseudoFieldsRequest {
+
+        /**
+         * The fields (columns) to depseudonymize
+         */
+        private List<DepseudoFieldRequest> fields = new ArrayList<>();
+    }
+
+    @Data
+    public static class RepseudoFieldsRequest {
+
+        /**
+         * The fields (columns) to repseudonymize
+         */
+        private List<RepseudoFieldRequest> fields = new ArrayList<>();
+    }
+
     @Data
     public static class ProcessFileResult {
         @Schema(implementation = String.class)
         private final MediaType targetContentType;
 
         private final Flowable<String> response;
+
+        /**
+         * Set if the result is a binary file (i.e. Parquet), in which case the response is not used
+         */
+        private Flowable<byte[]> binaryResponse;
+
+        /**
+         * @return the (uncompressed) result as chunks of bytes, whether the result is binary or not
+         */
+        public Flowable<byte[]> chunks() {
+            return binaryResponse != null ? binaryResponse : ChunkedResponseWriter.write(response);
+        }
     }
 
     @Data
     public static class TargetCompression {
 
+        public static final int MIN_PASSWORD_LENGTH = 9;
+
         /**
          * The password on the resulting archive
          */
-        @NotBlank
-        @Schema(implementation = String.class)
-        @Min(9)
+        @NotNull
+        @Schema(implementation = String.class, minLength = MIN_PASSWORD_LENGTH)
+        @Size(min = MIN_PASSWORD_LENGTH)
         private char[] password;
+
+        /**
+         * The request is parsed without bean validation, so check the password before any data is processed. A
+         * missing password must never result in an unencrypted archive.
+         */
+        static TargetCompression validated(TargetCompression compression) {
+            if (compression != null && (compression.password == null
+                    || compression.password.length < MIN_PASSWORD_LENGTH)) {
+                throw new IllegalArgumentException(String.format(
+                        "The compression password must be at least %d characters", MIN_PASSWORD_LENGTH));
+            }
+            return compression;
+        }
     }
 
     @Error
@@ -10,16 +10,12 @@ import lombok.extern.slf4j.Slf4j;
 import no.ssb.dlp.pseudo.core.PseudoOperation;
 import no.ssb.dlp.pseudo.core.field.FieldDescriptor;
 import no.ssb.dlp.pseudo.core.func.PseudoFuncRule;
-import no.ssb.dlp.pseudo.core.map.RecordMapProcessor;
 import no.ssb.dlp.pseudo.core.tink.model.EncryptedKeysetWrapper;
 import no.ssb.dlp.pseudo.core.util.Json;
 import no.ssb.dlp.pseudo.service.pseudo.metadata.FieldMetric;
 import no.ssb.dlp.pseudo.service.pseudo.metadata.PseudoMetadataProcessor;
 
 import java.util.List;
-import java.util.Map;
-import java.util.Objects;
-import java.util.Optional;
 
 /**
  * Represents a field to be pseudonymized.
@@ -88,7 +84,7 @@ public class PseudoField {
         Stopwatch stopwatch = Stopwatch.createStarted();
         List<PseudoConfig> pseudoConfigs = pseudoConfigSplitter.splitIfNecessary(this.getPseudoConfig());
 
-        RecordMapProcessor<PseudoMetadataProcessor> recordMapProcessor;
+        PseudoRecordMapProcessor recordMapProcessor;
         switch (pseudoOperation){
             case PSEUDONYMIZE -> recordMapProcessor = recordProcessorFactory.
                     newPseudonymizeRecordProcessor(pseudoConfigs, correlationId);
@@ -97,17 +93,13 @@ public class PseudoField {
             default -> throw new RuntimeException(
                     String.format("Pseudo operation \"%s\" not supported for this method", pseudoOperation));
         }
-        Completable preprocessor = getPreprocessor(values, recordMapProcessor);
         // Metadata will be processes in parallel with the data, but must be collected separately
         final PseudoMetadataProcessor metadataProcessor = recordMapProcessor.getMetadataProcessor();
         final Flowable<String> metadata = Flowable.fromPublisher(metadataProcessor.getMetadata());
         final Flowable<String> logs = Flowable.fromPublisher(metadataProcessor.getLogs());
         final Flowable<String> metrics = Flowable.fromPublisher(metadataProcessor.getMetrics());
 
-        Flowable<String> result = preprocessor.andThen(Flowable.fromIterable(values.stream()
-                        .map(v -> mapOptional(v, recordMapProcessor, metadataProcessor)).toList()
-                ))
-                .map(v -> v.map(Json::from).orElse("null"))
+        Flowable<String> result = processValues(values, recordMapProcessor)
                 .doOnError(throwable -> {
                     log.error("Response failed", throwable);
                     recordMapProcessor.getMetadataProcessor().onErrorAll(throwable);
@@ -134,19 +126,15 @@ public class PseudoField {
                                           String correlationId) {
         Stopwatch stopwatch = Stopwatch.createStarted();
         PseudoConfig targetPseudoConfig = targetPseudoField.getPseudoConfig();
-        RecordMapProcessor<PseudoMetadataProcessor> recordMapProcessor = recordProcessorFactory.
+        PseudoRecordMapProcessor recordMapProcessor = recordProcessorFactory.
                 newRepseudonymizeRecordProcessor(this.getPseudoConfig(), targetPseudoConfig, correlationId);
-        Completable preprocessor = getPreprocessor(values, recordMapProcessor);
         // Metadata will be processes in parallel with the data, but must be collected separately
         final PseudoMetadataProcessor metadataProcessor = recordMapProcessor.getMetadataProcessor();
         final Flowable<String> metadata = Flowable.fromPublisher(metadataProcessor.getMetadata());
         final Flowable<String> logs = Flowable.fromPublisher(metadataProcessor.getLogs());
         final Flowable<String> metrics = Flowable.fromPublisher(metadataProcessor.getMetrics());
 
-        Flowable<String> result = preprocessor.andThen(Flowable.fromIterable(values.stream()
-                        .map(v -> mapOptional(v, recordMapProcessor, metadataProcessor)).toList()
-                ))
-                .map(v -> v.map(Json::from).orElse("null"))
+        Flowable<String> result = processValues(values, recordMapProcessor)
                 .doOnError(throwable -> {
                     log.error("Response failed", throwable);
                     metadataProcessor.onErrorAll(throwable);
@@ -159,25 +147,73 @@ public class PseudoField {
         return PseudoResponseSerializer.serialize(result, metadata, logs, metrics);
     }
 
-    private Optional<Object> mapOptional(String v, RecordMapProcessor<PseudoMetadataProcessor> recordMapProcessor,
-                                         PseudoMetadataProcessor metadataProcessor) {
-        if (v == null) {
-            metadataProcessor.addMetric(FieldMetric.NULL_VALUE);
-            return Optional.empty();
-        } else {
-            return Optional.ofNullable(recordMapProcessor.process(Map.of(this.getName(), v)).get(this.getName()));
+    /**
+     * Creates a Flowable that preprocesses (if necessary) and then processes each value of the field.
+     *
+     * <p>Nothing is processed at assembly time. Values are transformed one by one as they are requested downstream,
+     * so only the values that have not yet been written to the response are held in memory (besides the input).</p>
+     *
+     * @param values             The values to be processed.
+     * @param recordMapProcessor The record processor that applies the pseudo rules.
+     * @return A Flowable of the processed values, each in JSON format.
+     */
+    protected Flowable<String> processValues(List<String> values, PseudoRecordMapProcessor recordMapProcessor) {
+        return getPreprocessor(values, recordMapProcessor).andThen(transformValues(values, recordMapProcessor));
+    }
+
+    /**
+     * Creates a Flowable that lazily processes each value of the field, without preprocessing. Values are passed to
+     * the interceptor chain one by one, without wrapping each value in a record.
+     *
+     * @param values             The values to be processed.
+     * @param recordMapProcessor The record processor that applies the pseudo rules.
+     * @return A Flowable of the processed values, each in JSON format.
+     */
+    protected Flowable<String> transformValues(List<String> values, PseudoRecordMapProcessor recordMapProcessor) {
+        final FieldDescriptor field = fieldDescriptor();
+        return Flowable.range(0, values.size())
+                // Values may be null, which Flowable does not allow as elements, so iterate by index
+                .map(i -> {
+                    String processed = transformValue(field, values.get(i), recordMapProcessor);
+                    return processed == null ? "null" : Json.from(processed);
+                });
+    }
+
+    /**
+     * Process a single value of a field, without preprocessing.
+     *
+     * @param field              The descriptor of the field.
+     * @param value              The value to be processed, may be null.
+     * @param recordMapProcessor The record processor that applies the pseudo rules.
+     * @return The processed value, or null if the value is null.
+     */
+    static String transformValue(FieldDescriptor field, String value, PseudoRecordMapProcessor recordMapProcessor) {
+        if (value == null) {
+            recordMapProcessor.getMetadataProcessor().addMetric(FieldMetric.NULL_VALUE);
+            return null;
         }
+        return recordMapProcessor.processValue(field, value);
     }
 
-    protected Completable getPreprocessor(List<String> values, RecordMapProcessor<PseudoMetadataProcessor> recordMapProcessor) {
+    protected Completable getPreprocessor(List<String> values, PseudoRecordMapProcessor recordMapProcessor) {
         if (recordMapProcessor.hasPreprocessors()) {
-            return Completable.fromPublisher(Flowable.fromIterable(values.stream()
-                    .filter(Objects::nonNull)
-                    .map(v -> recordMapProcessor.init(Map.of(this.getName(), v)))
-                    .toList())
-            );
+            final FieldDescriptor field = fieldDescriptor();
+            return Completable.fromAction(() -> {
+                for (String v : values) {
+                    if (v != null) {
+                        recordMapProcessor.initValue(field, v);
+                    }
+                }
+            });
         } else {
             return Completable.complete();
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * @return the descriptor of this field, as seen by the interceptor chain when traversing a record
+     */
+    FieldDescriptor fieldDescriptor() {
+        return new FieldDescriptor("/" + this.getName());
+    }
+}
@@ -0,0 +1,150 @@
+package no.ssb.dlp.pseudo.service.pseudo;
+
+import com.google.common.base.Stopwatch;
+import io.reactivex.Flowable;
+import lombok.extern.slf4j.Slf4j;
+import no.ssb.dlp.pseudo.core.PseudoOperation;
+import no.ssb.dlp.pseudo.core.util.Json;
+import no.ssb.dlp.pseudo.service.pseudo.metadata.PseudoMetadataProcessor;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+
+/**
+ * Processes the values of a single field that are streamed as newline delimited JSON (NDJSON).
+ *
+ * <p>The first line of the stream is a header with the name and pseudo config of the field, i.e. the same JSON object
+ * as for the corresponding JSON field request, but without values. Each of the following lines holds a single value,
+ * as a JSON string or <code>null</code>.</p>
+ *
+ * <p>The response is also NDJSON: one line per processed value, in the same order as the input, followed by a last
+ * line with a JSON object holding the <code>datadoc_metadata</code>, <code>metrics</code> and <code>logs</code>.</p>
+ *
+ * <p>Values are read, processed and written in windows of up to {@link #WINDOW_SIZE} values, so a request of any size
+ * is processed in constant memory. A window is also cut after at most {@link #WINDOW_TIMESPAN_MILLIS} milliseconds, so
+ * that the values of a slow stream are not held back until a full window has been received.</p>
+ */
+@Slf4j
+public class PseudoFieldStream {
+
+    static final int WINDOW_SIZE = 1000;
+    static final long WINDOW_TIMESPAN_MILLIS = 100;
+
+    private PseudoFieldStream() {}
+
+    /**
+     * The field described by the header line of a stream.
+     *
+     * @param field       the field (name and pseudo config) of the values
+     * @param targetField the field with the target pseudo config if repseudonymizing, otherwise null
+     */
+    public record Header(PseudoField field, PseudoField targetField) {}
+
+    /**
+     * Split a stream of bytes into lines. Empty lines are skipped, and carriage returns preceding a line break are
+     * removed. Only the bytes of the current (incomplete) line are retained between chunks.
+     *
+     * @param chunks the UTF-8 encoded stream
+     * @return a Flowable of lines
+     */
+    public static Flowable<String> lines(Flowable<byte[]> chunks) {
+        return Flowable.defer(() -> {
+            final ByteArrayOutputStream partialLine = new ByteArrayOutputStream();
+            return chunks.concatMapIterable(chunk -> {
+                        List<String> lines = new ArrayList<>();
+                        int start = 0;
+                        for (int i = 0; i < chunk.length; i++) {
+                            // A line feed byte is never part of a multibyte UTF-8 character
+                            if (chunk[i] == '\n') {
+                                partialLine.write(chunk, start, i - start);
+                                lines.add(partialLine.toString(StandardCharsets.UTF_8));
+                                partialLine.reset();
+                                start = i + 1;
+                            }
+                        }
+                        partialLine.write(chunk, start, chunk.length - start);
+                        return lines;
+                    })
+                    .concatWith(Flowable.defer(() -> partialLine.size() == 0
+                            ? Flowable.empty()
+                            : Flowable.just(partialLine.toString(StandardCharsets.UTF_8))))
+                    .map(line -> line.endsWith("\r") ? line.substring(0, line.length() - 1) : line)
+                    .filter(line -> !line.isBlank());
+        });
+    }
+
+    /**
+     * Creates a Flowable that processes the values of a NDJSON stream.
+     *
+     * @param lines                  The lines of the stream, starting with the header line.
+     * @param headerParser           Parses the header line.
+     * @param pseudoConfigSplitter   The PseudoConfigSplitter instance to use for splitting pseudo configurations.
+     * @param recordProcessorFactory The RecordMapProcessorFactory instance to use for creating the record processor.
+     * @param pseudoOperation        The operation to apply to the values.
+     * @param correlationId          The correlation id of the request.
+     * @return A Flowable stream of the NDJSON response.
+     */
+    public static Flowable<String> process(Flowable<String> lines,
+                                           Function<String, Header> headerParser,
+                                           PseudoConfigSplitter pseudoConfigSplitter,
+                                           RecordMapProcessorFactory recordProcessorFactory,
+                                           PseudoOperation pseudoOperation,
+                                           String correlationId) {
+        return Flowable.defer(() -> {
+            final Stopwatch stopwatch = Stopwatch.createStarted();
+            // Metadata will be processes in parallel with the data, but must be collected separately
+            final PseudoMetadataProcessor metadataProcessor = new PseudoMetadataProcessor(correlationId);
+            final Flowable<String> metadata = Flowable.fromPublisher(metadataProcessor.getMetadata());
+            final Flowable<String> logs = Flowable.fromPublisher(metadataProcessor.getLogs());
+            final Flowable<String> metrics = Flowable.fromPublisher(metadataProcessor.getMetrics());
+            final AtomicReference<Header> header = new AtomicReference<>();
+            final AtomicReference<PseudoRecordMapProcessor> recordMapProcessor = new AtomicReference<>();
+            final AtomicLong valueCount = new AtomicLong();
+
+            Flowable<String> result = lines.window(WINDOW_SIZE)
+                    // Each count window is split further in time, so the time bound only ever buffers the lines of
+                    // a single count window, and the lines are still read with backpressure
+                    .concatMap(lineWindow -> lineWindow
+                            .buffer(WINDOW_TIMESPAN_MILLIS, TimeUnit.MILLISECONDS, WINDOW_SIZE)
+                            .filter(window -> !window.isEmpty())
+                            .onBackpressureBuffer())
+                    .concatMap(window -> {
+                        List<String> values = new ArrayList<>(window.size());
+                        for (String line : window) {
+                            if (header.get() == null) {
+                                header.set(headerParser.apply(line));
+                                recordMapProcessor.set(PseudoFields.newRecordMapProcessor(header.get().field(),
+                                        header.get().targetField(), pseudoConfigSplitter, recordProcessorFactory,
+                                        pseudoOperation, metadataProcessor));
+                            } else {
+                                values.add(Json.toObject(String.class, line));
+                            }
+                        }
+                        valueCount.addAndGet(values.size());
+                        // Preprocessing (such as SID lookups) is done per window
+                        return header.get().field().processValues(values, recordMapProcessor.get());
+                    })
+                    .concatWith(Flowable.defer(() -> header.get() == null
+                            ? Flowable.error(new IllegalArgumentException("Missing header line"))
+                            : Flowable.empty()))
+                    .doOnError(throwable -> {
+                        log.error("Response failed", throwable);
+                        metadataProcessor.onErrorAll(throwable);
+                    })
+                    .doOnComplete(() -> {
+                        log.info("{} of {} streamed values took {}", pseudoOperation, valueCount.get(),
+                                stopwatch.stop().elapsed());
+                        // Signal the metadataProcessor to stop collecting metadata
+                        metadataProcessor.onCompleteAll();
+                    });
+
+            return PseudoResponseSerializer.serializeLines(result, metadata, logs, metrics);
+        });
+    }
+}
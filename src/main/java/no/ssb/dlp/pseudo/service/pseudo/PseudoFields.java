@@ -0,0 +1,159 @@
+package no.ssb.dlp.pseudo.service.pseudo;
+
+import com.google.common.base.Stopwatch;
+import io.reactivex.Flowable;
+import io.reactivex.Scheduler;
+import lombok.extern.slf4j.Slf4j;
+import no.ssb.dlp.pseudo.core.PseudoOperation;
+import no.ssb.dlp.pseudo.service.pseudo.metadata.PseudoMetadataProcessor;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Represents multiple fields (columns) to be processed in a single request.
+ *
+ * <p>All columns share one metadata processor, so the response contains a single <code>datadoc_metadata</code>
+ * section. The response is columnar, i.e. the data is a JSON object with one array of values per column.</p>
+ *
+ * <p>Values are processed lazily, as the response is written. Up to <code>maxConcurrency</code> columns are processed
+ * in parallel, and so are the batches of values within each column. The columns are still written in order, and the
+ * number of processed values waiting to be written is bounded per column.</p>
+ */
+@Slf4j
+public class PseudoFields {
+
+    private static final int BATCH_SIZE = 1000;
+
+    private final List<Column> columns = new ArrayList<>();
+    private final Set<String> names = new HashSet<>();
+
+    /**
+     * Add a column to be pseudonymized or depseudonymized.
+     *
+     * @param field  the field (name and pseudo config) of the column
+     * @param values the values of the column
+     * @return this
+     */
+    public PseudoFields add(PseudoField field, List<String> values) {
+        return add(new Column(field, null, values));
+    }
+
+    /**
+     * Add a column to be repseudonymized.
+     *
+     * @param sourceField the field with the pseudo config that the values are currently pseudonymized with
+     * @param targetField the field with the pseudo config to repseudonymize the values with
+     * @param values      the values of the column
+     * @return this
+     */
+    public PseudoFields add(PseudoField sourceField, PseudoField targetField, List<String> values) {
+        return add(new Column(sourceField, targetField, values));
+    }
+
+    private PseudoFields add(Column column) {
+        if (!names.add(column.field().getName())) {
+            throw new IllegalArgumentException(String.format("Duplicate field name '%s'", column.field().getName()));
+        }
+        columns.add(column);
+        return this;
+    }
+
+    /**
+     * Creates a Flowable that processes all columns by applying the pseudo rules of each column.
+     *
+     * @param pseudoConfigSplitter   The PseudoConfigSplitter instance to use for splitting pseudo configurations.
+     * @param recordProcessorFactory The RecordMapProcessorFactory instance to use for creating record processors.
+     * @param pseudoOperation        The operation to apply to all columns.
+     * @param correlationId          The correlation id of the request.
+     * @param scheduler              The scheduler to process the columns on.
+     * @param maxConcurrency         The max number of columns, and of batches within a column, to process in
+     *                               parallel.
+     * @return A Flowable stream of the columnar JSON response.
+     */
+    public Flowable<String> process(PseudoConfigSplitter pseudoConfigSplitter,
+                                    RecordMapProcessorFactory recordProcessorFactory,
+                                    PseudoOperation pseudoOperation,
+                                    String correlationId,
+                                    Scheduler scheduler,
+                                    int maxConcurrency) {
+        Stopwatch stopwatch = Stopwatch.createStarted();
+        // Metadata will be processes in parallel with the data, but must be collected separately
+        final PseudoMetadataProcessor metadataProcessor = new PseudoMetadataProcessor(correlationId);
+        final Flowable<String> metadata = Flowable.fromPublisher(metadataProcessor.getMetadata());
+        final Flowable<String> logs = Flowable.fromPublisher(metadataProcessor.getLogs());
+        final Flowable<String> metrics = Flowable.fromPublisher(metadataProcessor.getMetrics());
+
+        // Create the record processors up front, so that invalid configs fail the request before any data is sent
+        final List<PseudoRecordMapProcessor> recordMapProcessors = columns.stream()
+                .map(column -> newRecordMapProcessor(column.field(), column.targetField(), pseudoConfigSplitter,
+                        recordProcessorFactory, pseudoOperation, metadataProcessor))
+                .toList();
+
+        // Columns are serialized one after the other, but the serializer subscribes to the next columns eagerly,
+        // so they are processed in parallel while the current column is written. Each column only runs ahead by a
+        // batch of values until it is written
+        final Flowable<Map.Entry<String, Flowable<String>>> processedColumns = Flowable.range(0, columns.size())
+                .map(i -> Map.entry(columns.get(i).field().getName(),
+                        processColumn(columns.get(i), recordMapProcessors.get(i), scheduler, maxConcurrency)));
+        // Signal completion on the serialized columns, which only complete once the values of every column are
+        // processed. The columns themselves complete as soon as the last column has been emitted
+        Flowable<String> result = PseudoResponseSerializer.columnData(processedColumns, maxConcurrency, BATCH_SIZE)
+                .doOnError(throwable -> {
+                    log.error("Response failed", throwable);
+                    metadataProcessor.onErrorAll(throwable);
+                })
+                .doOnComplete(() -> {
+                    log.info("{} of {} fields took {}", pseudoOperation, columns.size(), stopwatch.stop().elapsed());
+                    // Signal the metadataProcessor to stop collecting metadata
+                    metadataProcessor.onCompleteAll();
+                });
+
+        return PseudoResponseSerializer.serializeColumnData(result, metadata, logs, metrics);
+    }
+
+    /**
+     * Process the values of a column in batches, with up to <code>maxConcurrency</code> batches being processed in
+     * parallel. Batches are only processed when requested downstream, and the number of processed values waiting to
+     * be written is bounded by <code>maxConcurrency * BATCH_SIZE</code>.
+     */
+    private static Flowable<String> processColumn(Column column, PseudoRecordMapProcessor recordMapProcessor,
+                                                  Scheduler scheduler, int maxConcurrency) {
+        final List<String> values = column.values();
+        final int batchCount = (values.size() + BATCH_SIZE - 1) / BATCH_SIZE;
+        return column.field().getPreprocessor(values, recordMapProcessor)
+                .subscribeOn(scheduler)
+                .andThen(Flowable.range(0, batchCount)
+                        .concatMapEager(batch -> column.field()
+                                .transformValues(values.subList(batch * BATCH_SIZE,
+                                        Math.min(values.size(), (batch + 1) * BATCH_SIZE)), recordMapProcessor)
+                                .subscribeOn(scheduler), maxConcurrency, BATCH_SIZE));
+    }
+
+    /**
+     * Create a record processor for a field, sharing the given metadata processor.
+     *
+     * @param field       the field (name and pseudo config)
+     * @param targetField the field with the target pseudo config if repseudonymizing, otherwise ignored
+     */
+    static PseudoRecordMapProcessor newRecordMapProcessor(
+            PseudoField field, PseudoField targetField, PseudoConfigSplitter pseudoConfigSplitter,
+            RecordMapProcessorFactory recordProcessorFactory, PseudoOperation pseudoOperation,
+            PseudoMetadataProcessor metadataProcessor) {
+        return switch (pseudoOperation) {
+            case PSEUDONYMIZE -> recordProcessorFactory.newPseudonymizeRecordProcessor(
+                    pseudoConfigSplitter.splitIfNecessary(field.getPseudoConfig()), metadataProcessor);
+            case DEPSEUDONYMIZE -> recordProcessorFactory.newDepseudonymizeRecordProcessor(
+                    pseudoConfigSplitter.splitIfNecessary(field.getPseudoConfig()), metadataProcessor);
+            case REPSEUDONYMIZE -> recordProcessorFactory.newRepseudonymizeRecordProcessor(
+                    field.getPseudoConfig(), targetField.getPseudoConfig(), metadataProcessor);
+            default -> throw new RuntimeException(
+                    String.format("Pseudo operation \"%s\" not supported for this method", pseudoOperation));
+        };
+    }
+
+    private record Column(PseudoField field, PseudoField targetField, List<String> values) {}
+}
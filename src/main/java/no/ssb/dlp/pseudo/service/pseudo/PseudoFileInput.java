@@ -0,0 +1,136 @@
+package no.ssb.dlp.pseudo.service.pseudo;
+
+import io.micronaut.http.MediaType;
+import io.micronaut.http.multipart.StreamingFileUpload;
+import io.reactivex.Single;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+
+/**
+ * A file to be processed, either uploaded with the request or already stored locally (e.g. spooled by a pseudo job).
+ */
+public interface PseudoFileInput {
+
+    String getFilename();
+
+    Optional<MediaType> getContentType();
+
+    /**
+     * Read the file contents. An uploaded file can only be read once.
+     */
+    InputStream asInputStream();
+
+    /**
+     * Store the file contents in a local file, so that it can be read more than once. The caller is responsible for
+     * deleting the file when done.
+     */
+    File toFile();
+
+    /**
+     * Create an empty temp file for the contents of a file. The filename is kept as the suffix, since the content type
+     * may be derived from its extension. Deleting the temp file leaves nothing else behind.
+     */
+    static Path tempFileFor(String filename) throws IOException {
+        return Files.createTempFile("pseudo-", "-" + Path.of(filename).getFileName());
+    }
+
+    static PseudoFileInput of(StreamingFileUpload upload) {
+        return new Upload(upload);
+    }
+
+    /**
+     * @param file        the local file. Since {@link #toFile()} returns the file itself, it may be deleted once
+     *                    processed
+     * @param filename    the original filename
+     * @param contentType the content type of the file, if known
+     */
+    static PseudoFileInput of(Path file, String filename, MediaType contentType) {
+        return new LocalFile(file, filename, contentType);
+    }
+
+    @Slf4j
+    final class Upload implements PseudoFileInput {
+        private final StreamingFileUpload upload;
+
+        private Upload(StreamingFileUpload upload) {
+            this.upload = upload;
+        }
+
+        @Override
+        public String getFilename() {
+            return upload.getFilename();
+        }
+
+        @Override
+        public Optional<MediaType> getContentType() {
+            return upload.getContentType();
+        }
+
+        @Override
+        public InputStream asInputStream() {
+            return upload.asInputStream();
+        }
+
+        @Override
+        public File toFile() {
+            final File tempFile;
+            try {
+                tempFile = tempFileFor(upload.getFilename()).toFile();
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+            log.debug("Receive file - stored temporarily at " + tempFile.getAbsolutePath());
+            // TODO: Rewrite to non-blocking
+            return Single.fromPublisher(upload.transferTo(tempFile))
+                    .map(success -> {
+                        if (Boolean.TRUE.equals(success)) {
+                            return tempFile;
+                        } else {
+                            throw new RuntimeException("Error receiving file " + tempFile);
+                        }
+                    }).blockingGet();
+        }
+    }
+
+    final class LocalFile implements PseudoFileInput {
+        private final Path file;
+        private final String filename;
+        private final MediaType contentType;
+
+        private LocalFile(Path file, String filename, MediaType contentType) {
+            this.file = file;
+            this.filename = filename;
+            this.contentType = contentType;
+        }
+
+        @Override
+        public String getFilename() {
+            return filename;
+        }
+
+        @Override
+        public Optional<MediaType> getContentType() {
+            return Optional.ofNullable(contentType);
+        }
+
+        @Override
+        public InputStream asInputStream() {
+            try {
+                return Files.newInputStream(file);
+            } catch (IOException e) {
+                throw new RuntimeException("Error reading file " + file, e);
+            }
+        }
+
+        @Override
+        public File toFile() {
+            return file.toFile();
+        }
+    }
+}
@@ -0,0 +1,389 @@
+package no.ssb.dlp.pseudo.service.pseudo;
+
+import no.ssb.dlp.pseudo.core.field.FieldDescriptor;
+import no.ssb.dlp.pseudo.core.func.PseudoFuncRule;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Finds the first {@link PseudoFuncRule} (in rule order) whose glob pattern matches a field path.
+ *
+ * <p>The glob patterns of all rules are compiled into one combined automaton, so that the cost of matching a path is
+ * proportional to the length of the path and not to the number of rules. The automaton is a nondeterministic
+ * automaton that is lazily converted to a deterministic one as paths are matched. Each deterministic state knows the
+ * lowest rule index that accepts in that state, which preserves the "first matching rule wins" semantics.</p>
+ *
+ * <p>The automaton mimics the glob syntax of {@link java.nio.file.FileSystem#getPathMatcher(String)}. Patterns using
+ * constructs that are not supported by the automaton (such as unusual character classes) and paths that are not in
+ * normalized form are matched using {@link FieldDescriptor#globMatches(String)} instead.</p>
+ */
+public class PseudoFuncRuleMatcher {
+
+    /**
+     * Upper bound on the number of deterministic states that are cached. Beyond this, states are computed on the fly.
+     */
+    private static final int MAX_CACHED_STATES = 10_000;
+
+    private final List<PseudoFuncRule> rules;
+    private final List<Node> nodes = new ArrayList<>();
+    private final int[] unsupportedRuleIndexes;
+    private final Map<BitSet, DfaState> states = new HashMap<>();
+    private final DfaState startState;
+
+    public PseudoFuncRuleMatcher(List<PseudoFuncRule> rules) {
+        this.rules = List.copyOf(rules);
+        Node start = newNode(null);
+        List<Integer> unsupported = new ArrayList<>();
+        for (int i = 0; i < this.rules.size(); i++) {
+            Fragment fragment = GlobParser.parse(this.rules.get(i).getPattern(), this);
+            if (fragment == null) {
+                unsupported.add(i);
+            } else {
+                Node accept = newNode(null);
+                accept.accept = i;
+                fragment.end.epsilon.add(accept);
+                start.epsilon.add(fragment.start);
+            }
+        }
+        this.unsupportedRuleIndexes = unsupported.stream().mapToInt(Integer::intValue).toArray();
+        BitSet startNodes = new BitSet();
+        closure(start, startNodes);
+        this.startState = internState(startNodes);
+    }
+
+    /**
+     * Find the index of the first rule that matches a field.
+     *
+     * @param field the field to match
+     * @return index (in the list of rules) of the first matching rule, or -1 if no rule matches the field
+     */
+    public int firstMatch(FieldDescriptor field) {
+        final String path = field.getPath();
+        if (!isNormalized(path)) {
+            return firstGlobMatch(field);
+        }
+
+        int match = -1;
+        DfaState state = startState;
+        for (int i = 0; i < path.length() && !state.isDead(); i++) {
+            state = state.next(path.charAt(i), this);
+        }
+        if (!state.isDead()) {
+            match = state.accept;
+        }
+
+        // Rules that could not be compiled into the automaton take precedence if they appear before the match
+        for (int ruleIndex : unsupportedRuleIndexes) {
+            if (match >= 0 && ruleIndex > match) {
+                break;
+            }
+            if (field.globMatches(rules.get(ruleIndex).getPattern())) {
+                return ruleIndex;
+            }
+        }
+        return match;
+    }
+
+    private int firstGlobMatch(FieldDescriptor field) {
+        for (int i = 0; i < rules.size(); i++) {
+            if (field.globMatches(rules.get(i).getPattern())) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * The path matcher of the default file system matches on the normalized string representation of the path, i.e.
+     * without redundant or trailing slashes. Surrogate pairs are matched as single code points. Such paths are left
+     * to the glob matcher.
+     */
+    private static boolean isNormalized(String path) {
+        if (path.length() > 1 && path.endsWith("/")) {
+            return false;
+        }
+        char previous = 0;
+        for (int i = 0; i < path.length(); i++) {
+            char c = path.charAt(i);
+            if ((c == '/' && previous == '/') || c == 0 || Character.isSurrogate(c)) {
+                return false;
+            }
+            previous = c;
+        }
+        return true;
+    }
+
+    private Node newNode(CharTest test) {
+        Node node = new Node(nodes.size(), test);
+        nodes.add(node);
+        return node;
+    }
+
+    private void closure(Node node, BitSet target) {
+        if (target.get(node.id)) {
+            return;
+        }
+        target.set(node.id);
+        for (Node n : node.epsilon) {
+            closure(n, target);
+        }
+    }
+
+    private synchronized DfaState transition(DfaState from, char c) {
+        DfaState existing = from.cachedNext(c);
+        if (existing != null) {
+            return existing;
+        }
+        BitSet target = new BitSet();
+        for (int id = from.nodes.nextSetBit(0); id >= 0; id = from.nodes.nextSetBit(id + 1)) {
+            Node node = nodes.get(id);
+            if (node.test != null && node.test.matches(c)) {
+                closure(node.next, target);
+            }
+        }
+        DfaState next = internState(target);
+        if (next.cached) {
+            from.cacheNext(c, next);
+        }
+        return next;
+    }
+
+    private DfaState internState(BitSet nodeIds) {
+        DfaState state = states.get(nodeIds);
+        if (state == null) {
+            int accept = -1;
+            for (int id = nodeIds.nextSetBit(0); id >= 0; id = nodeIds.nextSetBit(id + 1)) {
+                int nodeAccept = nodes.get(id).accept;
+                if (nodeAccept >= 0 && (accept < 0 || nodeAccept < accept)) {
+                    accept = nodeAccept;
+                }
+            }
+            boolean cache = states.size() < MAX_CACHED_STATES;
+            state = new DfaState(nodeIds, accept, cache);
+            if (cache) {
+                states.put(nodeIds, state);
+            }
+        }
+        return state;
+    }
+
+    @FunctionalInterface
+    private interface CharTest {
+        boolean matches(char c);
+    }
+
+    private static final class Node {
+        private final int id;
+        // The test a character must pass to move from this node to the next. Null for pure epsilon nodes.
+        private final CharTest test;
+        private final List<Node> epsilon = new ArrayList<>(2);
+        private Node next;
+        // Index of the rule that is matched when reaching this node, or -1 if this is not an accepting node
+        private int accept = -1;
+
+        private Node(int id, CharTest test) {
+            this.id = id;
+            this.test = test;
+        }
+    }
+
+    private record Fragment(Node start, Node end) {}
+
+    private static final class DfaState {
+        private final BitSet nodes;
+        private final int accept;
+        private final boolean cached;
+        private final DfaState[] asciiTransitions = new DfaState[128];
+        private final Map<Character, DfaState> transitions = new ConcurrentHashMap<>();
+
+        private DfaState(BitSet nodes, int accept, boolean cached) {
+            this.nodes = nodes;
+            this.accept = accept;
+            this.cached = cached;
+        }
+
+        private boolean isDead() {
+            return nodes.isEmpty();
+        }
+
+        private DfaState next(char c, PseudoFuncRuleMatcher matcher) {
+            DfaState next = cachedNext(c);
+            return next != null ? next : matcher.transition(this, c);
+        }
+
+        private DfaState cachedNext(char c) {
+            return c < asciiTransitions.length ? asciiTransitions[c] : transitions.get(c);
+        }
+
+        private void cacheNext(char c, DfaState next) {
+            if (c < asciiTransitions.length) {
+                asciiTransitions[c] = next;
+            } else {
+                transitions.put(c, next);
+            }
+        }
+    }
+
+    /**
+     * Translates a glob pattern into an automaton fragment, following the rules of the unix glob syntax of the JDK
+     * (see <code>sun.nio.fs.Globs</code>).
+     */
+    private static final class GlobParser {
+        private static final CharTest ANY_EXCEPT_SEPARATOR = c -> c != '/';
+        // ** translates to the regex .* which does not match line terminators
+        private static final CharTest ANY_EXCEPT_LINE_TERMINATOR = c ->
+                c != '\n' && c != '\r' && c != '\u0085' && c != '\u2028' && c != '\u2029';
+
+        private final String glob;
+        private final PseudoFuncRuleMatcher matcher;
+        private int pos = 0;
+
+        private GlobParser(String glob, PseudoFuncRuleMatcher matcher) {
+            this.glob = glob;
+            this.matcher = matcher;
+        }
+
+        /**
+         * @return the automaton fragment of the glob pattern, or null if the pattern is not supported
+         */
+        static Fragment parse(String glob, PseudoFuncRuleMatcher matcher) {
+            if (glob == null) {
+                return null;
+            }
+            return new GlobParser(glob, matcher).parseSequence(false);
+        }
+
+        private Fragment parseSequence(boolean inGroup) {
+            Node start = matcher.newNode(null);
+            Node end = start;
+            while (pos < glob.length()) {
+                char c = glob.charAt(pos++);
+                final Fragment fragment;
+                switch (c) {
+                    case '\\' -> {
+                        if (pos == glob.length()) {
+                            return null;
+                        }
+                        fragment = literal(glob.charAt(pos++));
+                    }
+                    case '[' -> fragment = characterClass();
+                    case '{' -> fragment = inGroup ? null : group();
+                    case '}', ',' -> {
+                        if (inGroup) {
+                            // Let the enclosing group handle the delimiter
+                            pos--;
+                            return new Fragment(start, end);
+                        }
+                        fragment = literal(c);
+                    }
+                    case '*' -> {
+                        if (pos < glob.length() && glob.charAt(pos) == '*') {
+                            pos++;
+                            fragment = repeat(ANY_EXCEPT_LINE_TERMINATOR);
+                        } else {
+                            fragment = repeat(ANY_EXCEPT_SEPARATOR);
+                        }
+                    }
+                    case '?' -> fragment = single(ANY_EXCEPT_SEPARATOR);
+                    default -> fragment = literal(c);
+                }
+                if (fragment == null) {
+                    return null;
+                }
+                end.epsilon.add(fragment.start);
+                end = fragment.end;
+            }
+            // A group must be closed before the end of the pattern
+            return inGroup ? null : new Fragment(start, end);
+        }
+
+        private Fragment group() {
+            Node start = matcher.newNode(null);
+            Node end = matcher.newNode(null);
+            while (true) {
+                Fragment alternative = parseSequence(true);
+                if (alternative == null || pos >= glob.length()) {
+                    return null;
+                }
+                start.epsilon.add(alternative.start);
+                alternative.end.epsilon.add(end);
+                if (glob.charAt(pos++) == '}') {
+                    return new Fragment(start, end);
+                }
+            }
+        }
+
+        private Fragment characterClass() {
+            boolean negated = false;
+            if (pos < glob.length() && glob.charAt(pos) == '!') {
+                negated = true;
+                pos++;
+            }
+            StringBuilder ranges = new StringBuilder();
+            while (pos < glob.length()) {
+                char lo = glob.charAt(pos++);
+                if (lo == ']') {
+                    if (ranges.isEmpty()) {
+                        return null;
+                    }
+                    final String r = ranges.toString();
+                    final boolean negate = negated;
+                    return single(c -> c != '/' && (inRanges(r, c) != negate));
+                }
+                if (isSpecialInClass(lo)) {
+                    return null;
+                }
+                char hi = lo;
+                if (pos + 1 < glob.length() && glob.charAt(pos) == '-' && glob.charAt(pos + 1) != ']') {
+                    hi = glob.charAt(pos + 1);
+                    if (hi < lo || isSpecialInClass(hi)) {
+                        return null;
+                    }
+                    pos += 2;
+                }
+                ranges.append(lo).append(hi);
+            }
+            // Missing ']'
+            return null;
+        }
+
+        private static boolean isSpecialInClass(char c) {
+            return c == '/' || c == '\\' || c == '[' || c == '&' || c == '-' || c == '^' || Character.isSurrogate(c);
+        }
+
+        private static boolean inRanges(String ranges, char c) {
+            for (int i = 0; i < ranges.length(); i += 2) {
+                if (c >= ranges.charAt(i) && c <= ranges.charAt(i + 1)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private Fragment literal(char literal) {
+            return single(c -> c == literal);
+        }
+
+        private Fragment single(CharTest test) {
+            Node start = matcher.newNode(test);
+            Node end = matcher.newNode(null);
+            start.next = end;
+            return new Fragment(start, end);
+        }
+
+        private Fragment repeat(CharTest test) {
+            Node start = matcher.newNode(null);
+            Node loop = matcher.newNode(test);
+            Node end = matcher.newNode(null);
+            start.epsilon.add(loop);
+            start.epsilon.add(end);
+            loop.next = start;
+            return new Fragment(start, end);
+        }
+    }
+}
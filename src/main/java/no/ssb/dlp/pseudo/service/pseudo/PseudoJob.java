@@ -0,0 +1,128 @@
+package no.ssb.dlp.pseudo.service.pseudo;
+
+import io.micronaut.core.annotation.Introspected;
+import io.micronaut.http.MediaType;
+import io.micronaut.serde.annotation.Serdeable;
+import lombok.Getter;
+import no.ssb.dlp.pseudo.core.PseudoOperation;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A file that is processed asynchronously by the {@link PseudoJobService}. The progress is updated while the job is
+ * running, and the result is spooled to the job directory.
+ */
+@Getter
+public class PseudoJob {
+
+    @Serdeable
+    public enum Status {
+        QUEUED, RUNNING, COMPLETED, FAILED, CANCELLED;
+
+        public boolean isFinished() {
+            return this != QUEUED && this != RUNNING;
+        }
+    }
+
+    private final String id;
+    private final PseudoOperation operation;
+    private final String owner;
+    private final String filename;
+    private final String targetPath;
+    private final Path directory;
+    private final Instant createdAt = Instant.now();
+    private final LongAdder processedRecords = new LongAdder();
+    private final AtomicLong resultBytes = new AtomicLong();
+    private volatile Status status = Status.QUEUED;
+    private volatile Instant startedAt;
+    private volatile Instant completedAt;
+    private volatile String error;
+    private volatile MediaType resultContentType;
+    private volatile Future<?> future;
+
+    /**
+     * @param filename   the name of the uploaded file, or the path of the source object
+     * @param targetPath the path of the object to write the result to, or null if the result is spooled
+     */
+    PseudoJob(String id, PseudoOperation operation, String owner, String filename, String targetPath,
+              Path directory) {
+        this.id = id;
+        this.operation = operation;
+        this.owner = owner;
+        this.filename = filename;
+        this.targetPath = targetPath;
+        this.directory = directory;
+    }
+
+    /**
+     * @return the spooled result file. Only complete when the job is {@link Status#COMPLETED}, and only used if there
+     * is no target path
+     */
+    public Path getResultFile() {
+        return directory.resolve("result");
+    }
+
+    void setFuture(Future<?> future) {
+        this.future = future;
+    }
+
+    void setResultContentType(MediaType resultContentType) {
+        this.resultContentType = resultContentType;
+    }
+
+    /**
+     * @return false if the job was cancelled before it was started
+     */
+    synchronized boolean start() {
+        if (status != Status.QUEUED) {
+            return false;
+        }
+        this.startedAt = Instant.now();
+        this.status = Status.RUNNING;
+        return true;
+    }
+
+    synchronized void finish(Status status, String error) {
+        if (this.status.isFinished()) {
+            return;
+        }
+        this.error = error;
+        this.completedAt = Instant.now();
+        this.status = status;
+    }
+
+    /**
+     * @return the number of records processed per second, measured from when the job was started until it finished
+     * (or now, if still running)
+     */
+    public double getRecordsPerSecond() {
+        final Instant started = startedAt;
+        if (started == null) {
+            return 0;
+        }
+        final Instant completed = completedAt;
+        final long millis = Duration.between(started, completed == null ? Instant.now() : completed).toMillis();
+        return millis == 0 ? 0 : processedRecords.sum() * 1000.0 / millis;
+    }
+
+    public JobStatus toStatus() {
+        return new JobStatus(id, operation.name(), filename, targetPath, status, createdAt, startedAt, completedAt,
+                processedRecords.sum(), getRecordsPerSecond(), resultBytes.get(),
+                resultContentType == null ? null : resultContentType.toString(), error);
+    }
+
+    /**
+     * The status of a job, as reported to clients.
+     */
+    @Introspected
+    @Serdeable
+    public record JobStatus(String jobId, String operation, String filename, String targetPath, Status status,
+                            Instant createdAt, Instant startedAt, Instant completedAt, long processedRecords,
+                            double recordsPerSecond, long resultBytes, String resultContentType, String error) {
+    }
+}
@@ -0,0 +1,49 @@
+package no.ssb.dlp.pseudo.service.pseudo;
+
+import io.micronaut.context.annotation.ConfigurationProperties;
+import lombok.Data;
+
+import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.NotNull;
+import java.nio.file.Path;
+import java.time.Duration;
+
+/**
+ * Configuration of pseudo jobs.
+ *
+ * <p>Jobs are kept in memory and spooled to the local disk of the instance that accepted them, so the job API
+ * requires a single instance (e.g. Cloud Run with <code>max-instances: 1</code> and session affinity). A poll that is
+ * routed to another instance, or that comes after a restart, gets 404. On Cloud Run the default spool directory is an
+ * in-memory file system, so spooled inputs and results also count against the memory limit of the instance; consider
+ * mounting a volume as the spool directory for large files.</p>
+ */
+@ConfigurationProperties("pseudo.jobs")
+@Data
+public class PseudoJobConfig {
+
+    /**
+     * Max number of pseudo jobs that are processed at the same time. Other jobs are queued.
+     */
+    @Min(1)
+    private int workers = 2;
+
+    /**
+     * The directory where uploaded files and job results are spooled.
+     */
+    @NotNull
+    private Path spoolDirectory = Path.of(System.getProperty("java.io.tmpdir"), "pseudo-jobs");
+
+    /**
+     * How long a finished job (and its result) is kept before it is removed.
+     */
+    @NotNull
+    private Duration retention = Duration.ofHours(24);
+
+    /**
+     * How often finished jobs are checked for expiry. Must be given as a duration string (e.g. <code>5m</code>),
+     * since it is read by the scheduler.
+     */
+    @NotNull
+    private Duration cleanupInterval = Duration.ofMinutes(5);
+
+}
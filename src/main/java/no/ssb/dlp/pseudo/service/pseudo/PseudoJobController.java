@@ -0,0 +1,84 @@
+package no.ssb.dlp.pseudo.service.pseudo;
+
+import io.micronaut.http.HttpResponse;
+import io.micronaut.http.HttpStatus;
+import io.micronaut.http.MediaType;
+import io.micronaut.http.annotation.Controller;
+import io.micronaut.http.annotation.Delete;
+import io.micronaut.http.annotation.Get;
+import io.micronaut.http.annotation.PathVariable;
+import io.micronaut.http.annotation.Produces;
+import io.micronaut.http.server.types.files.SystemFile;
+import io.micronaut.scheduling.TaskExecutors;
+import io.micronaut.scheduling.annotation.ExecuteOn;
+import io.micronaut.security.annotation.Secured;
+import io.micronaut.security.authentication.Authentication;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import no.ssb.dlp.pseudo.service.security.PseudoServiceRole;
+
+import java.util.Optional;
+
+@RequiredArgsConstructor
+@Controller("/jobs")
+@Slf4j
+@Secured({PseudoServiceRole.USER, PseudoServiceRole.ADMIN})
+@Tag(name = "Pseudo jobs")
+public class PseudoJobController {
+
+    private final PseudoJobService jobService;
+
+    @Operation(summary = "Get job status", description = """
+            Get the status and progress of a pseudo job, i.e. the number of records processed so far and the
+            throughput (records per second).
+            """)
+    @Produces(MediaType.APPLICATION_JSON)
+    @Get("/{jobId}")
+    public HttpResponse<PseudoJob.JobStatus> getJob(@PathVariable String jobId, Authentication authentication) {
+        return findJob(jobId, authentication)
+                .map(job -> HttpResponse.ok(job.toStatus()))
+                .orElseGet(HttpResponse::notFound);
+    }
+
+    @Operation(summary = "Get job result", description = """
+            Download the result of a completed pseudo job. The result has the same format as the response of the
+            corresponding file endpoint. Not available for jobs that write the result to an object.
+            """)
+    @Get("/{jobId}/result")
+    @ExecuteOn(TaskExecutors.BLOCKING)
+    public HttpResponse<SystemFile> getJobResult(@PathVariable String jobId, Authentication authentication) {
+        final Optional<PseudoJob> job = findJob(jobId, authentication);
+        if (job.isEmpty()) {
+            return HttpResponse.notFound();
+        }
+        if (job.get().getTargetPath() != null) {
+            return HttpResponse.status(HttpStatus.NOT_FOUND, "The result is written to " + job.get().getTargetPath());
+        }
+        if (job.get().getStatus() != PseudoJob.Status.COMPLETED) {
+            return HttpResponse.status(HttpStatus.CONFLICT, "Job is " + job.get().getStatus());
+        }
+        return HttpResponse.ok(new SystemFile(job.get().getResultFile().toFile(), job.get().getResultContentType()));
+    }
+
+    @Operation(summary = "Delete job", description = """
+            Cancel a pseudo job (if not already finished), and delete the spooled result.
+            """)
+    @Delete("/{jobId}")
+    @ExecuteOn(TaskExecutors.BLOCKING)
+    public HttpResponse<Void> deleteJob(@PathVariable String jobId, Authentication authentication) {
+        final Optional<PseudoJob> job = findJob(jobId, authentication);
+        job.ifPresent(jobService::remove);
+        return job.isPresent() ? HttpResponse.noContent() : HttpResponse.notFound();
+    }
+
+    /**
+     * Jobs can only be accessed by the user that submitted the job, or by an admin.
+     */
+    private Optional<PseudoJob> findJob(String jobId, Authentication authentication) {
+        return jobService.getJob(jobId)
+                .filter(job -> job.getOwner().equals(authentication.getName())
+                        || authentication.getRoles().contains(PseudoServiceRole.ADMIN));
+    }
+}
@@ -0,0 +1,232 @@
+package no.ssb.dlp.pseudo.service.pseudo;
+
+import io.micronaut.http.MediaType;
+import io.micronaut.scheduling.annotation.Scheduled;
+import io.reactivex.Flowable;
+import jakarta.annotation.PreDestroy;
+import jakarta.inject.Singleton;
+import lombok.extern.slf4j.Slf4j;
+import no.ssb.dlp.pseudo.core.PseudoOperation;
+import no.ssb.dlp.pseudo.core.util.HumanReadableBytes;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiFunction;
+import java.util.stream.Stream;
+
+/**
+ * Runs pseudo jobs, i.e. files that are processed asynchronously instead of being streamed back in the response.
+ *
+ * <p>An uploaded input is spooled to the job directory when the job is submitted, so that the client can disconnect
+ * right away. Jobs are then run on a bounded pool of job workers, and each worker is occupied until the result has been
+ * written, either to the job directory or to an object. Finished jobs are removed after the configured retention
+ * period, by a cleanup that runs every <code>pseudo.jobs.cleanup-interval</code>.</p>
+ *
+ * <p>Jobs are only known by the instance that accepted them, and do not survive a restart. See
+ * {@link PseudoJobConfig} for deployment considerations.</p>
+ */
+@Singleton
+@Slf4j
+public class PseudoJobService {
+
+    private final PseudoJobConfig config;
+    private final PseudoObjectStorage objectStorage;
+    private final ExecutorService executor;
+    private final Map<String, PseudoJob> jobs = new ConcurrentHashMap<>();
+
+    public PseudoJobService(PseudoJobConfig config, PseudoObjectStorage objectStorage) {
+        this.config = config;
+        this.objectStorage = objectStorage;
+        this.executor = Executors.newFixedThreadPool(config.getWorkers(), new JobThreadFactory());
+        log.info("Pseudo job pool with {} workers, spooling to {}", config.getWorkers(), config.getSpoolDirectory());
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Spool the input and queue a new job. The result is spooled to the job directory.
+     *
+     * @param operation the pseudo operation of the job
+     * @param owner     the name of the user that submitted the job
+     * @param input     the file to process
+     * @param task      processes the spooled file, counting the processed records
+     * @return the queued job
+     */
+    public PseudoJob submit(PseudoOperation operation, String owner, PseudoFileInput input,
+                            BiFunction<PseudoFileInput, LongAdder, PseudoController.ProcessFileResult> task) {
+        final PseudoJob job = newJob(operation, owner, input.getFilename(), null);
+        final PseudoFileInput spooledInput;
+        try {
+            final Path inputFile = Files.createDirectory(job.getDirectory().resolve("input"))
+                    .resolve(Path.of(input.getFilename()).getFileName());
+            try (InputStream is = input.asInputStream()) {
+                Files.copy(is, inputFile);
+            }
+            log.info("Spooled input of job {} ({})", job.getId(), HumanReadableBytes.fromBin(Files.size(inputFile)));
+            spooledInput = PseudoFileInput.of(inputFile, input.getFilename(), input.getContentType().orElse(null));
+        } catch (IOException e) {
+            deleteDirectory(job.getDirectory());
+            throw new RuntimeException("Error spooling input of job " + job.getId(), e);
+        }
+        return queue(job, spooledInput, task, (result, contentType) -> spool(job, result));
+    }
+
+    /**
+     * Queue a new job that reads the source object and writes the result to the target object, without spooling
+     * either of them. Both paths are relative to the directory of the owner in the object storage.
+     *
+     * @param operation  the pseudo operation of the job
+     * @param owner      the name of the user that submitted the job
+     * @param sourcePath the path of the object to process
+     * @param targetPath the path of the object to write the result to
+     * @param task       processes the source object, counting the processed records
+     * @return the queued job
+     */
+    public PseudoJob submit(PseudoOperation operation, String owner, String sourcePath, String targetPath,
+                            BiFunction<PseudoFileInput, LongAdder, PseudoController.ProcessFileResult> task) {
+        final String targetKey = PseudoObjectStorage.keyOf(owner, targetPath);
+        final PseudoFileInput input = objectStorage.input(PseudoObjectStorage.keyOf(owner, sourcePath));
+        final PseudoJob job = newJob(operation, owner, sourcePath, targetPath);
+        return queue(job, input, task, (result, contentType) -> {
+            try {
+                objectStorage.write(targetKey, contentType, result);
+            } catch (RuntimeException e) {
+                objectStorage.delete(targetKey);
+                throw e;
+            }
+            if (job.getStatus() == PseudoJob.Status.CANCELLED) {
+                // Never leave a truncated result behind
+                objectStorage.delete(targetKey);
+            }
+        });
+    }
+
+    /**
+     * @return the job with the given id, if it exists
+     */
+    public Optional<PseudoJob> getJob(String id) {
+        return Optional.ofNullable(jobs.get(id));
+    }
+
+    /**
+     * Cancel the job (if not already finished) and remove it, along with the spooled input and result.
+     */
+    public void remove(PseudoJob job) {
+        jobs.remove(job.getId());
+        job.finish(PseudoJob.Status.CANCELLED, null);
+        if (job.getFuture() != null) {
+            job.getFuture().cancel(true);
+        }
+        deleteDirectory(job.getDirectory());
+    }
+
+    private PseudoJob newJob(PseudoOperation operation, String owner, String filename, String targetPath) {
+        removeExpiredJobs();
+        final String id = UUID.randomUUID().toString();
+        try {
+            final Path directory = Files.createDirectories(config.getSpoolDirectory().resolve(id));
+            return new PseudoJob(id, operation, owner, filename, targetPath, directory);
+        } catch (IOException e) {
+            throw new RuntimeException("Error creating directory of job " + id, e);
+        }
+    }
+
+    private PseudoJob queue(PseudoJob job, PseudoFileInput input,
+                            BiFunction<PseudoFileInput, LongAdder, PseudoController.ProcessFileResult> task,
+                            ResultWriter resultWriter) {
+        jobs.put(job.getId(), job);
+        job.setFuture(executor.submit(() -> run(job, input, task, resultWriter)));
+        return job;
+    }
+
+    private void run(PseudoJob job, PseudoFileInput input,
+                     BiFunction<PseudoFileInput, LongAdder, PseudoController.ProcessFileResult> task,
+                     ResultWriter resultWriter) {
+        if (!job.start()) {
+            return;
+        }
+        log.info("Start job {}: {} {}", job.getId(), job.getOperation(), job.getFilename());
+        try {
+            final PseudoController.ProcessFileResult result = task.apply(input, job.getProcessedRecords());
+            job.setResultContentType(result.getTargetContentType());
+            // Block this worker until the result is written, so that the number of running jobs is bounded
+            resultWriter.write(result.chunks()
+                    .takeWhile(chunk -> job.getStatus() == PseudoJob.Status.RUNNING)
+                    .doOnNext(chunk -> job.getResultBytes().addAndGet(chunk.length)), result.getTargetContentType());
+            job.finish(PseudoJob.Status.COMPLETED, null);
+            log.info("Job {} completed: {} records, {}", job.getId(), job.getProcessedRecords().sum(),
+                    HumanReadableBytes.fromBin(job.getResultBytes().get()));
+        } catch (Exception e) {
+            log.error("Job " + job.getId() + " failed", e);
+            job.finish(PseudoJob.Status.FAILED, e.getMessage());
+        } finally {
+            deleteDirectory(job.getDirectory().resolve("input"));
+        }
+    }
+
+    private static void spool(PseudoJob job, Flowable<byte[]> result) throws IOException {
+        try (OutputStream out = Files.newOutputStream(job.getResultFile())) {
+            for (byte[] chunk : result.blockingIterable()) {
+                out.write(chunk);
+            }
+        }
+    }
+
+    /**
+     * Remove finished jobs (and their spooled results) that have expired.
+     */
+    @Scheduled(fixedDelay = "${pseudo.jobs.cleanup-interval:5m}", initialDelay = "${pseudo.jobs.cleanup-interval:5m}")
+    public void removeExpiredJobs() {
+        final Instant expiry = Instant.now().minus(config.getRetention());
+        jobs.values().stream()
+                .filter(job -> job.getStatus().isFinished() && job.getCompletedAt().isBefore(expiry))
+                .forEach(job -> {
+                    log.info("Remove expired job {}", job.getId());
+                    remove(job);
+                });
+    }
+
+    private static void deleteDirectory(Path directory) {
+        if (!Files.exists(directory)) {
+            return;
+        }
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+        } catch (IOException e) {
+            log.warn("Error cleaning up " + directory, e);
+        }
+    }
+
+    @FunctionalInterface
+    private interface ResultWriter {
+        void write(Flowable<byte[]> result, MediaType contentType) throws IOException;
+    }
+
+    private static class JobThreadFactory implements ThreadFactory {
+        private final AtomicInteger threadCount = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "pseudo-job-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
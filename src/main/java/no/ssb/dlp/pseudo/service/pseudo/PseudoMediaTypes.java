@@ -0,0 +1,35 @@
+package no.ssb.dlp.pseudo.service.pseudo;
+
+import io.micronaut.http.MediaType;
+
+/**
+ * Media types supported by the pseudo service, in addition to the ones in
+ * {@link no.ssb.dlp.pseudo.core.file.MoreMediaTypes}.
+ */
+public final class PseudoMediaTypes {
+
+    public static final String APPLICATION_NDJSON = "application/x-ndjson";
+    public static final MediaType APPLICATION_NDJSON_TYPE = new MediaType(APPLICATION_NDJSON);
+    public static final String APPLICATION_PARQUET = "application/vnd.apache.parquet";
+    public static final MediaType APPLICATION_PARQUET_TYPE = new MediaType(APPLICATION_PARQUET);
+    public static final String APPLICATION_ARROW_STREAM = "application/vnd.apache.arrow.stream";
+    public static final MediaType APPLICATION_ARROW_STREAM_TYPE = new MediaType(APPLICATION_ARROW_STREAM);
+    public static final String APPLICATION_ZIP = "application/zip";
+    public static final MediaType APPLICATION_ZIP_TYPE = new MediaType(APPLICATION_ZIP);
+
+    private PseudoMediaTypes() {}
+
+    /**
+     * @return true if the media type is newline delimited JSON
+     */
+    public static boolean isNdjson(MediaType mediaType) {
+        return mediaType != null && APPLICATION_NDJSON.equals(mediaType.getName());
+    }
+
+    /**
+     * @return true if the media type is Parquet
+     */
+    public static boolean isParquet(MediaType mediaType) {
+        return mediaType != null && APPLICATION_PARQUET.equals(mediaType.getName());
+    }
+}
@@ -0,0 +1,195 @@
+package no.ssb.dlp.pseudo.service.pseudo;
+
+import io.micronaut.context.BeanContext;
+import io.micronaut.http.MediaType;
+import io.micronaut.inject.qualifiers.Qualifiers;
+import io.micronaut.objectstorage.ObjectStorageEntry;
+import io.micronaut.objectstorage.ObjectStorageOperations;
+import io.micronaut.objectstorage.request.UploadRequest;
+import io.reactivex.Flowable;
+import jakarta.inject.Inject;
+import jakarta.inject.Singleton;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Reads the source files and writes the results of pseudo jobs that refer to objects instead of uploaded files, so
+ * that the data never passes through the client.
+ *
+ * <p>Objects are read from and written to the object storage named <code>pseudo</code>, e.g. a GCS bucket configured
+ * with <code>micronaut.object-storage.gcp.pseudo.bucket</code>, or a local directory configured with
+ * <code>micronaut.object-storage.local.pseudo.path</code> when running offline.</p>
+ *
+ * <p>The storage is shared by all users, so the paths of a job are scoped to the user that submitted it: a path is
+ * relative to the directory <code>users/&lt;name&gt;/</code> of the user (see {@link #keyOf(String, String)}), and a
+ * user can neither read nor overwrite the objects of other users.</p>
+ */
+@Singleton
+@Slf4j
+public class PseudoObjectStorage {
+
+    public static final String STORAGE_NAME = "pseudo";
+    static final String USERS_PREFIX = "users/";
+
+    private final ObjectStorageOperations<?, ?, ?> operations;
+
+    @Inject
+    @SuppressWarnings("unchecked")
+    public PseudoObjectStorage(BeanContext beanContext) {
+        this(beanContext.findBean(ObjectStorageOperations.class, Qualifiers.byName(STORAGE_NAME)).orElse(null));
+    }
+
+    PseudoObjectStorage(ObjectStorageOperations<?, ?, ?> operations) {
+        this.operations = operations;
+        if (operations == null) {
+            log.info("No object storage named '{}' is configured", STORAGE_NAME);
+        }
+    }
+
+    /**
+     * @param path the path (key) of an existing object
+     * @return the object as a file input, which is read directly from the object storage
+     */
+    public PseudoFileInput input(String path) {
+        requireValidPath(path);
+        if (!operations().exists(path)) {
+            throw new IllegalArgumentException("No such object: " + path);
+        }
+        return new ObjectInput(path);
+    }
+
+    /**
+     * Stream chunks to an object, overwriting any existing object. Blocks until the upload is done.
+     */
+    public void write(String path, MediaType contentType, Flowable<byte[]> chunks) {
+        requireValidPath(path);
+        operations().upload(new StreamedUploadRequest(path, contentType, ChunkInputStream.of(chunks)));
+    }
+
+    /**
+     * Delete an object, e.g. an incomplete result.
+     */
+    public void delete(String path) {
+        try {
+            operations().delete(path);
+        } catch (RuntimeException e) {
+            log.warn("Error deleting object " + path, e);
+        }
+    }
+
+    /**
+     * @param owner the name of the user that owns the object
+     * @param path  the path of the object, relative to the directory of the owner
+     * @return the key of the object in the object storage
+     */
+    public static String keyOf(String owner, String path) {
+        if (owner == null || owner.isBlank() || owner.contains("/") || owner.equals(".") || owner.equals("..")) {
+            throw new IllegalArgumentException("Invalid object owner: " + owner);
+        }
+        requireValidPath(path);
+        return USERS_PREFIX + owner + "/" + path;
+    }
+
+    /**
+     * Paths are keys relative to the object storage, and must not refer to objects outside it (which would be
+     * possible with a local object storage).
+     */
+    public static void requireValidPath(String path) {
+        if (path == null || path.isBlank() || path.startsWith("/") || List.of(path.split("/")).contains("..")) {
+            throw new IllegalArgumentException("Invalid object path: " + path);
+        }
+    }
+
+    private ObjectStorageOperations<?, ?, ?> operations() {
+        if (operations == null) {
+            throw new IllegalStateException("No object storage named '" + STORAGE_NAME + "' is configured");
+        }
+        return operations;
+    }
+
+    private class ObjectInput implements PseudoFileInput {
+        private final String path;
+
+        private ObjectInput(String path) {
+            this.path = path;
+        }
+
+        @Override
+        public String getFilename() {
+            return Path.of(path).getFileName().toString();
+        }
+
+        /**
+         * The content type is derived from the filename, like for uploads without a content type.
+         */
+        @Override
+        public Optional<MediaType> getContentType() {
+            return Optional.empty();
+        }
+
+        @Override
+        public InputStream asInputStream() {
+            return operations().retrieve(path)
+                    .map(ObjectStorageEntry::getInputStream)
+                    .orElseThrow(() -> new IllegalArgumentException("No such object: " + path));
+        }
+
+        @Override
+        public File toFile() {
+            Path tempFile = null;
+            try (InputStream is = asInputStream()) {
+                tempFile = PseudoFileInput.tempFileFor(getFilename());
+                log.debug("Download object {} - stored temporarily at {}", path, tempFile);
+                Files.copy(is, tempFile, StandardCopyOption.REPLACE_EXISTING);
+                return tempFile.toFile();
+            } catch (IOException e) {
+                if (tempFile != null) {
+                    // A partially downloaded object is of no use
+                    tempFile.toFile().delete();
+                }
+                throw new RuntimeException("Error downloading object " + path, e);
+            }
+        }
+    }
+
+    private record StreamedUploadRequest(String key, MediaType contentType, InputStream inputStream)
+            implements UploadRequest {
+
+        @Override
+        public Optional<String> getContentType() {
+            return Optional.ofNullable(contentType).map(MediaType::toString);
+        }
+
+        @Override
+        public String getKey() {
+            return key;
+        }
+
+        /**
+         * The size is not known in advance, since the result is streamed.
+         */
+        @Override
+        public Optional<Long> getContentSize() {
+            return Optional.empty();
+        }
+
+        @Override
+        public Map<String, String> getMetadata() {
+            return Map.of();
+        }
+
+        @Override
+        public InputStream getInputStream() {
+            return inputStream;
+        }
+    }
+}
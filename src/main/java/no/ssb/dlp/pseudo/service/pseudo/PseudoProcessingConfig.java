@@ -0,0 +1,57 @@
+package no.ssb.dlp.pseudo.service.pseudo;
+
+import io.micronaut.context.annotation.ConfigurationProperties;
+import lombok.Data;
+
+import jakarta.validation.constraints.Max;
+import jakarta.validation.constraints.Min;
+
+@ConfigurationProperties("pseudo.processing")
+@Data
+public class PseudoProcessingConfig {
+
+    /**
+     * If true, records of uploaded files are pseudonymized in batches on multiple workers. Defaults to false, meaning
+     * that all records of a file are processed sequentially.
+     */
+    private boolean parallel = false;
+
+    /**
+     * Max number of worker threads used for parallel processing. Defaults to the number of available processors.
+     */
+    @Min(1)
+    private int workers = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * If true, the files of a zip archive are processed concurrently on the workers, one file per worker. At most
+     * <code>batchSize</code> processed records of each file are kept in memory until the preceding files have been
+     * written. Defaults to false, meaning that the files are processed as one sequential stream.
+     */
+    private boolean parallelEntries = false;
+
+    /**
+     * Number of records in each batch that is handed to a worker.
+     */
+    @Min(1)
+    private int batchSize = 1000;
+
+    /**
+     * If greater than zero, files with SID mapping rules are processed in a single pass, in windows of this many
+     * records. The SID lookups of a window are executed right before the window is processed, while the previous
+     * window is still being processed. If zero, all identifiers of a file are collected in a separate preprocessing
+     * pass before any records are processed.
+     */
+    @Min(0)
+    private int sidPrefetchWindow = 0;
+
+    /**
+     * If greater than zero, the results of deterministic pseudo functions (daead, ff31 and legacy FPE) are memoized
+     * for the duration of a request, in a memo with room for this many results, so repeated values are only
+     * transformed once. The hit rate is reported in the metrics of the response. Defaults to zero, meaning that every
+     * value is transformed. At most {@link PseudoValueMemo#MAX_SIZE}.
+     */
+    @Min(0)
+    @Max(PseudoValueMemo.MAX_SIZE)
+    private int memoSize = 0;
+
+}
@@ -0,0 +1,63 @@
+package no.ssb.dlp.pseudo.service.pseudo;
+
+import no.ssb.dlp.pseudo.core.field.FieldDescriptor;
+import no.ssb.dlp.pseudo.core.field.ValueInterceptorChain;
+import no.ssb.dlp.pseudo.core.map.RecordMapProcessor;
+import no.ssb.dlp.pseudo.service.pseudo.metadata.PseudoMetadataProcessor;
+
+import java.util.function.Predicate;
+
+/**
+ * A {@link RecordMapProcessor} that can also process single values directly.
+ *
+ * <p>Processing a value via {@link #process(java.util.Map)} requires the value to be wrapped in a record, and
+ * returns a new record. For single fields, such as with the field endpoints, {@link #processValue(FieldDescriptor,
+ * String)} applies the interceptor chain to the value without any intermediate records.</p>
+ */
+public class PseudoRecordMapProcessor extends RecordMapProcessor<PseudoMetadataProcessor> {
+
+    private final ValueInterceptorChain valueInterceptorChain;
+    private final Predicate<FieldDescriptor> fieldMatcher;
+
+    /**
+     * @param valueInterceptorChain the interceptor chain to apply
+     * @param metadataProcessor     collects metadata about the processed values
+     * @param fieldMatcher          tells whether any pseudo rule of the chain matches a field
+     */
+    public PseudoRecordMapProcessor(ValueInterceptorChain valueInterceptorChain,
+                                    PseudoMetadataProcessor metadataProcessor,
+                                    Predicate<FieldDescriptor> fieldMatcher) {
+        super(valueInterceptorChain, metadataProcessor);
+        this.valueInterceptorChain = valueInterceptorChain;
+        this.fieldMatcher = fieldMatcher;
+    }
+
+    /**
+     * @param field the field to check
+     * @return true if any pseudo rule matches the field, i.e. if processing a value of the field may transform it
+     */
+    public boolean matches(FieldDescriptor field) {
+        return fieldMatcher.test(field);
+    }
+
+    /**
+     * Apply the preprocessors to a single value.
+     *
+     * @param field the field of the value
+     * @param value the value
+     */
+    public void initValue(FieldDescriptor field, String value) {
+        valueInterceptorChain.preprocess(field, value);
+    }
+
+    /**
+     * Apply the interceptor chain to a single value.
+     *
+     * @param field the field of the value
+     * @param value the value
+     * @return the processed value
+     */
+    public String processValue(FieldDescriptor field, String value) {
+        return valueInterceptorChain.apply(field, value);
+    }
+}
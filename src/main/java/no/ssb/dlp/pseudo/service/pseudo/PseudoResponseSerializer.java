@@ -1,31 +1,140 @@
 package no.ssb.dlp.pseudo.service.pseudo;
 
 import io.reactivex.Flowable;
+import no.ssb.dlp.pseudo.core.util.Json;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public class PseudoResponseSerializer {
-    private static final long LOG_LIMIT = 100;
     /**
      * Combine the <code>Flowable</code> JSON-objects (data, metadata, etc) into a single <code>Flowable</code> that
      * represents the JSON-structure.
      *
      * @param data      a flowable of String elements, each in JSON-format
      * @param metadata  a flowable of String elements, each in JSON-format
-     * @param logs      a flowable of String elements, each in JSON-format
+     * @param logs      a flowable of String elements, each in JSON-format. The number of logs is expected to be bounded
+     *                  by the producer (see {@link no.ssb.dlp.pseudo.service.pseudo.metadata.BoundedLogCollector})
      * @param metrics   a flowable of String elements, each in JSON-format
      * @param metrics
      */
     public static Flowable<String> serialize(Flowable<String> data, Flowable<String> metadata,
                                              Flowable<String> logs, Flowable<String> metrics) {
-        return enclose(data.concatMap(item -> Flowable.just(item, ","))
-                .startWith("\"data\": [")
-                .skipLast(1) // Skip last comma
-                .concatWith(Flowable.just("], \"datadoc_metadata\": {\"pseudo_variables\": ["))
-                .concatWith(metadata.concatMap(item -> Flowable.just(item, ",")).skipLast(1))
+        return enclose(Flowable.just("\"data\": [")
+                .concatWith(joined(data))
+                .concatWith(Flowable.just("], "))
+                .concatWith(serializeMetadata(metadata, logs, metrics)));
+    }
+
+    /**
+     * Like {@link #serialize(Flowable, Flowable, Flowable, Flowable)}, but with the data as a JSON object of named
+     * columns, each column being an array of values.
+     *
+     * @param columns   a flowable of columns. Each column is a flowable of String elements, each in JSON-format
+     * @param metadata  a flowable of String elements, each in JSON-format
+     * @param logs      a flowable of String elements, each in JSON-format
+     * @param metrics   a flowable of String elements, each in JSON-format
+     */
+    public static Flowable<String> serializeColumns(Flowable<Map.Entry<String, Flowable<String>>> columns,
+                                                    Flowable<String> metadata, Flowable<String> logs,
+                                                    Flowable<String> metrics) {
+        return serializeColumnData(columnData(columns), metadata, logs, metrics);
+    }
+
+    /**
+     * Like {@link #serializeColumns(Flowable, Flowable, Flowable, Flowable)}, but with columns that are already
+     * serialized by {@link #columnData(Flowable)}. Use this to act on the completion of the data, e.g. to complete
+     * the metadata, since the columns are only subscribed to as they are serialized.
+     *
+     * @param columnData the serialized columns
+     * @param metadata   a flowable of String elements, each in JSON-format
+     * @param logs       a flowable of String elements, each in JSON-format
+     * @param metrics    a flowable of String elements, each in JSON-format
+     */
+    public static Flowable<String> serializeColumnData(Flowable<String> columnData, Flowable<String> metadata,
+                                                       Flowable<String> logs, Flowable<String> metrics) {
+        return enclose(Flowable.just("\"data\": {")
+                .concatWith(columnData)
+                .concatWith(Flowable.just("}, "))
+                .concatWith(serializeMetadata(metadata, logs, metrics)));
+    }
+
+    /**
+     * Serialize columns as the members of a JSON object, without the enclosing braces. Completes once the values of
+     * the last column have been serialized. The columns are subscribed to one at a time.
+     *
+     * @param columns a flowable of columns. Each column is a flowable of String elements, each in JSON-format
+     */
+    public static Flowable<String> columnData(Flowable<Map.Entry<String, Flowable<String>>> columns) {
+        return columnData(columns, 1, Flowable.bufferSize());
+    }
+
+    /**
+     * Like {@link #columnData(Flowable)}, but subscribes to up to <code>maxConcurrency</code> columns at once, so
+     * the columns are produced in parallel. The columns are still serialized in order, and each column that is not
+     * yet being serialized buffers at most <code>prefetch</code> values.
+     *
+     * @param columns        a flowable of columns. Each column is a flowable of String elements, each in JSON-format
+     * @param maxConcurrency the max number of columns to subscribe to at once
+     * @param prefetch       the number of values to request from each column ahead of serializing it
+     */
+    public static Flowable<String> columnData(Flowable<Map.Entry<String, Flowable<String>>> columns,
+                                              int maxConcurrency, int prefetch) {
+        return columns.concatMapEager(column -> Flowable.just(",", Json.from(column.getKey()) + ": [")
+                        .concatWith(joined(column.getValue()))
+                        .concatWith(Flowable.just("]")), maxConcurrency, prefetch)
+                .skip(1); // Skip first comma
+    }
+
+    /**
+     * Serialize as newline delimited JSON (NDJSON), with one line per data element, followed by a line with a JSON
+     * object holding the metadata, metrics and logs.
+     *
+     * @param data      a flowable of String elements, each in JSON-format
+     * @param metadata  a flowable of String elements, each in JSON-format
+     * @param logs      a flowable of String elements, each in JSON-format
+     * @param metrics   a flowable of String elements, each in JSON-format
+     */
+    public static Flowable<String> serializeLines(Flowable<String> data, Flowable<String> metadata,
+                                                  Flowable<String> logs, Flowable<String> metrics) {
+        return data.map(item -> item + "\n")
+                .concatWith(serializeMetadataObject(metadata, logs, metrics))
+                .concatWith(Flowable.just("\n"));
+    }
+
+    /**
+     * Serialize only the metadata, metrics and logs, as a JSON object. Used when the data is not JSON, e.g. to store
+     * the metadata inside a Parquet file.
+     *
+     * @param metadata  a flowable of String elements, each in JSON-format
+     * @param logs      a flowable of String elements, each in JSON-format
+     * @param metrics   a flowable of String elements, each in JSON-format
+     */
+    public static Flowable<String> serializeMetadataObject(Flowable<String> metadata, Flowable<String> logs,
+                                                           Flowable<String> metrics) {
+        return enclose(serializeMetadata(metadata, logs, metrics));
+    }
+
+    private static Flowable<String> serializeMetadata(Flowable<String> metadata, Flowable<String> logs,
+                                                      Flowable<String> metrics) {
+        return Flowable.just("\"datadoc_metadata\": {\"pseudo_variables\": [")
+                .concatWith(joined(metadata))
                 .concatWith(Flowable.just("]}, \"metrics\": ["))
-                .concatWith(metrics.concatMap(item -> Flowable.just(item, ",")).skipLast(1))
+                .concatWith(joined(metrics))
                 .concatWith(Flowable.just("], \"logs\": ["))
-                .concatWith(logs.take(LOG_LIMIT).concatMap(item -> Flowable.just(item, ",")).skipLast(1))
-                .concatWith(Flowable.just("]")));
+                .concatWith(joined(logs))
+                .concatWith(Flowable.just("]"));
+    }
+
+    /**
+     * Separate items with commas. The comma is prepended to each item (but the first), rather than emitted as a
+     * separate item, to keep the number of fragments down.
+     */
+    private static Flowable<String> joined(Flowable<String> items) {
+        return Flowable.defer(() -> {
+            final AtomicBoolean first = new AtomicBoolean(true);
+            return items.map(item -> first.getAndSet(false) ? item : "," + item);
+        });
     }
 
     private static Flowable<String> enclose(Flowable<String> contents) {
@@ -0,0 +1,152 @@
+package no.ssb.dlp.pseudo.service.pseudo;
+
+import lombok.Value;
+import no.ssb.dapla.dlp.pseudo.func.PseudoFunc;
+import no.ssb.dapla.dlp.pseudo.func.fpe.FpeFunc;
+import no.ssb.dapla.dlp.pseudo.func.map.MapFailureStrategy;
+import no.ssb.dapla.dlp.pseudo.func.map.MapFunc;
+import no.ssb.dapla.dlp.pseudo.func.map.MapFuncConfig;
+import no.ssb.dapla.dlp.pseudo.func.tink.fpe.TinkFpeFunc;
+import no.ssb.dlp.pseudo.core.field.FieldDescriptor;
+import no.ssb.dlp.pseudo.core.func.PseudoFuncDeclaration;
+import no.ssb.dlp.pseudo.core.func.PseudoFuncNames;
+import no.ssb.dlp.pseudo.core.func.PseudoFuncRule;
+import no.ssb.dlp.pseudo.core.func.PseudoFuncRuleMatch;
+import no.ssb.dlp.pseudo.core.func.PseudoFuncs;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static no.ssb.dlp.pseudo.core.func.PseudoFuncDeclaration.KEY_REFERENCE;
+
+/**
+ * A compiled view of the rules in a {@link PseudoFuncs} instance.
+ *
+ * <p>Each distinct field path is resolved only once to a {@link FieldRule} that holds the matching pseudo function
+ * together with everything that can be derived from its declaration (parsed arguments, map failure strategy and
+ * function type flags). Subsequent lookups for the same path are a single map hit.</p>
+ *
+ * <p>Paths are resolved by a {@link PseudoFuncRuleMatcher}, so the cost of resolving a new path does not depend on
+ * the number of rules. The {@link FieldRule} of a rule is compiled the first time any path matches that rule.</p>
+ */
+public class PseudoRulePlan {
+
+    /**
+     * Upper bound on the number of memoized field paths. Paths that include array indices may be unbounded, so beyond
+     * this the rule is resolved by the matcher on every lookup.
+     */
+    private static final int MAX_CACHED_PATHS = 10_000;
+
+    private final PseudoFuncs pseudoFuncs;
+    private final PseudoFuncRuleMatcher matcher;
+    private final Map<String, Optional<FieldRule>> fieldRules = new ConcurrentHashMap<>();
+    private final Map<Integer, Optional<FieldRule>> compiledRules = new ConcurrentHashMap<>();
+    private final boolean preprocessingRequired;
+
+    public PseudoRulePlan(List<PseudoFuncRule> rules, PseudoFuncs pseudoFuncs) {
+        this.pseudoFuncs = pseudoFuncs;
+        this.matcher = new PseudoFuncRuleMatcher(rules);
+        this.preprocessingRequired = hasSidMapping(rules);
+    }
+
+    /**
+     * @return true if any of the rules are SID mapping functions
+     */
+    public static boolean hasSidMapping(List<PseudoFuncRule> rules) {
+        return rules.stream()
+                .anyMatch(rule -> isSidMapping(PseudoFuncDeclaration.fromString(rule.getFunc()).getFuncName()));
+    }
+
+    /**
+     * Only SID mapping functions need to see all values before values are transformed (in order to look up SIDs in
+     * bulk). If none of the rules are SID mapping functions, values can be transformed in a single pass.
+     *
+     * @return true if any of the rules require a preprocessing pass
+     */
+    public boolean isPreprocessingRequired() {
+        return preprocessingRequired;
+    }
+
+    /**
+     * Find the rule that applies to a field.
+     *
+     * @param field the field to look up
+     * @return the compiled rule of the first matching pseudo rule, or empty if no rules match the field
+     */
+    public Optional<FieldRule> find(FieldDescriptor field) {
+        Optional<FieldRule> fieldRule = fieldRules.get(field.getPath());
+        if (fieldRule == null) {
+            fieldRule = compile(field);
+            if (fieldRules.size() < MAX_CACHED_PATHS) {
+                fieldRules.putIfAbsent(field.getPath(), fieldRule);
+            }
+        }
+        return fieldRule;
+    }
+
+    private Optional<FieldRule> compile(FieldDescriptor field) {
+        int ruleIndex = matcher.firstMatch(field);
+        if (ruleIndex < 0) {
+            return Optional.empty();
+        }
+        return compiledRules.computeIfAbsent(ruleIndex, i -> pseudoFuncs.findPseudoFunc(field).map(FieldRule::of));
+    }
+
+    private static boolean isSidMapping(String funcName) {
+        return funcName.equals(PseudoFuncNames.MAP_SID)
+                || funcName.equals(PseudoFuncNames.MAP_SID_FF31)
+                || funcName.equals(PseudoFuncNames.MAP_SID_DAEAD);
+    }
+
+    @Value
+    public static class FieldRule {
+        PseudoFuncRuleMatch match;
+        PseudoFuncDeclaration declaration;
+        String encryptionKeyReference;
+        MapFailureStrategy mapFailureStrategy;
+
+        // True if the function is a SID mapping function (map-sid, map-sid-ff31, map-sid-daead)
+        boolean sidMapping;
+        // True if the function is a plain mapping function (the first step of map-sid)
+        boolean mapFunc;
+        // True if values must be at least 4 characters long in order to be transformed (FPE and FPE based map-sid)
+        boolean minLengthRequired;
+        // True if the function always gives the same result for the same value (daead, ff31 and legacy FPE)
+        boolean deterministic;
+
+        static FieldRule of(PseudoFuncRuleMatch match) {
+            PseudoFuncDeclaration declaration = PseudoFuncDeclaration.fromString(match.getRule().getFunc());
+            String funcName = declaration.getFuncName();
+            PseudoFunc func = match.getFunc();
+            return new FieldRule(match,
+                    declaration,
+                    declaration.getArgs().getOrDefault(KEY_REFERENCE, null),
+                    mapFailureStrategyOf(declaration.getArgs()),
+                    isSidMapping(funcName),
+                    func instanceof MapFunc,
+                    func instanceof FpeFunc
+                            || func instanceof TinkFpeFunc
+                            || funcName.equals(PseudoFuncNames.MAP_SID)
+                            || funcName.equals(PseudoFuncNames.MAP_SID_FF31),
+                    func instanceof FpeFunc
+                            || func instanceof TinkFpeFunc
+                            || funcName.equals(PseudoFuncNames.DAEAD));
+        }
+
+        public PseudoFunc getFunc() {
+            return match.getFunc();
+        }
+
+        public PseudoFuncRule getRule() {
+            return match.getRule();
+        }
+
+        private static MapFailureStrategy mapFailureStrategyOf(Map<String, String> config) {
+            return Optional.ofNullable(
+                    config.getOrDefault(MapFuncConfig.Param.MAP_FAILURE_STRATEGY, null)
+            ).map(String::valueOf).map(MapFailureStrategy::valueOf).orElse(MapFailureStrategy.RETURN_ORIGINAL);
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package no.ssb.dlp.pseudo.service.pseudo;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.inject.Singleton;
+import no.ssb.dlp.pseudo.core.PseudoKeyset;
+import no.ssb.dlp.pseudo.core.func.PseudoFuncRule;
+import no.ssb.dlp.pseudo.core.util.Json;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Cache of compiled {@link PseudoRulePlan}s (including the {@link no.ssb.dlp.pseudo.core.func.PseudoFuncs} and the
+ * key material they hold) that is shared across requests.
+ *
+ * <p>Plans are keyed by a hash of the rules, the keysets and the configured pseudo secrets. Rule plans with SID mapping
+ * rules are never cached, since the SID mapping functions hold state for a single request.</p>
+ *
+ * <p>Hits and misses are exposed as the <code>cache.gets</code> metric with <code>cache=pseudo-rule-plans</code>.</p>
+ */
+@Singleton
+public class PseudoRulePlanCache {
+
+    static final String CACHE_NAME = "pseudo-rule-plans";
+
+    private final Cache<String, PseudoRulePlan> cache;
+
+    public PseudoRulePlanCache(PseudoRulePlanCacheConfig config, MeterRegistry meterRegistry) {
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(config.getMaximumSize())
+                .expireAfterWrite(config.getExpireAfterWrite())
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, CACHE_NAME);
+    }
+
+    /**
+     * Get a cached rule plan, or compile and cache a new one.
+     *
+     * @param rules          the pseudo rules
+     * @param keysets        the keysets the rules may refer to
+     * @param secretsVersion identifies the version of the pseudo secrets the rules may refer to
+     * @param rulePlan       compiles a new rule plan
+     * @return the cached or newly compiled rule plan
+     */
+    public PseudoRulePlan get(List<PseudoFuncRule> rules, Collection<PseudoKeyset> keysets, String secretsVersion,
+                              Supplier<PseudoRulePlan> rulePlan) {
+        if (PseudoRulePlan.hasSidMapping(rules)) {
+            return rulePlan.get();
+        }
+        return cache.get(cacheKeyOf(rules, keysets, secretsVersion), k -> rulePlan.get());
+    }
+
+    static String cacheKeyOf(List<PseudoFuncRule> rules, Collection<PseudoKeyset> keysets, String secretsVersion) {
+        Hasher hasher = Hashing.sha256().newHasher();
+        for (PseudoFuncRule rule : rules) {
+            putString(hasher, rule.getName());
+            putString(hasher, rule.getPattern());
+            putString(hasher, rule.getFunc());
+        }
+        hasher.putInt(rules.size());
+        for (PseudoKeyset keyset : keysets) {
+            putString(hasher, Json.from(keyset));
+        }
+        hasher.putInt(keysets.size());
+        putString(hasher, secretsVersion);
+        return hasher.hash().toString();
+    }
+
+    private static void putString(Hasher hasher, String s) {
+        // Prefix with the length, so that e.g. ("ab", "c") and ("a", "bc") give different hashes
+        if (s == null) {
+            hasher.putInt(-1);
+        } else {
+            hasher.putInt(s.length()).putString(s, StandardCharsets.UTF_8);
+        }
+    }
+}
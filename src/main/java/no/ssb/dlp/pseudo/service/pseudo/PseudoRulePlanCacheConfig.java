@@ -0,0 +1,25 @@
+package no.ssb.dlp.pseudo.service.pseudo;
+
+import io.micronaut.context.annotation.ConfigurationProperties;
+import lombok.Data;
+
+import jakarta.validation.constraints.Min;
+import java.time.Duration;
+
+@ConfigurationProperties("pseudo.cache.rule-plans")
+@Data
+public class PseudoRulePlanCacheConfig {
+
+    /**
+     * Max number of compiled rule plans to keep. Set to 0 to disable caching.
+     */
+    @Min(0)
+    private long maximumSize = 500;
+
+    /**
+     * How long a compiled rule plan is kept. Should not be longer than the secrets cache, so that new versions of
+     * pseudo secrets are picked up.
+     */
+    private Duration expireAfterWrite = Duration.ofMinutes(15);
+
+}
@@ -1,13 +1,17 @@
 package no.ssb.dlp.pseudo.service.pseudo;
 
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
 import io.micronaut.context.annotation.Property;
 import jakarta.inject.Singleton;
 import no.ssb.dlp.pseudo.core.PseudoSecret;
 import no.ssb.dlp.pseudo.service.secrets.SecretService;
 
+import java.nio.charset.StandardCharsets;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.TreeMap;
 
 @Singleton
 public class PseudoSecrets {
@@ -38,6 +42,23 @@ public class PseudoSecrets {
         return resolvePseudoSecrets(configuredPseudoSecrets);
     }
 
+    /**
+     * Identifies the configured pseudo secrets, without resolving their contents. Secrets that refer to the latest
+     * version in the secret manager are identified by the version "latest", so this will not change when new versions
+     * of such secrets are added.
+     *
+     * @return a hash of the names, ids, versions and types of the configured pseudo secrets
+     */
+    public String version() {
+        Hasher hasher = Hashing.sha256().newHasher();
+        new TreeMap<>(configuredPseudoSecrets).forEach((name, secret) -> hasher
+                .putString(String.valueOf(name), StandardCharsets.UTF_8).putChar('\0')
+                .putString(String.valueOf(secret.getId()), StandardCharsets.UTF_8).putChar('\0')
+                .putString(String.valueOf(secret.getVersion()), StandardCharsets.UTF_8).putChar('\0')
+                .putString(String.valueOf(secret.getType()), StandardCharsets.UTF_8).putChar('\0'));
+        return hasher.hash().toString();
+    }
+
     /**
      * <p>Clean up configured pseudo secrets and resolve pseudo secret contents.</p>
      *
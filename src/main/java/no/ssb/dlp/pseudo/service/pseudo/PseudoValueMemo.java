@@ -0,0 +1,63 @@
+package no.ssb.dlp.pseudo.service.pseudo;
+
+/**
+ * A bounded memo of the results of deterministic pseudo functions (e.g. <code>daead</code> and <code>ff31</code>),
+ * for the values of a single request. Columns often have few distinct values compared to the number of records, so
+ * repeated values do not have to be transformed again.
+ *
+ * <p>The memo is direct mapped: each rule and value hashes to a single slot of a fixed size array, and a new result
+ * simply replaces the result in its slot. This keeps the footprint fixed (one entry object per slot, and no eviction
+ * bookkeeping) also for columns with high cardinality, where most lookups are misses. The memo is not synchronized,
+ * since entries are immutable: workers that race for a slot can only cause misses.</p>
+ */
+public class PseudoValueMemo {
+
+    /**
+     * Upper bound on the size of a memo, so that rounding up to a power of two can not overflow.
+     */
+    public static final int MAX_SIZE = 1 << 24;
+
+    private final Entry[] entries;
+    private final int mask;
+
+    /**
+     * @param size the max number of memoized results, rounded up to a power of two
+     * @throws IllegalArgumentException if the size is not between 1 and {@link #MAX_SIZE}
+     */
+    public PseudoValueMemo(int size) {
+        if (size < 1 || size > MAX_SIZE) {
+            throw new IllegalArgumentException("Memo size must be between 1 and " + MAX_SIZE + ", was " + size);
+        }
+        final int capacity = Integer.highestOneBit(Math.max(size - 1, 1)) << 1;
+        this.entries = new Entry[capacity];
+        this.mask = capacity - 1;
+    }
+
+    /**
+     * @param rule  the rule that transforms the value
+     * @param value the value to transform
+     * @return the memoized result, or null if the value has not been memoized
+     */
+    public String get(Object rule, String value) {
+        final Entry entry = entries[indexOf(rule, value)];
+        return entry != null && entry.rule() == rule && entry.value().equals(value) ? entry.result() : null;
+    }
+
+    /**
+     * Memoize a result, replacing any other result in the same slot.
+     */
+    public void put(Object rule, String value, String result) {
+        if (result != null) {
+            entries[indexOf(rule, value)] = new Entry(rule, value, result);
+        }
+    }
+
+    private int indexOf(Object rule, String value) {
+        final int hash = value.hashCode() * 31 + System.identityHashCode(rule);
+        // Spread the high bits, like HashMap does
+        return (hash ^ (hash >>> 16)) & mask;
+    }
+
+    private record Entry(Object rule, String value, String result) {
+    }
+}
@@ -0,0 +1,53 @@
+package no.ssb.dlp.pseudo.service.pseudo;
+
+import io.reactivex.Scheduler;
+import io.reactivex.schedulers.Schedulers;
+import jakarta.annotation.PreDestroy;
+import jakarta.inject.Singleton;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A bounded pool of worker threads used for CPU intensive pseudo operations that are run in parallel.
+ *
+ * <p>A dedicated pool is used (instead of e.g. the computation scheduler) since pseudo functions may block, such as
+ * when waiting for SID lookups.</p>
+ */
+@Singleton
+@Slf4j
+public class PseudoWorkerPool {
+
+    @Getter
+    private final int workers;
+    private final ExecutorService executor;
+    @Getter
+    private final Scheduler scheduler;
+
+    public PseudoWorkerPool(PseudoProcessingConfig config) {
+        this.workers = config.getWorkers();
+        this.executor = Executors.newFixedThreadPool(workers, new WorkerThreadFactory());
+        this.scheduler = Schedulers.from(executor);
+        log.info("Pseudo worker pool with {} workers", workers);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private static class WorkerThreadFactory implements ThreadFactory {
+        private final AtomicInteger threadCount = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "pseudo-worker-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -6,35 +6,29 @@ import lombok.extern.slf4j.Slf4j;
 import no.ssb.dapla.dlp.pseudo.func.PseudoFuncInput;
 import no.ssb.dapla.dlp.pseudo.func.PseudoFuncOutput;
 import no.ssb.dapla.dlp.pseudo.func.TransformDirection;
-import no.ssb.dapla.dlp.pseudo.func.fpe.FpeFunc;
 import no.ssb.dapla.dlp.pseudo.func.map.MapFailureStrategy;
-import no.ssb.dapla.dlp.pseudo.func.map.MapFunc;
 import no.ssb.dapla.dlp.pseudo.func.map.MapFuncConfig;
-import no.ssb.dapla.dlp.pseudo.func.tink.fpe.TinkFpeFunc;
 import no.ssb.dlp.pseudo.core.PseudoException;
 import no.ssb.dlp.pseudo.core.PseudoKeyset;
 import no.ssb.dlp.pseudo.core.PseudoOperation;
 import no.ssb.dlp.pseudo.core.field.FieldDescriptor;
 import no.ssb.dlp.pseudo.core.field.ValueInterceptorChain;
-import no.ssb.dlp.pseudo.core.func.PseudoFuncDeclaration;
-import no.ssb.dlp.pseudo.core.func.PseudoFuncNames;
 import no.ssb.dlp.pseudo.core.func.PseudoFuncRule;
-import no.ssb.dlp.pseudo.core.func.PseudoFuncRuleMatch;
 import no.ssb.dlp.pseudo.core.func.PseudoFuncs;
-import no.ssb.dlp.pseudo.core.map.RecordMapProcessor;
 import no.ssb.dlp.pseudo.core.tink.model.EncryptedKeysetWrapper;
+import no.ssb.dlp.pseudo.service.pseudo.KeyRotationPlan.KeyRotation;
+import no.ssb.dlp.pseudo.service.pseudo.PseudoRulePlan.FieldRule;
 import no.ssb.dlp.pseudo.service.pseudo.metadata.FieldMetadata;
 import no.ssb.dlp.pseudo.service.pseudo.metadata.FieldMetric;
 import no.ssb.dlp.pseudo.service.pseudo.metadata.PseudoMetadataProcessor;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
-import java.util.Map;
-import java.util.Optional;
+import java.util.function.Predicate;
 
 import static no.ssb.dlp.pseudo.core.PseudoOperation.DEPSEUDONYMIZE;
 import static no.ssb.dlp.pseudo.core.PseudoOperation.PSEUDONYMIZE;
-import static no.ssb.dlp.pseudo.core.func.PseudoFuncDeclaration.*;
 import static no.ssb.dlp.pseudo.service.sid.SidMapper.*;
 
 @RequiredArgsConstructor
@@ -42,47 +36,110 @@ import static no.ssb.dlp.pseudo.service.sid.SidMapper.*;
 @Slf4j
 public class RecordMapProcessorFactory {
     private final PseudoSecrets pseudoSecrets;
+    private final PseudoRulePlanCache rulePlanCache;
+    private final PseudoProcessingConfig processingConfig;
 
-    public RecordMapProcessor<PseudoMetadataProcessor> newPseudonymizeRecordProcessor(List<PseudoConfig> pseudoConfigs, String correlationId) {
+    public PseudoRecordMapProcessor newPseudonymizeRecordProcessor(List<PseudoConfig> pseudoConfigs, String correlationId) {
+        return newPseudonymizeRecordProcessor(pseudoConfigs, new PseudoMetadataProcessor(correlationId));
+    }
+
+    /**
+     * Create a record processor that collects metadata in an existing metadata processor. This allows multiple
+     * record processors (e.g. one per column) to share metadata.
+     */
+    public PseudoRecordMapProcessor newPseudonymizeRecordProcessor(List<PseudoConfig> pseudoConfigs,
+                                                                   PseudoMetadataProcessor metadataProcessor) {
         ValueInterceptorChain chain = new ValueInterceptorChain();
-        PseudoMetadataProcessor metadataProcessor = new PseudoMetadataProcessor(correlationId);
+        List<PseudoRulePlan> rulePlans = new ArrayList<>();
 
         for (PseudoConfig config : pseudoConfigs) {
-            final PseudoFuncs fieldPseudonymizer = newPseudoFuncs(config.getRules(),
+            final PseudoRulePlan fieldPseudonymizer = newPseudoRulePlan(config.getRules(),
                     pseudoKeysetsOf(config.getKeysets()));
-            chain.preprocessor((f, v) -> init(fieldPseudonymizer, TransformDirection.APPLY, f, v));
-            chain.register((f, v) -> process(PSEUDONYMIZE, fieldPseudonymizer, f, v, metadataProcessor));
+            if (fieldPseudonymizer.isPreprocessingRequired()) {
+                chain.preprocessor((f, v) -> init(fieldPseudonymizer, TransformDirection.APPLY, f, v));
+            }
+            final PseudoValueMemo memo = newValueMemo();
+            chain.register((f, v) -> process(PSEUDONYMIZE, fieldPseudonymizer, f, v, memo, metadataProcessor));
+            rulePlans.add(fieldPseudonymizer);
         }
-        return new RecordMapProcessor<>(chain, metadataProcessor);
+        return new PseudoRecordMapProcessor(chain, metadataProcessor, fieldMatcherOf(rulePlans));
     }
 
-    public RecordMapProcessor<PseudoMetadataProcessor> newDepseudonymizeRecordProcessor(List<PseudoConfig> pseudoConfigs, String correlationId) {
+    public PseudoRecordMapProcessor newDepseudonymizeRecordProcessor(List<PseudoConfig> pseudoConfigs, String correlationId) {
+        return newDepseudonymizeRecordProcessor(pseudoConfigs, new PseudoMetadataProcessor(correlationId));
+    }
+
+    public PseudoRecordMapProcessor newDepseudonymizeRecordProcessor(List<PseudoConfig> pseudoConfigs,
+                                                                     PseudoMetadataProcessor metadataProcessor) {
         ValueInterceptorChain chain = new ValueInterceptorChain();
-        PseudoMetadataProcessor metadataProcessor = new PseudoMetadataProcessor(correlationId);
+        List<PseudoRulePlan> rulePlans = new ArrayList<>();
 
         for (PseudoConfig config : pseudoConfigs) {
-            final PseudoFuncs fieldDepseudonymizer = newPseudoFuncs(config.getRules(),
+            final PseudoRulePlan fieldDepseudonymizer = newPseudoRulePlan(config.getRules(),
                     pseudoKeysetsOf(config.getKeysets()));
-            chain.preprocessor((f, v) -> init(fieldDepseudonymizer, TransformDirection.RESTORE, f, v));
-            chain.register((f, v) -> process(DEPSEUDONYMIZE, fieldDepseudonymizer, f, v, metadataProcessor));
+            if (fieldDepseudonymizer.isPreprocessingRequired()) {
+                chain.preprocessor((f, v) -> init(fieldDepseudonymizer, TransformDirection.RESTORE, f, v));
+            }
+            final PseudoValueMemo memo = newValueMemo();
+            chain.register((f, v) -> process(DEPSEUDONYMIZE, fieldDepseudonymizer, f, v, memo, metadataProcessor));
+            rulePlans.add(fieldDepseudonymizer);
         }
 
-        return new RecordMapProcessor<>(chain, metadataProcessor);
+        return new PseudoRecordMapProcessor(chain, metadataProcessor, fieldMatcherOf(rulePlans));
     }
 
-    public RecordMapProcessor<PseudoMetadataProcessor> newRepseudonymizeRecordProcessor(PseudoConfig sourcePseudoConfig,
-                                                               PseudoConfig targetPseudoConfig, String correlationId) {
-        final PseudoFuncs fieldDepseudonymizer = newPseudoFuncs(sourcePseudoConfig.getRules(),
+    public PseudoRecordMapProcessor newRepseudonymizeRecordProcessor(PseudoConfig sourcePseudoConfig,
+                                                                     PseudoConfig targetPseudoConfig,
+                                                                     String correlationId) {
+        return newRepseudonymizeRecordProcessor(sourcePseudoConfig, targetPseudoConfig,
+                new PseudoMetadataProcessor(correlationId));
+    }
+
+    public PseudoRecordMapProcessor newRepseudonymizeRecordProcessor(PseudoConfig sourcePseudoConfig,
+                                                                     PseudoConfig targetPseudoConfig,
+                                                                     PseudoMetadataProcessor metadataProcessor) {
+        final PseudoRulePlan fieldDepseudonymizer = newPseudoRulePlan(sourcePseudoConfig.getRules(),
                 pseudoKeysetsOf(sourcePseudoConfig.getKeysets()));
-        final PseudoFuncs fieldPseudonymizer = newPseudoFuncs(targetPseudoConfig.getRules(),
+        final PseudoRulePlan fieldPseudonymizer = newPseudoRulePlan(targetPseudoConfig.getRules(),
                 pseudoKeysetsOf(targetPseudoConfig.getKeysets()));
-        PseudoMetadataProcessor metadataProcessor = new PseudoMetadataProcessor(correlationId);
-        return new RecordMapProcessor<>(
-                new ValueInterceptorChain()
-                        .preprocessor((f, v) -> init(fieldDepseudonymizer, TransformDirection.RESTORE, f, v))
-                        .register((f, v) -> process(DEPSEUDONYMIZE, fieldDepseudonymizer, f, v, metadataProcessor))
-                        .register((f, v) -> process(PSEUDONYMIZE, fieldPseudonymizer, f, v, metadataProcessor)),
-                metadataProcessor);
+        final PseudoValueMemo depseudonymizeMemo = newValueMemo();
+        final PseudoValueMemo pseudonymizeMemo = newValueMemo();
+        ValueInterceptorChain chain = new ValueInterceptorChain();
+        if (fieldDepseudonymizer.isPreprocessingRequired()) {
+            chain.preprocessor((f, v) -> init(fieldDepseudonymizer, TransformDirection.RESTORE, f, v));
+        }
+        return new PseudoRecordMapProcessor(
+                chain.register((f, v) -> process(DEPSEUDONYMIZE, fieldDepseudonymizer, f, v, depseudonymizeMemo,
+                                metadataProcessor))
+                        .register((f, v) -> process(PSEUDONYMIZE, fieldPseudonymizer, f, v, pseudonymizeMemo,
+                                metadataProcessor)),
+                metadataProcessor,
+                fieldMatcherOf(List.of(fieldDepseudonymizer, fieldPseudonymizer)));
+    }
+
+    public PseudoRecordMapProcessor newKeyRotationRecordProcessor(PseudoConfig sourcePseudoConfig,
+                                                                  PseudoConfig targetPseudoConfig,
+                                                                  String correlationId) {
+        return newKeyRotationRecordProcessor(sourcePseudoConfig, targetPseudoConfig,
+                new PseudoMetadataProcessor(correlationId));
+    }
+
+    /**
+     * Create a record processor that repseudonymizes values with a single, fused transform per field (see
+     * {@link KeyRotationPlan}), instead of chaining depseudonymization and pseudonymization. SID mapping functions
+     * are not supported.
+     */
+    public PseudoRecordMapProcessor newKeyRotationRecordProcessor(PseudoConfig sourcePseudoConfig,
+                                                                  PseudoConfig targetPseudoConfig,
+                                                                  PseudoMetadataProcessor metadataProcessor) {
+        final KeyRotationPlan keyRotationPlan = new KeyRotationPlan(
+                newPseudoRulePlan(sourcePseudoConfig.getRules(), pseudoKeysetsOf(sourcePseudoConfig.getKeysets())),
+                newPseudoRulePlan(targetPseudoConfig.getRules(), pseudoKeysetsOf(targetPseudoConfig.getKeysets())));
+        final PseudoValueMemo memo = newValueMemo();
+        return new PseudoRecordMapProcessor(
+                new ValueInterceptorChain().register((f, v) -> rotate(keyRotationPlan, f, v, memo, metadataProcessor)),
+                metadataProcessor,
+                keyRotationPlan::matches);
     }
 
     protected PseudoFuncs newPseudoFuncs(Collection<PseudoFuncRule> rules,
@@ -90,51 +147,61 @@ public class RecordMapProcessorFactory {
         return new PseudoFuncs(rules, pseudoSecrets.resolve(), keysets);
     }
 
-    private String init(PseudoFuncs pseudoFuncs, TransformDirection direction, FieldDescriptor field, String varValue) {
+    protected PseudoRulePlan newPseudoRulePlan(List<PseudoFuncRule> rules,
+                                               Collection<PseudoKeyset> keysets) {
+        return rulePlanCache.get(rules, keysets, pseudoSecrets.version(),
+                () -> new PseudoRulePlan(rules, newPseudoFuncs(rules, keysets)));
+    }
+
+    /**
+     * @return a memo for the results of deterministic functions, or null if memoization is disabled
+     */
+    private PseudoValueMemo newValueMemo() {
+        return processingConfig.getMemoSize() > 0 ? new PseudoValueMemo(processingConfig.getMemoSize()) : null;
+    }
+
+    private static Predicate<FieldDescriptor> fieldMatcherOf(List<PseudoRulePlan> rulePlans) {
+        return field -> rulePlans.stream().anyMatch(rulePlan -> rulePlan.find(field).isPresent());
+    }
+
+    private String init(PseudoRulePlan rulePlan, TransformDirection direction, FieldDescriptor field, String varValue) {
         if (varValue != null) {
-            pseudoFuncs.findPseudoFunc(field).ifPresent(pseudoFunc ->
-                    pseudoFunc.getFunc().init(PseudoFuncInput.of(varValue), direction));
+            rulePlan.find(field).ifPresent(fieldRule ->
+                    fieldRule.getFunc().init(PseudoFuncInput.of(varValue), direction));
         }
         return varValue;
     }
 
     private String process(PseudoOperation operation,
-                           PseudoFuncs func,
+                           PseudoRulePlan rulePlan,
                            FieldDescriptor field,
                            String varValue,
+                           PseudoValueMemo memo,
                            PseudoMetadataProcessor metadataProcessor) {
-        PseudoFuncRuleMatch match = func.findPseudoFunc(field).orElse(null);
+        FieldRule fieldRule = rulePlan.find(field).orElse(null);
 
-        if (match == null) {
+        if (fieldRule == null) {
             return varValue;
         }
         if (varValue == null) {
             // Avoid counting null values to map-sid twice (since map-sid consists of 2 functions)
-            if (!(match.getFunc() instanceof MapFunc)) {
+            if (!fieldRule.isMapFunc()) {
                 metadataProcessor.addMetric(FieldMetric.NULL_VALUE);
             }
             return varValue;
         }
         try {
-            PseudoFuncDeclaration funcDeclaration = PseudoFuncDeclaration.fromString(match.getRule().getFunc());
-
             // FPE requires minimum two bytes/chars to perform encryption and minimum four bytes in case of Unicode.
-            if (varValue.length() < 4 && (
-                    match.getFunc() instanceof FpeFunc ||
-                            match.getFunc() instanceof TinkFpeFunc ||
-                            funcDeclaration.getFuncName().equals(PseudoFuncNames.MAP_SID) ||
-                            funcDeclaration.getFuncName().equals(PseudoFuncNames.MAP_SID_FF31)
-            )) {
+            if (varValue.length() < 4 && fieldRule.isMinLengthRequired()) {
                 metadataProcessor.addMetric(FieldMetric.FPE_LIMITATION);
-                return getMapFailureStrategy(funcDeclaration.getArgs()) == MapFailureStrategy.RETURN_ORIGINAL ? varValue : null;
+                return fieldRule.getMapFailureStrategy() == MapFailureStrategy.RETURN_ORIGINAL ? varValue : null;
             }
 
-            final boolean isSidMapping = funcDeclaration.getFuncName().equals(PseudoFuncNames.MAP_SID)
-                    || funcDeclaration.getFuncName().equals(PseudoFuncNames.MAP_SID_FF31)
-                    || funcDeclaration.getFuncName().equals(PseudoFuncNames.MAP_SID_DAEAD);
+            final boolean isSidMapping = fieldRule.isSidMapping();
 
             if (operation == PSEUDONYMIZE) {
-                PseudoFuncOutput output = match.getFunc().apply(PseudoFuncInput.of(varValue));
+                PseudoFuncOutput output = transform(fieldRule, TransformDirection.APPLY, varValue, memo,
+                        metadataProcessor);
                 output.getWarnings().forEach(metadataProcessor::addLog);
                 final String sidSnapshotDate = output.getMetadata().getOrDefault(MapFuncConfig.Param.SNAPSHOT_DATE, null);
                 final String mapFailureMetadata = output.getMetadata().getOrDefault(MAP_FAILURE_METADATA, null);
@@ -145,20 +212,13 @@ public class RecordMapProcessorFactory {
                 } else if (isSidMapping) {
                     metadataProcessor.addMetric(FieldMetric.MAPPED_SID);
                 }
-                metadataProcessor.addMetadata(FieldMetadata.builder()
-                        .shortName(field.getName())
-                        .dataElementPath(normalizePath(field.getPath())) // Skip leading slash and use dot as separator
-                        .dataElementPattern(match.getRule().getPattern())
-                        .encryptionKeyReference(funcDeclaration.getArgs().getOrDefault(KEY_REFERENCE, null))
-                        .encryptionAlgorithm(match.getFunc().getAlgorithm())
-                        .stableIdentifierVersion(sidSnapshotDate)
-                        .stableIdentifierType(isSidMapping)
-                        .encryptionAlgorithmParameters(funcDeclaration.getArgs())
-                        .build());
+                metadataProcessor.addMetadata(field.getPath(), fieldRule.getRule(), sidSnapshotDate,
+                        () -> fieldMetadataOf(field, fieldRule, sidSnapshotDate));
                 return mappedValue;
 
             } else if (operation == DEPSEUDONYMIZE) {
-                PseudoFuncOutput output = match.getFunc().restore(PseudoFuncInput.of(varValue));
+                PseudoFuncOutput output = transform(fieldRule, TransformDirection.RESTORE, varValue, memo,
+                        metadataProcessor);
                 output.getWarnings().forEach(metadataProcessor::addLog);
                 final String mappedValue = output.getValue();
                 final String mapFailureMetadata = output.getMetadata().getOrDefault(MAP_FAILURE_METADATA, null);
@@ -170,7 +230,7 @@ public class RecordMapProcessorFactory {
                 }
                 return mappedValue;
             } else {
-                PseudoFuncOutput output = match.getFunc().restore(PseudoFuncInput.of(varValue));
+                PseudoFuncOutput output = fieldRule.getFunc().restore(PseudoFuncInput.of(varValue));
                 return output.getValue();
             }
         } catch (Exception e) {
@@ -179,6 +239,91 @@ public class RecordMapProcessorFactory {
         }
     }
 
+    private String rotate(KeyRotationPlan keyRotationPlan,
+                          FieldDescriptor field,
+                          String varValue,
+                          PseudoValueMemo memo,
+                          PseudoMetadataProcessor metadataProcessor) {
+        final KeyRotation keyRotation = keyRotationPlan.find(field).orElse(null);
+        if (keyRotation == null) {
+            return varValue;
+        }
+        if (varValue == null) {
+            metadataProcessor.addMetric(FieldMetric.NULL_VALUE);
+            return varValue;
+        }
+        try {
+            if (varValue.length() < 4 && keyRotation.isMinLengthRequired()) {
+                metadataProcessor.addMetric(FieldMetric.FPE_LIMITATION);
+                return keyRotation.getSource().getMapFailureStrategy() == MapFailureStrategy.RETURN_ORIGINAL
+                        ? varValue : null;
+            }
+            final boolean memoized = memo != null && keyRotation.isDeterministic();
+            if (memoized) {
+                final String result = memo.get(keyRotation, varValue);
+                metadataProcessor.addMetric(result != null ? FieldMetric.MEMO_HIT : FieldMetric.MEMO_MISS);
+                if (result != null) {
+                    return result;
+                }
+            }
+            final PseudoFuncOutput restored = keyRotation.getSource().getFunc().restore(PseudoFuncInput.of(varValue));
+            final PseudoFuncOutput output = keyRotation.getTarget().getFunc()
+                    .apply(PseudoFuncInput.of(restored.getValue()));
+            restored.getWarnings().forEach(metadataProcessor::addLog);
+            output.getWarnings().forEach(metadataProcessor::addLog);
+            metadataProcessor.addMetadata(field.getPath(), keyRotation.getTarget().getRule(), null,
+                    () -> fieldMetadataOf(field, keyRotation.getTarget(), null));
+            if (memoized && restored.getWarnings().isEmpty() && output.getWarnings().isEmpty()) {
+                memo.put(keyRotation, varValue, output.getValue());
+            }
+            return output.getValue();
+        } catch (Exception e) {
+            throw new PseudoException(String.format("key rotation error - field='%s', originalValue='%s'",
+                    field.getPath(), varValue), e);
+        }
+    }
+
+    /**
+     * Transform a value, or look up the result in the memo if the function is deterministic.
+     */
+    private static PseudoFuncOutput transform(FieldRule fieldRule, TransformDirection direction, String value,
+                                              PseudoValueMemo memo, PseudoMetadataProcessor metadataProcessor) {
+        if (memo == null || !fieldRule.isDeterministic()) {
+            return transform(fieldRule, direction, value);
+        }
+        final String result = memo.get(fieldRule, value);
+        if (result != null) {
+            metadataProcessor.addMetric(FieldMetric.MEMO_HIT);
+            return PseudoFuncOutput.of(result);
+        }
+        metadataProcessor.addMetric(FieldMetric.MEMO_MISS);
+        final PseudoFuncOutput output = transform(fieldRule, direction, value);
+        // Results with warnings are not memoized, so that the warnings are logged for every value
+        if (output.getWarnings().isEmpty()) {
+            memo.put(fieldRule, value, output.getValue());
+        }
+        return output;
+    }
+
+    private static PseudoFuncOutput transform(FieldRule fieldRule, TransformDirection direction, String value) {
+        return direction == TransformDirection.APPLY
+                ? fieldRule.getFunc().apply(PseudoFuncInput.of(value))
+                : fieldRule.getFunc().restore(PseudoFuncInput.of(value));
+    }
+
+    private static FieldMetadata fieldMetadataOf(FieldDescriptor field, FieldRule fieldRule, String sidSnapshotDate) {
+        return FieldMetadata.builder()
+                .shortName(field.getName())
+                .dataElementPath(normalizePath(field.getPath())) // Skip leading slash and use dot as separator
+                .dataElementPattern(fieldRule.getRule().getPattern())
+                .encryptionKeyReference(fieldRule.getEncryptionKeyReference())
+                .encryptionAlgorithm(fieldRule.getFunc().getAlgorithm())
+                .stableIdentifierVersion(sidSnapshotDate)
+                .stableIdentifierType(fieldRule.isSidMapping())
+                .encryptionAlgorithmParameters(fieldRule.getDeclaration().getArgs())
+                .build();
+    }
+
     private static String normalizePath(String path) {
         // Normalize the path by skipping leading '/' and use dot as separator
         return path.substring(1).replace('/', '.')
@@ -193,10 +338,4 @@ public class RecordMapProcessorFactory {
                 .map(e -> (PseudoKeyset) e)
                 .toList();
     }
-
-    private MapFailureStrategy getMapFailureStrategy(Map<String, String> config) {
-        return Optional.ofNullable(
-                config.getOrDefault(MapFuncConfig.Param.MAP_FAILURE_STRATEGY, null)
-        ).map(String::valueOf).map(MapFailureStrategy::valueOf).orElse(MapFailureStrategy.RETURN_ORIGINAL);
-    }
 }
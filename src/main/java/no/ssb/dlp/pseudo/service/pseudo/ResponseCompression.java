@@ -0,0 +1,197 @@
+package no.ssb.dlp.pseudo.service.pseudo;
+
+import com.github.luben.zstd.ZstdOutputStream;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.reactivex.Flowable;
+import io.reactivex.Scheduler;
+import jakarta.inject.Singleton;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Compresses streamed pseudo results with an encoding negotiated through the <code>Accept-Encoding</code> header.
+ *
+ * <p>Each chunk is compressed and flushed as it arrives, so the client receives data as it is produced. Compression
+ * is done on the {@link PseudoWorkerPool}, and never on the Netty event loop. The compression ratio and the CPU time
+ * spent compressing are reported as metrics per encoding.</p>
+ */
+@Singleton
+public class ResponseCompression {
+
+    static final String RATIO_METRIC = "pseudo.response.compression.ratio";
+    static final String CPU_TIME_METRIC = "pseudo.response.compression.cpu.time";
+
+    private static final ThreadMXBean THREAD_MX_BEAN = ManagementFactory.getThreadMXBean();
+
+    private final ResponseCompressionConfig config;
+    private final Scheduler scheduler;
+    private final MeterRegistry meterRegistry;
+
+    public ResponseCompression(ResponseCompressionConfig config, PseudoWorkerPool workerPool,
+                               MeterRegistry meterRegistry) {
+        this.config = config;
+        this.scheduler = workerPool.getScheduler();
+        this.meterRegistry = meterRegistry;
+    }
+
+    @RequiredArgsConstructor
+    public enum Encoding {
+        // In order of preference
+        ZSTD("zstd"),
+        GZIP("gzip");
+
+        /**
+         * The content coding, as used in the <code>Accept-Encoding</code> and <code>Content-Encoding</code> headers
+         */
+        @Getter
+        private final String contentCoding;
+    }
+
+    /**
+     * Choose the encoding of a response.
+     *
+     * @param acceptEncoding the <code>Accept-Encoding</code> header of the request, if any
+     * @return the preferred encoding that is accepted by the client, or empty if the response should not be compressed
+     */
+    public Optional<Encoding> negotiate(String acceptEncoding) {
+        if (!config.isEnabled() || acceptEncoding == null) {
+            return Optional.empty();
+        }
+        Set<String> accepted = new HashSet<>();
+        for (String part : acceptEncoding.split(",")) {
+            String[] params = part.split(";");
+            String coding = params[0].trim().toLowerCase(Locale.ROOT);
+            if (!coding.isEmpty() && qualityOf(params) > 0) {
+                accepted.add(coding);
+            }
+        }
+        for (Encoding encoding : Encoding.values()) {
+            if (accepted.contains(encoding.getContentCoding())) {
+                return Optional.of(encoding);
+            }
+        }
+        return Optional.empty();
+    }
+
+    private static double qualityOf(String[] params) {
+        for (int i = 1; i < params.length; i++) {
+            String param = params[i].trim();
+            if (param.startsWith("q=")) {
+                try {
+                    return Double.parseDouble(param.substring(2));
+                } catch (NumberFormatException e) {
+                    return 0;
+                }
+            }
+        }
+        return 1;
+    }
+
+    /**
+     * Compress a stream of chunks.
+     *
+     * @param chunks   the uncompressed chunks
+     * @param encoding the encoding to compress with
+     * @return a flowable of compressed chunks
+     */
+    public Flowable<byte[]> compress(Flowable<byte[]> chunks, Encoding encoding) {
+        return Flowable.defer(() -> {
+            final Compressor compressor = new Compressor(encoding, config.getZstdLevel());
+            return chunks.observeOn(scheduler)
+                    .map(compressor::compress)
+                    .concatWith(Flowable.fromCallable(() -> {
+                        byte[] remaining = compressor.finish();
+                        recordMetrics(encoding, compressor);
+                        return remaining;
+                    }))
+                    .filter(chunk -> chunk.length > 0)
+                    .doFinally(compressor::close);
+        });
+    }
+
+    private void recordMetrics(Encoding encoding, Compressor compressor) {
+        if (compressor.bytesOut > 0) {
+            DistributionSummary.builder(RATIO_METRIC)
+                    .description("Uncompressed size divided by compressed size of pseudo results")
+                    .tag("encoding", encoding.getContentCoding())
+                    .register(meterRegistry)
+                    .record((double) compressor.bytesIn / compressor.bytesOut);
+        }
+        Timer.builder(CPU_TIME_METRIC)
+                .description("CPU time spent compressing pseudo results")
+                .tag("encoding", encoding.getContentCoding())
+                .register(meterRegistry)
+                .record(compressor.cpuNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Compresses into an in-memory sink, which is drained after each chunk. Synchronized, since the response may be
+     * cancelled (and the compressor closed) while a chunk is being compressed.
+     */
+    private static class Compressor implements Closeable {
+        private final ByteArrayOutputStream sink = new ByteArrayOutputStream();
+        private final OutputStream out;
+        private long bytesIn = 0;
+        private long bytesOut = 0;
+        private long cpuNanos = 0;
+
+        Compressor(Encoding encoding, int zstdLevel) throws IOException {
+            this.out = switch (encoding) {
+                case ZSTD -> new ZstdOutputStream(sink, zstdLevel);
+                case GZIP -> new GZIPOutputStream(sink, 8192, true);
+            };
+        }
+
+        synchronized byte[] compress(byte[] chunk) throws IOException {
+            final long start = cpuTime();
+            out.write(chunk);
+            // Flush, so that the client does not have to wait for the next chunk
+            out.flush();
+            bytesIn += chunk.length;
+            cpuNanos += cpuTime() - start;
+            return drain();
+        }
+
+        synchronized byte[] finish() throws IOException {
+            final long start = cpuTime();
+            out.close();
+            cpuNanos += cpuTime() - start;
+            return drain();
+        }
+
+        @Override
+        public synchronized void close() {
+            try {
+                out.close();
+            } catch (IOException e) {
+                // Nothing more will be written
+            }
+        }
+
+        private byte[] drain() {
+            byte[] compressed = sink.toByteArray();
+            sink.reset();
+            bytesOut += compressed.length;
+            return compressed;
+        }
+
+        private static long cpuTime() {
+            return THREAD_MX_BEAN.isCurrentThreadCpuTimeSupported() ? THREAD_MX_BEAN.getCurrentThreadCpuTime() : 0;
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package no.ssb.dlp.pseudo.service.pseudo;
+
+import io.micronaut.context.annotation.ConfigurationProperties;
+import lombok.Data;
+
+import jakarta.validation.constraints.Max;
+import jakarta.validation.constraints.Min;
+
+@ConfigurationProperties("pseudo.compression")
+@Data
+public class ResponseCompressionConfig {
+
+    /**
+     * If true, pseudo results are compressed with gzip or zstd if the client accepts it (via the
+     * <code>Accept-Encoding</code> header).
+     */
+    private boolean enabled = true;
+
+    /**
+     * The zstd compression level. Low levels are fast and still compress pseudonymized identifiers well.
+     */
+    @Min(1)
+    @Max(22)
+    private int zstdLevel = 3;
+
+}
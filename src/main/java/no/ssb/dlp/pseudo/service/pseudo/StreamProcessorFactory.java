@@ -7,6 +7,8 @@ import no.ssb.dlp.pseudo.core.file.MoreMediaTypes;
 import no.ssb.dlp.pseudo.core.json.JsonStreamProcessor;
 import no.ssb.dlp.pseudo.core.csv.CsvStreamProcessor;
 import no.ssb.dlp.pseudo.core.map.RecordMapProcessor;
+import no.ssb.dlp.pseudo.core.field.ValueInterceptorChain;
+import no.ssb.dlp.pseudo.service.pseudo.metadata.PseudoMetadataProcessor;
 
 import jakarta.inject.Singleton;
 
@@ -14,13 +16,86 @@ import jakarta.inject.Singleton;
 @Singleton
 public class StreamProcessorFactory {
 
+    private final PseudoProcessingConfig processingConfig;
+    private final PseudoWorkerPool workerPool;
+
     public StreamProcessor newStreamProcessor(MediaType contentType, RecordMapProcessor recordMapProcessor) {
+        StreamProcessor streamProcessor = newSequentialStreamProcessor(contentType, recordMapProcessor);
+        final boolean windowedPreprocessing = isWindowedPreprocessing(recordMapProcessor);
+        if (!processingConfig.isParallel() && !windowedPreprocessing) {
+            return streamProcessor;
+        }
+        if (PseudoMediaTypes.isNdjson(contentType) && !windowedPreprocessing) {
+            // Lines can be parsed independently, so parse them on the worker pool as well
+            return new NdjsonStreamProcessor(recordMapProcessor, workerPool.getScheduler(), workerPool.getWorkers(),
+                    processingConfig.getBatchSize());
+        }
+
+        // Records are read without transforming any values, and then pseudonymized by the worker pool
+        RecordMapProcessor<?> recordReader = new RecordMapProcessor<>(new ValueInterceptorChain(),
+                recordMapProcessor.getMetadataProcessor());
+        return new ParallelStreamProcessor(streamProcessor,
+                newSequentialStreamProcessor(contentType, recordReader),
+                recordMapProcessor,
+                workerPool.getScheduler(),
+                // When only preprocessing in windows, keep the next window in flight while processing the current
+                processingConfig.isParallel() ? workerPool.getWorkers() : 2,
+                windowedPreprocessing ? processingConfig.getSidPrefetchWindow() : processingConfig.getBatchSize(),
+                windowedPreprocessing);
+    }
+
+    /**
+     * @return true if the files of an archive should be processed in parallel, using
+     * {@link #newParallelEntryProcessor(MediaType, RecordMapProcessor)}
+     */
+    public boolean isParallelEntries() {
+        return processingConfig.isParallelEntries();
+    }
+
+    /**
+     * Create a processor that processes the files of an archive in parallel on the worker pool, each file with a
+     * stream processor of its own.
+     */
+    public ParallelEntryProcessor newParallelEntryProcessor(MediaType contentType,
+                                                            RecordMapProcessor<PseudoMetadataProcessor> recordMapProcessor) {
+        return new ParallelEntryProcessor(() -> newStreamProcessor(contentType, recordMapProcessor),
+                recordMapProcessor.getMetadataProcessor(), workerPool.getScheduler(), workerPool.getWorkers(),
+                processingConfig.getBatchSize());
+    }
+
+    /**
+     * @return true if the stream processors of the record processor read the input only once (i.e. no separate
+     * preprocessing pass is needed)
+     */
+    public boolean isSinglePass(RecordMapProcessor<?> recordMapProcessor) {
+        return !recordMapProcessor.hasPreprocessors() || isWindowedPreprocessing(recordMapProcessor);
+    }
+
+    private boolean isWindowedPreprocessing(RecordMapProcessor<?> recordMapProcessor) {
+        return recordMapProcessor.hasPreprocessors() && processingConfig.getSidPrefetchWindow() > 0;
+    }
+
+    /**
+     * Parquet files are read from disk rather than from a stream, and may also be written back as Parquet, so the
+     * Parquet stream processor is exposed as is.
+     */
+    public ParquetStreamProcessor newParquetStreamProcessor(RecordMapProcessor<?> recordMapProcessor) {
+        return new ParquetStreamProcessor(recordMapProcessor);
+    }
+
+    private static StreamProcessor newSequentialStreamProcessor(MediaType contentType, RecordMapProcessor recordMapProcessor) {
         if (MediaType.APPLICATION_JSON.equals(contentType.toString())) {
             return new JsonStreamProcessor(recordMapProcessor);
         }
         else if (MoreMediaTypes.TEXT_CSV.equals(contentType.toString())) {
             return new CsvStreamProcessor(recordMapProcessor);
         }
+        else if (PseudoMediaTypes.isNdjson(contentType)) {
+            return new NdjsonStreamProcessor(recordMapProcessor);
+        }
+        else if (PseudoMediaTypes.isParquet(contentType)) {
+            return new ParquetStreamProcessor(recordMapProcessor);
+        }
 
         throw new IllegalArgumentException("No StreamProcessor found for content type " + contentType);
     }
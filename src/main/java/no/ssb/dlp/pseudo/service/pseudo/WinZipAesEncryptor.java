@@ -0,0 +1,109 @@
+package no.ssb.dlp.pseudo.service.pseudo;
+
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+
+/**
+ * Encrypts the data of a zip entry with AES-256, as specified by WinZip (AE-2), which is supported by most zip tools.
+ *
+ * <p>The key is derived from the password with PBKDF2 (HMAC-SHA1, 1000 iterations). The data is encrypted with AES in
+ * counter mode, with a little endian counter starting at 1, and authenticated with HMAC-SHA1. The entry data is the
+ * salt and password verifier ({@link #header()}), followed by the encrypted data and the authentication code
+ * ({@link #authenticationCode()}).</p>
+ */
+final class WinZipAesEncryptor {
+
+    static final int HEADER_LENGTH = 18;
+    static final int AUTHENTICATION_CODE_LENGTH = 10;
+    private static final int KEY_LENGTH = 32;
+    private static final int SALT_LENGTH = 16;
+    private static final int ITERATIONS = 1000;
+    private static final int BLOCK_SIZE = 16;
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private final byte[] header;
+    private final Cipher aes;
+    private final Mac hmac;
+    private byte[] keystream = new byte[0];
+    private int keystreamPosition = 0;
+    private long counter = 1;
+
+    WinZipAesEncryptor(char[] password) {
+        final byte[] salt = new byte[SALT_LENGTH];
+        RANDOM.nextBytes(salt);
+        try {
+            final byte[] derived = SecretKeyFactory.getInstance("PBKDF2WithHmacSHA1")
+                    .generateSecret(new PBEKeySpec(password, salt, ITERATIONS, (2 * KEY_LENGTH + 2) * 8))
+                    .getEncoded();
+            this.aes = Cipher.getInstance("AES/ECB/NoPadding");
+            this.aes.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(derived, 0, KEY_LENGTH, "AES"));
+            this.hmac = Mac.getInstance("HmacSHA1");
+            this.hmac.init(new SecretKeySpec(derived, KEY_LENGTH, KEY_LENGTH, "HmacSHA1"));
+            this.header = new byte[HEADER_LENGTH];
+            System.arraycopy(salt, 0, header, 0, SALT_LENGTH);
+            System.arraycopy(derived, 2 * KEY_LENGTH, header, SALT_LENGTH, 2);
+        } catch (GeneralSecurityException e) {
+            throw new RuntimeException("Error initializing AES encryption", e);
+        }
+    }
+
+    /**
+     * @return the salt and password verifier, which precede the encrypted data
+     */
+    byte[] header() {
+        return header.clone();
+    }
+
+    /**
+     * Encrypt the next part of the entry data.
+     */
+    byte[] encrypt(byte[] data) {
+        final byte[] encrypted = new byte[data.length];
+        int position = 0;
+        while (position < data.length) {
+            if (keystreamPosition == keystream.length) {
+                nextKeystream(data.length - position);
+            }
+            final int length = Math.min(data.length - position, keystream.length - keystreamPosition);
+            for (int i = 0; i < length; i++) {
+                encrypted[position + i] = (byte) (data[position + i] ^ keystream[keystreamPosition + i]);
+            }
+            position += length;
+            keystreamPosition += length;
+        }
+        hmac.update(encrypted);
+        return encrypted;
+    }
+
+    /**
+     * @return the authentication code, which follows the encrypted data
+     */
+    byte[] authenticationCode() {
+        return Arrays.copyOf(hmac.doFinal(), AUTHENTICATION_CODE_LENGTH);
+    }
+
+    /**
+     * Encrypt the counter blocks needed for at least the given number of bytes in one go.
+     */
+    private void nextKeystream(int length) {
+        final int blocks = (length + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        final byte[] counterBlocks = new byte[blocks * BLOCK_SIZE];
+        for (int block = 0; block < blocks; block++, counter++) {
+            for (int i = 0; i < Long.BYTES; i++) {
+                counterBlocks[block * BLOCK_SIZE + i] = (byte) (counter >>> (8 * i));
+            }
+        }
+        try {
+            keystream = aes.doFinal(counterBlocks);
+        } catch (GeneralSecurityException e) {
+            throw new RuntimeException("Error encrypting data", e);
+        }
+        keystreamPosition = 0;
+    }
+}
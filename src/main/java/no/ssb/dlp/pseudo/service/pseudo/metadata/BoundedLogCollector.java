@@ -0,0 +1,99 @@
+package no.ssb.dlp.pseudo.service.pseudo.metadata;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Collects log messages using bounded memory.
+ *
+ * <p>The first <code>maxLogs</code> messages are kept as is. Any messages beyond that are only counted, grouped by
+ * message template (the message with identifier-like values masked), and reported as a single "suppressed" summary
+ * line per template.</p>
+ */
+public class BoundedLogCollector {
+
+    static final String VALUE_PLACEHOLDER = "<value>";
+    static final String SUPPRESSED_LOGS = "Suppressed %d more log messages like: %s";
+    static final String SUPPRESSED_OTHER_LOGS = "Suppressed %d more log messages";
+
+    // Key used for counting suppressed messages when there are too many distinct templates
+    private static final String OTHER_TEMPLATE = "";
+
+    private final int maxLogs;
+    private final int maxTemplates;
+    private final List<String> logs = new ArrayList<>();
+    private final Map<String, Long> suppressedLogs = new LinkedHashMap<>();
+
+    /**
+     * @param maxLogs      max number of log messages to keep as is
+     * @param maxTemplates max number of distinct message templates to report suppressed messages for
+     */
+    public BoundedLogCollector(int maxLogs, int maxTemplates) {
+        this.maxLogs = maxLogs;
+        this.maxTemplates = maxTemplates;
+    }
+
+    public synchronized void add(String log) {
+        if (logs.size() < maxLogs) {
+            logs.add(log);
+            return;
+        }
+        String template = templateOf(log);
+        if (!suppressedLogs.containsKey(template) && suppressedLogs.size() >= maxTemplates) {
+            template = OTHER_TEMPLATE;
+        }
+        suppressedLogs.merge(template, 1L, Long::sum);
+    }
+
+    /**
+     * @return the retained log messages, followed by one summary line per template of suppressed messages
+     */
+    public synchronized List<String> getLogs() {
+        List<String> result = new ArrayList<>(logs);
+        suppressedLogs.forEach((template, count) -> {
+            if (!OTHER_TEMPLATE.equals(template)) {
+                result.add(SUPPRESSED_LOGS.formatted(count, template));
+            }
+        });
+        Long otherCount = suppressedLogs.get(OTHER_TEMPLATE);
+        if (otherCount != null) {
+            result.add(SUPPRESSED_OTHER_LOGS.formatted(otherCount));
+        }
+        return result;
+    }
+
+    /**
+     * Derive the template of a log message by masking every whitespace separated token that contains a digit or a
+     * redaction character (such as identifiers redacted by {@link no.ssb.dlp.pseudo.service.sid.Redactor}).
+     */
+    static String templateOf(String log) {
+        if (log == null) {
+            return "null";
+        }
+        StringBuilder template = new StringBuilder(log.length());
+        int tokenStart = 0;
+        for (int i = 0; i <= log.length(); i++) {
+            if (i == log.length() || Character.isWhitespace(log.charAt(i))) {
+                appendToken(template, log, tokenStart, i);
+                if (i < log.length()) {
+                    template.append(log.charAt(i));
+                }
+                tokenStart = i + 1;
+            }
+        }
+        return template.toString();
+    }
+
+    private static void appendToken(StringBuilder template, String log, int start, int end) {
+        for (int i = start; i < end; i++) {
+            char c = log.charAt(i);
+            if (Character.isDigit(c) || c == '*') {
+                template.append(VALUE_PLACEHOLDER);
+                return;
+            }
+        }
+        template.append(log, start, end);
+    }
+}
@@ -8,5 +8,9 @@ public enum FieldMetric {
     // Signals that a SID mapping has failed
     MISSING_SID,
     // Signals that a SID mapping has been performed
-    MAPPED_SID;
+    MAPPED_SID,
+    // Signals that the result of a deterministic function was found in the memo of the request
+    MEMO_HIT,
+    // Signals that the result of a deterministic function was not found in the memo of the request
+    MEMO_MISS;
 }
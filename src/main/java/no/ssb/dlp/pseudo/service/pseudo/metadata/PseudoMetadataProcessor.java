@@ -1,59 +1,139 @@
 package no.ssb.dlp.pseudo.service.pseudo.metadata;
 
+import io.reactivex.Flowable;
 import io.reactivex.processors.ReplayProcessor;
+import io.reactivex.subjects.CompletableSubject;
+import lombok.AccessLevel;
+import lombok.Getter;
 import lombok.Value;
+import no.ssb.dlp.pseudo.core.func.PseudoFuncRule;
 import no.ssb.dlp.pseudo.core.util.Json;
 import org.reactivestreams.Publisher;
 
+import java.time.Duration;
+import java.util.EnumMap;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
 
 @Value
 public class PseudoMetadataProcessor {
 
+    private static final int MAX_LOGS = 100;
+    private static final int MAX_SUPPRESSED_LOG_TEMPLATES = 10;
+    // Raw field paths may contain array indices, so the number of remembered metadata keys must be bounded
+    private static final int MAX_METADATA_KEYS = 10_000;
+
     String correlationId;
     Map<String, Set<FieldMetadata>> uniqueMetadataPaths = new LinkedHashMap<>();
+    @Getter(AccessLevel.NONE)
+    Set<MetadataKey> metadataKeys = ConcurrentHashMap.newKeySet();
     ReplayProcessor<FieldMetadata> datadocMetadata = ReplayProcessor.create();
-    ReplayProcessor<String> logs = ReplayProcessor.create();
-    ReplayProcessor<FieldMetric> metrics = ReplayProcessor.create();
+    // Logs and metrics are only collected while processing, and emitted once all processing has completed
+    BoundedLogCollector logs = new BoundedLogCollector(MAX_LOGS, MAX_SUPPRESSED_LOG_TEMPLATES);
+    Map<FieldMetric, LongAdder> metricCounters = new EnumMap<>(FieldMetric.class);
+    // The metrics of each file of an archive that is processed in parallel, ordered by the position of the file
+    @Getter(AccessLevel.NONE)
+    Map<Integer, Map<String, Object>> entryMetrics = new ConcurrentSkipListMap<>();
+    CompletableSubject processingCompleted = CompletableSubject.create();
 
     public PseudoMetadataProcessor(String correlationId) {
         this.correlationId = correlationId;
+        for (FieldMetric fieldMetric : FieldMetric.values()) {
+            metricCounters.put(fieldMetric, new LongAdder());
+        }
+    }
+
+    /**
+     * Add metadata about a pseudonymized field, unless metadata has already been added for the same raw field path,
+     * rule and stable identifier version. The metadata is only built the first time such a combination is seen.
+     *
+     * @param fieldPath               the raw path of the field
+     * @param rule                    the pseudo rule that was applied to the field
+     * @param stableIdentifierVersion the SID snapshot date, if the field was SID mapped
+     * @param metadata                supplies the metadata of the field
+     */
+    public void addMetadata(String fieldPath, PseudoFuncRule rule, String stableIdentifierVersion,
+                            Supplier<FieldMetadata> metadata) {
+        MetadataKey key = new MetadataKey(fieldPath, rule, stableIdentifierVersion);
+        if (!metadataKeys.contains(key)) {
+            addMetadata(metadata.get());
+            if (metadataKeys.size() < MAX_METADATA_KEYS) {
+                metadataKeys.add(key);
+            }
+        }
     }
-    public void addMetadata(final FieldMetadata metadata) {
+
+    /**
+     * Add metadata about a pseudonymized field. Synchronized, since records may be processed by multiple workers.
+     */
+    public synchronized void addMetadata(final FieldMetadata metadata) {
         Set<FieldMetadata> rules = uniqueMetadataPaths.computeIfAbsent(metadata.getDataElementPath(), k -> new HashSet<>());
         if (rules.add(metadata)) {
             datadocMetadata.onNext(metadata);
         }
     }
     public void addLog(String log) {
-        logs.onNext(log);
+        logs.add(log);
     }
     public void addMetric(FieldMetric fieldMetric) {
-        metrics.onNext(fieldMetric);
+        metricCounters.get(fieldMetric).increment();
+    }
+    /**
+     * Add the metrics of a file (entry) of an archive.
+     *
+     * @param index    the position of the file in the archive
+     * @param name     the name of the file
+     * @param records  the number of records in the file
+     * @param duration the time it took to process the file
+     */
+    public void addEntryMetric(int index, String name, long records, Duration duration) {
+        Map<String, Object> entry = new LinkedHashMap<>();
+        entry.put("name", name);
+        entry.put("records", records);
+        entry.put("duration_ms", duration.toMillis());
+        entryMetrics.put(index, Map.of("ENTRY", entry));
     }
     public Publisher<String> getMetadata() {
         return datadocMetadata.map(FieldMetadata::toDatadocPseudoVariable).map(Json::from);
     }
     public Publisher<String> getLogs() {
-        return logs.map(Json::from);
+        return processingCompleted.andThen(Flowable.defer(() -> Flowable.fromIterable(logs.getLogs())))
+                .map(Json::from);
     }
     public Publisher<String> getMetrics() {
-        return metrics.groupBy(FieldMetric::name)
-                .flatMapSingle(group ->
-                    group.count().map(c -> Map.of(group.getKey(), c.intValue())
-                )).map(Json::from);
+        return processingCompleted.andThen(Flowable.defer(() -> Flowable.fromIterable(metricCounters.entrySet())))
+                .filter(entry -> entry.getValue().sum() > 0)
+                .map(entry -> Map.<String, Object>of(entry.getKey().name(), entry.getValue().sum()))
+                .concatWith(Flowable.defer(() -> Flowable.fromIterable(memoHitRate())))
+                .concatWith(Flowable.defer(() -> Flowable.fromIterable(entryMetrics.values())))
+                .map(Json::from);
+    }
+
+    /**
+     * @return the share of lookups in the memo of deterministic functions that were hits, if the memo was used
+     */
+    private List<Map<String, Object>> memoHitRate() {
+        long hits = metricCounters.get(FieldMetric.MEMO_HIT).sum();
+        long lookups = hits + metricCounters.get(FieldMetric.MEMO_MISS).sum();
+        return lookups == 0 ? List.of()
+                : List.of(Map.of("MEMO_HIT_RATE", Math.round(1000.0 * hits / lookups) / 1000.0));
     }
+
     public void onCompleteAll() {
         datadocMetadata.onComplete();
-        logs.onComplete();
-        metrics.onComplete();
+        processingCompleted.onComplete();
     }
     public void onErrorAll(Throwable t) {
         datadocMetadata.onError(t);
-        logs.onError(t);
-        metrics.onError(t);
+        processingCompleted.onError(t);
     }
+
+    private record MetadataKey(String fieldPath, PseudoFuncRule rule, String stableIdentifierVersion) {}
 }
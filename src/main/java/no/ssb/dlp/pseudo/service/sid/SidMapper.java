@@ -3,6 +3,7 @@ package no.ssb.dlp.pseudo.service.sid;
 import com.google.auto.service.AutoService;
 import com.google.common.base.Stopwatch;
 import com.google.common.collect.Lists;
+import io.micronaut.context.ApplicationContext;
 import io.micronaut.http.HttpStatus;
 import io.micronaut.http.client.exceptions.HttpClientResponseException;
 import lombok.extern.slf4j.Slf4j;
@@ -12,6 +13,7 @@ import no.ssb.dapla.dlp.pseudo.func.map.MapFailureStrategy;
 import no.ssb.dapla.dlp.pseudo.func.map.MapFuncConfig;
 import no.ssb.dapla.dlp.pseudo.func.map.Mapper;
 import no.ssb.dlp.pseudo.service.Application;
+import no.ssb.dlp.pseudo.service.pseudo.PseudoProcessingConfig;
 import org.reactivestreams.Publisher;
 import org.reactivestreams.Subscriber;
 import org.reactivestreams.Subscription;
@@ -19,7 +21,12 @@ import org.reactivestreams.Subscription;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeParseException;
+import java.util.ArrayDeque;
 import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
@@ -46,6 +53,8 @@ public class SidMapper implements Mapper {
 
     private static final int DEFAULT_PARTITION_SIZE = 50000;
     private final int partitionSize;
+    private final int prefetchWindow;
+    private final int maxLookedUpIdentifiers;
     private Map<String, Object> config = Collections.emptyMap();
 
     static final String NO_MATCHING_FNR = "No SID-mapping found for fnr %s";
@@ -56,17 +65,52 @@ public class SidMapper implements Mapper {
     static final String CORRECT_MATCHED_SNR = "Successfully mapped snr starting with %s";
 
     public SidMapper() {
-        sidService = Application.getContext().getBean(SidService.class);
-        partitionSize = Application.getContext().getProperty("sid.mapper.partition.size", Integer.class,
-                DEFAULT_PARTITION_SIZE);
+        this(Application.getContext());
     }
 
-    private final Set<String> identifiers = ConcurrentHashMap.newKeySet();
-    private final ConcurrentHashMap<String, ObservableSubscriber<Map<String, SidInfo>>> bulkRequest = new ConcurrentHashMap<>();
+    private SidMapper(ApplicationContext context) {
+        this(context.getBean(SidService.class),
+                context.getProperty("sid.mapper.partition.size", Integer.class, DEFAULT_PARTITION_SIZE),
+                context.getBean(PseudoProcessingConfig.class).getSidPrefetchWindow(),
+                // One window per worker may be in flight, in addition to the window that is read ahead
+                context.getBean(PseudoProcessingConfig.class).getWorkers() + 2);
+    }
+
+    /**
+     * @param sidService      the SID service to look up identifiers in
+     * @param partitionSize   max number of identifiers in each bulk request
+     * @param prefetchWindow  number of records in each window, if identifiers are initialized in windows, otherwise 0
+     * @param retainedWindows number of windows of looked up identifiers to keep, if identifiers are initialized in
+     *                        windows
+     */
+    SidMapper(SidService sidService, int partitionSize, int prefetchWindow, int retainedWindows) {
+        this.sidService = sidService;
+        this.partitionSize = partitionSize;
+        this.prefetchWindow = prefetchWindow;
+        this.maxLookedUpIdentifiers = prefetchWindow * retainedWindows;
+    }
+
+    // Identifiers that have been seen by init, but not yet looked up
+    private final Set<String> pendingIdentifiers = ConcurrentHashMap.newKeySet();
+    // The bulk request of each looked up identifier, until the lookup is evicted
+    private final Map<String, ObservableSubscriber<Map<String, SidInfo>>> bulkRequests = new ConcurrentHashMap<>();
+    // The bulk requests of each lookup, oldest first (guarded by this)
+    private final Deque<Map<String, ObservableSubscriber<Map<String, SidInfo>>>> lookups = new ArrayDeque<>();
+    private int lookedUpIdentifiers = 0;
+    // True if identifiers are mapped from fnr to snr. Only known once the first value has been mapped
+    private volatile Boolean fnrDirection;
 
     @Override
     public void init(PseudoFuncInput input) {
-        identifiers.add(input.value());
+        if (!bulkRequests.containsKey(input.value())) {
+            pendingIdentifiers.add(input.value());
+            // Once the mapping direction is known, look up each full window of identifiers as soon as it has been
+            // initialized, so that the lookup runs while the preceding windows are being processed
+            final Boolean isFnr = fnrDirection;
+            if (isFnr != null && prefetchWindow > 0 && pendingIdentifiers.size() >= prefetchWindow) {
+                lookupPendingIdentifiers(isFnr);
+            }
+        }
     }
 
     @Override
@@ -83,33 +127,89 @@ public class SidMapper implements Mapper {
         if (identifier == null) {
             return PseudoFuncOutput.of(null);
         }
+        fnrDirection = isFnr;
         // Execute the bulk request if necessary
-        if (bulkRequest.isEmpty()) {
-            // Split fnrs or snrs into chunks of BULK_SIZE
-            for (List<String> bulkIdentifiers : Lists.partition(List.copyOf(identifiers), partitionSize)) {
-                log.info("Execute SID-mapping bulk request");
-                final ObservableSubscriber<Map<String, SidInfo>> subscriber;
-
-                if (isFnr) {
-                    subscriber = ObservableSubscriber.subscribe(
-                            sidService.lookupFnr(bulkIdentifiers, getSnapshot()));
-                } else {
-                    subscriber = ObservableSubscriber.subscribe(
-                            sidService.lookupSnr(bulkIdentifiers, getSnapshot()));
-                }
-
-                for (String id : bulkIdentifiers) {
-                    bulkRequest.put(id, subscriber);
-                }
-            }
+        ObservableSubscriber<Map<String, SidInfo>> bulkRequest = bulkRequests.get(identifier);
+        if (bulkRequest == null) {
+            bulkRequest = executeBulkRequests(identifier, isFnr);
         }
-        SidInfo result = bulkRequest.get(identifier).awaitResult()
+        SidInfo result = bulkRequest.awaitResult()
                 .orElseThrow(() -> new RuntimeException("SID service did not respond"))
                 .get(identifier);
 
         return createMappingLogsAndOutput(result, isFnr, identifier);
+    }
+
+    /**
+     * Execute bulk requests for the given identifier, and all identifiers that have been seen by
+     * {@link #init(PseudoFuncInput)} since the last bulk requests were executed.
+     *
+     * <p>Synchronized, so that values may be mapped by multiple threads without looking up an identifier more than
+     * once.</p>
+     *
+     * @return the bulk request that includes the given identifier
+     */
+    private synchronized ObservableSubscriber<Map<String, SidInfo>> executeBulkRequests(String identifier, boolean isFnr) {
+        ObservableSubscriber<Map<String, SidInfo>> existing = bulkRequests.get(identifier);
+        if (existing != null) {
+            return existing;
+        }
+        // The identifier may not have been initialized
+        pendingIdentifiers.add(identifier);
+        return lookupPendingIdentifiers(isFnr).get(identifier);
+    }
+
+    /**
+     * Execute bulk requests for all identifiers that have been seen by {@link #init(PseudoFuncInput)} since the last
+     * bulk requests were executed. Identifiers may be initialized in windows (e.g. when records are processed in a
+     * single pass), in which case bulk requests are executed once per window.
+     *
+     * <p>If identifiers are initialized in windows, only the most recent lookups are kept, so the number of
+     * identifiers in memory is bounded by the prefetch window rather than the size of the file. An identifier of an
+     * evicted lookup is simply looked up again if it is mapped later on.</p>
+     *
+     * @return the bulk requests of the looked up identifiers
+     */
+    private synchronized Map<String, ObservableSubscriber<Map<String, SidInfo>>> lookupPendingIdentifiers(
+            boolean isFnr) {
+        Set<String> identifiers = new LinkedHashSet<>();
+        for (Iterator<String> it = pendingIdentifiers.iterator(); it.hasNext(); ) {
+            identifiers.add(it.next());
+            it.remove();
+        }
+        if (identifiers.isEmpty()) {
+            return Map.of();
+        }
+        Map<String, ObservableSubscriber<Map<String, SidInfo>>> lookup = new HashMap<>();
 
+        // Split fnrs or snrs into chunks of BULK_SIZE
+        for (List<String> bulkIdentifiers : Lists.partition(List.copyOf(identifiers), partitionSize)) {
+            log.info("Execute SID-mapping bulk request");
+            final ObservableSubscriber<Map<String, SidInfo>> subscriber;
 
+            if (isFnr) {
+                subscriber = ObservableSubscriber.subscribe(
+                        sidService.lookupFnr(bulkIdentifiers, getSnapshot()));
+            } else {
+                subscriber = ObservableSubscriber.subscribe(
+                        sidService.lookupSnr(bulkIdentifiers, getSnapshot()));
+            }
+
+            for (String id : bulkIdentifiers) {
+                lookup.put(id, subscriber);
+            }
+        }
+        bulkRequests.putAll(lookup);
+        lookups.addLast(lookup);
+        lookedUpIdentifiers += lookup.size();
+        // Never evict the latest lookup, since its identifiers are about to be mapped
+        while (prefetchWindow > 0 && lookedUpIdentifiers > maxLookedUpIdentifiers && lookups.size() > 1) {
+            Map<String, ObservableSubscriber<Map<String, SidInfo>>> evicted = lookups.removeFirst();
+            lookedUpIdentifiers -= evicted.size();
+            // The identifier may have been looked up again by a later lookup
+            evicted.forEach(bulkRequests::remove);
+        }
+        return lookup;
     }
 
 
@@ -236,6 +336,8 @@ public class SidMapper implements Mapper {
         public void onSubscribe(Subscription subscription) {
             this.stopwatch.start();
             this.subscription = subscription;
+            // Start right away, so that results can be prefetched before they are awaited
+            subscription.request(1);
         }
 
         @Override
@@ -269,7 +371,6 @@ public class SidMapper implements Mapper {
         }
 
         private ObservableSubscriber<T> await() {
-            subscription.request(1);
             try {
                 if (!latch.await(120, TimeUnit.SECONDS)) {
                     log.error("Publisher onComplete timed out");
@@ -0,0 +1,83 @@
+package no.ssb.dlp.pseudo.service.tink;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.crypto.tink.Aead;
+import com.google.crypto.tink.KmsClient;
+import lombok.RequiredArgsConstructor;
+
+import java.security.GeneralSecurityException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A {@link KmsClient} that caches the results of decrypting with the KEKs of another {@link KmsClient}.
+ *
+ * <p>Customer keysets are wrapped (encrypted) by a KEK in KMS. Unwrapping a keyset requires a round trip to KMS, while
+ * the same few wrapped keysets are used over and over. The unwrapped keysets are cached by a digest of the KEK URI,
+ * the encrypted keyset and the associated data. Encryption is always delegated.</p>
+ */
+@RequiredArgsConstructor
+public class CachingKmsClient implements KmsClient {
+
+    private final KmsClient delegate;
+    private final Cache<String, byte[]> unwrappedKeysets;
+
+    @Override
+    public boolean doesSupport(String keyUri) {
+        return delegate.doesSupport(keyUri);
+    }
+
+    @Override
+    public KmsClient withCredentials(String credentialPath) throws GeneralSecurityException {
+        delegate.withCredentials(credentialPath);
+        return this;
+    }
+
+    @Override
+    public KmsClient withDefaultCredentials() throws GeneralSecurityException {
+        delegate.withDefaultCredentials();
+        return this;
+    }
+
+    @Override
+    public Aead getAead(String keyUri) throws GeneralSecurityException {
+        return new CachingAead(keyUri, delegate.getAead(keyUri));
+    }
+
+    @RequiredArgsConstructor
+    private class CachingAead implements Aead {
+        private final String keyUri;
+        private final Aead aead;
+
+        @Override
+        public byte[] encrypt(byte[] plaintext, byte[] associatedData) throws GeneralSecurityException {
+            return aead.encrypt(plaintext, associatedData);
+        }
+
+        @Override
+        public byte[] decrypt(byte[] ciphertext, byte[] associatedData) throws GeneralSecurityException {
+            final String cacheKey = cacheKeyOf(keyUri, ciphertext, associatedData);
+            byte[] plaintext = unwrappedKeysets.getIfPresent(cacheKey);
+            if (plaintext == null) {
+                // Decrypt outside of the cache, so that GeneralSecurityExceptions are propagated as is
+                plaintext = aead.decrypt(ciphertext, associatedData);
+                unwrappedKeysets.put(cacheKey, plaintext);
+            }
+            // Return a copy, since callers may clear the plaintext after use
+            return plaintext.clone();
+        }
+    }
+
+    static String cacheKeyOf(String keyUri, byte[] ciphertext, byte[] associatedData) {
+        Hasher hasher = Hashing.sha256().newHasher();
+        hasher.putInt(keyUri.length()).putString(keyUri, StandardCharsets.UTF_8);
+        hasher.putInt(ciphertext.length).putBytes(ciphertext);
+        if (associatedData == null) {
+            hasher.putInt(-1);
+        } else {
+            hasher.putInt(associatedData.length).putBytes(associatedData);
+        }
+        return hasher.hash().toString();
+    }
+}
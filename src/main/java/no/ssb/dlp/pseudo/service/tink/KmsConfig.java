@@ -7,6 +7,7 @@ import lombok.Data;
 
 import jakarta.validation.constraints.NotEmpty;
 import java.net.URI;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -26,4 +27,14 @@ public class KmsConfig {
      */
     private String credentialsPath;
 
+    /**
+     * Max number of KMS-unwrapped keysets to keep in memory. Set to 0 to unwrap keysets on every use.
+     */
+    private long unwrappedKeysetCacheMaxSize = 100;
+
+    /**
+     * How long a KMS-unwrapped keyset is kept in memory.
+     */
+    private Duration unwrappedKeysetCacheTtl = Duration.ofMinutes(30);
+
 }
@@ -1,5 +1,9 @@
 package no.ssb.dlp.pseudo.service.tink;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.google.crypto.tink.KmsClient;
+import com.google.crypto.tink.KmsClients;
 import com.google.crypto.tink.daead.DeterministicAeadConfig;
 import com.google.crypto.tink.integration.gcpkms.GcpKmsClient;
 import io.micronaut.context.annotation.Context;
@@ -11,7 +15,6 @@ import no.ssb.dlp.pseudo.core.PseudoException;
 
 import jakarta.inject.Singleton;
 import java.net.URI;
-import java.util.Optional;
 
 @Context
 @Singleton
@@ -29,10 +32,20 @@ public class TinkInitizializer {
             log.info("Initialize Tink FPE");
             FpeConfig.register();
 
-            // Register Key Encryption Keys
+            // Register Key Encryption Keys. Keysets that are unwrapped by these are cached.
+            final Cache<String, byte[]> unwrappedKeysets = Caffeine.newBuilder()
+                    .maximumSize(kmsConfig.getUnwrappedKeysetCacheMaxSize())
+                    .expireAfterWrite(kmsConfig.getUnwrappedKeysetCacheTtl())
+                    .build();
             for (URI keyUri : kmsConfig.getKeyUris()) {
                 log.info("Register KMS key {}", keyUri);
-                GcpKmsClient.register(Optional.of(keyUri.toString()), Optional.ofNullable(kmsConfig.getCredentialsPath()));
+                KmsClient kmsClient = new GcpKmsClient(keyUri.toString());
+                if (kmsConfig.getCredentialsPath() != null) {
+                    kmsClient.withCredentials(kmsConfig.getCredentialsPath());
+                } else {
+                    kmsClient.withDefaultCredentials();
+                }
+                register(new CachingKmsClient(kmsClient, unwrappedKeysets));
             }
         }
         catch (Exception e) {
@@ -40,4 +53,15 @@ public class TinkInitizializer {
         }
     }
 
+    /**
+     * The keysets of the pseudo rules are read by dapla-dlp-pseudo-core, which looks up the KEK of each keyset in the
+     * global {@link KmsClients} registry. The service never reads a keyset handle itself, so there is no keyset handle
+     * to pass the client to. Registering is the only way to have the library use the caching client, even though the
+     * registry is deprecated in favour of passing clients directly.
+     */
+    @SuppressWarnings("deprecation")
+    private static void register(KmsClient kmsClient) {
+        KmsClients.add(kmsClient);
+    }
+
 }
@@ -0,0 +1,46 @@
+package no.ssb.dlp.pseudo.service.pseudo;
+
+import io.reactivex.Flowable;
+import io.reactivex.schedulers.Schedulers;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class BatchesTest {
+
+    @Test
+    void map_shouldMapBatchesInParallelAndPreserveOrder() {
+        Set<String> threadNames = ConcurrentHashMap.newKeySet();
+
+        List<Integer> result = Batches.map(Flowable.range(0, 1000), 10, i -> {
+                    threadNames.add(Thread.currentThread().getName());
+                    return i * 2;
+                }, Schedulers.computation(), 4)
+                .toList()
+                .blockingGet();
+
+        assertThat(result).hasSize(1000);
+        for (int i = 0; i < result.size(); i++) {
+            assertThat(result.get(i)).isEqualTo(i * 2);
+        }
+        assertThat(threadNames).isNotEmpty();
+    }
+
+    @Test
+    void map_shouldCallOnBatchInSequenceBeforeMapping() {
+        List<List<Integer>> batches = new ArrayList<>();
+
+        List<Integer> result = Batches.<Integer, Integer>map(Flowable.range(0, 25), 10, batches::add, i -> i,
+                        Schedulers.computation(), 2)
+                .toList()
+                .blockingGet();
+
+        assertThat(batches).extracting(List::size).containsExactly(10, 10, 5);
+        assertThat(result).hasSize(25);
+    }
+}
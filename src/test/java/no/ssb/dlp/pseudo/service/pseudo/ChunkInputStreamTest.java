@@ -0,0 +1,21 @@
+package no.ssb.dlp.pseudo.service.pseudo;
+
+import io.reactivex.Flowable;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ChunkInputStreamTest {
+
+    @Test
+    void readAllChunks() throws IOException {
+        InputStream in = ChunkInputStream.of(Flowable.just(
+                "ab".getBytes(StandardCharsets.UTF_8), new byte[0], "cde".getBytes(StandardCharsets.UTF_8)));
+
+        assertThat(new String(in.readAllBytes(), StandardCharsets.UTF_8)).isEqualTo("abcde");
+    }
+}
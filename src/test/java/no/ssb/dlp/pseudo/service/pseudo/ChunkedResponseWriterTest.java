@@ -0,0 +1,79 @@
+package no.ssb.dlp.pseudo.service.pseudo;
+
+import io.reactivex.Flowable;
+import io.reactivex.processors.PublishProcessor;
+import io.reactivex.schedulers.TestScheduler;
+import io.reactivex.subscribers.TestSubscriber;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static no.ssb.dlp.pseudo.service.pseudo.Chunks.concat;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ChunkedResponseWriterTest {
+
+    @Test
+    void writeChunks() {
+        List<String> fragments = List.of("{", "\"data\": [", "\"abc\"", ",\"æøå\"", ",\"😀\"", "]", "}");
+        List<byte[]> chunks = ChunkedResponseWriter.write(Flowable.fromIterable(fragments), 4).toList().blockingGet();
+
+        assertThat(chunks).hasSizeGreaterThan(1);
+        assertThat(chunks.subList(0, chunks.size() - 1)).allSatisfy(chunk -> assertThat(chunk).hasSize(4));
+        assertThat(chunks.get(chunks.size() - 1)).isNotEmpty().hasSizeLessThanOrEqualTo(4);
+        assertThat(concat(chunks)).isEqualTo(String.join("", fragments).getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void writeFewerBytesThanChunkSize() {
+        List<byte[]> chunks = ChunkedResponseWriter.write(Flowable.just("{", "}")).toList().blockingGet();
+        assertThat(chunks).hasSize(1);
+        assertThat(new String(chunks.get(0), StandardCharsets.UTF_8)).isEqualTo("{}");
+    }
+
+    @Test
+    void writeNothing() {
+        assertThat(ChunkedResponseWriter.write(Flowable.just("")).toList().blockingGet()).isEmpty();
+    }
+
+    @Test
+    void flushPartialChunkAfterInterval() {
+        TestScheduler scheduler = new TestScheduler();
+        PublishProcessor<String> fragments = PublishProcessor.create();
+        TestSubscriber<byte[]> subscriber = ChunkedResponseWriter.write(fragments, 64, 100, TimeUnit.MILLISECONDS,
+                scheduler).test();
+
+        fragments.onNext("\"v1\"\n");
+        scheduler.advanceTimeBy(50, TimeUnit.MILLISECONDS);
+        subscriber.assertNoValues();
+
+        scheduler.advanceTimeBy(50, TimeUnit.MILLISECONDS);
+        subscriber.assertValueCount(1);
+        assertThat(new String(subscriber.values().get(0), StandardCharsets.UTF_8)).isEqualTo("\"v1\"\n");
+
+        // Nothing is flushed while the buffer is empty
+        scheduler.advanceTimeBy(1, TimeUnit.SECONDS);
+        subscriber.assertValueCount(1);
+
+        fragments.onNext("}");
+        fragments.onComplete();
+        subscriber.assertComplete().assertValueCount(2);
+        assertThat(new String(subscriber.values().get(1), StandardCharsets.UTF_8)).isEqualTo("}");
+    }
+
+    @Test
+    void invalidChunkSize() {
+        assertThatThrownBy(() -> ChunkedResponseWriter.write(Flowable.just("{}"), 0))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void invalidFlushInterval() {
+        assertThatThrownBy(() -> ChunkedResponseWriter.write(Flowable.just("{}"), 4, 0, TimeUnit.MILLISECONDS,
+                new TestScheduler()))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}
@@ -0,0 +1,21 @@
+package no.ssb.dlp.pseudo.service.pseudo;
+
+import java.io.ByteArrayOutputStream;
+import java.util.List;
+
+/**
+ * Helpers for the tests of processors that produce a response as a stream of byte chunks.
+ */
+final class Chunks {
+
+    private Chunks() {}
+
+    /**
+     * @return the chunks joined into a single byte array
+     */
+    static byte[] concat(List<byte[]> chunks) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        chunks.forEach(out::writeBytes);
+        return out.toByteArray();
+    }
+}
@@ -3,7 +3,6 @@ package no.ssb.dlp.pseudo.service.pseudo;
 import io.micronaut.test.extensions.junit5.annotation.MicronautTest;
 import io.reactivex.Flowable;
 import no.ssb.dlp.pseudo.core.PseudoOperation;
-import no.ssb.dlp.pseudo.core.map.RecordMapProcessor;
 import no.ssb.dlp.pseudo.service.pseudo.metadata.FieldMetadata;
 import no.ssb.dlp.pseudo.service.pseudo.metadata.PseudoMetadataProcessor;
 import org.json.JSONException;
@@ -30,7 +29,7 @@ class DepseudoFieldTest {
     private RecordMapProcessorFactory recordProcessorFactory;
 
     @Mock
-    private RecordMapProcessor<PseudoMetadataProcessor> recordMapProcessor;
+    private PseudoRecordMapProcessor recordMapProcessor;
 
     void setUpProcessorMocks() {
         MockitoAnnotations.openMocks(this);
@@ -62,10 +61,9 @@ class DepseudoFieldTest {
         //Preprocessor logic is covered in #preprocessorWithNullValues
         when(recordMapProcessor.hasPreprocessors()).thenReturn(false);
 
-        when(recordMapProcessor.process(any())).thenAnswer(invocation -> {
-            Map<String, String> argument = invocation.getArgument(0);
-            String originalValue = argument.get("testField");
-            return Collections.singletonMap("testField", "processedValue " + originalValue);
+        when(recordMapProcessor.processValue(any(), any())).thenAnswer(invocation -> {
+            String originalValue = invocation.getArgument(1);
+            return "processedValue " + originalValue;
         });
 
         PseudoField pseudoField = new PseudoField("testField", "**", null, null);
@@ -113,6 +111,6 @@ class DepseudoFieldTest {
         JSONAssert.assertEquals(want, got, JSONCompareMode.STRICT);
 
         // Verify that recordMapProcessor was called once for each non-null value
-        verify(recordMapProcessor, times(2)).process(any());
+        verify(recordMapProcessor, times(2)).processValue(any(), any());
     }
 }
\ No newline at end of file
@@ -0,0 +1,99 @@
+package no.ssb.dlp.pseudo.service.pseudo;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import no.ssb.dlp.pseudo.core.PseudoSecret;
+import no.ssb.dlp.pseudo.core.field.FieldDescriptor;
+import no.ssb.dlp.pseudo.core.func.PseudoFuncRule;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+/**
+ * Compares the per-value cost of repseudonymization by chaining depseudonymization and pseudonymization (as done by
+ * <code>/repseudonymize/file</code>) with the fused transform of a {@link KeyRotationPlan} (as done by
+ * <code>/rotate-keys/file</code>).
+ *
+ * <p>The legacy FPE function is used, since its keys are plain secrets that do not require a KMS. The overhead that is
+ * removed by the fused transform does not depend on the function.</p>
+ *
+ * <p>Run with <code>make run-benchmarks BENCHMARK=KeyRotationBenchmark</code></p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class KeyRotationBenchmark {
+
+    private static final int VALUE_COUNT = 1024;
+
+    private PseudoRecordMapProcessor chainedProcessor;
+    private PseudoRecordMapProcessor fusedProcessor;
+    private FieldDescriptor field;
+    private String[] values;
+    private int position = 0;
+
+    @Setup
+    public void setup() {
+        RecordMapProcessorFactory recordProcessorFactory = new RecordMapProcessorFactory(
+                new PseudoSecrets(null, Map.of("secret1", newSecret(), "secret2", newSecret())),
+                new PseudoRulePlanCache(new PseudoRulePlanCacheConfig(), new SimpleMeterRegistry()),
+                new PseudoProcessingConfig());
+        PseudoConfig source = config("fpe-anychar(keyId=secret1)");
+        PseudoConfig target = config("fpe-anychar(keyId=secret2)");
+        chainedProcessor = recordProcessorFactory.newRepseudonymizeRecordProcessor(source, target, "benchmark");
+        fusedProcessor = recordProcessorFactory.newKeyRotationRecordProcessor(source, target, "benchmark");
+        field = new FieldDescriptor("/person/fnr");
+
+        PseudoRecordMapProcessor pseudonymizer = recordProcessorFactory.newPseudonymizeRecordProcessor(
+                List.of(source), "benchmark");
+        values = IntStream.range(0, VALUE_COUNT)
+                .mapToObj(i -> pseudonymizer.processValue(field, String.valueOf(11854800000L + i * 7919L)))
+                .toArray(String[]::new);
+    }
+
+    @Benchmark
+    public String chained() {
+        return chainedProcessor.processValue(field, nextValue());
+    }
+
+    @Benchmark
+    public String fused() {
+        return fusedProcessor.processValue(field, nextValue());
+    }
+
+    private String nextValue() {
+        position = (position + 1) % VALUE_COUNT;
+        return values[position];
+    }
+
+    private static PseudoConfig config(String func) {
+        PseudoConfig config = new PseudoConfig();
+        config.setRules(List.of(new PseudoFuncRule("fnr", "**/fnr", func)));
+        return config;
+    }
+
+    private static PseudoSecret newSecret() {
+        byte[] key = new byte[32];
+        new SecureRandom().nextBytes(key);
+        PseudoSecret secret = new PseudoSecret();
+        secret.setBase64EncodedContent(Base64.getEncoder().encodeToString(key));
+        secret.setType("AES256");
+        return secret;
+    }
+}
@@ -0,0 +1,116 @@
+package no.ssb.dlp.pseudo.service.pseudo;
+
+import no.ssb.dapla.dlp.pseudo.func.PseudoFunc;
+import no.ssb.dapla.dlp.pseudo.func.PseudoFuncInput;
+import no.ssb.dapla.dlp.pseudo.func.PseudoFuncOutput;
+import no.ssb.dlp.pseudo.core.PseudoKeyset;
+import no.ssb.dlp.pseudo.core.field.FieldDescriptor;
+import no.ssb.dlp.pseudo.core.func.PseudoFuncRule;
+import no.ssb.dlp.pseudo.core.func.PseudoFuncRuleMatch;
+import no.ssb.dlp.pseudo.core.func.PseudoFuncs;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class KeyRotationPlanTest {
+
+    private static final FieldDescriptor FNR = new FieldDescriptor("/person/fnr");
+
+    private final PseudoFunc sourceFunc = mock(PseudoFunc.class);
+    private final PseudoFunc targetFunc = mock(PseudoFunc.class);
+
+    /**
+     * Rule plans with the source or target function, depending on the key of the rules
+     */
+    private final RecordMapProcessorFactory recordProcessorFactory = new RecordMapProcessorFactory(
+            mock(PseudoSecrets.class), mock(PseudoRulePlanCache.class), new PseudoProcessingConfig()) {
+        @Override
+        protected PseudoRulePlan newPseudoRulePlan(List<PseudoFuncRule> rules, Collection<PseudoKeyset> keysets) {
+            return rulePlanOf(rules, rules.get(0).getFunc().contains("key-1") ? sourceFunc : targetFunc);
+        }
+    };
+
+    @BeforeEach
+    void setUp() {
+        when(sourceFunc.restore(any(PseudoFuncInput.class))).thenReturn(PseudoFuncOutput.of("12345678901"));
+        when(targetFunc.apply(any(PseudoFuncInput.class))).thenReturn(PseudoFuncOutput.of("rotated"));
+    }
+
+    @Test
+    void keyRotation_shouldRestoreWithSourceAndApplyWithTarget() {
+        PseudoRecordMapProcessor processor = recordProcessorFactory.newKeyRotationRecordProcessor(
+                config("**/fnr", "daead(keyId=ssb-common-key-1)"),
+                config("**/fnr", "daead(keyId=ssb-common-key-2)"), "correlation-id");
+
+        assertThat(processor.processValue(FNR, "pseudonymized")).isEqualTo("rotated");
+        assertThat(processor.processValue(FNR, null)).isNull();
+        assertThat(processor.processValue(new FieldDescriptor("/person/navn"), "Ola")).isEqualTo("Ola");
+        verify(sourceFunc, times(1)).restore(any(PseudoFuncInput.class));
+        verify(targetFunc, times(1)).apply(any(PseudoFuncInput.class));
+        verify(sourceFunc, never()).apply(any(PseudoFuncInput.class));
+        verify(targetFunc, never()).restore(any(PseudoFuncInput.class));
+    }
+
+    @Test
+    void keyRotation_shouldGiveSameResultAsRepseudonymization() {
+        PseudoConfig source = config("**/fnr", "daead(keyId=ssb-common-key-1)");
+        PseudoConfig target = config("**/fnr", "daead(keyId=ssb-common-key-2)");
+
+        assertThat(recordProcessorFactory.newKeyRotationRecordProcessor(source, target, "correlation-id")
+                .processValue(FNR, "pseudonymized"))
+                .isEqualTo(recordProcessorFactory.newRepseudonymizeRecordProcessor(source, target, "correlation-id")
+                        .processValue(FNR, "pseudonymized"));
+    }
+
+    @Test
+    void fieldMatchedBySourceRuleOnly_shouldBeRejected() {
+        KeyRotationPlan keyRotationPlan = new KeyRotationPlan(
+                rulePlanOf(List.of(new PseudoFuncRule("fnr", "**/fnr", "daead(keyId=ssb-common-key-1)")), sourceFunc),
+                rulePlanOf(List.of(new PseudoFuncRule("navn", "**/navn", "daead(keyId=ssb-common-key-2)")), targetFunc));
+
+        assertThat(keyRotationPlan.matches(FNR)).isTrue();
+        assertThatThrownBy(() -> keyRotationPlan.find(FNR)).isInstanceOf(IllegalArgumentException.class);
+        assertThat(keyRotationPlan.find(new FieldDescriptor("/person/adresse"))).isEmpty();
+    }
+
+    @Test
+    void sidMapping_shouldBeRejected() {
+        assertThatThrownBy(() -> new KeyRotationPlan(
+                rulePlanOf(List.of(new PseudoFuncRule("fnr", "**/fnr", "map-sid-daead(keyId=ssb-common-key-1)")),
+                        sourceFunc),
+                rulePlanOf(List.of(new PseudoFuncRule("fnr", "**/fnr", "daead(keyId=ssb-common-key-2)")), targetFunc)))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private static PseudoConfig config(String pattern, String func) {
+        PseudoConfig config = new PseudoConfig();
+        config.setRules(List.of(new PseudoFuncRule("rule", pattern, func)));
+        return config;
+    }
+
+    /**
+     * @return a rule plan where every matching rule resolves to the given function
+     */
+    private static PseudoRulePlan rulePlanOf(List<PseudoFuncRule> rules, PseudoFunc func) {
+        PseudoFuncs pseudoFuncs = mock(PseudoFuncs.class);
+        when(pseudoFuncs.findPseudoFunc(any(FieldDescriptor.class))).thenAnswer(invocation -> {
+            PseudoFuncRuleMatch match = mock(PseudoFuncRuleMatch.class);
+            when(match.getFunc()).thenReturn(func);
+            when(match.getRule()).thenReturn(rules.get(0));
+            return Optional.of(match);
+        });
+        return new PseudoRulePlan(rules, pseudoFuncs);
+    }
+}
@@ -0,0 +1,110 @@
+package no.ssb.dlp.pseudo.service.pseudo;
+
+import io.reactivex.Scheduler;
+import io.reactivex.schedulers.Schedulers;
+import no.ssb.dlp.pseudo.core.map.RecordMapProcessor;
+import no.ssb.dlp.pseudo.core.map.RecordMapSerializer;
+import org.json.JSONException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.skyscreamer.jsonassert.JSONAssert;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class NdjsonStreamProcessorTest {
+
+    private static final int RECORD_COUNT = 1000;
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(4);
+    private final Scheduler scheduler = Schedulers.from(executor);
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void process_shouldProcessOneRecordPerLine() {
+        RecordMapProcessor<?> recordMapProcessor = mock(RecordMapProcessor.class);
+        when(recordMapProcessor.process(any(Map.class))).thenAnswer(invocation -> {
+            Map<String, Object> record = invocation.getArgument(0);
+            return Map.of("fnr", "processed " + record.get("fnr"));
+        });
+
+        List<String> result = new NdjsonStreamProcessor(recordMapProcessor)
+                .process(input("{\"fnr\": \"a\"}\r\n\n{\"fnr\": \"b\"}\n{\"fnr\": \"c\"}"),
+                        (RecordMapSerializer<String>) (r, position) -> position + ":" + r.get("fnr"))
+                .toList()
+                .blockingGet();
+
+        assertThat(result).containsExactly("0:processed a", "1:processed b", "2:processed c");
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void process_withScheduler_shouldParseAndProcessInParallelAndPreserveOrder() {
+        Set<String> threadNames = ConcurrentHashMap.newKeySet();
+        RecordMapProcessor<?> recordMapProcessor = mock(RecordMapProcessor.class);
+        when(recordMapProcessor.process(any(Map.class))).thenAnswer(invocation -> {
+            threadNames.add(Thread.currentThread().getName());
+            return invocation.getArgument(0);
+        });
+        String lines = IntStream.range(0, RECORD_COUNT)
+                .mapToObj(i -> "{\"value\": " + i + "}")
+                .collect(Collectors.joining("\n"));
+
+        List<String> result = new NdjsonStreamProcessor(recordMapProcessor, scheduler, 4, 10)
+                .process(input(lines), (RecordMapSerializer<String>) (r, position) -> position + ":" + r.get("value"))
+                .toList()
+                .blockingGet();
+
+        assertThat(result).containsExactlyElementsOf(IntStream.range(0, RECORD_COUNT)
+                .mapToObj(i -> i + ":" + i)
+                .toList());
+        assertThat(threadNames).hasSizeGreaterThan(1);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void init_shouldOnlyReadInputIfPreprocessingIsRequired() {
+        RecordMapProcessor<?> recordMapProcessor = mock(RecordMapProcessor.class);
+
+        new NdjsonStreamProcessor(recordMapProcessor).init(input("{\"fnr\": \"a\"}")).blockingAwait();
+        verify(recordMapProcessor, never()).init(any(Map.class));
+
+        when(recordMapProcessor.hasPreprocessors()).thenReturn(true);
+        new NdjsonStreamProcessor(recordMapProcessor).init(input("{\"fnr\": \"a\"}\n{\"fnr\": \"b\"}")).blockingAwait();
+        verify(recordMapProcessor, times(2)).init(any(Map.class));
+    }
+
+    @Test
+    void serializer_shouldWriteSingleLineJson() throws JSONException {
+        String json = NdjsonStreamProcessor.serializer().serialize(Map.of("fnr", "a", "nested", Map.of("x", 1)), 0);
+
+        assertThat(json).doesNotContain("\n");
+        JSONAssert.assertEquals("{\"fnr\": \"a\", \"nested\": {\"x\": 1}}", json, true);
+    }
+
+    private static InputStream input(String lines) {
+        return new ByteArrayInputStream(lines.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,178 @@
+package no.ssb.dlp.pseudo.service.pseudo;
+
+import io.reactivex.Flowable;
+import io.reactivex.Scheduler;
+import io.reactivex.schedulers.Schedulers;
+import io.reactivex.subscribers.TestSubscriber;
+import no.ssb.dlp.pseudo.core.map.RecordMapProcessor;
+import no.ssb.dlp.pseudo.core.map.RecordMapSerializer;
+import no.ssb.dlp.pseudo.service.pseudo.metadata.PseudoMetadataProcessor;
+import org.json.JSONException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.skyscreamer.jsonassert.JSONAssert;
+import org.skyscreamer.jsonassert.JSONCompareMode;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class ParallelEntryProcessorTest {
+
+    private static final int ENTRY_COUNT = 20;
+    private static final int RECORDS_PER_ENTRY = 50;
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(4);
+    private final Scheduler scheduler = Schedulers.from(executor);
+    private final PseudoMetadataProcessor metadataProcessor = new PseudoMetadataProcessor("correlation-id");
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void process_shouldProcessEntriesInParallelAndPreserveOrder() {
+        Set<String> threadNames = ConcurrentHashMap.newKeySet();
+        RecordMapProcessor<?> recordMapProcessor = mock(RecordMapProcessor.class);
+        when(recordMapProcessor.process(any(Map.class))).thenAnswer(invocation -> {
+            threadNames.add(Thread.currentThread().getName());
+            return invocation.getArgument(0);
+        });
+        List<ParallelEntryProcessor.Entry> entries = IntStream.range(0, ENTRY_COUNT)
+                .mapToObj(i -> entry("part-" + i + ".ndjson", i))
+                .toList();
+
+        List<String> result = new ParallelEntryProcessor(() -> new NdjsonStreamProcessor(recordMapProcessor),
+                metadataProcessor, scheduler, 4, 10)
+                .process(entries, (RecordMapSerializer<String>) (r, position) -> position + ":" + r.get("value"))
+                .toList()
+                .blockingGet();
+
+        assertThat(result).containsExactlyElementsOf(IntStream.range(0, ENTRY_COUNT * RECORDS_PER_ENTRY)
+                .mapToObj(i -> i + ":" + i)
+                .toList());
+        assertThat(threadNames).hasSizeGreaterThan(1);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void process_shouldAddMetricsOfEachEntry() throws JSONException {
+        RecordMapProcessor<?> recordMapProcessor = mock(RecordMapProcessor.class);
+        when(recordMapProcessor.process(any(Map.class))).thenAnswer(invocation -> invocation.getArgument(0));
+
+        new ParallelEntryProcessor(() -> new NdjsonStreamProcessor(recordMapProcessor), metadataProcessor, scheduler,
+                2, 10)
+                .process(List.of(entry("a.ndjson", 0), entry("b.ndjson", 1)),
+                        (RecordMapSerializer<String>) (r, position) -> "")
+                .blockingSubscribe();
+        metadataProcessor.onCompleteAll();
+
+        String metrics = Flowable.fromPublisher(metadataProcessor.getMetrics())
+                .toList()
+                .blockingGet()
+                .toString();
+        JSONAssert.assertEquals("""
+                [
+                  {"ENTRY": {"name": "a.ndjson", "records": 50}},
+                  {"ENTRY": {"name": "b.ndjson", "records": 50}}
+                ]
+                """, metrics, JSONCompareMode.LENIENT);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void process_shouldOnlyProcessPrefetchedRecordsAhead() throws InterruptedException {
+        AtomicInteger processed = new AtomicInteger();
+        RecordMapProcessor<?> recordMapProcessor = mock(RecordMapProcessor.class);
+        when(recordMapProcessor.process(any(Map.class))).thenAnswer(invocation -> {
+            processed.incrementAndGet();
+            return invocation.getArgument(0);
+        });
+        List<ParallelEntryProcessor.Entry> entries = IntStream.range(0, ENTRY_COUNT)
+                .mapToObj(i -> entry("part-" + i + ".ndjson", i))
+                .toList();
+
+        TestSubscriber<String> subscriber = new ParallelEntryProcessor(
+                () -> new NdjsonStreamProcessor(recordMapProcessor), metadataProcessor, scheduler, 4, 10)
+                .process(entries, (RecordMapSerializer<String>) (r, position) -> "")
+                .test(0);
+        Thread.sleep(200);
+
+        // Nothing has been requested, so each of the files in flight is only processed up to the prefetch
+        assertThat(processed.get()).isPositive().isLessThanOrEqualTo(4 * 10);
+        subscriber.cancel();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void process_shouldOpenEntriesWhenProcessedAndCloseThem() throws InterruptedException {
+        RecordMapProcessor<?> recordMapProcessor = mock(RecordMapProcessor.class);
+        when(recordMapProcessor.process(any(Map.class))).thenAnswer(invocation -> invocation.getArgument(0));
+        ParallelEntryProcessor processor = new ParallelEntryProcessor(
+                () -> new NdjsonStreamProcessor(recordMapProcessor), metadataProcessor, scheduler, 4, 10);
+
+        AtomicInteger opened = new AtomicInteger();
+        TestSubscriber<String> subscriber = processor.process(countingEntries(opened, new AtomicInteger()),
+                        (RecordMapSerializer<String>) (r, position) -> "")
+                .test(0);
+        Thread.sleep(200);
+        // Only the files in flight are open
+        assertThat(opened.get()).isPositive().isLessThanOrEqualTo(4);
+        subscriber.cancel();
+
+        AtomicInteger allOpened = new AtomicInteger();
+        AtomicInteger allClosed = new AtomicInteger();
+        processor.process(countingEntries(allOpened, allClosed), (RecordMapSerializer<String>) (r, position) -> "")
+                .blockingSubscribe();
+        assertThat(allOpened.get()).isEqualTo(ENTRY_COUNT);
+        assertThat(allClosed.get()).isGreaterThanOrEqualTo(ENTRY_COUNT);
+    }
+
+    /**
+     * @return NDJSON entries that count how many of their streams are opened and closed
+     */
+    private static List<ParallelEntryProcessor.Entry> countingEntries(AtomicInteger opened, AtomicInteger closed) {
+        return IntStream.range(0, ENTRY_COUNT)
+                .mapToObj(i -> {
+                    ParallelEntryProcessor.Entry entry = entry("part-" + i + ".ndjson", i);
+                    return new ParallelEntryProcessor.Entry(entry.name(), () -> {
+                        opened.incrementAndGet();
+                        return new FilterInputStream(entry.inputStream().call()) {
+                            @Override
+                            public void close() throws IOException {
+                                closed.incrementAndGet();
+                                super.close();
+                            }
+                        };
+                    });
+                })
+                .toList();
+    }
+
+    /**
+     * @return an NDJSON entry with the values of the given entry number
+     */
+    private static ParallelEntryProcessor.Entry entry(String name, int entryNumber) {
+        String lines = IntStream.range(entryNumber * RECORDS_PER_ENTRY, (entryNumber + 1) * RECORDS_PER_ENTRY)
+                .mapToObj(i -> "{\"value\": " + i + "}")
+                .collect(Collectors.joining("\n"));
+        return new ParallelEntryProcessor.Entry(name, () -> new ByteArrayInputStream(lines.getBytes(StandardCharsets.UTF_8)));
+    }
+}
@@ -0,0 +1,112 @@
+package no.ssb.dlp.pseudo.service.pseudo;
+
+import io.reactivex.Flowable;
+import io.reactivex.Scheduler;
+import io.reactivex.schedulers.Schedulers;
+import no.ssb.dlp.pseudo.core.StreamProcessor;
+import no.ssb.dlp.pseudo.core.map.RecordMapProcessor;
+import no.ssb.dlp.pseudo.core.map.RecordMapSerializer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+class ParallelStreamProcessorTest {
+
+    private static final int RECORD_COUNT = 1000;
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(4);
+    private final Scheduler scheduler = Schedulers.from(executor);
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void process_shouldProcessRecordsInParallelAndPreserveOrder() throws Exception {
+        StreamProcessor recordReader = mock(StreamProcessor.class);
+        when(recordReader.process(any(InputStream.class), any(RecordMapSerializer.class))).thenAnswer(invocation -> {
+            RecordMapSerializer<Object> serializer = invocation.getArgument(1);
+            return Flowable.range(0, RECORD_COUNT).map(i -> serializer.serialize(Map.of("value", i), i));
+        });
+
+        Set<String> threadNames = ConcurrentHashMap.newKeySet();
+        RecordMapProcessor<?> recordMapProcessor = mock(RecordMapProcessor.class);
+        when(recordMapProcessor.process(any(Map.class))).thenAnswer(invocation -> {
+            Map<String, Object> record = invocation.getArgument(0);
+            threadNames.add(Thread.currentThread().getName());
+            // Make batches complete out of order
+            Thread.sleep(ThreadLocalRandom.current().nextInt(2));
+            return Map.of("value", (Integer) record.get("value") * 2);
+        });
+
+        ParallelStreamProcessor streamProcessor = new ParallelStreamProcessor(mock(StreamProcessor.class),
+                recordReader, recordMapProcessor, scheduler, 4, 10, false);
+        List<String> result = streamProcessor
+                .process(new ByteArrayInputStream(new byte[0]),
+                        (RecordMapSerializer<String>) (r, position) -> position + ":" + r.get("value"))
+                .toList()
+                .blockingGet();
+
+        assertThat(result).containsExactlyElementsOf(IntStream.range(0, RECORD_COUNT)
+                .mapToObj(i -> i + ":" + (i * 2))
+                .toList());
+        assertThat(threadNames).hasSizeGreaterThan(1);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void process_withPreprocessBatches_shouldPreprocessEachBatchBeforeProcessing() {
+        StreamProcessor streamProcessor = mock(StreamProcessor.class);
+        StreamProcessor recordReader = mock(StreamProcessor.class);
+        when(recordReader.process(any(InputStream.class), any(RecordMapSerializer.class))).thenAnswer(invocation -> {
+            RecordMapSerializer<Object> serializer = invocation.getArgument(1);
+            return Flowable.range(0, RECORD_COUNT).map(i -> serializer.serialize(Map.of("value", i), i));
+        });
+
+        Set<Object> initialized = ConcurrentHashMap.newKeySet();
+        RecordMapProcessor<?> recordMapProcessor = mock(RecordMapProcessor.class);
+        when(recordMapProcessor.init(any(Map.class))).thenAnswer(invocation -> {
+            Map<String, Object> record = invocation.getArgument(0);
+            initialized.add(record.get("value"));
+            return record;
+        });
+        when(recordMapProcessor.process(any(Map.class))).thenAnswer(invocation -> {
+            Map<String, Object> record = invocation.getArgument(0);
+            // All records of the batch must be initialized before any of them are processed
+            int batchStart = (Integer) record.get("value") / 10 * 10;
+            assertThat(initialized).containsAll(IntStream.range(batchStart, batchStart + 10).boxed().toList());
+            return record;
+        });
+
+        ParallelStreamProcessor parallelStreamProcessor = new ParallelStreamProcessor(streamProcessor,
+                recordReader, recordMapProcessor, scheduler, 2, 10, true);
+        parallelStreamProcessor.init(new ByteArrayInputStream(new byte[0])).blockingAwait();
+        List<Object> result = parallelStreamProcessor
+                .process(new ByteArrayInputStream(new byte[0]),
+                        (RecordMapSerializer<Object>) (r, position) -> r.get("value"))
+                .toList()
+                .blockingGet();
+
+        assertThat(result).hasSize(RECORD_COUNT);
+        // The separate preprocessing pass should be skipped
+        verifyNoInteractions(streamProcessor);
+    }
+}
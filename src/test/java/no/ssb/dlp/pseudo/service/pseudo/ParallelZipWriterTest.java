@@ -0,0 +1,192 @@
+package no.ssb.dlp.pseudo.service.pseudo;
+
+import io.reactivex.Flowable;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.zip.Inflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import static no.ssb.dlp.pseudo.service.pseudo.Chunks.concat;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ParallelZipWriterTest {
+
+    private static final String PASSWORD = "secret-password";
+
+    private final PseudoWorkerPool workerPool = new PseudoWorkerPool(new PseudoProcessingConfig());
+    private final ParallelZipWriter zipWriter = new ParallelZipWriter(workerPool);
+
+    @TempDir
+    Path tempDir;
+
+    @AfterEach
+    void tearDown() {
+        workerPool.shutdown();
+    }
+
+    @Test
+    void write_shouldStreamZipEntry() throws Exception {
+        byte[] data = data();
+        byte[] zip = concat(zipWriter.write("result.ndjson", Flowable.fromIterable(chunks(data)), null)
+                .toList().blockingGet());
+
+        try (ZipFile zipFile = zipFile(zip)) {
+            ZipEntry entry = zipFile.getEntry("result.ndjson");
+            assertThat(zipFile.getInputStream(entry).readAllBytes()).isEqualTo(data);
+            assertThat(zipFile.size()).isEqualTo(1);
+        }
+        assertThat(zip.length).isLessThan(data.length);
+    }
+
+    @Test
+    void write_shouldUseZip64SizesInDataDescriptor() throws Exception {
+        byte[] data = data();
+        byte[] zip = concat(zipWriter.write("result.ndjson", Flowable.fromIterable(chunks(data)), null)
+                .toList().blockingGet());
+
+        ByteBuffer buffer = ByteBuffer.wrap(zip).order(ByteOrder.LITTLE_ENDIAN);
+        int nameLength = buffer.getShort(26);
+        assertThat(buffer.getShort(4)).as("version needed").isEqualTo((short) 45);
+        assertThat(buffer.getShort(30 + nameLength)).as("zip64 extra field id").isEqualTo((short) 0x0001);
+
+        // The data descriptor is followed by the central directory
+        int centralDirectoryOffset = buffer.getInt(zip.length - 6);
+        int compressedSize = buffer.getInt(centralDirectoryOffset + 20);
+        int dataDescriptorOffset = centralDirectoryOffset - 24;
+        assertThat(buffer.getInt(dataDescriptorOffset)).isEqualTo(0x08074b50);
+        assertThat(buffer.getLong(dataDescriptorOffset + 8)).as("compressed size").isEqualTo(compressedSize);
+        assertThat(buffer.getLong(dataDescriptorOffset + 16)).as("size").isEqualTo(data.length);
+    }
+
+    @Test
+    void write_shouldWriteCentralDirectory() throws Exception {
+        byte[] data = data();
+        Path file = tempDir.resolve("result.zip");
+        Files.write(file, concat(zipWriter.write("result.json", Flowable.fromIterable(chunks(data)), null)
+                .toList().blockingGet()));
+
+        try (ZipFile zipFile = new ZipFile(file.toFile())) {
+            ZipEntry entry = zipFile.getEntry("result.json");
+            assertThat(entry.getSize()).isEqualTo(data.length);
+            assertThat(zipFile.getInputStream(entry).readAllBytes()).isEqualTo(data);
+        }
+    }
+
+    @Test
+    void write_emptyData() throws Exception {
+        byte[] zip = concat(zipWriter.write("empty.json", Flowable.empty(), null).toList().blockingGet());
+
+        try (ZipFile zipFile = zipFile(zip)) {
+            ZipEntry entry = zipFile.getEntry("empty.json");
+            assertThat(entry.getSize()).isZero();
+            assertThat(zipFile.getInputStream(entry).readAllBytes()).isEmpty();
+        }
+    }
+
+    @Test
+    void write_shouldEncryptWithAes() throws Exception {
+        byte[] data = data();
+        byte[] zip = concat(zipWriter.write("result.json", Flowable.fromIterable(chunks(data)), PASSWORD.toCharArray())
+                .toList().blockingGet());
+
+        ByteBuffer buffer = ByteBuffer.wrap(zip).order(ByteOrder.LITTLE_ENDIAN);
+        assertThat(buffer.getShort(8)).as("compression method").isEqualTo((short) 99);
+        int dataOffset = 30 + buffer.getShort(26) + buffer.getShort(28);
+        int centralDirectoryOffset = buffer.getInt(zip.length - 6);
+        int compressedSize = buffer.getInt(centralDirectoryOffset + 20);
+        assertThat(buffer.getInt(centralDirectoryOffset + 24)).as("uncompressed size").isEqualTo(data.length);
+
+        byte[] entryData = Arrays.copyOfRange(zip, dataOffset, dataOffset + compressedSize);
+        assertThat(decrypt(entryData, PASSWORD)).isEqualTo(data);
+    }
+
+    @Test
+    void write_shouldRejectEmptyPassword() {
+        assertThatThrownBy(() -> zipWriter.write("result.json", Flowable.empty(), new char[0]))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private ZipFile zipFile(byte[] zip) throws IOException {
+        Path file = Files.createTempFile(tempDir, "result", ".zip");
+        Files.write(file, zip);
+        return new ZipFile(file.toFile());
+    }
+
+    /**
+     * Decrypt and inflate WinZip AES (AE-2) entry data.
+     */
+    private static byte[] decrypt(byte[] entryData, String password) throws Exception {
+        byte[] salt = Arrays.copyOf(entryData, 16);
+        byte[] derived = SecretKeyFactory.getInstance("PBKDF2WithHmacSHA1")
+                .generateSecret(new PBEKeySpec(password.toCharArray(), salt, 1000, 66 * 8))
+                .getEncoded();
+        assertThat(Arrays.copyOfRange(entryData, 16, 18)).as("password verifier")
+                .isEqualTo(Arrays.copyOfRange(derived, 64, 66));
+        byte[] encrypted = Arrays.copyOfRange(entryData, 18, entryData.length - 10);
+
+        Mac hmac = Mac.getInstance("HmacSHA1");
+        hmac.init(new SecretKeySpec(derived, 32, 32, "HmacSHA1"));
+        assertThat(Arrays.copyOf(hmac.doFinal(encrypted), 10)).as("authentication code")
+                .isEqualTo(Arrays.copyOfRange(entryData, entryData.length - 10, entryData.length));
+
+        Cipher aes = Cipher.getInstance("AES/ECB/NoPadding");
+        aes.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(derived, 0, 32, "AES"));
+        byte[] compressed = new byte[encrypted.length];
+        for (int block = 0; block * 16 < encrypted.length; block++) {
+            byte[] counter = ByteBuffer.allocate(16).order(ByteOrder.LITTLE_ENDIAN).putLong(block + 1L).array();
+            byte[] keystream = aes.doFinal(counter);
+            for (int i = block * 16; i < Math.min(encrypted.length, (block + 1) * 16); i++) {
+                compressed[i] = (byte) (encrypted[i] ^ keystream[i % 16]);
+            }
+        }
+
+        Inflater inflater = new Inflater(true);
+        inflater.setInput(compressed);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[64 * 1024];
+        while (!inflater.finished() && !inflater.needsInput()) {
+            out.write(buffer, 0, inflater.inflate(buffer));
+        }
+        inflater.end();
+        return out.toByteArray();
+    }
+
+    /**
+     * @return data that spans multiple blocks
+     */
+    private static byte[] data() {
+        return IntStream.range(0, 50_000)
+                .mapToObj(i -> "{\"fnr\": \"" + (11854800000L + i * 7919L) + "\", \"value\": " + i % 97 + "}")
+                .collect(Collectors.joining("\n"))
+                .getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static List<byte[]> chunks(byte[] data) {
+        List<byte[]> chunks = new ArrayList<>();
+        for (int i = 0; i < data.length; i += 8192) {
+            chunks.add(Arrays.copyOfRange(data, i, Math.min(data.length, i + 8192)));
+        }
+        return chunks;
+    }
+}
@@ -0,0 +1,156 @@
+package no.ssb.dlp.pseudo.service.pseudo;
+
+import no.ssb.dlp.pseudo.core.field.FieldDescriptor;
+import no.ssb.dlp.pseudo.core.map.RecordMapProcessor;
+import no.ssb.dlp.pseudo.core.map.RecordMapSerializer;
+import org.apache.parquet.example.data.Group;
+import org.apache.parquet.example.data.simple.SimpleGroupFactory;
+import org.apache.parquet.hadoop.ParquetFileReader;
+import org.apache.parquet.hadoop.ParquetWriter;
+import org.apache.parquet.hadoop.example.ExampleParquetWriter;
+import org.apache.parquet.hadoop.metadata.ColumnChunkMetaData;
+import org.apache.parquet.hadoop.metadata.ColumnPath;
+import org.apache.parquet.io.LocalInputFile;
+import org.apache.parquet.io.LocalOutputFile;
+import org.apache.parquet.schema.MessageType;
+import org.apache.parquet.schema.MessageTypeParser;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ParquetStreamProcessorTest {
+
+    private static final MessageType SCHEMA = MessageTypeParser.parseMessageType("""
+            message person {
+              required binary fnr (STRING);
+              required int32 age;
+              optional group address {
+                optional binary city (STRING);
+              }
+              optional group tags (LIST) {
+                repeated group list {
+                  optional binary element (STRING);
+                }
+              }
+            }
+            """);
+
+    @TempDir
+    Path tempDir;
+
+    private Path sourceFile;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        sourceFile = tempDir.resolve("source.parquet");
+        SimpleGroupFactory rows = new SimpleGroupFactory(SCHEMA);
+        try (ParquetWriter<Group> writer = ExampleParquetWriter.builder(new LocalOutputFile(sourceFile))
+                .withType(SCHEMA)
+                .build()) {
+            for (int i = 0; i < 3; i++) {
+                Group row = rows.newGroup()
+                        .append("fnr", "1111111111" + i)
+                        .append("age", 40 + i);
+                row.addGroup("address").append("city", "Oslo");
+                Group tags = row.addGroup("tags");
+                tags.addGroup("list").append("element", "a" + i);
+                tags.addGroup("list").append("element", "b" + i);
+                writer.write(row);
+            }
+        }
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void process_shouldConvertRowsToRecords() {
+        RecordMapProcessor<?> recordMapProcessor = mock(RecordMapProcessor.class);
+        when(recordMapProcessor.process(any(Map.class))).thenAnswer(invocation -> invocation.getArgument(0));
+
+        List<String> result = new ParquetStreamProcessor(recordMapProcessor)
+                .process(new LocalInputFile(sourceFile),
+                        (RecordMapSerializer<String>) (r, position) -> position + ":" + r)
+                .toList()
+                .blockingGet();
+
+        assertThat(result).containsExactly(
+                "0:{fnr=11111111110, age=40, address={city=Oslo}, tags=[a0, b0]}",
+                "1:{fnr=11111111111, age=41, address={city=Oslo}, tags=[a1, b1]}",
+                "2:{fnr=11111111112, age=42, address={city=Oslo}, tags=[a2, b2]}");
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void rewrite_shouldOnlyProcessMatchedColumns() throws Exception {
+        PseudoRecordMapProcessor recordMapProcessor = mock(PseudoRecordMapProcessor.class);
+        when(recordMapProcessor.matches(any(FieldDescriptor.class))).thenAnswer(invocation ->
+                List.of("/fnr", "/tags").contains(invocation.<FieldDescriptor>getArgument(0).getPath()));
+        when(recordMapProcessor.processValue(any(FieldDescriptor.class), anyString())).thenAnswer(invocation ->
+                "pseudo-" + invocation.getArgument(1));
+
+        Path targetFile = tempDir.resolve("target.parquet");
+        new ParquetStreamProcessor(recordMapProcessor)
+                .rewrite(new LocalInputFile(sourceFile), new LocalOutputFile(targetFile), () -> "{\"logs\": []}");
+
+        try (ParquetFileReader source = ParquetFileReader.open(new LocalInputFile(sourceFile));
+             ParquetFileReader target = ParquetFileReader.open(new LocalInputFile(targetFile))) {
+            assertThat(target.getFooter().getFileMetaData().getSchema()).isEqualTo(SCHEMA);
+            assertThat(target.getFooter().getFileMetaData().getKeyValueMetaData())
+                    .containsEntry(ParquetStreamProcessor.METADATA_KEY, "{\"logs\": []}");
+
+            // Column chunks that are not matched are copied as is
+            ColumnChunkMetaData sourceAge = columnChunk(source, "age");
+            ColumnChunkMetaData targetAge = columnChunk(target, "age");
+            assertThat(targetAge.getTotalSize()).isEqualTo(sourceAge.getTotalSize());
+            assertThat(targetAge.getCodec()).isEqualTo(sourceAge.getCodec());
+            assertThat(targetAge.getEncodings()).isEqualTo(sourceAge.getEncodings());
+            assertThat(targetAge.getStatistics()).isEqualTo(sourceAge.getStatistics());
+        }
+        verify(recordMapProcessor, never()).initValue(any(), any());
+
+        RecordMapProcessor<?> recordReader = mock(RecordMapProcessor.class);
+        when(recordReader.process(any(Map.class))).thenAnswer(invocation -> invocation.getArgument(0));
+        List<String> result = new ParquetStreamProcessor(recordReader)
+                .process(new LocalInputFile(targetFile), (RecordMapSerializer<String>) (r, position) -> r.toString())
+                .toList()
+                .blockingGet();
+
+        assertThat(result).containsExactly(
+                "{fnr=pseudo-11111111110, age=40, address={city=Oslo}, tags=[pseudo-a0, pseudo-b0]}",
+                "{fnr=pseudo-11111111111, age=41, address={city=Oslo}, tags=[pseudo-a1, pseudo-b1]}",
+                "{fnr=pseudo-11111111112, age=42, address={city=Oslo}, tags=[pseudo-a2, pseudo-b2]}");
+    }
+
+    @Test
+    void rewrite_withMatchedNonStringColumn_shouldFail() {
+        PseudoRecordMapProcessor recordMapProcessor = mock(PseudoRecordMapProcessor.class);
+        when(recordMapProcessor.matches(any(FieldDescriptor.class))).thenAnswer(invocation ->
+                invocation.<FieldDescriptor>getArgument(0).getPath().equals("/age"));
+
+        Path targetFile = tempDir.resolve("target.parquet");
+        assertThatThrownBy(() -> new ParquetStreamProcessor(recordMapProcessor)
+                .rewrite(new LocalInputFile(sourceFile), new LocalOutputFile(targetFile), () -> "{}"))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("/age");
+        assertThat(targetFile).doesNotExist();
+    }
+
+    private static ColumnChunkMetaData columnChunk(ParquetFileReader reader, String column) {
+        return reader.getRowGroups().get(0).getColumns().stream()
+                .filter(chunk -> chunk.getPath().equals(ColumnPath.get(column)))
+                .findFirst()
+                .orElseThrow();
+    }
+}
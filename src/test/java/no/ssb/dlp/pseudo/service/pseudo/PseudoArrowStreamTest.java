@@ -0,0 +1,161 @@
+package no.ssb.dlp.pseudo.service.pseudo;
+
+import no.ssb.dlp.pseudo.core.PseudoOperation;
+import no.ssb.dlp.pseudo.service.pseudo.metadata.PseudoMetadataProcessor;
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.memory.RootAllocator;
+import org.apache.arrow.vector.IntVector;
+import org.apache.arrow.vector.VarCharVector;
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.apache.arrow.vector.ipc.ArrowStreamReader;
+import org.apache.arrow.vector.ipc.ArrowStreamWriter;
+import org.apache.arrow.vector.types.pojo.ArrowType;
+import org.apache.arrow.vector.types.pojo.Field;
+import org.apache.arrow.vector.types.pojo.FieldType;
+import org.apache.arrow.vector.types.pojo.Schema;
+import org.json.JSONException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.skyscreamer.jsonassert.JSONAssert;
+import org.skyscreamer.jsonassert.JSONCompareMode;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static no.ssb.dlp.pseudo.service.pseudo.Chunks.concat;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class PseudoArrowStreamTest {
+
+    private static final String REQUEST = "{\"fields\": [{\"name\": \"fnr\"}]}";
+
+    private final BufferAllocator allocator = new RootAllocator();
+    private final PseudoConfigSplitter pseudoConfigSplitter = new PseudoConfigSplitter();
+    private final RecordMapProcessorFactory recordProcessorFactory = mock(RecordMapProcessorFactory.class);
+
+    @AfterEach
+    void tearDown() {
+        allocator.close();
+    }
+
+    @Test
+    void processColumns() throws Exception {
+        stubRecordProcessorFactory();
+        byte[] request = arrowStream(Map.of(PseudoArrowStream.REQUEST_METADATA_KEY, REQUEST),
+                List.of(new String[]{"a", null, "c"}, new String[]{"d"}));
+
+        byte[] response = process(request);
+
+        InputStream in = new ByteArrayInputStream(response);
+        List<String> fnr = new ArrayList<>();
+        List<Integer> age = new ArrayList<>();
+        try (ArrowStreamReader reader = new ArrowStreamReader(in, allocator)) {
+            VectorSchemaRoot root = reader.getVectorSchemaRoot();
+            assertThat(root.getSchema().getCustomMetadata()).isEmpty();
+            while (reader.loadNextBatch()) {
+                VarCharVector fnrVector = (VarCharVector) root.getVector("fnr");
+                IntVector ageVector = (IntVector) root.getVector("age");
+                for (int i = 0; i < root.getRowCount(); i++) {
+                    fnr.add(fnrVector.isNull(i) ? null : fnrVector.getObject(i).toString());
+                    age.add(ageVector.getObject(i));
+                }
+            }
+        }
+        assertThat(fnr).containsExactly("processed a", null, "processed c", "processed d");
+        assertThat(age).containsExactly(0, 1, 2, 0);
+
+        // The metadata follows as a separate stream
+        try (ArrowStreamReader reader = new ArrowStreamReader(in, allocator)) {
+            assertThat(reader.loadNextBatch()).isTrue();
+            VarCharVector metadata = (VarCharVector) reader.getVectorSchemaRoot()
+                    .getVector(PseudoArrowStream.METADATA_COLUMN);
+            assertMetadata(metadata.getObject(0).toString());
+        }
+    }
+
+    @Test
+    void missingRequest() throws Exception {
+        byte[] request = arrowStream(Map.of(), List.<String[]>of(new String[]{"a"}));
+
+        PseudoArrowStream.process(new ByteArrayInputStream(request), this::parseRequest, pseudoConfigSplitter,
+                        recordProcessorFactory, PseudoOperation.PSEUDONYMIZE, "correlation-id")
+                .test()
+                .assertError(IllegalArgumentException.class);
+    }
+
+    private byte[] process(byte[] request) {
+        return concat(PseudoArrowStream.process(new ByteArrayInputStream(request), this::parseRequest,
+                        pseudoConfigSplitter, recordProcessorFactory, PseudoOperation.PSEUDONYMIZE, "correlation-id")
+                .toList()
+                .blockingGet());
+    }
+
+    private List<PseudoArrowStream.Column> parseRequest(String request) {
+        assertThat(request).isEqualTo(REQUEST);
+        return List.of(new PseudoArrowStream.Column(new PseudoField("fnr", "**", null, null), null));
+    }
+
+    /**
+     * Write an Arrow stream with a string column "fnr" and an int column "age", one record batch per array of values.
+     */
+    private byte[] arrowStream(Map<String, String> metadata, List<String[]> batches) throws IOException {
+        Schema schema = new Schema(List.of(
+                new Field("fnr", FieldType.nullable(ArrowType.Utf8.INSTANCE), null),
+                new Field("age", FieldType.nullable(new ArrowType.Int(32, true)), null)), metadata);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (VectorSchemaRoot root = VectorSchemaRoot.create(schema, allocator);
+             ArrowStreamWriter writer = new ArrowStreamWriter(root, null, out)) {
+            writer.start();
+            for (String[] values : batches) {
+                VarCharVector fnr = (VarCharVector) root.getVector("fnr");
+                IntVector age = (IntVector) root.getVector("age");
+                fnr.allocateNew();
+                age.allocateNew();
+                for (int i = 0; i < values.length; i++) {
+                    if (values[i] == null) {
+                        fnr.setNull(i);
+                    } else {
+                        fnr.setSafe(i, values[i].getBytes(StandardCharsets.UTF_8));
+                    }
+                    age.setSafe(i, i);
+                }
+                root.setRowCount(values.length);
+                writer.writeBatch();
+            }
+            writer.end();
+        }
+        return out.toByteArray();
+    }
+
+    private static void assertMetadata(String metadata) throws JSONException {
+        JSONAssert.assertEquals("""
+                {
+                  "datadoc_metadata": {"pseudo_variables": []},
+                  "metrics": [{"NULL_VALUE": 1}],
+                  "logs": []
+                }
+                """, metadata, JSONCompareMode.LENIENT);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void stubRecordProcessorFactory() {
+        when(recordProcessorFactory.newPseudonymizeRecordProcessor(any(List.class), any(PseudoMetadataProcessor.class)))
+                .thenAnswer(invocation -> {
+                    PseudoMetadataProcessor metadataProcessor = invocation.getArgument(1);
+                    PseudoRecordMapProcessor recordMapProcessor = mock(PseudoRecordMapProcessor.class);
+                    when(recordMapProcessor.getMetadataProcessor()).thenReturn(metadataProcessor);
+                    when(recordMapProcessor.processValue(any(), any()))
+                            .thenAnswer(i -> "processed " + i.getArgument(1));
+                    return recordMapProcessor;
+                });
+    }
+}
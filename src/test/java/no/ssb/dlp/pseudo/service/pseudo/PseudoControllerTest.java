@@ -0,0 +1,82 @@
+package no.ssb.dlp.pseudo.service.pseudo;
+
+import io.micronaut.http.HttpResponse;
+import io.reactivex.Flowable;
+import io.reactivex.processors.PublishProcessor;
+import io.reactivex.subscribers.TestSubscriber;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.stream.Collectors;
+
+import static no.ssb.dlp.pseudo.service.pseudo.RecordProcessorFactoryStubs.stubPseudonymizeRecordProcessor;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+
+class PseudoControllerTest {
+
+    private final RecordMapProcessorFactory recordProcessorFactory = mock(RecordMapProcessorFactory.class);
+    private final PseudoController controller = new PseudoController(mock(StreamProcessorFactory.class),
+            recordProcessorFactory, new PseudoConfigSplitter(), mock(PseudoWorkerPool.class),
+            mock(ResponseCompression.class), mock(PseudoJobService.class), mock(ParallelZipWriter.class));
+
+    @Test
+    void pseudonymizeFieldStream_shouldRespondBeforeChunkIsFull() {
+        stubPseudonymizeRecordProcessor(recordProcessorFactory);
+        // The request body never completes, and holds far less than a chunk of response bytes
+        Flowable<byte[]> body = Flowable.just("{\"name\": \"fnr\"}\n\"v1\"\n".getBytes(StandardCharsets.UTF_8))
+                .concatWith(Flowable.never());
+
+        HttpResponse<Flowable<byte[]>> response = controller.pseudonymizeFieldStream(body);
+        TestSubscriber<byte[]> subscriber = response.body().test();
+
+        subscriber.awaitCount(1);
+        assertThat(new String(subscriber.values().get(0), StandardCharsets.UTF_8)).isEqualTo("\"processed v1\"\n");
+        subscriber.cancel();
+    }
+
+    @Test
+    void pseudonymizeFieldStream_shouldRespondToEachValueBeforeBodyIsComplete() {
+        stubPseudonymizeRecordProcessor(recordProcessorFactory);
+        PublishProcessor<byte[]> body = PublishProcessor.create();
+
+        TestSubscriber<byte[]> subscriber = controller.pseudonymizeFieldStream(body).body().test();
+
+        body.onNext("{\"name\": \"fnr\"}\n\"v1\"\n".getBytes(StandardCharsets.UTF_8));
+        subscriber.awaitCount(1);
+        subscriber.assertNotComplete();
+        assertThat(responseOf(subscriber)).isEqualTo("\"processed v1\"\n");
+
+        body.onNext("\"v2\"\n".getBytes(StandardCharsets.UTF_8));
+        subscriber.awaitCount(2);
+        subscriber.assertNotComplete();
+        assertThat(responseOf(subscriber)).isEqualTo("\"processed v1\"\n\"processed v2\"\n");
+
+        body.onComplete();
+        subscriber.awaitTerminalEvent();
+        subscriber.assertComplete();
+        assertThat(responseOf(subscriber)).startsWith("\"processed v1\"\n\"processed v2\"\n{");
+    }
+
+    @Test
+    void targetCompression_shouldRequirePassword() {
+        PseudoController.TargetCompression compression = new PseudoController.TargetCompression();
+        assertThatThrownBy(() -> PseudoController.TargetCompression.validated(compression))
+                .isInstanceOf(IllegalArgumentException.class);
+
+        compression.setPassword("short".toCharArray());
+        assertThatThrownBy(() -> PseudoController.TargetCompression.validated(compression))
+                .isInstanceOf(IllegalArgumentException.class);
+
+        compression.setPassword("long enough".toCharArray());
+        assertThat(PseudoController.TargetCompression.validated(compression)).isSameAs(compression);
+        assertThat(PseudoController.TargetCompression.validated(null)).isNull();
+    }
+
+    private static String responseOf(TestSubscriber<byte[]> subscriber) {
+        return subscriber.values().stream()
+                .map(chunk -> new String(chunk, StandardCharsets.UTF_8))
+                .collect(Collectors.joining());
+    }
+}
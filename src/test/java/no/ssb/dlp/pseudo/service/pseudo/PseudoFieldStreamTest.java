@@ -0,0 +1,92 @@
+package no.ssb.dlp.pseudo.service.pseudo;
+
+import io.reactivex.Flowable;
+import io.reactivex.subscribers.TestSubscriber;
+import no.ssb.dlp.pseudo.core.PseudoOperation;
+import org.json.JSONException;
+import org.junit.jupiter.api.Test;
+import org.skyscreamer.jsonassert.JSONAssert;
+import org.skyscreamer.jsonassert.JSONCompareMode;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static no.ssb.dlp.pseudo.service.pseudo.RecordProcessorFactoryStubs.stubPseudonymizeRecordProcessor;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+class PseudoFieldStreamTest {
+
+    private final PseudoConfigSplitter pseudoConfigSplitter = new PseudoConfigSplitter();
+    private final RecordMapProcessorFactory recordProcessorFactory = mock(RecordMapProcessorFactory.class);
+
+    @Test
+    void linesSplitAcrossChunks() {
+        byte[] bytes = "{\"name\": \"fnr\"}\r\n\"æøå\"\n\nnull\n\"last\"".getBytes(StandardCharsets.UTF_8);
+        // Split in the middle of a multibyte character and a line break
+        Flowable<byte[]> chunks = Flowable.just(
+                Arrays.copyOfRange(bytes, 0, 16),
+                Arrays.copyOfRange(bytes, 16, 19),
+                Arrays.copyOfRange(bytes, 19, bytes.length));
+
+        assertThat(PseudoFieldStream.lines(chunks).toList().blockingGet())
+                .containsExactly("{\"name\": \"fnr\"}", "\"æøå\"", "null", "\"last\"");
+    }
+
+    @Test
+    void processValues() throws JSONException {
+        stubPseudonymizeRecordProcessor(recordProcessorFactory);
+        List<String> values = IntStream.range(0, 2500)
+                .mapToObj(i -> i % 100 == 0 ? "null" : "\"v" + i + "\"")
+                .toList();
+        Flowable<String> lines = Flowable.just("{\"name\": \"fnr\"}").concatWith(Flowable.fromIterable(values));
+
+        List<String> got = PseudoFieldStream.process(lines, this::parseHeader, pseudoConfigSplitter,
+                recordProcessorFactory, PseudoOperation.PSEUDONYMIZE, "correlation-id").toList().blockingGet();
+        List<String> gotLines = Arrays.asList(String.join("", got).split("\n"));
+
+        assertThat(gotLines).hasSize(values.size() + 1);
+        assertThat(gotLines.subList(0, values.size())).isEqualTo(values.stream()
+                .map(v -> v.equals("null") ? v : "\"processed " + v.substring(1))
+                .collect(Collectors.toList()));
+        JSONAssert.assertEquals("""
+                {
+                  "datadoc_metadata": {
+                    "pseudo_variables": [{"short_name": "fnr"}]
+                  },
+                  "metrics": [{"NULL_VALUE": 25}],
+                  "logs": []
+                }
+                """, gotLines.get(values.size()), JSONCompareMode.LENIENT);
+    }
+
+    @Test
+    void processSlowValuesBeforeWindowIsFull() {
+        stubPseudonymizeRecordProcessor(recordProcessorFactory);
+        // The stream never completes, and holds far less values than a full window
+        Flowable<String> lines = Flowable.just("{\"name\": \"fnr\"}", "\"v1\"").concatWith(Flowable.never());
+
+        TestSubscriber<String> subscriber = PseudoFieldStream.process(lines, this::parseHeader, pseudoConfigSplitter,
+                recordProcessorFactory, PseudoOperation.PSEUDONYMIZE, "correlation-id").test();
+
+        subscriber.awaitCount(1);
+        assertThat(subscriber.values()).containsExactly("\"processed v1\"\n");
+        subscriber.cancel();
+    }
+
+    @Test
+    void missingHeader() {
+        PseudoFieldStream.process(Flowable.empty(), this::parseHeader, pseudoConfigSplitter,
+                        recordProcessorFactory, PseudoOperation.PSEUDONYMIZE, "correlation-id")
+                .test()
+                .assertError(IllegalArgumentException.class);
+    }
+
+    private PseudoFieldStream.Header parseHeader(String header) {
+        assertThat(header).isEqualTo("{\"name\": \"fnr\"}");
+        return new PseudoFieldStream.Header(new PseudoField("fnr", "**", null, null), null);
+    }
+}
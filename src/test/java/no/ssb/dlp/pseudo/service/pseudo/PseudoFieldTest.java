@@ -4,13 +4,15 @@ import io.micronaut.test.extensions.junit5.annotation.MicronautTest;
 import io.reactivex.Completable;
 import io.reactivex.Flowable;
 import io.reactivex.observers.TestObserver;
+import io.reactivex.subscribers.TestSubscriber;
 import no.ssb.dlp.pseudo.core.PseudoOperation;
-import no.ssb.dlp.pseudo.core.map.RecordMapProcessor;
+import no.ssb.dlp.pseudo.core.field.FieldDescriptor;
 import no.ssb.dlp.pseudo.core.tink.model.EncryptedKeysetWrapper;
 import no.ssb.dlp.pseudo.service.pseudo.metadata.FieldMetadata;
 import no.ssb.dlp.pseudo.service.pseudo.metadata.PseudoMetadataProcessor;
 import org.json.JSONException;
 import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 import org.skyscreamer.jsonassert.JSONAssert;
@@ -34,7 +36,7 @@ class PseudoFieldTest {
     private RecordMapProcessorFactory recordProcessorFactory;
 
     @Mock
-    private RecordMapProcessor<PseudoMetadataProcessor> recordMapProcessor;
+    private PseudoRecordMapProcessor recordMapProcessor;
 
     @Test
     void UsesDefaultPseudoConfigWhenNoKeysetIsSupplied() {
@@ -91,10 +93,9 @@ class PseudoFieldTest {
         //Preprocessor logic is covered in #preprocessorWithNullValues
         when(recordMapProcessor.hasPreprocessors()).thenReturn(false);
 
-        when(recordMapProcessor.process(any())).thenAnswer(invocation -> {
-            Map<String, String> argument = invocation.getArgument(0);
-            String originalValue = argument.get("testField");
-            return Collections.singletonMap("testField", "processedValue " + originalValue);
+        when(recordMapProcessor.processValue(any(), any())).thenAnswer(invocation -> {
+            String originalValue = invocation.getArgument(1);
+            return "processedValue " + originalValue;
         });
 
         PseudoField pseudoField = new PseudoField("testField", "**", null, null);
@@ -143,7 +144,28 @@ class PseudoFieldTest {
         JSONAssert.assertEquals(want, got, JSONCompareMode.STRICT);
 
         // Verify that recordMapProcessor was called once for each non-null value
-        verify(recordMapProcessor, times(2)).process(any());
+        verify(recordMapProcessor, times(2)).processValue(any(), any());
+    }
+
+    @Test
+    void processValuesOnDemand() {
+        setUpProcessorMocks();
+        when(recordMapProcessor.hasPreprocessors()).thenReturn(false);
+        when(recordMapProcessor.processValue(any(), any())).thenAnswer(invocation -> invocation.getArgument(1));
+
+        PseudoField pseudoField = new PseudoField("testField", "**", null, null);
+        Flowable<String> result = pseudoField.processValues(Arrays.asList("v1", "v2", "v3"), recordMapProcessor);
+
+        // Nothing is processed before the values are requested
+        verify(recordMapProcessor, never()).processValue(any(), any());
+
+        TestSubscriber<String> testSubscriber = result.test(1);
+        testSubscriber.assertValues("\"v1\"");
+        verify(recordMapProcessor, times(1)).processValue(any(), any());
+
+        testSubscriber.requestMore(2);
+        testSubscriber.assertValues("\"v1\"", "\"v2\"", "\"v3\"");
+        testSubscriber.assertComplete();
     }
 
     @Test
@@ -151,7 +173,6 @@ class PseudoFieldTest {
         setUpProcessorMocks();
 
         when(recordMapProcessor.hasPreprocessors()).thenReturn(true);
-        when(recordMapProcessor.init(any())).thenReturn(Collections.singletonMap("testField", "initializedValue"));
 
         PseudoField pseudoField = new PseudoField("testField", "**", null, null);
         List<String> values = Arrays.asList("v1", null, "v2");
@@ -163,7 +184,7 @@ class PseudoFieldTest {
         testObserver.assertNoErrors();
 
         // Verify that recordMapProcessor was called once for each non-null value
-        verify(recordMapProcessor, times(2)).init(any());
+        verify(recordMapProcessor, times(2)).initValue(any(), any());
     }
 
     @Test
@@ -171,7 +192,10 @@ class PseudoFieldTest {
         setUpProcessorMocks();
 
         when(recordMapProcessor.hasPreprocessors()).thenReturn(true);
-        when(recordMapProcessor.init(any())).thenReturn(Collections.singletonMap("testField", "initializedValue"));
+
+        doNothing().when(recordMapProcessor).initValue(any(), any());
+        when(recordMapProcessor.processValue(any(), any())).thenAnswer(invocation ->
+                "processedValue " + invocation.getArgument(1));
 
         PseudoField pseudoField = new PseudoField("path[9]/thing", "**/path/thing", null, null);
         List<String> values = Arrays.asList("v1", null, "v2");
@@ -181,6 +205,17 @@ class PseudoFieldTest {
         TestObserver<Void> testObserver = result.test();
         testObserver.assertComplete();
         testObserver.assertNoErrors();
+
+        // The values are preprocessed with the indexed name of the field
+        ArgumentCaptor<FieldDescriptor> fields = ArgumentCaptor.forClass(FieldDescriptor.class);
+        ArgumentCaptor<String> initValues = ArgumentCaptor.forClass(String.class);
+        verify(recordMapProcessor, times(2)).initValue(fields.capture(), initValues.capture());
+        assertEquals(List.of("/path[9]/thing", "/path[9]/thing"),
+                fields.getAllValues().stream().map(FieldDescriptor::getPath).toList());
+        assertEquals(List.of("v1", "v2"), initValues.getAllValues());
+
+        List<String> processed = pseudoField.processValues(values, recordMapProcessor).toList().blockingGet();
+        assertEquals(List.of("\"processedValue v1\"", "null", "\"processedValue v2\""), processed);
     }
 
 }
\ No newline at end of file
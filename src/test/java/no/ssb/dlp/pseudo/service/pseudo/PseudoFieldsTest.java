@@ -0,0 +1,98 @@
+package no.ssb.dlp.pseudo.service.pseudo;
+
+import io.reactivex.schedulers.Schedulers;
+import no.ssb.dlp.pseudo.core.PseudoOperation;
+import no.ssb.dlp.pseudo.service.pseudo.metadata.PseudoMetadataProcessor;
+import org.json.JSONException;
+import org.junit.jupiter.api.Test;
+import org.skyscreamer.jsonassert.JSONAssert;
+import org.skyscreamer.jsonassert.JSONCompareMode;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static no.ssb.dlp.pseudo.service.pseudo.RecordProcessorFactoryStubs.stubPseudonymizeRecordProcessor;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+class PseudoFieldsTest {
+
+    private final PseudoConfigSplitter pseudoConfigSplitter = new PseudoConfigSplitter();
+    private final RecordMapProcessorFactory recordProcessorFactory = mock(RecordMapProcessorFactory.class);
+
+    @Test
+    void processColumns() throws JSONException {
+        stubPseudonymizeRecordProcessor(recordProcessorFactory);
+
+        PseudoFields pseudoFields = new PseudoFields()
+                .add(new PseudoField("fnr", "**", null, null), Arrays.asList("f1", null, "f2"))
+                .add(new PseudoField("navn", "**", null, null), List.of("n1"))
+                .add(new PseudoField("tom", "**", null, null), List.of());
+
+        String want = """
+                {
+                  "data": {
+                    "fnr": ["processed f1", null, "processed f2"],
+                    "navn": ["processed n1"],
+                    "tom": []
+                  },
+                  "datadoc_metadata": {
+                    "pseudo_variables": [
+                      {
+                        "short_name": "fnr",
+                        "data_element_path": "fnr",
+                        "data_element_pattern": "**",
+                        "encryption_algorithm": "algorithm"
+                      },
+                      {
+                        "short_name": "navn",
+                        "data_element_path": "navn",
+                        "data_element_pattern": "**",
+                        "encryption_algorithm": "algorithm"
+                      }
+                    ]
+                  },
+                  "metrics": [{"NULL_VALUE": 1}],
+                  "logs": []
+                }
+                """;
+        String got = String.join("", pseudoFields.process(pseudoConfigSplitter, recordProcessorFactory,
+                PseudoOperation.PSEUDONYMIZE, "correlation-id", Schedulers.computation(), 2).blockingIterable());
+
+        JSONAssert.assertEquals(want, got, JSONCompareMode.LENIENT);
+        verify(recordProcessorFactory, times(3))
+                .newPseudonymizeRecordProcessor(any(List.class), any(PseudoMetadataProcessor.class));
+    }
+
+    @Test
+    void addDuplicateColumn() {
+        PseudoFields pseudoFields = new PseudoFields()
+                .add(new PseudoField("fnr", "**", null, null), List.of("f1"));
+        assertThatThrownBy(() -> pseudoFields.add(new PseudoField("fnr", "**", null, null), List.of("f2")))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void processColumnInBatches() throws JSONException {
+        stubPseudonymizeRecordProcessor(recordProcessorFactory);
+        List<String> values = IntStream.range(0, 2500)
+                .mapToObj(i -> i % 100 == 0 ? null : "v" + i)
+                .toList();
+
+        PseudoFields pseudoFields = new PseudoFields()
+                .add(new PseudoField("fnr", "**", null, null), values);
+
+        String want = "{\"data\": {\"fnr\": [" + values.stream()
+                .map(v -> v == null ? "null" : "\"processed " + v + "\"")
+                .collect(Collectors.joining(",")) + "]}, \"metrics\": [{\"NULL_VALUE\": 25}]}";
+        String got = String.join("", pseudoFields.process(pseudoConfigSplitter, recordProcessorFactory,
+                PseudoOperation.PSEUDONYMIZE, "correlation-id", Schedulers.computation(), 4).blockingIterable());
+
+        JSONAssert.assertEquals(want, got, JSONCompareMode.LENIENT);
+    }
+}
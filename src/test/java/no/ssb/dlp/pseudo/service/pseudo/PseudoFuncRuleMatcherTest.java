@@ -0,0 +1,76 @@
+package no.ssb.dlp.pseudo.service.pseudo;
+
+import com.google.common.collect.Lists;
+import no.ssb.dlp.pseudo.core.field.FieldDescriptor;
+import no.ssb.dlp.pseudo.core.func.PseudoFuncRule;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PseudoFuncRuleMatcherTest {
+
+    private static final List<String> PATTERNS = List.of(
+            "**", "*", "/fnr", "**/fnr", "/**/fnr", "**/*nummer", "/person/*", "/person/**", "**/person/*/fnr",
+            "**/{navn,postnummer}", "/{a,b/c}/**", "**/f?r", "**/[a-c]*", "**/[!a-c]*", "**/*identifikator*",
+            "**/path/thing", "/persons[0]/fnr", "**/x\\*y", "**/[a-]", "**/[^a]", "", "/");
+
+    private static final List<String> PATHS = List.of(
+            "/", "/fnr", "/fnr2", "/far", "/person", "/person/fnr", "/person/navn", "/person/address/fnr",
+            "/person/address/postnummer", "/kontonummer", "/a", "/a/x", "/b/c", "/b/c/d", "/b", "/bfnr",
+            "/person/x*y", "/path[9]/thing", "/path/thing", "/persons[0]/fnr", "/fødselsnummer", "/ørret/fnr",
+            "/person/" + "line\nbreak", "/person//fnr", "/person/fnr/", "/a/abc_identifikator_1", "");
+
+    @Test
+    void firstMatch_shouldAgreeWithGlobMatching() {
+        for (String pattern : PATTERNS) {
+            PseudoFuncRuleMatcher matcher = new PseudoFuncRuleMatcher(List.of(new PseudoFuncRule("rule", pattern, "redact()")));
+            for (String path : PATHS) {
+                FieldDescriptor field = new FieldDescriptor(path);
+                int expected = globMatchesSafely(field, pattern) ? 0 : -1;
+                assertThat(matcher.firstMatch(field))
+                        .as("pattern '%s' on path '%s'", pattern, path)
+                        .isEqualTo(expected);
+            }
+        }
+    }
+
+    @Test
+    void firstMatch_shouldReturnFirstMatchingRule() {
+        List<PseudoFuncRule> rules = IntStream.range(0, PATTERNS.size())
+                .mapToObj(i -> new PseudoFuncRule("rule" + i, PATTERNS.get(i), "redact()"))
+                .toList();
+        // Reverse the rules as well, so that the broad patterns are not always first
+        List<PseudoFuncRule> reversedRules = Lists.reverse(rules);
+        for (List<PseudoFuncRule> ruleList : List.of(rules, reversedRules, rules.subList(2, rules.size()))) {
+            PseudoFuncRuleMatcher matcher = new PseudoFuncRuleMatcher(ruleList);
+            for (String path : PATHS) {
+                FieldDescriptor field = new FieldDescriptor(path);
+                int expected = IntStream.range(0, ruleList.size())
+                        .filter(i -> globMatchesSafely(field, ruleList.get(i).getPattern()))
+                        .findFirst()
+                        .orElse(-1);
+                // Repeat to also exercise the cached transitions
+                assertThat(matcher.firstMatch(field)).as("path '%s'", path).isEqualTo(expected);
+                assertThat(matcher.firstMatch(field)).as("path '%s'", path).isEqualTo(expected);
+            }
+        }
+    }
+
+    @Test
+    void firstMatch_withNoRules_shouldNotMatch() {
+        PseudoFuncRuleMatcher matcher = new PseudoFuncRuleMatcher(List.of());
+        assertThat(matcher.firstMatch(new FieldDescriptor("/fnr"))).isEqualTo(-1);
+    }
+
+    private static boolean globMatchesSafely(FieldDescriptor field, String pattern) {
+        try {
+            return field.globMatches(pattern);
+        } catch (RuntimeException e) {
+            // Invalid glob patterns never match
+            return false;
+        }
+    }
+}
@@ -0,0 +1,240 @@
+package no.ssb.dlp.pseudo.service.pseudo;
+
+import io.micronaut.http.MediaType;
+import io.micronaut.objectstorage.ObjectStorageEntry;
+import io.micronaut.objectstorage.ObjectStorageOperations;
+import io.micronaut.objectstorage.request.UploadRequest;
+import io.reactivex.Flowable;
+import no.ssb.dlp.pseudo.core.PseudoOperation;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class PseudoJobServiceTest {
+
+    @TempDir
+    Path tempDir;
+
+    private final ObjectStorageOperations<?, ?, ?> objectStorage = mock(ObjectStorageOperations.class);
+    private PseudoJobService jobService;
+
+    @BeforeEach
+    void setUp() {
+        PseudoJobConfig config = new PseudoJobConfig();
+        config.setWorkers(1);
+        config.setSpoolDirectory(tempDir.resolve("jobs"));
+        jobService = new PseudoJobService(config, new PseudoObjectStorage(objectStorage));
+    }
+
+    @AfterEach
+    void tearDown() {
+        jobService.shutdown();
+    }
+
+    @Test
+    void submit_shouldSpoolInputAndResult() throws Exception {
+        PseudoJob job = jobService.submit(PseudoOperation.PSEUDONYMIZE, "user", input("a\nb\nc"),
+                (input, processedRecords) -> {
+                    Flowable<String> records = Flowable.fromIterable(readLines(input))
+                            .map(line -> "pseudo-" + line)
+                            .doOnNext(line -> processedRecords.increment());
+                    return new PseudoController.ProcessFileResult(MediaType.APPLICATION_JSON_TYPE, records);
+                });
+        job.getFuture().get(10, TimeUnit.SECONDS);
+
+        assertThat(job.getStatus()).isEqualTo(PseudoJob.Status.COMPLETED);
+        assertThat(Files.readString(job.getResultFile())).isEqualTo("pseudo-apseudo-bpseudo-c");
+        assertThat(job.toStatus().processedRecords()).isEqualTo(3);
+        assertThat(job.toStatus().resultBytes()).isEqualTo(24);
+        assertThat(job.toStatus().resultContentType()).isEqualTo(MediaType.APPLICATION_JSON);
+        // The spooled input is removed once processed
+        assertThat(job.getDirectory().resolve("input")).doesNotExist();
+    }
+
+    @Test
+    void submit_shouldReportFailure() throws Exception {
+        PseudoJob job = jobService.submit(PseudoOperation.PSEUDONYMIZE, "user", input("a"),
+                (input, processedRecords) -> new PseudoController.ProcessFileResult(MediaType.APPLICATION_JSON_TYPE,
+                        Flowable.error(new IllegalStateException("Boom"))));
+        job.getFuture().get(10, TimeUnit.SECONDS);
+
+        assertThat(job.getStatus()).isEqualTo(PseudoJob.Status.FAILED);
+        assertThat(job.getError()).contains("Boom");
+        assertThat(job.getCompletedAt()).isNotNull();
+    }
+
+    @Test
+    void submit_shouldQueueJobsWhenAllWorkersAreBusy() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        PseudoJob first = jobService.submit(PseudoOperation.PSEUDONYMIZE, "user", input("a"),
+                (input, processedRecords) -> {
+                    await(release);
+                    return new PseudoController.ProcessFileResult(MediaType.APPLICATION_JSON_TYPE, Flowable.just("a"));
+                });
+        PseudoJob second = jobService.submit(PseudoOperation.PSEUDONYMIZE, "user", input("b"),
+                (input, processedRecords) ->
+                        new PseudoController.ProcessFileResult(MediaType.APPLICATION_JSON_TYPE, Flowable.just("b")));
+
+        assertThat(second.getStatus()).isEqualTo(PseudoJob.Status.QUEUED);
+        release.countDown();
+        second.getFuture().get(10, TimeUnit.SECONDS);
+        assertThat(first.getStatus()).isEqualTo(PseudoJob.Status.COMPLETED);
+        assertThat(second.getStatus()).isEqualTo(PseudoJob.Status.COMPLETED);
+    }
+
+    @Test
+    void remove_shouldCancelJobAndDeleteFiles() {
+        CountDownLatch release = new CountDownLatch(1);
+        PseudoJob running = jobService.submit(PseudoOperation.PSEUDONYMIZE, "user", input("a"),
+                (input, processedRecords) -> {
+                    await(release);
+                    return new PseudoController.ProcessFileResult(MediaType.APPLICATION_JSON_TYPE, Flowable.just("a"));
+                });
+        PseudoJob queued = jobService.submit(PseudoOperation.PSEUDONYMIZE, "user", input("b"),
+                (input, processedRecords) ->
+                        new PseudoController.ProcessFileResult(MediaType.APPLICATION_JSON_TYPE, Flowable.just("b")));
+
+        jobService.remove(queued);
+        jobService.remove(running);
+
+        assertThat(jobService.getJob(queued.getId())).isEmpty();
+        assertThat(queued.getStatus()).isEqualTo(PseudoJob.Status.CANCELLED);
+        assertThat(queued.getDirectory()).doesNotExist();
+        assertThat(running.getStatus()).isEqualTo(PseudoJob.Status.CANCELLED);
+    }
+
+    @Test
+    void removeExpiredJobs_shouldRemoveFinishedJobsAndResults() throws Exception {
+        PseudoJobConfig config = new PseudoJobConfig();
+        config.setSpoolDirectory(tempDir.resolve("expiring-jobs"));
+        config.setRetention(Duration.ZERO);
+        PseudoJobService expiringJobService = new PseudoJobService(config, new PseudoObjectStorage(objectStorage));
+        try {
+            PseudoJob job = expiringJobService.submit(PseudoOperation.PSEUDONYMIZE, "user", input("a"),
+                    (input, processedRecords) -> new PseudoController.ProcessFileResult(
+                            MediaType.APPLICATION_JSON_TYPE, Flowable.just("pseudo-a")));
+            job.getFuture().get(10, TimeUnit.SECONDS);
+            assertThat(job.getResultFile()).exists();
+
+            expiringJobService.removeExpiredJobs();
+
+            assertThat(expiringJobService.getJob(job.getId())).isEmpty();
+            assertThat(job.getDirectory()).doesNotExist();
+        } finally {
+            expiringJobService.shutdown();
+        }
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void submit_withObjectPaths_shouldStreamFromSourceToTarget() throws Exception {
+        ObjectStorageEntry<Object> entry = mock(ObjectStorageEntry.class);
+        when(entry.getInputStream()).thenAnswer(invocation -> new ByteArrayInputStream("a\nb".getBytes()));
+        when(objectStorage.exists("users/user/source/data.ndjson")).thenReturn(true);
+        when(objectStorage.retrieve("users/user/source/data.ndjson")).thenAnswer(invocation -> Optional.of(entry));
+        ByteArrayOutputStream uploaded = new ByteArrayOutputStream();
+        when(objectStorage.upload(any(UploadRequest.class))).thenAnswer(invocation -> {
+            UploadRequest request = invocation.getArgument(0);
+            assertThat(request.getKey()).isEqualTo("users/user/target/data.ndjson");
+            assertThat(request.getContentType()).contains(PseudoMediaTypes.APPLICATION_NDJSON);
+            request.getInputStream().transferTo(uploaded);
+            return null;
+        });
+
+        PseudoJob job = jobService.submit(PseudoOperation.PSEUDONYMIZE, "user", "source/data.ndjson",
+                "target/data.ndjson", (input, processedRecords) -> {
+                    assertThat(input.getFilename()).isEqualTo("data.ndjson");
+                    Flowable<String> records = Flowable.fromIterable(readLines(input.asInputStream()))
+                            .map(line -> "pseudo-" + line + "\n")
+                            .doOnNext(line -> processedRecords.increment());
+                    return new PseudoController.ProcessFileResult(PseudoMediaTypes.APPLICATION_NDJSON_TYPE, records);
+                });
+        job.getFuture().get(10, TimeUnit.SECONDS);
+
+        assertThat(job.getStatus()).isEqualTo(PseudoJob.Status.COMPLETED);
+        assertThat(uploaded.toString()).isEqualTo("pseudo-a\npseudo-b\n");
+        assertThat(job.toStatus().processedRecords()).isEqualTo(2);
+        assertThat(job.toStatus().targetPath()).isEqualTo("target/data.ndjson");
+        assertThat(job.getResultFile()).doesNotExist();
+    }
+
+    @Test
+    void submit_withObjectPaths_shouldRejectInvalidPaths() {
+        when(objectStorage.exists(anyString())).thenReturn(false);
+
+        assertThatThrownBy(() -> jobService.submit(PseudoOperation.PSEUDONYMIZE, "user", "source/missing.json",
+                "target/data.json", (input, processedRecords) -> null))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("No such object");
+        assertThatThrownBy(() -> jobService.submit(PseudoOperation.PSEUDONYMIZE, "user", "source/data.json",
+                "../data.json", (input, processedRecords) -> null))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("Invalid object path");
+    }
+
+    @Test
+    void submit_withObjectPaths_shouldOnlyAccessObjectsOfOwner() {
+        when(objectStorage.exists("users/other/source/data.json")).thenReturn(true);
+
+        assertThatThrownBy(() -> jobService.submit(PseudoOperation.PSEUDONYMIZE, "user", "source/data.json",
+                "target/data.json", (input, processedRecords) -> null))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("No such object");
+        assertThatThrownBy(() -> jobService.submit(PseudoOperation.PSEUDONYMIZE, "../other", "source/data.json",
+                "target/data.json", (input, processedRecords) -> null))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("Invalid object owner");
+    }
+
+    private PseudoFileInput input(String content) {
+        try {
+            Path file = Files.createTempFile(tempDir, "input", ".txt");
+            Files.writeString(file, content);
+            return PseudoFileInput.of(file, "input.txt", MediaType.TEXT_PLAIN_TYPE);
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static List<String> readLines(PseudoFileInput input) {
+        try {
+            return Files.readAllLines(input.toFile().toPath());
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static List<String> readLines(InputStream is) {
+        return new BufferedReader(new InputStreamReader(is, StandardCharsets.UTF_8)).lines().toList();
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -2,6 +2,7 @@ package no.ssb.dlp.pseudo.service.pseudo;
 
 import com.google.common.collect.Lists;
 import io.reactivex.Flowable;
+import io.reactivex.schedulers.Schedulers;
 import no.ssb.dlp.pseudo.core.util.Json;
 import org.json.JSONException;
 import org.junit.jupiter.api.Test;
@@ -9,6 +10,10 @@ import org.skyscreamer.jsonassert.JSONAssert;
 import org.skyscreamer.jsonassert.JSONCompareMode;
 
 import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
 
 class PseudoResponseSerializerTest {
 
@@ -72,4 +77,49 @@ class PseudoResponseSerializerTest {
                    }
                 """;
         JSONAssert.assertEquals(want, got, JSONCompareMode.STRICT);
-    }}
\ No newline at end of file
+    }
+
+    @Test
+    void testSerializeColumns() throws JSONException {
+        Flowable<Map.Entry<String, Flowable<String>>> columns = Flowable.just(
+                Map.entry("fnr", Flowable.just("\"a\"", "null")),
+                Map.entry("empty", Flowable.<String>empty()),
+                Map.entry("navn", Flowable.just("\"b\""))
+        );
+        Flowable<String> metadata = Flowable.just(Json.from(Map.of("short_name", "fnr")));
+        String got = String.join("", Lists.newArrayList(PseudoResponseSerializer.serializeColumns(
+                columns, metadata, Flowable.empty(), Flowable.empty()).blockingIterable()));
+        String want = """
+                {
+                  "data": {
+                    "fnr": ["a", null],
+                    "empty": [],
+                    "navn": ["b"]
+                  },
+                  "datadoc_metadata": {
+                    "pseudo_variables": [{"short_name": "fnr"}]
+                  },
+                  "metrics": [],
+                  "logs": []
+                }
+                """;
+        JSONAssert.assertEquals(want, got, JSONCompareMode.STRICT);
+    }
+
+    @Test
+    void columnDataSubscribesToColumnsEagerly() throws InterruptedException {
+        CountDownLatch lastColumnStarted = new CountDownLatch(1);
+        // The first column can only complete once the last column has been subscribed to
+        Flowable<Map.Entry<String, Flowable<String>>> columns = Flowable.just(
+                Map.entry("fnr", Flowable.fromCallable(() -> lastColumnStarted.await(5, TimeUnit.SECONDS))
+                        .map(started -> Json.from(started.toString()))
+                        .subscribeOn(Schedulers.io())),
+                Map.entry("navn", Flowable.fromCallable(() -> {
+                    lastColumnStarted.countDown();
+                    return "\"b\"";
+                }).subscribeOn(Schedulers.io()))
+        );
+        String got = String.join("", PseudoResponseSerializer.columnData(columns, 2, 1).toList().blockingGet());
+        assertThat(got).isEqualTo("\"fnr\": [\"true\"],\"navn\": [\"b\"]");
+    }
+}
@@ -0,0 +1,72 @@
+package no.ssb.dlp.pseudo.service.pseudo;
+
+import no.ssb.dlp.pseudo.core.field.FieldDescriptor;
+import no.ssb.dlp.pseudo.core.func.PseudoFuncDeclaration;
+import no.ssb.dlp.pseudo.core.func.PseudoFuncNames;
+import no.ssb.dlp.pseudo.core.func.PseudoFuncRule;
+import no.ssb.dlp.pseudo.core.func.PseudoFuncRuleMatch;
+import no.ssb.dlp.pseudo.core.func.PseudoFuncs;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+/**
+ * Compares the per-value cost of resolving the pseudo rule of a field by walking the {@link PseudoFuncs} rules and
+ * parsing the function declaration (as done before {@link PseudoRulePlan} was introduced) with a lookup in a compiled
+ * {@link PseudoRulePlan}.
+ *
+ * <p>Run with <code>make run-benchmarks BENCHMARK=PseudoRulePlanBenchmark</code></p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PseudoRulePlanBenchmark {
+
+    @Param({"1", "20", "200"})
+    int ruleCount;
+
+    private PseudoFuncs pseudoFuncs;
+    private PseudoRulePlan rulePlan;
+    private FieldDescriptor field;
+
+    @Setup
+    public void setup() {
+        List<PseudoFuncRule> rules = IntStream.range(0, ruleCount)
+                .mapToObj(i -> new PseudoFuncRule("rule" + i, "**/field" + i, "redact(placeholder=#)"))
+                .toList();
+        pseudoFuncs = new PseudoFuncs(rules, List.of(), List.of());
+        rulePlan = new PseudoRulePlan(rules, pseudoFuncs);
+        // Worst case: the field is matched by the last rule
+        field = new FieldDescriptor("/person/address/field" + (ruleCount - 1));
+    }
+
+    @Benchmark
+    public boolean findPseudoFuncPerValue() {
+        PseudoFuncRuleMatch match = pseudoFuncs.findPseudoFunc(field).orElseThrow();
+        PseudoFuncDeclaration funcDeclaration = PseudoFuncDeclaration.fromString(match.getRule().getFunc());
+        return funcDeclaration.getFuncName().equals(PseudoFuncNames.MAP_SID)
+                || funcDeclaration.getFuncName().equals(PseudoFuncNames.MAP_SID_FF31)
+                || funcDeclaration.getFuncName().equals(PseudoFuncNames.MAP_SID_DAEAD);
+    }
+
+    @Benchmark
+    public Optional<PseudoRulePlan.FieldRule> rulePlanLookup() {
+        return rulePlan.find(field);
+    }
+}
@@ -0,0 +1,76 @@
+package no.ssb.dlp.pseudo.service.pseudo;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import no.ssb.dlp.pseudo.core.func.PseudoFuncRule;
+import no.ssb.dlp.pseudo.core.func.PseudoFuncs;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+class PseudoRulePlanCacheTest {
+
+    private static final List<PseudoFuncRule> RULES = List.of(
+            new PseudoFuncRule("fnr", "**/fnr", "daead(keyId=ssb-common-key-1)"));
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final PseudoRulePlanCache cache = new PseudoRulePlanCache(new PseudoRulePlanCacheConfig(), meterRegistry);
+    private final AtomicInteger compileCount = new AtomicInteger();
+
+    @Test
+    void get_withSameRulesAndSecrets_shouldReuseRulePlan() {
+        PseudoRulePlan first = cache.get(RULES, List.of(), "v1", this::newRulePlan);
+        PseudoRulePlan second = cache.get(List.copyOf(RULES), List.of(), "v1", this::newRulePlan);
+
+        assertThat(second).isSameAs(first);
+        assertThat(compileCount).hasValue(1);
+        assertThat(cacheGets("hit")).isEqualTo(1);
+        assertThat(cacheGets("miss")).isEqualTo(1);
+    }
+
+    @Test
+    void get_withDifferentRulesOrSecrets_shouldCompileNewRulePlan() {
+        PseudoRulePlan first = cache.get(RULES, List.of(), "v1", this::newRulePlan);
+        PseudoRulePlan otherSecrets = cache.get(RULES, List.of(), "v2", this::newRulePlan);
+        PseudoRulePlan otherRules = cache.get(List.of(
+                new PseudoFuncRule("fnr", "**/fnr", "daead(keyId=ssb-common-key-2)")), List.of(), "v1", this::newRulePlan);
+
+        assertThat(otherSecrets).isNotSameAs(first);
+        assertThat(otherRules).isNotSameAs(first);
+        assertThat(compileCount).hasValue(3);
+    }
+
+    @Test
+    void get_withSidMapping_shouldNotCache() {
+        List<PseudoFuncRule> rules = List.of(
+                new PseudoFuncRule("fnr", "**/fnr", "map-sid-daead(keyId=ssb-common-key-1)"));
+        PseudoRulePlan first = cache.get(rules, List.of(), "v1", this::newRulePlan);
+        PseudoRulePlan second = cache.get(rules, List.of(), "v1", this::newRulePlan);
+
+        assertThat(second).isNotSameAs(first);
+        assertThat(compileCount).hasValue(2);
+    }
+
+    @Test
+    void cacheKeyOf_shouldNotDependOnStringBoundaries() {
+        String key = PseudoRulePlanCache.cacheKeyOf(List.of(new PseudoFuncRule("ab", "c", "redact()")), List.of(), "v1");
+        String otherKey = PseudoRulePlanCache.cacheKeyOf(List.of(new PseudoFuncRule("a", "bc", "redact()")), List.of(), "v1");
+        assertThat(key).isNotEqualTo(otherKey);
+    }
+
+    private PseudoRulePlan newRulePlan() {
+        compileCount.incrementAndGet();
+        return new PseudoRulePlan(RULES, mock(PseudoFuncs.class));
+    }
+
+    private double cacheGets(String result) {
+        return meterRegistry.get("cache.gets")
+                .tag("cache", PseudoRulePlanCache.CACHE_NAME)
+                .tag("result", result)
+                .functionCounter()
+                .count();
+    }
+}
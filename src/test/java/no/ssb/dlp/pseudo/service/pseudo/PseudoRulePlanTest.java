@@ -0,0 +1,31 @@
+package no.ssb.dlp.pseudo.service.pseudo;
+
+import no.ssb.dlp.pseudo.core.func.PseudoFuncRule;
+import no.ssb.dlp.pseudo.core.func.PseudoFuncs;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+class PseudoRulePlanTest {
+
+    @Test
+    void rulesWithoutSidMapping_shouldNotRequirePreprocessing() {
+        PseudoRulePlan rulePlan = new PseudoRulePlan(List.of(
+                new PseudoFuncRule("redact", "**/navn", "redact(placeholder=#)"),
+                new PseudoFuncRule("daead", "**", "daead(keyId=ssb-common-key-1)")
+        ), mock(PseudoFuncs.class));
+        assertThat(rulePlan.isPreprocessingRequired()).isFalse();
+    }
+
+    @Test
+    void rulesWithSidMapping_shouldRequirePreprocessing() {
+        PseudoRulePlan rulePlan = new PseudoRulePlan(List.of(
+                new PseudoFuncRule("redact", "**/navn", "redact(placeholder=#)"),
+                new PseudoFuncRule("sid", "**/fnr", "map-sid-daead(keyId=ssb-common-key-1)")
+        ), mock(PseudoFuncs.class));
+        assertThat(rulePlan.isPreprocessingRequired()).isTrue();
+    }
+}
@@ -0,0 +1,121 @@
+package no.ssb.dlp.pseudo.service.pseudo;
+
+import io.reactivex.Flowable;
+import no.ssb.dapla.dlp.pseudo.func.PseudoFunc;
+import no.ssb.dapla.dlp.pseudo.func.PseudoFuncInput;
+import no.ssb.dapla.dlp.pseudo.func.PseudoFuncOutput;
+import no.ssb.dlp.pseudo.core.PseudoKeyset;
+import no.ssb.dlp.pseudo.core.field.FieldDescriptor;
+import no.ssb.dlp.pseudo.core.func.PseudoFuncRule;
+import no.ssb.dlp.pseudo.core.func.PseudoFuncRuleMatch;
+import no.ssb.dlp.pseudo.core.func.PseudoFuncs;
+import no.ssb.dlp.pseudo.core.util.Json;
+import org.junit.jupiter.api.Test;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class PseudoValueMemoTest {
+
+    private static final FieldDescriptor KOMMUNE = new FieldDescriptor("/person/kommune");
+
+    @Test
+    void get_shouldReturnMemoizedResultOfSameRuleAndValue() {
+        PseudoValueMemo memo = new PseudoValueMemo(16);
+        Object rule = new Object();
+        memo.put(rule, "0301", "pseudo-0301");
+
+        assertThat(memo.get(rule, "0301")).isEqualTo("pseudo-0301");
+        assertThat(memo.get(rule, "1103")).isNull();
+        assertThat(memo.get(new Object(), "0301")).isNull();
+    }
+
+    @Test
+    void put_shouldBeBounded() {
+        PseudoValueMemo memo = new PseudoValueMemo(8);
+        Object rule = new Object();
+        IntStream.range(0, 1000).forEach(i -> memo.put(rule, "value" + i, "result" + i));
+
+        long memoized = IntStream.range(0, 1000).filter(i -> memo.get(rule, "value" + i) != null).count();
+        assertThat(memoized).isPositive().isLessThanOrEqualTo(8);
+    }
+
+    @Test
+    void newMemo_shouldRejectSizeThatCanNotBeAllocated() {
+        assertThatThrownBy(() -> new PseudoValueMemo(PseudoValueMemo.MAX_SIZE + 1))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new PseudoValueMemo(Integer.MAX_VALUE))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new PseudoValueMemo(0))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void deterministicFunction_shouldOnlyTransformDistinctValuesAndReportHitRate() {
+        PseudoFunc func = mock(PseudoFunc.class);
+        when(func.apply(any(PseudoFuncInput.class))).thenReturn(PseudoFuncOutput.of("pseudonymized"));
+        PseudoProcessingConfig processingConfig = new PseudoProcessingConfig();
+        processingConfig.setMemoSize(1024);
+        PseudoRecordMapProcessor processor = recordProcessorFactory(func, processingConfig)
+                .newPseudonymizeRecordProcessor(List.of(config("daead(keyId=ssb-common-key-1)")), "correlation-id");
+
+        // 4 distinct values, each repeated 25 times
+        IntStream.range(0, 100).forEach(i -> assertThat(processor.processValue(KOMMUNE, "030" + i % 4))
+                .isEqualTo("pseudonymized"));
+        processor.getMetadataProcessor().onCompleteAll();
+
+        verify(func, times(4)).apply(any(PseudoFuncInput.class));
+        assertThat(Flowable.fromPublisher(processor.getMetadataProcessor().getMetrics()).toList().blockingGet())
+                .contains(Json.from(Map.of("MEMO_HIT", 96L)), Json.from(Map.of("MEMO_MISS", 4L)),
+                        Json.from(Map.of("MEMO_HIT_RATE", 0.96)));
+    }
+
+    @Test
+    void memoDisabled_shouldTransformEveryValue() {
+        PseudoFunc func = mock(PseudoFunc.class);
+        when(func.apply(any(PseudoFuncInput.class))).thenReturn(PseudoFuncOutput.of("pseudonymized"));
+        PseudoRecordMapProcessor processor = recordProcessorFactory(func, new PseudoProcessingConfig())
+                .newPseudonymizeRecordProcessor(List.of(config("daead(keyId=ssb-common-key-1)")), "correlation-id");
+
+        IntStream.range(0, 100).forEach(i -> processor.processValue(KOMMUNE, "0301"));
+
+        verify(func, times(100)).apply(any(PseudoFuncInput.class));
+    }
+
+    private static PseudoConfig config(String func) {
+        PseudoConfig config = new PseudoConfig();
+        config.setRules(List.of(new PseudoFuncRule("kommune", "**/kommune", func)));
+        return config;
+    }
+
+    /**
+     * @return a record processor factory where every rule resolves to the given function
+     */
+    private static RecordMapProcessorFactory recordProcessorFactory(PseudoFunc func,
+                                                                    PseudoProcessingConfig processingConfig) {
+        return new RecordMapProcessorFactory(mock(PseudoSecrets.class), mock(PseudoRulePlanCache.class),
+                processingConfig) {
+            @Override
+            protected PseudoRulePlan newPseudoRulePlan(List<PseudoFuncRule> rules,
+                                                       Collection<PseudoKeyset> keysets) {
+                PseudoFuncRuleMatch match = mock(PseudoFuncRuleMatch.class);
+                when(match.getFunc()).thenReturn(func);
+                when(match.getRule()).thenReturn(rules.get(0));
+                PseudoFuncs pseudoFuncs = mock(PseudoFuncs.class);
+                when(pseudoFuncs.findPseudoFunc(any(FieldDescriptor.class))).thenReturn(Optional.of(match));
+                return new PseudoRulePlan(rules, pseudoFuncs);
+            }
+        };
+    }
+}
@@ -0,0 +1,44 @@
+package no.ssb.dlp.pseudo.service.pseudo;
+
+import no.ssb.dlp.pseudo.core.field.FieldDescriptor;
+import no.ssb.dlp.pseudo.service.pseudo.metadata.FieldMetadata;
+import no.ssb.dlp.pseudo.service.pseudo.metadata.PseudoMetadataProcessor;
+
+import java.util.List;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Stubs a mocked {@link RecordMapProcessorFactory} for the tests of the field endpoints.
+ */
+final class RecordProcessorFactoryStubs {
+
+    private RecordProcessorFactoryStubs() {}
+
+    /**
+     * Stub the factory to create pseudonymize record processors that prefix each value with <code>processed </code>,
+     * and add metadata with the name of the field to the shared metadata processor.
+     */
+    @SuppressWarnings("unchecked")
+    static void stubPseudonymizeRecordProcessor(RecordMapProcessorFactory recordProcessorFactory) {
+        when(recordProcessorFactory.newPseudonymizeRecordProcessor(any(List.class), any(PseudoMetadataProcessor.class)))
+                .thenAnswer(invocation -> {
+                    PseudoMetadataProcessor metadataProcessor = invocation.getArgument(1);
+                    PseudoRecordMapProcessor recordMapProcessor = mock(PseudoRecordMapProcessor.class);
+                    when(recordMapProcessor.getMetadataProcessor()).thenReturn(metadataProcessor);
+                    when(recordMapProcessor.processValue(any(), any())).thenAnswer(i -> {
+                        FieldDescriptor field = i.getArgument(0);
+                        metadataProcessor.addMetadata(FieldMetadata.builder()
+                                .shortName(field.getName())
+                                .dataElementPath(field.getName())
+                                .dataElementPattern("**")
+                                .encryptionAlgorithm("algorithm")
+                                .build());
+                        return "processed " + i.getArgument(1);
+                    });
+                    return recordMapProcessor;
+                });
+    }
+}
@@ -2,7 +2,6 @@ package no.ssb.dlp.pseudo.service.pseudo;
 
 import com.google.common.collect.Lists;
 import io.micronaut.test.extensions.junit5.annotation.MicronautTest;
-import no.ssb.dlp.pseudo.core.map.RecordMapProcessor;
 import no.ssb.dlp.pseudo.service.pseudo.metadata.FieldMetadata;
 import no.ssb.dlp.pseudo.service.pseudo.metadata.PseudoMetadataProcessor;
 import org.json.JSONException;
@@ -29,7 +28,7 @@ class RepseudoFieldTest {
     private RecordMapProcessorFactory recordProcessorFactory;
 
     @Mock
-    private RecordMapProcessor<PseudoMetadataProcessor> recordMapProcessor;
+    private PseudoRecordMapProcessor recordMapProcessor;
     void setUpProcessorMocks() {
         MockitoAnnotations.openMocks(this);
         when(pseudoConfigSplitter.splitIfNecessary(any())).thenReturn(Collections.singletonList(new PseudoConfig()));
@@ -59,10 +58,9 @@ class RepseudoFieldTest {
         //Preprocessor logic is covered in #preprocessorWithNullValues
         when(recordMapProcessor.hasPreprocessors()).thenReturn(false);
 
-        when(recordMapProcessor.process(any())).thenAnswer(invocation -> {
-            Map<String, String> argument = invocation.getArgument(0);
-            String originalValue = argument.get("testField");
-            return Collections.singletonMap("testField", "processedValue " + originalValue);
+        when(recordMapProcessor.processValue(any(), any())).thenAnswer(invocation -> {
+            String originalValue = invocation.getArgument(1);
+            return "processedValue " + originalValue;
         });
 
         PseudoField sourcePseudoField = new PseudoField("testField", "**", null, null);
@@ -110,6 +108,6 @@ class RepseudoFieldTest {
         JSONAssert.assertEquals(want, got, JSONCompareMode.STRICT);
 
         // Verify that recordMapProcessor was called once for each non-null value
-        verify(recordMapProcessor, times(2)).process(any());
+        verify(recordMapProcessor, times(2)).processValue(any(), any());
     }
 }
\ No newline at end of file
@@ -0,0 +1,87 @@
+package no.ssb.dlp.pseudo.service.pseudo;
+
+import com.github.luben.zstd.ZstdInputStream;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.reactivex.Flowable;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.zip.GZIPInputStream;
+
+import static no.ssb.dlp.pseudo.service.pseudo.Chunks.concat;
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ResponseCompressionTest {
+
+    private final ResponseCompressionConfig config = new ResponseCompressionConfig();
+    private final PseudoWorkerPool workerPool = new PseudoWorkerPool(new PseudoProcessingConfig());
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final ResponseCompression responseCompression = new ResponseCompression(config, workerPool, meterRegistry);
+
+    @AfterEach
+    void tearDown() {
+        workerPool.shutdown();
+    }
+
+    @Test
+    void negotiate() {
+        assertThat(responseCompression.negotiate(null)).isEmpty();
+        assertThat(responseCompression.negotiate("identity")).isEmpty();
+        assertThat(responseCompression.negotiate("gzip, deflate, br")).contains(ResponseCompression.Encoding.GZIP);
+        assertThat(responseCompression.negotiate("GZIP;q=0.5, zstd")).contains(ResponseCompression.Encoding.ZSTD);
+        assertThat(responseCompression.negotiate("zstd;q=0, gzip")).contains(ResponseCompression.Encoding.GZIP);
+        assertThat(responseCompression.negotiate("zstd;q=0, gzip;q=0")).isEmpty();
+    }
+
+    @Test
+    void negotiateWhenDisabled() {
+        config.setEnabled(false);
+        assertThat(responseCompression.negotiate("gzip")).isEmpty();
+    }
+
+    @Test
+    void compressGzip() throws IOException {
+        List<byte[]> chunks = chunks();
+        byte[] compressed = concat(responseCompression.compress(Flowable.fromIterable(chunks),
+                ResponseCompression.Encoding.GZIP).toList().blockingGet());
+
+        assertThat(decompress(new GZIPInputStream(new ByteArrayInputStream(compressed)))).isEqualTo(concat(chunks));
+        assertThat(compressed.length).isLessThan(concat(chunks).length);
+        assertThat(meterRegistry.get(ResponseCompression.RATIO_METRIC).tag("encoding", "gzip").summary().count())
+                .isEqualTo(1);
+        assertThat(meterRegistry.get(ResponseCompression.CPU_TIME_METRIC).tag("encoding", "gzip").timer().count())
+                .isEqualTo(1);
+    }
+
+    @Test
+    void compressZstd() throws IOException {
+        List<byte[]> chunks = chunks();
+        byte[] compressed = concat(responseCompression.compress(Flowable.fromIterable(chunks),
+                ResponseCompression.Encoding.ZSTD).toList().blockingGet());
+
+        assertThat(decompress(new ZstdInputStream(new ByteArrayInputStream(compressed)))).isEqualTo(concat(chunks));
+        assertThat(meterRegistry.get(ResponseCompression.RATIO_METRIC).tag("encoding", "zstd").summary().max())
+                .isGreaterThan(1);
+    }
+
+    private static List<byte[]> chunks() {
+        return IntStream.range(0, 10)
+                .mapToObj(i -> IntStream.range(0, 1000)
+                        .mapToObj(j -> "\"AWIRfKLSNfR0ID+wBzogEcUT7JQPayk7Gosij" + j + "\"")
+                        .collect(Collectors.joining(",")).getBytes(StandardCharsets.UTF_8))
+                .toList();
+    }
+
+    private static byte[] decompress(InputStream is) throws IOException {
+        try (is) {
+            return is.readAllBytes();
+        }
+    }
+}
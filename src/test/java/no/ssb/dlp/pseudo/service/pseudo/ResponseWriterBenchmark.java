@@ -0,0 +1,78 @@
+package no.ssb.dlp.pseudo.service.pseudo;
+
+import io.reactivex.Flowable;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+/**
+ * Compares writing a field response as one byte array per JSON fragment, with separators as separate fragments (as
+ * done before {@link ChunkedResponseWriter} was introduced), with writing it through {@link PseudoResponseSerializer}
+ * and {@link ChunkedResponseWriter}. The chunked response is written both with and without the timed flush of partially
+ * filled chunks, to show the cost of the flush timer.
+ *
+ * <p>Run with <code>make run-benchmarks BENCHMARK=ResponseWriterBenchmark</code></p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ResponseWriterBenchmark {
+
+    @Param({"1000", "100000"})
+    int valueCount;
+
+    private List<String> values;
+
+    @Setup
+    public void setup() {
+        values = IntStream.range(0, valueCount)
+                .mapToObj(i -> "\"AWIRfKLSNfR0ID+wBzogEcUT7JQPayk7Gosij" + i + "\"")
+                .toList();
+    }
+
+    @Benchmark
+    public long bytePerFragment() {
+        Flowable<String> data = Flowable.fromIterable(values)
+                .concatMap(item -> Flowable.just(item, ","))
+                .startWith("\"data\": [")
+                .skipLast(1)
+                .concatWith(Flowable.just("], \"datadoc_metadata\": {\"pseudo_variables\": []}, \"metrics\": [], "
+                        + "\"logs\": []"));
+        return Flowable.concat(Flowable.just("{"), data, Flowable.just("}"))
+                .map(o -> o.getBytes(StandardCharsets.UTF_8))
+                .reduce(0L, (count, bytes) -> count + bytes.length)
+                .blockingGet();
+    }
+
+    @Benchmark
+    public long chunked() {
+        return ChunkedResponseWriter.write(PseudoResponseSerializer.serialize(Flowable.fromIterable(values),
+                        Flowable.empty(), Flowable.empty(), Flowable.empty()))
+                .reduce(0L, (count, bytes) -> count + bytes.length)
+                .blockingGet();
+    }
+
+    @Benchmark
+    public long chunkedWithoutFlushTimer() {
+        return ChunkedResponseWriter.write(PseudoResponseSerializer.serialize(Flowable.fromIterable(values),
+                        Flowable.empty(), Flowable.empty(), Flowable.empty()), ChunkedResponseWriter.DEFAULT_CHUNK_SIZE)
+                .reduce(0L, (count, bytes) -> count + bytes.length)
+                .blockingGet();
+    }
+}
@@ -0,0 +1,40 @@
+package no.ssb.dlp.pseudo.service.pseudo.metadata;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class BoundedLogCollectorTest {
+
+    @Test
+    void logsBelowLimit_shouldBeKeptAsIs() {
+        BoundedLogCollector collector = new BoundedLogCollector(3, 2);
+        collector.add("Log line 1");
+        collector.add("Log line 2");
+        assertThat(collector.getLogs()).isEqualTo(List.of("Log line 1", "Log line 2"));
+    }
+
+    @Test
+    void logsAboveLimit_shouldBeSummarizedPerTemplate() {
+        BoundedLogCollector collector = new BoundedLogCollector(2, 1);
+        IntStream.range(0, 1000).forEach(i -> collector.add("No SID-mapping found for fnr 1185" + i + "*****"));
+        collector.add("Something else");
+        collector.add("Something different");
+
+        assertThat(collector.getLogs()).isEqualTo(List.of(
+                "No SID-mapping found for fnr 11850*****",
+                "No SID-mapping found for fnr 11851*****",
+                "Suppressed 998 more log messages like: No SID-mapping found for fnr <value>",
+                "Suppressed 2 more log messages"
+        ));
+    }
+
+    @Test
+    void templateOf_shouldMaskValues() {
+        assertThat(BoundedLogCollector.templateOf("Incorrect SID-mapping for fnr 118548*****. Mapping returned the original fnr!"))
+                .isEqualTo("Incorrect SID-mapping for fnr <value> Mapping returned the original fnr!");
+    }
+}
@@ -0,0 +1,66 @@
+package no.ssb.dlp.pseudo.service.pseudo.metadata;
+
+import io.reactivex.Flowable;
+import io.reactivex.subscribers.TestSubscriber;
+import no.ssb.dlp.pseudo.core.func.PseudoFuncRule;
+import no.ssb.dlp.pseudo.core.util.Json;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PseudoMetadataProcessorTest {
+
+    @Test
+    void metrics_shouldBeCountedAndEmittedOnCompletion() {
+        PseudoMetadataProcessor processor = new PseudoMetadataProcessor("correlation-id");
+        IntStream.range(0, 1000).parallel().forEach(i -> processor.addMetric(FieldMetric.MAPPED_SID));
+        processor.addMetric(FieldMetric.NULL_VALUE);
+
+        TestSubscriber<String> metrics = Flowable.fromPublisher(processor.getMetrics()).test();
+        metrics.assertNoValues();
+        metrics.assertNotComplete();
+
+        processor.onCompleteAll();
+        metrics.assertValues(Json.from(Map.of("NULL_VALUE", 1L)), Json.from(Map.of("MAPPED_SID", 1000L)));
+        metrics.assertComplete();
+    }
+
+    @Test
+    void metrics_shouldPropagateErrors() {
+        PseudoMetadataProcessor processor = new PseudoMetadataProcessor("correlation-id");
+        processor.addMetric(FieldMetric.NULL_VALUE);
+        RuntimeException error = new RuntimeException("failed");
+        processor.onErrorAll(error);
+
+        Flowable.fromPublisher(processor.getMetrics()).test()
+                .assertNoValues()
+                .assertError(error);
+    }
+
+    @Test
+    void addMetadata_shouldOnlyBuildMetadataOncePerPathAndRule() {
+        PseudoMetadataProcessor processor = new PseudoMetadataProcessor("correlation-id");
+        PseudoFuncRule rule = new PseudoFuncRule("fnr", "**/fnr", "daead(keyId=ssb-common-key-1)");
+        AtomicInteger builds = new AtomicInteger();
+        Supplier<FieldMetadata> metadata = () -> {
+            builds.incrementAndGet();
+            return FieldMetadata.builder()
+                    .shortName("fnr")
+                    .dataElementPath("person.fnr")
+                    .dataElementPattern("**/fnr")
+                    .build();
+        };
+        IntStream.range(0, 100).forEach(i -> processor.addMetadata("/person/fnr", rule, null, metadata));
+        // Another array element results in the same (normalized) metadata
+        processor.addMetadata("/person[1]/fnr", rule, null, metadata);
+        processor.onCompleteAll();
+
+        assertThat(builds.get()).isEqualTo(2);
+        assertThat(Flowable.fromPublisher(processor.getMetadata()).toList().blockingGet()).hasSize(1);
+    }
+}
@@ -22,6 +22,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.ServiceLoader;
+import java.util.stream.Collectors;
 
 import static no.ssb.dlp.pseudo.service.sid.SidMapper.*;
 import static org.mockito.Mockito.*;
@@ -277,6 +278,64 @@ public class SidMapperTest {
             assertLogsForIdentifiers("11854898346", "0001ha3");
         }
     }
+    @Test
+    public void testMapInWindows() {
+        when(sidService.lookupFnr(eq(List.of("11854898347")), any(Optional.class))).thenReturn(Publishers.just(
+                Maps.of("11854898347", new SidInfo.SidInfoBuilder().snr("0001ha3").build()))
+        );
+        when(sidService.lookupFnr(eq(List.of("01839899544")), any(Optional.class))).thenReturn(Publishers.just(
+                Maps.of("01839899544", new SidInfo.SidInfoBuilder().snr("0006kh2").build()))
+        );
+
+        try (final var application = mockStatic(Application.class)) {
+            application.when(Application::getContext).thenReturn(context);
+            Mapper mapper = ServiceLoader.load(Mapper.class).findFirst().orElseThrow(() ->
+                    new RuntimeException("SidMapper class not found"));
+            mapper.setConfig(new HashMap<>());
+            // First window
+            mapper.init(PseudoFuncInput.of("11854898347"));
+            Assertions.assertEquals("0001ha3", mapper.map(PseudoFuncInput.of("11854898347")).getValue());
+            // Second window - only the new identifier should be looked up
+            mapper.init(PseudoFuncInput.of("01839899544"));
+            mapper.init(PseudoFuncInput.of("11854898347"));
+            Assertions.assertEquals("0006kh2", mapper.map(PseudoFuncInput.of("01839899544")).getValue());
+            Assertions.assertEquals("0001ha3", mapper.map(PseudoFuncInput.of("11854898347")).getValue());
+
+            verify(sidService, times(1)).lookupFnr(eq(List.of("11854898347")), eq(Optional.empty()));
+            verify(sidService, times(1)).lookupFnr(eq(List.of("01839899544")), eq(Optional.empty()));
+            verifyNoMoreInteractions(sidService);
+        }
+    }
+
+    @Test
+    public void testPrefetchAndEvictWindows() {
+        when(sidService.lookupFnr(anyList(), any(Optional.class))).thenAnswer(invocation -> {
+            List<String> fnrs = invocation.getArgument(0);
+            return Publishers.just(fnrs.stream().collect(Collectors.toMap(fnr -> fnr,
+                    fnr -> new SidInfo.SidInfoBuilder().snr("sid-" + fnr).build())));
+        });
+        // Windows of 1 record, and only the 2 most recent windows are kept
+        SidMapper mapper = new SidMapper(sidService, 50000, 1, 2);
+        mapper.setConfig(new HashMap<>());
+
+        // The mapping direction is not known before the first value is mapped
+        mapper.init(PseudoFuncInput.of("11854898347"));
+        verifyNoInteractions(sidService);
+        Assertions.assertEquals("sid-11854898347", mapper.map(PseudoFuncInput.of("11854898347")).getValue());
+        // The next windows are looked up as soon as they have been initialized
+        mapper.init(PseudoFuncInput.of("01839899544"));
+        verify(sidService, times(1)).lookupFnr(eq(List.of("01839899544")), eq(Optional.empty()));
+        mapper.init(PseudoFuncInput.of("11854898346"));
+        verify(sidService, times(1)).lookupFnr(eq(List.of("11854898346")), eq(Optional.empty()));
+        Assertions.assertEquals("sid-01839899544", mapper.map(PseudoFuncInput.of("01839899544")).getValue());
+        Assertions.assertEquals("sid-11854898346", mapper.map(PseudoFuncInput.of("11854898346")).getValue());
+        // The first window has been evicted, so it must be looked up again
+        Assertions.assertEquals("sid-11854898347", mapper.map(PseudoFuncInput.of("11854898347")).getValue());
+
+        verify(sidService, times(2)).lookupFnr(eq(List.of("11854898347")), eq(Optional.empty()));
+        verifyNoMoreInteractions(sidService);
+    }
+
     private void assertLogsForIdentifiers(String fnr, String snr) {
        for(String infoLog : logCaptor.getInfoLogs()){
            if(!fnr.isEmpty())
@@ -0,0 +1,73 @@
+package no.ssb.dlp.pseudo.service.tink;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.google.crypto.tink.Aead;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class CachingKmsClientTest {
+
+    private static final String KEY_URI = FakeKmsClient.KEY_URI_PREFIX + "kek-1";
+    private static final String OTHER_KEY_URI = FakeKmsClient.KEY_URI_PREFIX + "kek-2";
+    private static final byte[] EMPTY = new byte[0];
+
+    private FakeKmsClient kms;
+    private CachingKmsClient cachingKms;
+
+    @BeforeEach
+    void setUp() throws GeneralSecurityException {
+        kms = new FakeKmsClient();
+        cachingKms = new CachingKmsClient(kms, Caffeine.newBuilder().maximumSize(10).build());
+    }
+
+    @Test
+    void decrypt_sameWrappedKeyset_shouldOnlyUnwrapOnce() throws GeneralSecurityException {
+        byte[] wrapped = kms.getAead(KEY_URI).encrypt(bytes("keyset"), EMPTY);
+
+        // A new Aead is requested for every keyset that is read
+        assertThat(cachingKms.getAead(KEY_URI).decrypt(wrapped, EMPTY)).isEqualTo(bytes("keyset"));
+        assertThat(cachingKms.getAead(KEY_URI).decrypt(wrapped, EMPTY)).isEqualTo(bytes("keyset"));
+        assertThat(kms.getDecryptCount()).isEqualTo(1);
+    }
+
+    @Test
+    void decrypt_differentWrappedKeysets_shouldUnwrapEach() throws GeneralSecurityException {
+        byte[] wrapped1 = kms.getAead(KEY_URI).encrypt(bytes("keyset1"), EMPTY);
+        byte[] wrapped2 = kms.getAead(OTHER_KEY_URI).encrypt(bytes("keyset2"), EMPTY);
+
+        assertThat(cachingKms.getAead(KEY_URI).decrypt(wrapped1, EMPTY)).isEqualTo(bytes("keyset1"));
+        assertThat(cachingKms.getAead(OTHER_KEY_URI).decrypt(wrapped2, EMPTY)).isEqualTo(bytes("keyset2"));
+        assertThat(kms.getDecryptCount()).isEqualTo(2);
+    }
+
+    @Test
+    void decrypt_withWrongKek_shouldFailEveryTime() throws GeneralSecurityException {
+        byte[] wrapped = kms.getAead(KEY_URI).encrypt(bytes("keyset"), EMPTY);
+        Aead otherKek = cachingKms.getAead(OTHER_KEY_URI);
+
+        assertThatThrownBy(() -> otherKek.decrypt(wrapped, EMPTY)).isInstanceOf(GeneralSecurityException.class);
+        assertThatThrownBy(() -> otherKek.decrypt(wrapped, EMPTY)).isInstanceOf(GeneralSecurityException.class);
+        assertThat(kms.getDecryptCount()).isEqualTo(2);
+    }
+
+    @Test
+    void decrypt_shouldReturnCopyOfCachedKeyset() throws GeneralSecurityException {
+        byte[] wrapped = kms.getAead(KEY_URI).encrypt(bytes("keyset"), EMPTY);
+        byte[] unwrapped = cachingKms.getAead(KEY_URI).decrypt(wrapped, EMPTY);
+        // Callers may clear the unwrapped keyset
+        Arrays.fill(unwrapped, (byte) 0);
+
+        assertThat(cachingKms.getAead(KEY_URI).decrypt(wrapped, EMPTY)).isEqualTo(bytes("keyset"));
+    }
+
+    private static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+}
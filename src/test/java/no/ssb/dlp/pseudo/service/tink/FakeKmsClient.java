@@ -0,0 +1,65 @@
+package no.ssb.dlp.pseudo.service.tink;
+
+import com.google.crypto.tink.Aead;
+import com.google.crypto.tink.KeyTemplates;
+import com.google.crypto.tink.KeysetHandle;
+import com.google.crypto.tink.KmsClient;
+import com.google.crypto.tink.aead.AeadConfig;
+
+import java.security.GeneralSecurityException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A local stand-in for a KMS, with one in-memory KEK per key URI. Counts the number of decrypt calls, so that tests
+ * can verify how often keysets are unwrapped.
+ */
+class FakeKmsClient implements KmsClient {
+
+    static final String KEY_URI_PREFIX = "fake-kms://";
+
+    private final Aead kek;
+    private final AtomicInteger decryptCount = new AtomicInteger();
+
+    FakeKmsClient() throws GeneralSecurityException {
+        AeadConfig.register();
+        this.kek = KeysetHandle.generateNew(KeyTemplates.get("AES128_GCM")).getPrimitive(Aead.class);
+    }
+
+    int getDecryptCount() {
+        return decryptCount.get();
+    }
+
+    @Override
+    public boolean doesSupport(String keyUri) {
+        return keyUri != null && keyUri.startsWith(KEY_URI_PREFIX);
+    }
+
+    @Override
+    public KmsClient withCredentials(String credentialPath) {
+        return this;
+    }
+
+    @Override
+    public KmsClient withDefaultCredentials() {
+        return this;
+    }
+
+    @Override
+    public Aead getAead(String keyUri) throws GeneralSecurityException {
+        if (!doesSupport(keyUri)) {
+            throw new GeneralSecurityException("Unsupported key URI " + keyUri);
+        }
+        return new Aead() {
+            @Override
+            public byte[] encrypt(byte[] plaintext, byte[] associatedData) throws GeneralSecurityException {
+                return kek.encrypt(plaintext, keyUri.getBytes());
+            }
+
+            @Override
+            public byte[] decrypt(byte[] ciphertext, byte[] associatedData) throws GeneralSecurityException {
+                decryptCount.incrementAndGet();
+                return kek.decrypt(ciphertext, keyUri.getBytes());
+            }
+        };
+    }
+}